@@ -0,0 +1,72 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering line maps of synthetic logs at several resolutions. A line is drawn between every pair of
+ * logged pixels less than about 290 pixels apart, so the work grows with the square of the number of pixels on
+ * the screen; 10k distinct pixels on a 1080p screen already make millions of lines.
+ *
+ * Larger logs can still be measured by overriding the parameter, e.g. -p distinctPixels=100000.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class LineMapBenchmark {
+
+	@Param({"1000", "3000", "10000"})
+	public int distinctPixels;
+
+	@Param({"1920x1080", "3840x2160", "7680x4320"})
+	public String resolution;
+
+	@Param({MapGenerator.RENDER_BACKEND_RASTER})
+	public String backend;
+
+	private Dimension size;
+	private PixelCountStore log;
+	private MapGenerator generator;
+	private TiledMapRenderer renderer;
+
+	@Setup(Level.Trial)
+	public void createLog() {
+		this.size = SyntheticLogs.parseResolution(this.resolution);
+		this.log = SyntheticLogs.createLog(this.size, this.distinctPixels, SyntheticLogs.SEED);
+		this.renderer = new TiledMapRenderer();
+		this.generator = new MapGenerator(this.renderer);
+		this.generator.setRenderBackend(this.backend);
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdown() {
+		this.renderer.shutdown();
+	}
+
+	@Benchmark
+	public BufferedImage render() {
+		return this.generator.renderMap(this.size, this.log, Color.RED, MapGenerator.MAP_TYPE_LINEMAP);
+	}
+}
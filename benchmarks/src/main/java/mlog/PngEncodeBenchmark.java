@@ -0,0 +1,137 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures encoding a dot map of a synthetic log as PNG, with PngEncoder and, for comparison, with ImageIO at
+ * the same compression level. The PNG is written to a channel that throws it away, so only encoding is measured.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class PngEncodeBenchmark {
+
+	private static final int DISTINCT_PIXELS = 100000;
+
+	@Param({"1920x1080", "3840x2160"})
+	public String resolution;
+
+	@Param({"1", "4", "9"})
+	public int compressionLevel;
+
+	private BufferedImage image;
+	private PngEncoder encoder;
+
+	@Setup(Level.Trial)
+	public void renderMap() {
+		Dimension size = SyntheticLogs.parseResolution(this.resolution);
+		PixelCountStore log = SyntheticLogs.createLog(size, DISTINCT_PIXELS, SyntheticLogs.SEED);
+		TiledMapRenderer renderer = new TiledMapRenderer();
+		this.image = new MapGenerator(renderer).renderMap(size, log, Color.RED, MapGenerator.MAP_TYPE_DOTMAP);
+		renderer.shutdown();
+		this.encoder = new PngEncoder(Runtime.getRuntime().availableProcessors(), this.compressionLevel);
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdown() {
+		this.encoder.shutdown();
+	}
+
+	@Benchmark
+	public long pngEncoder() throws IOException {
+		DiscardingChannel channel = new DiscardingChannel();
+		this.encoder.write(this.image, channel);
+		return channel.written;
+	}
+
+	@Benchmark
+	public long imageIO() throws IOException {
+		DiscardingChannel channel = new DiscardingChannel();
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		// The PNG writer turns the quality back into the deflate level (int) (9 * (1 - quality))
+		param.setCompressionQuality(Math.max(0, 1 - (this.compressionLevel + 0.5f) / 9));
+		ImageOutputStream output = ImageIO.createImageOutputStream(channel.asOutputStream());
+		try {
+			writer.setOutput(output);
+			writer.write(null, new IIOImage(this.image, null, null), param);
+		} finally {
+			writer.dispose();
+			output.close();
+		}
+		return channel.written;
+	}
+
+	/**
+	 * A channel that counts the bytes written to it and throws them away.
+	 */
+	private static class DiscardingChannel implements WritableByteChannel {
+
+		private long written;
+
+		@Override
+		public int write(ByteBuffer source) {
+			int length = source.remaining();
+			source.position(source.limit());
+			this.written += length;
+			return length;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		OutputStream asOutputStream() {
+			return new OutputStream() {
+				@Override
+				public void write(int b) {
+					written++;
+				}
+
+				@Override
+				public void write(byte[] b, int offset, int length) {
+					written += length;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package mlog;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs the whole sampler of a MouseLogger, from a synthetic pointer on a clock of infinite speed, so it samples as
+ * fast as it can without a display. Every operation logs a minute of pointer movement at 1000 samples per
+ * second; the number of samples taken per second is reported as "samples".
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SamplerSoakBenchmark {
+
+	private static final Rectangle SCREEN = new Rectangle(0, 0, 1920, 1080);
+	private static final long DURATION_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	@Param({SyntheticPointerSource.MODEL_RANDOM_WALK, SyntheticPointerSource.MODEL_SACCADE, SyntheticPointerSource.MODEL_HOTSPOT})
+	public String model;
+
+	/**
+	 * Counts the samples taken, as a rate next to the rate of operations.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class SampleCounter {
+
+		public long samples;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			this.samples = 0;
+		}
+	}
+
+	@Benchmark
+	public void logMinute(SampleCounter counter) throws IOException {
+		SyntheticPointerSource source = new SyntheticPointerSource(this.model, SCREEN, SyntheticLogs.SEED,
+				MouseLogger.MAX_SAMPLE_RATE, Double.POSITIVE_INFINITY, DURATION_NANOS);
+		MouseLogger logger = new MouseLogger(1, source);
+		logger.setTrajectoryBuffer(new TrajectoryBuffer(source.nanoTime(), TrajectoryBuffer.DEFAULT_CAPACITY, null));
+		logger.start();
+		logger.run();
+		counter.samples += logger.getSamplerStats().getSampleCount();
+		logger.getTrajectoryBuffer().close();
+	}
+}
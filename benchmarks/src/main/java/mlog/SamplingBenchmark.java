@@ -0,0 +1,101 @@
+package mlog;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the work the sampler does for every sample: adding the sample to the log, and to the trajectory.
+ * The pointer follows a synthetic path, so the samples hit pixels the way a moving pointer would.
+ *
+ * The storage parameter chooses whether the pixels are inside the dense area of the log, as pixels of the
+ * virtual desktop are, or outside it.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamplingBenchmark {
+
+	private static final int PATH_LENGTH = 1 << 16;
+	private static final Dimension SCREEN = new Dimension(1920, 1080);
+
+	@Param({"DENSE", "SPARSE"})
+	public String storage;
+
+	private int[] xs;
+	private int[] ys;
+	private int sample;
+	private long time;
+	private ConcurrentPixelLog log;
+	private PixelCountStore store;
+	private TrajectoryBuffer trajectory;
+
+	@Setup(Level.Trial)
+	public void createPath() {
+		int[][] path = SyntheticLogs.createPath(SCREEN, PATH_LENGTH, SyntheticLogs.SEED);
+		this.xs = path[0];
+		this.ys = path[1];
+	}
+
+	@Setup(Level.Iteration)
+	public void createLog() throws IOException {
+		Rectangle denseBounds = this.storage.equals("DENSE") ? new Rectangle(SCREEN) : new Rectangle();
+		this.log = new ConcurrentPixelLog(denseBounds);
+		this.store = new PixelCountStore(denseBounds);
+		this.trajectory = new TrajectoryBuffer(0, TrajectoryBuffer.DEFAULT_CAPACITY, null);
+	}
+
+	@TearDown(Level.Iteration)
+	public void closeTrajectory() {
+		this.trajectory.close();
+	}
+
+	/**
+	 * Adds a sample to the log that the sampler writes to, as MouseLogger.updatePixelTime does.
+	 */
+	@Benchmark
+	public void logAdd() {
+		int i = this.sample++ & (PATH_LENGTH - 1);
+		this.log.add(this.xs[i], this.ys[i], 1);
+	}
+
+	/**
+	 * Adds a sample straight to a store, without the log around it.
+	 */
+	@Benchmark
+	public void storeAdd() {
+		int i = this.sample++ & (PATH_LENGTH - 1);
+		this.store.add(this.xs[i], this.ys[i], 1);
+	}
+
+	/**
+	 * Adds a sample to both the log and the trajectory, as the sampler does for every sample.
+	 */
+	@Benchmark
+	public void sample() {
+		int i = this.sample++ & (PATH_LENGTH - 1);
+		this.log.add(this.xs[i], this.ys[i], 1);
+		this.trajectory.append(this.time += 10000000L, this.xs[i], this.ys[i], 1);
+	}
+}
@@ -0,0 +1,108 @@
+package mlog;
+
+import java.awt.Dimension;
+import java.util.Random;
+
+/**
+ * Creates synthetic logs for the benchmarks. The same arguments always give the same log, on any machine, so
+ * results of different runs and different versions can be compared.
+ *
+ * Logged pixels are scattered evenly over the screen. Most of them are counted only a few sample periods, as a
+ * pointer passing by would be, and a few of them much longer, as where the pointer rests.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+final class SyntheticLogs {
+
+	static final long SEED = 0x4D4C4F47L;
+	private static final int DWELL_ONE_IN = 1 << 14;
+	private static final int MAX_DWELL_PERIODS = 500;
+
+	private SyntheticLogs() {
+	}
+
+	/**
+	 * Parses a resolution such as "1920x1080".
+	 *
+	 * @param resolution	The width and height separated by an x
+	 * @return	The resolution.
+	 */
+	static Dimension parseResolution(String resolution) {
+		int separator = resolution.indexOf('x');
+		return new Dimension(Integer.parseInt(resolution.substring(0, separator)),
+				Integer.parseInt(resolution.substring(separator + 1)));
+	}
+
+	/**
+	 * Creates a log of a number of distinct pixels of a screen. A screen has room for only so many distinct pixels;
+	 * asking for more logs every pixel of it.
+	 *
+	 * @param resolution		The size of the screen
+	 * @param distinctPixels	The number of distinct pixels to log
+	 * @param seed				The seed of the log
+	 * @return	The log.
+	 */
+	static PixelCountStore createLog(Dimension resolution, int distinctPixels, long seed) {
+		long area = (long) resolution.width * resolution.height;
+		long pixels = Math.min(distinctPixels, area);
+		Random random = new Random(seed);
+		// Stepping through the pixels by a stride that is coprime with their number visits each at most once
+		long stride = (long) (area * 0.6180339887) | 1;
+		while (gcd(stride, area) != 1) {
+			stride += 2;
+		}
+		long index = (long) (random.nextDouble() * area);
+		PixelCountStore log = new PixelCountStore(0, 0, resolution.width, resolution.height);
+		for (long i = 0; i < pixels; i++) {
+			index = (index + stride) % area;
+			log.add((int) (index % resolution.width), (int) (index / resolution.width), nextPeriods(random));
+		}
+		return log;
+	}
+
+	/**
+	 * Creates a path of the pointer moving around a screen, one position per sample.
+	 *
+	 * @param resolution	The size of the screen
+	 * @param samples		The number of positions
+	 * @param seed			The seed of the path
+	 * @return	The x coordinates in the first array and the y coordinates in the second.
+	 */
+	static int[][] createPath(Dimension resolution, int samples, long seed) {
+		Random random = new Random(seed);
+		int[] xs = new int[samples];
+		int[] ys = new int[samples];
+		int x = resolution.width / 2;
+		int y = resolution.height / 2;
+		for (int i = 0; i < samples; i++) {
+			// The pointer mostly moves a few pixels at a time and sometimes stays where it is
+			if (random.nextInt(4) != 0) {
+				x = Math.max(0, Math.min(resolution.width - 1, x + random.nextInt(17) - 8));
+				y = Math.max(0, Math.min(resolution.height - 1, y + random.nextInt(17) - 8));
+			}
+			xs[i] = x;
+			ys[i] = y;
+		}
+		return new int[][] { xs, ys };
+	}
+
+	/**
+	 * @return	The number of sample periods that a pixel is counted.
+	 */
+	private static int nextPeriods(Random random) {
+		if (random.nextInt(DWELL_ONE_IN) == 0) {
+			return 1 + random.nextInt(MAX_DWELL_PERIODS);
+		}
+		return 1 + (int) (-Math.log(1 - random.nextDouble()) * 2);
+	}
+
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+}
@@ -0,0 +1,47 @@
+package mlog;
+
+import java.awt.MouseInfo;
+import java.awt.Point;
+import java.awt.PointerInfo;
+import java.awt.Rectangle;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The live mouse pointer, read through MouseInfo, on the system clock.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class AwtPointerSource implements PointerSource {
+
+	@Override
+	public Rectangle getBounds() {
+		return MouseLogger.getVirtualScreenBounds();
+	}
+
+	@Override
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
+	@Override
+	public void parkUntil(Object blocker, long nanoTime) {
+		LockSupport.parkNanos(blocker, nanoTime - System.nanoTime());
+	}
+
+	@Override
+	public boolean readPointer(long nanoTime, Point location) {
+		PointerInfo pointer = MouseInfo.getPointerInfo();
+		// The pointer info is null if there is no mouse or the pointer is on an unknown device
+		if (pointer == null) {
+			return false;
+		}
+		location.setLocation(pointer.getLocation());
+		return true;
+	}
+
+	@Override
+	public boolean hasEnded() {
+		return false;
+	}
+}
@@ -0,0 +1,164 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Renders bar maps: the screen is split into columns, 32 by default, and every column gets a bar as high as the
+ * counts of the logged pixels in it add up to. The screen can also be split into rows, which get bars that grow
+ * from the left edge. The counts of every column and row are summed through a DwellIndex.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class BarMapRenderer implements MapRenderer {
+
+	@Override
+	public String getMapType() {
+		return MapGenerator.MAP_TYPE_BARMAP;
+	}
+
+	@Override
+	public TilePainter prepare(RenderContext context) {
+		PixelCountStore pixelMap = context.getPixelMap();
+		final Color barColor = context.getElementColor();
+		final int screenWidth = context.getWidth();
+		final int screenHeight = context.getHeight();
+		Dimension bins = context.getBarBins();
+		int columnBars = Math.min(bins.width, screenWidth);
+		int rowBars = Math.min(bins.height, screenHeight);
+		// Pixels on screens above or below the main screen still count towards its columns, and left or right of
+		// it towards its rows
+		Rectangle area = new Rectangle(0, 0, screenWidth, screenHeight).union(pixelMap.getDenseBounds());
+
+		// Sum up the heights of the bars, every one from the dwell inside its strip
+		final int barWidth = columnBars == 0 ? 0 : screenWidth / columnBars;
+		final int[] barHeights = new int[columnBars];
+		if (columnBars > 0) {
+			DwellIndex columns = new DwellIndex(pixelMap, new Rectangle(0, area.y, columnBars * barWidth, area.height), 1, area.height);
+			for (int i = 0; i < columnBars; i++) {
+				barHeights[i] = (int) Math.min(columns.getDwell(i * barWidth, area.y, barWidth, area.height), Integer.MAX_VALUE);
+			}
+		}
+		final int barHeight = rowBars == 0 ? 0 : screenHeight / rowBars;
+		final int[] barLengths = new int[rowBars];
+		if (rowBars > 0) {
+			DwellIndex rows = new DwellIndex(pixelMap, new Rectangle(area.x, 0, area.width, rowBars * barHeight), area.width, 1);
+			for (int i = 0; i < rowBars; i++) {
+				barLengths[i] = (int) Math.min(rows.getDwell(area.x, i * barHeight, area.width, barHeight), Integer.MAX_VALUE);
+			}
+		}
+
+		// There are only a few bars, so every tile draws all of them and lets the tile clip them
+		final boolean direct = context.isDirectRaster();
+		return new TilePainter() {
+			@Override
+			public void paintTile(BufferedImage tile, Rectangle bounds) {
+				if (direct) {
+					RasterCanvas canvas = new RasterCanvas(tile, bounds.x, bounds.y);
+					drawBars(canvas, bounds, screenHeight, barWidth, barHeights, barColor);
+					drawRowBars(canvas, bounds, barHeight, barLengths, barColor);
+					return;
+				}
+				Graphics2D pixelTimeMapImage = TiledMapRenderer.createGraphics(tile, bounds);
+				drawBars(pixelTimeMapImage, bounds, screenHeight, barWidth, barHeights, barColor);
+				drawRowBars(pixelTimeMapImage, bounds, barHeight, barLengths, barColor);
+				pixelTimeMapImage.dispose();
+			}
+		};
+	}
+
+	/**
+	 * Draws the bars of a bar map that reach into an area.
+	 */
+	private static void drawBars(Graphics2D pixelTimeMapImage, Rectangle area, int screenHeight, int barWidth, int[] barHeights, Color barColor) {
+		//final int barTopFade = 50; // The height of the fading at the top of the bar
+		
+		for (int i = 0; i < barHeights.length; i++) {
+			if ((i + 1)*barWidth <= area.x || i*barWidth >= area.x + area.width) {
+				continue;
+			}
+			int barTopFade = 127; // Maximum safe value to use calculating alpha
+			if (barHeights[i] < 255) {
+				barTopFade = barHeights[i]/2;
+			}
+			int barYCoordinate = screenHeight - barHeights[i];
+			pixelTimeMapImage.setColor(new Color(barColor.getRed(), barColor.getGreen(), barColor.getBlue()));
+			// The + 1 and -2 constants are there to separate the bars from each other
+			pixelTimeMapImage.fillRect(i*barWidth + 1, barYCoordinate + barTopFade, barWidth - 2, barHeights[i] - barTopFade);
+	
+			if (barHeights[i] != 0) {
+				for (int k = 1; k <= barTopFade; k++) {
+					int alpha = 255 - k*(255/barTopFade);
+					pixelTimeMapImage.setColor(new Color(barColor.getRed(), barColor.getGreen(), barColor.getBlue(), alpha));
+					pixelTimeMapImage.drawLine(i*barWidth + 1, barYCoordinate + barTopFade - k, (i + 1)*barWidth - 2, barYCoordinate + barTopFade - k);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Draws the bars of a bar map that reach into an area, straight into the pixels of a canvas.
+	 */
+	private static void drawBars(RasterCanvas canvas, Rectangle area, int screenHeight, int barWidth, int[] barHeights, Color barColor) {
+		int opaque = RasterCanvas.resolve(barColor, 255);
+		for (int i = 0; i < barHeights.length; i++) {
+			if ((i + 1)*barWidth <= area.x || i*barWidth >= area.x + area.width) {
+				continue;
+			}
+			int barTopFade = 127; // Maximum safe value to use calculating alpha
+			if (barHeights[i] < 255) {
+				barTopFade = barHeights[i]/2;
+			}
+			int barYCoordinate = screenHeight - barHeights[i];
+			canvas.fillRect(i*barWidth + 1, barYCoordinate + barTopFade, barWidth - 2, barHeights[i] - barTopFade, opaque);
+			if (barHeights[i] != 0) {
+				for (int k = 1; k <= barTopFade; k++) {
+					int alpha = 255 - k*(255/barTopFade);
+					canvas.fillRect(i*barWidth + 1, barYCoordinate + barTopFade - k, barWidth - 2, 1, RasterCanvas.resolve(barColor, alpha));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draws the bars of the rows of a bar map that reach into an area. They grow from the left edge and fade at
+	 * their ends, like the bars of the columns do at their tops.
+	 */
+	private static void drawRowBars(Graphics2D pixelTimeMapImage, Rectangle area, int barHeight, int[] barLengths, Color barColor) {
+		for (int i = 0; i < barLengths.length; i++) {
+			if ((i + 1)*barHeight <= area.y || i*barHeight >= area.y + area.height || barLengths[i] == 0) {
+				continue;
+			}
+			int barEndFade = barLengths[i] < 255 ? barLengths[i]/2 : 127;
+			pixelTimeMapImage.setColor(new Color(barColor.getRed(), barColor.getGreen(), barColor.getBlue()));
+			pixelTimeMapImage.fillRect(0, i*barHeight + 1, barLengths[i] - barEndFade, barHeight - 2);
+			for (int k = 1; k <= barEndFade; k++) {
+				int alpha = 255 - k*(255/barEndFade);
+				pixelTimeMapImage.setColor(new Color(barColor.getRed(), barColor.getGreen(), barColor.getBlue(), alpha));
+				pixelTimeMapImage.drawLine(barLengths[i] - barEndFade + k - 1, i*barHeight + 1, barLengths[i] - barEndFade + k - 1, (i + 1)*barHeight - 2);
+			}
+		}
+	}
+
+	/**
+	 * Draws the bars of the rows of a bar map that reach into an area, straight into the pixels of a canvas.
+	 */
+	private static void drawRowBars(RasterCanvas canvas, Rectangle area, int barHeight, int[] barLengths, Color barColor) {
+		int opaque = RasterCanvas.resolve(barColor, 255);
+		for (int i = 0; i < barLengths.length; i++) {
+			if ((i + 1)*barHeight <= area.y || i*barHeight >= area.y + area.height || barLengths[i] == 0) {
+				continue;
+			}
+			int barEndFade = barLengths[i] < 255 ? barLengths[i]/2 : 127;
+			canvas.fillRect(0, i*barHeight + 1, barLengths[i] - barEndFade, barHeight - 2, opaque);
+			for (int k = 1; k <= barEndFade; k++) {
+				int alpha = 255 - k*(255/barEndFade);
+				canvas.fillRect(barLengths[i] - barEndFade + k - 1, i*barHeight + 1, 1, barHeight - 2, RasterCanvas.resolve(barColor, alpha));
+			}
+		}
+	}
+}
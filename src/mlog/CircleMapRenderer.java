@@ -0,0 +1,74 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Renders circle maps: every logged pixel is the center of a circle with its count as the radius.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class CircleMapRenderer implements MapRenderer {
+
+	@Override
+	public String getMapType() {
+		return MapGenerator.MAP_TYPE_CIRCLEMAP;
+	}
+
+	@Override
+	public TilePainter prepare(RenderContext context) {
+		// The radius of a circle is its count, so circles can reach any tile; they are filtered per tile instead
+		PixelCountStore pixelMap = context.getPixelMap();
+		Color dotColor = context.getElementColor();
+		final int size = pixelMap.size();
+		final int[] xs = context.borrowInts(size);
+		final int[] ys = context.borrowInts(size);
+		final int[] counts = context.borrowInts(size);
+		pixelMap.copyTo(xs, ys, counts);
+		final Color color = new Color(dotColor.getRed(), dotColor.getGreen(), dotColor.getBlue());
+		final int argb = RasterCanvas.resolve(color);
+		final boolean direct = context.isDirectRaster();
+		return new TilePainter() {
+			@Override
+			public void paintTile(BufferedImage tile, Rectangle bounds) {
+				RasterCanvas canvas = direct ? new RasterCanvas(tile, bounds.x, bounds.y) : null;
+				Graphics2D pixelTimeMapImage = direct ? null : TiledMapRenderer.createGraphics(tile, bounds);
+				if (!direct) {
+					pixelTimeMapImage.setColor(color);
+				}
+				long left = bounds.x;
+				long top = bounds.y;
+				long right = left + bounds.width;
+				long bottom = top + bounds.height;
+				for (int i = 0; i < size; i++) {
+					long radius = counts[i];
+					// Skip circles whose outline is completely outside or completely around the tile
+					if (xs[i] + radius < left || xs[i] - radius > right || ys[i] + radius < top || ys[i] - radius > bottom
+							|| encloses(xs[i], ys[i], radius - 1, left, top, right, bottom)) {
+						continue;
+					}
+					if (direct) {
+						canvas.drawCircle(xs[i], ys[i], counts[i], argb);
+					} else {
+						pixelTimeMapImage.drawOval(xs[i] - counts[i], ys[i] - counts[i], 2*counts[i], 2*counts[i]);
+					}
+				}
+				if (!direct) {
+					pixelTimeMapImage.dispose();
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return	True if a circle encloses a rectangle completely.
+	 */
+	private static boolean encloses(long x, long y, long radius, long left, long top, long right, long bottom) {
+		long dx = Math.max(Math.abs(left - x), Math.abs(right - x));
+		long dy = Math.max(Math.abs(top - y), Math.abs(bottom - y));
+		return radius > 0 && dx * dx + dy * dy < radius * radius;
+	}
+}
@@ -0,0 +1,111 @@
+package mlog;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * A palette of 256 colors, from the black background at level 0 to the color of the most logged pixels at level
+ * 255, that maps are colored through. The colors are worked out once, so coloring a pixel is a lookup by level.
+ *
+ * SINGLE_HUE fades from black to one color, the way maps have always been colored. HEAT goes from dark red through
+ * red and yellow to white. VIRIDIS goes from dark purple through blue and green to yellow; its brightness grows
+ * evenly, so equal steps in level look like equal steps in color, also to color blind eyes.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public final class ColorRamp {
+
+	public final static String RAMP_SINGLE_HUE = "SINGLE_HUE";
+	public final static String RAMP_HEAT = "HEAT";
+	public final static String RAMP_VIRIDIS = "VIRIDIS";
+
+	/** The number of levels of a ramp. */
+	public static final int LEVELS = 256;
+
+	private static final int[] HEAT_STOPS = { 0x240000, 0x5D0000, 0xBA0000, 0xFF1700, 0xFF7400, 0xFFD100, 0xFFFF5C, 0xFFFFFF };
+	private static final int[] VIRIDIS_STOPS = { 0x440154, 0x472C7A, 0x3B518B, 0x2C718E, 0x21908D, 0x27AD81, 0x5CC863, 0xAADC32, 0xFDE725 };
+
+	private final String name;
+	private final int[] colors;
+
+	private ColorRamp(String name, int[] stops) {
+		this.name = name;
+		this.colors = new int[LEVELS];
+		// The stops are spread evenly over levels 1 to 255; level 0 is always the background
+		for (int level = 1; level < LEVELS; level++) {
+			double position = (level - 1) / (double) (LEVELS - 2) * (stops.length - 1);
+			int stop = Math.min((int) position, stops.length - 2);
+			double fraction = position - stop;
+			this.colors[level] = mix(stops[stop], stops[stop + 1], fraction);
+		}
+	}
+
+	private ColorRamp(Color color) {
+		this.name = RAMP_SINGLE_HUE;
+		this.colors = new int[LEVELS];
+		for (int level = 1; level < LEVELS; level++) {
+			double intensity = level / (double) (LEVELS - 1);
+			this.colors[level] = (int) (color.getRed() * intensity + 0.5) << 16
+					| (int) (color.getGreen() * intensity + 0.5) << 8 | (int) (color.getBlue() * intensity + 0.5);
+		}
+	}
+
+	/**
+	 * Creates a ramp.
+	 *
+	 * @param name	RAMP_SINGLE_HUE, RAMP_HEAT or RAMP_VIRIDIS
+	 * @param color	The color that a single hue ramp fades to; not used by the other ramps
+	 * @return	The ramp.
+	 */
+	public static ColorRamp create(String name, Color color) {
+		if (RAMP_SINGLE_HUE.equals(name)) {
+			return new ColorRamp(color);
+		} else if (RAMP_HEAT.equals(name)) {
+			return new ColorRamp(name, HEAT_STOPS);
+		} else if (RAMP_VIRIDIS.equals(name)) {
+			return new ColorRamp(name, VIRIDIS_STOPS);
+		}
+		throw new IllegalArgumentException("Unknown color ramp: " + name);
+	}
+
+	/**
+	 * @param name	A ramp name
+	 * @return	True if the name is one of the ramps.
+	 */
+	public static boolean isRamp(String name) {
+		return RAMP_SINGLE_HUE.equals(name) || RAMP_HEAT.equals(name) || RAMP_VIRIDIS.equals(name);
+	}
+
+	/**
+	 * @return	The name of the ramp.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @param level	A level from 0 to 255
+	 * @return	The color of the level, as RGB.
+	 */
+	public int getColor(int level) {
+		return this.colors[level];
+	}
+
+	/**
+	 * @return	The colors of all levels, as RGB, for coloring many pixels.
+	 */
+	public int[] getColors() {
+		return Arrays.copyOf(this.colors, LEVELS);
+	}
+
+	private static int mix(int from, int to, double fraction) {
+		int rgb = 0;
+		for (int shift = 16; shift >= 0; shift -= 8) {
+			int a = (from >> shift) & 0xFF;
+			int b = (to >> shift) & 0xFF;
+			rgb |= (int) (a + (b - a) * fraction + 0.5) << shift;
+		}
+		return rgb;
+	}
+}
@@ -0,0 +1,130 @@
+package mlog;
+
+import java.awt.Rectangle;
+
+/**
+ * A log of pixel counts that one sampling thread writes to while any number of other threads take
+ * consistent, point-in-time snapshots of it.
+ *
+ * The sampler writes into one of two delta stores. A snapshot flips the sampler over to the other delta
+ * store, waits for at most the one increment that may still be in progress, and then drains the
+ * retired delta into a cumulative store. The snapshot itself shares its tiles with the cumulative store
+ * (see PixelCountStore.snapshot), so taking it costs time proportional to what changed since the last
+ * snapshot, not to the size of the log. The sampler never takes a lock and never waits for a reader.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class ConcurrentPixelLog {
+
+	private final PixelCountStore[] deltas;
+	private final PixelCountStore cumulative;
+	private volatile int activeDelta;
+	private volatile int writingDelta;
+
+	/**
+	 * Creates a new, empty ConcurrentPixelLog.
+	 *
+	 * @param denseBounds	The area where pixels are stored in tiles, normally the virtual desktop
+	 */
+	public ConcurrentPixelLog(Rectangle denseBounds) {
+		this.deltas = new PixelCountStore[] { new PixelCountStore(denseBounds), new PixelCountStore(denseBounds) };
+		this.cumulative = new PixelCountStore(denseBounds);
+		this.activeDelta = 0;
+		this.writingDelta = -1;
+	}
+
+	/**
+	 * Creates a new ConcurrentPixelLog that continues from earlier counts, for example a resumed session.
+	 *
+	 * @param initialCounts	The counts to start from; the log takes ownership of the store
+	 */
+	public ConcurrentPixelLog(PixelCountStore initialCounts) {
+		Rectangle denseBounds = initialCounts.getDenseBounds();
+		this.deltas = new PixelCountStore[] { new PixelCountStore(denseBounds), new PixelCountStore(denseBounds) };
+		this.cumulative = initialCounts;
+		this.activeDelta = 0;
+		this.writingDelta = -1;
+	}
+
+	/**
+	 * Adds to the count of a pixel. Must only be called from the sampling thread.
+	 *
+	 * @param x		The x coordinate of the pixel
+	 * @param y		The y coordinate of the pixel
+	 * @param count	The (positive) amount to add
+	 */
+	public void add(int x, int y, int count) {
+		int delta;
+		// Announce which delta is about to be written, then make sure no snapshot retired it meanwhile
+		do {
+			delta = this.activeDelta;
+			this.writingDelta = delta;
+		} while (delta != this.activeDelta);
+		this.deltas[delta].add(x, y, count);
+		this.writingDelta = -1;
+	}
+
+	/**
+	 * Takes a point-in-time snapshot of the log. The snapshot contains every increment that completed
+	 * before the call, and is never changed afterwards.
+	 *
+	 * @return	A snapshot of the log.
+	 */
+	public synchronized PixelCountStore snapshot() {
+		this.drainDelta();
+		return this.cumulative.snapshot();
+	}
+
+	/**
+	 * Counts the logged pixels. Like a snapshot, this moves the latest increments into the cumulative store
+	 * first, but nothing is copied.
+	 *
+	 * @return	The number of distinct pixels in the log.
+	 */
+	public synchronized int size() {
+		this.drainDelta();
+		return this.cumulative.size();
+	}
+
+	/**
+	 * @return	An estimate of the heap memory used by the log and both its delta stores, in bytes.
+	 */
+	public synchronized long estimateMemoryBytes() {
+		this.drainDelta();
+		return this.cumulative.estimateMemoryBytes() + this.deltas[0].estimateMemoryBytes()
+				+ this.deltas[1].estimateMemoryBytes();
+	}
+
+	/**
+	 * Forgets all logged pixels. Snapshots taken earlier are not affected.
+	 */
+	public synchronized void clear() {
+		// Both deltas have to be retired once to be sure that none of them holds old counts
+		this.retireDelta().clear();
+		this.retireDelta().clear();
+		this.cumulative.clear();
+	}
+
+	/**
+	 * Retires the active delta and moves its counts into the cumulative store.
+	 */
+	private void drainDelta() {
+		this.retireDelta().drainInto(this.cumulative);
+	}
+
+	/**
+	 * Switches the sampler over to the other delta store.
+	 *
+	 * @return	The delta store that the sampler no longer writes to.
+	 */
+	private PixelCountStore retireDelta() {
+		int retired = this.activeDelta;
+		this.activeDelta = 1 - retired;
+		// The sampler can at most be in the middle of a single increment on the retired delta
+		while (this.writingDelta == retired) {
+			Thread.yield();
+		}
+		return this.deltas[retired];
+	}
+}
@@ -0,0 +1,133 @@
+package mlog;
+
+/**
+ * A histogram of counts that takes its values one at a time and answers percentiles of them, in a fixed amount of
+ * memory however many values it has taken.
+ *
+ * Counts below 256 each have a bucket of their own. Above that every power of two is split into 128 buckets of
+ * equal width, so a bucket is never wider than 1/128 of the counts in it. The same buckets are used by
+ * CountScale to look counts up in a table.
+ *
+ * A histogram must not be used by several threads at the same time.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class CountHistogram {
+
+	/** The counts below this have a bucket of their own. */
+	static final int EXACT = 256;
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int EXACT_BITS = 8;
+
+	private final long[] buckets = new long[bucket(Long.MAX_VALUE) + 1];
+	private long total;
+	private long max;
+
+	/**
+	 * Creates a histogram of the counts of every pixel in a store.
+	 *
+	 * @param pixelMap	A store of mouse coordinates over time
+	 * @return	The histogram.
+	 */
+	public static CountHistogram of(PixelCountStore pixelMap) {
+		final CountHistogram histogram = new CountHistogram();
+		pixelMap.forEach(new PixelVisitor() {
+			@Override
+			public void visit(int x, int y, int count) {
+				histogram.record(count);
+			}
+		});
+		return histogram;
+	}
+
+	/**
+	 * Adds a count to the histogram. Counts below 1 are left out.
+	 *
+	 * @param count	The count
+	 */
+	public void record(long count) {
+		if (count < 1) {
+			return;
+		}
+		this.buckets[bucket(count)]++;
+		this.total++;
+		if (count > this.max) {
+			this.max = count;
+		}
+	}
+
+	/**
+	 * @return	The number of counts added.
+	 */
+	public long getTotal() {
+		return this.total;
+	}
+
+	/**
+	 * @return	The highest count added, or 0 if none was.
+	 */
+	public long getMax() {
+		return this.max;
+	}
+
+	/**
+	 * Finds a count that a given share of the counts added are at most. The count is at most 1/128 too high.
+	 *
+	 * @param percentile	The share, from 0 to 100
+	 * @return	The count, or 0 if no counts were added.
+	 */
+	public long valueAtPercentile(double percentile) {
+		if (this.total == 0) {
+			return 0;
+		}
+		long wanted = Math.max(1, (long) Math.ceil(this.total * Math.min(Math.max(percentile, 0), 100) / 100));
+		long seen = 0;
+		for (int bucket = 0; bucket < this.buckets.length; bucket++) {
+			seen += this.buckets[bucket];
+			if (seen >= wanted) {
+				return Math.min(highestValue(bucket), this.max);
+			}
+		}
+		return this.max;
+	}
+
+	/**
+	 * @param count	A count of at least 0
+	 * @return	The bucket of the count.
+	 */
+	static int bucket(long count) {
+		if (count < EXACT) {
+			return (int) count;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(count);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return EXACT + ((exponent - EXACT_BITS) << SUB_BUCKET_BITS) + (int) (count >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * @param bucket	A bucket
+	 * @return	The lowest count in the bucket.
+	 */
+	static long lowestValue(int bucket) {
+		if (bucket < EXACT) {
+			return bucket;
+		}
+		int exponent = EXACT_BITS + ((bucket - EXACT) >> SUB_BUCKET_BITS);
+		long subBucket = SUB_BUCKETS + ((bucket - EXACT) & (SUB_BUCKETS - 1));
+		return subBucket << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * @param bucket	A bucket
+	 * @return	The highest count in the bucket.
+	 */
+	static long highestValue(int bucket) {
+		if (bucket < EXACT) {
+			return bucket;
+		}
+		int exponent = EXACT_BITS + ((bucket - EXACT) >> SUB_BUCKET_BITS);
+		return lowestValue(bucket) + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
@@ -0,0 +1,111 @@
+package mlog;
+
+/**
+ * Maps counts to the 256 levels of a ColorRamp, or straight to what the levels stand for, such as their colors.
+ *
+ * The normalisation decides which level a count gets. NONE uses every count as its own level, up to 255, the way
+ * dot maps have always been drawn. LINEAR spreads the levels evenly up to the highest count, LOG spreads them on a
+ * log scale so the rarely logged pixels stay visible next to the busiest ones, and PERCENTILE spreads them evenly
+ * up to the 99th percentile of the counts, so a few hotspots do not darken everything else.
+ *
+ * The levels of all counts up to the ceiling are worked out once into a table, so mapping a count is one lookup.
+ * Counts below 256 have entries of their own; above that counts share the entries of the buckets of
+ * CountHistogram, which are never wider than 1/128 of the counts in them.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public final class CountScale {
+
+	public final static String NORMALISATION_NONE = "NONE";
+	public final static String NORMALISATION_LINEAR = "LINEAR";
+	public final static String NORMALISATION_LOG = "LOG";
+	public final static String NORMALISATION_PERCENTILE = "PERCENTILE";
+
+	/** The percentile of the counts that PERCENTILE normalisation reaches the brightest level at. */
+	public static final double CLIP_PERCENTILE = 99;
+
+	private static final int[] IDENTITY = new int[ColorRamp.LEVELS];
+
+	static {
+		for (int level = 0; level < IDENTITY.length; level++) {
+			IDENTITY[level] = level;
+		}
+	}
+
+	private final long ceiling;
+	private final int[] table;
+
+	/**
+	 * Creates a scale.
+	 *
+	 * @param normalisation	NORMALISATION_NONE, NORMALISATION_LINEAR, NORMALISATION_LOG or NORMALISATION_PERCENTILE
+	 * @param ceiling		The count that reaches the brightest level, see ceiling; higher counts get it too
+	 * @param values		What each of the 256 levels maps to, e.g. the colors of a ramp, or null for the levels
+	 * 						themselves
+	 */
+	public CountScale(String normalisation, long ceiling, int[] values) {
+		if (!isNormalisation(normalisation)) {
+			throw new IllegalArgumentException("Unknown normalisation: " + normalisation);
+		}
+		if (values == null) {
+			values = IDENTITY;
+		}
+		this.ceiling = Math.max(1, ceiling);
+		boolean log = NORMALISATION_LOG.equals(normalisation);
+		double scale = (ColorRamp.LEVELS - 1) / (log ? Math.log1p(this.ceiling) : this.ceiling);
+		int last = CountHistogram.bucket(this.ceiling);
+		this.table = new int[last + 1];
+		for (int bucket = 1; bucket <= last; bucket++) {
+			long count = bucket == last ? this.ceiling : CountHistogram.lowestValue(bucket);
+			long level = Math.round((log ? Math.log1p(count) : count) * scale);
+			this.table[bucket] = values[(int) Math.max(1, Math.min(level, ColorRamp.LEVELS - 1))];
+		}
+		this.table[0] = values[0];
+	}
+
+	/**
+	 * Finds the count that a normalisation reaches the brightest level at.
+	 *
+	 * @param normalisation	NORMALISATION_NONE, NORMALISATION_LINEAR, NORMALISATION_LOG or NORMALISATION_PERCENTILE
+	 * @param histogram		The counts to normalise; not needed, and may be null, for NORMALISATION_NONE
+	 * @return	The ceiling of the counts.
+	 */
+	public static long ceiling(String normalisation, CountHistogram histogram) {
+		if (NORMALISATION_NONE.equals(normalisation)) {
+			return ColorRamp.LEVELS - 1;
+		} else if (NORMALISATION_PERCENTILE.equals(normalisation)) {
+			return histogram.valueAtPercentile(CLIP_PERCENTILE);
+		} else if (isNormalisation(normalisation)) {
+			return histogram.getMax();
+		}
+		throw new IllegalArgumentException("Unknown normalisation: " + normalisation);
+	}
+
+	/**
+	 * @param normalisation	A normalisation name
+	 * @return	True if the name is one of the normalisations.
+	 */
+	public static boolean isNormalisation(String normalisation) {
+		return NORMALISATION_NONE.equals(normalisation) || NORMALISATION_LINEAR.equals(normalisation)
+				|| NORMALISATION_LOG.equals(normalisation) || NORMALISATION_PERCENTILE.equals(normalisation);
+	}
+
+	/**
+	 * @param count	A count of at least 0
+	 * @return	What the level of the count maps to; level 0, the background, for a count of 0 only.
+	 */
+	public int get(long count) {
+		if (count > this.ceiling) {
+			count = this.ceiling;
+		}
+		return this.table[count < CountHistogram.EXACT ? (int) count : CountHistogram.bucket(count)];
+	}
+
+	/**
+	 * @return	The count that reaches the brightest level.
+	 */
+	public long getCeiling() {
+		return this.ceiling;
+	}
+}
@@ -0,0 +1,138 @@
+package mlog;
+
+import java.awt.Rectangle;
+
+/**
+ * A log of decaying pixel weights (see DecayingPixelStore) that one sampling thread writes to while other
+ * threads take snapshots of it, for maps of what the pointer did lately.
+ *
+ * The log is shared between the threads in the same way as ConcurrentPixelLog: the sampler writes into one of
+ * two delta stores, and a snapshot flips it over to the other one, waits for at most the one update that may
+ * still be in progress, and drains the retired delta into a cumulative store. The sampler never takes a lock and
+ * never waits for a reader.
+ *
+ * The clock of the log is the number of sample periods logged, which the sampler passes along with every sample,
+ * so the weights only decay while the mouse is being logged.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class DecayingPixelLog {
+
+	private final DecayingPixelStore[] deltas;
+	private final DecayingPixelStore cumulative;
+	private volatile int activeDelta;
+	private volatile int writingDelta;
+	private volatile long clock;
+
+	/**
+	 * Creates a new, empty DecayingPixelLog.
+	 *
+	 * @param denseBounds	The area where pixels are stored in tiles, normally the virtual desktop
+	 * @param halfLife		The time it takes the weight of a sample to halve, in sample periods
+	 */
+	public DecayingPixelLog(Rectangle denseBounds, double halfLife) {
+		this.deltas = new DecayingPixelStore[] { new DecayingPixelStore(denseBounds, halfLife),
+				new DecayingPixelStore(denseBounds, halfLife) };
+		this.cumulative = new DecayingPixelStore(denseBounds, halfLife);
+		this.activeDelta = 0;
+		this.writingDelta = -1;
+	}
+
+	/**
+	 * Adds the weight of a sample to a pixel. Must only be called from the sampling thread.
+	 *
+	 * @param x			The x coordinate of the pixel
+	 * @param y			The y coordinate of the pixel
+	 * @param periods	The number of sample periods that the sample stands for
+	 * @param now		The number of sample periods logged, including this sample
+	 */
+	public void add(int x, int y, int periods, long now) {
+		// The clock moves first, so a snapshot never sees a sample from later than its clock
+		this.clock = now;
+		int delta;
+		// Announce which delta is about to be written, then make sure no snapshot retired it meanwhile
+		do {
+			delta = this.activeDelta;
+			this.writingDelta = delta;
+		} while (delta != this.activeDelta);
+		this.deltas[delta].add(x, y, periods, now);
+		this.writingDelta = -1;
+	}
+
+	/**
+	 * Decays the log to the latest sample and takes a snapshot of the weights, rounded to whole counts. The
+	 * snapshot contains every sample that completed before the call, and is never changed afterwards.
+	 *
+	 * Unlike a snapshot of a ConcurrentPixelLog, this takes time proportional to the number of pixels that have not
+	 * decayed away yet, since every one of them has a new weight.
+	 *
+	 * @return	A snapshot of the log.
+	 */
+	public synchronized PixelCountStore snapshot() {
+		this.drainDelta();
+		return this.cumulative.toCounts(this.clock);
+	}
+
+	/**
+	 * Changes the half-life. The weights already logged decay at the new rate from now on.
+	 *
+	 * @param halfLife	The time it takes the weight of a sample to halve, in sample periods
+	 */
+	public synchronized void setHalfLife(double halfLife) {
+		this.cumulative.setHalfLife(halfLife);
+		// Both deltas have to be retired once to be sure that the sampler no longer writes to either at the old rate
+		for (int i = 0; i < this.deltas.length; i++) {
+			DecayingPixelStore retired = this.retireDelta();
+			retired.drainInto(this.cumulative);
+			retired.setHalfLife(halfLife);
+		}
+	}
+
+	/**
+	 * @return	The time it takes the weight of a sample to halve, in sample periods.
+	 */
+	public synchronized double getHalfLife() {
+		return this.cumulative.getHalfLife();
+	}
+
+	/**
+	 * @return	An estimate of the heap memory used by the log and both its delta stores, in bytes.
+	 */
+	public synchronized long estimateMemoryBytes() {
+		return this.cumulative.estimateMemoryBytes() + this.deltas[0].estimateMemoryBytes()
+				+ this.deltas[1].estimateMemoryBytes();
+	}
+
+	/**
+	 * Forgets all logged pixels. Snapshots taken earlier are not affected.
+	 */
+	public synchronized void clear() {
+		// Both deltas have to be retired once to be sure that none of them holds old weights
+		this.retireDelta().clear();
+		this.retireDelta().clear();
+		this.cumulative.clear();
+	}
+
+	/**
+	 * Retires the active delta and moves its weights into the cumulative store.
+	 */
+	private void drainDelta() {
+		this.retireDelta().drainInto(this.cumulative);
+	}
+
+	/**
+	 * Switches the sampler over to the other delta store.
+	 *
+	 * @return	The delta store that the sampler no longer writes to.
+	 */
+	private DecayingPixelStore retireDelta() {
+		int retired = this.activeDelta;
+		this.activeDelta = 1 - retired;
+		// The sampler can at most be in the middle of a single update on the retired delta
+		while (this.writingDelta == retired) {
+			Thread.yield();
+		}
+		return this.deltas[retired];
+	}
+}
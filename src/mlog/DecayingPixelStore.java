@@ -0,0 +1,329 @@
+package mlog;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Weighs how long each pixel has been logged, with the weight of every sample halving each half-life after it
+ * was taken, so the weights show where the pointer has been lately rather than over the whole session.
+ *
+ * Time is measured on a clock that the caller keeps, normally the number of sample periods logged. Decay is
+ * applied lazily: every pixel keeps its weight as of the last time it was written, together with the time of
+ * that write, and is only decayed to the current time when it is written or read again. Adding to a pixel is
+ * therefore a single update, however many pixels there are, and no pass over the whole store is ever needed
+ * to make time pass.
+ *
+ * Pixels are kept in square tiles inside the dense area and in a table outside it, like in PixelCountStore.
+ * The times are kept as the low 32 bits of the clock, so a pixel must be written or settled (see toCounts) at
+ * least once every 2^31 ticks of the clock, which is more than 24 days at 1000 samples per second.
+ *
+ * A DecayingPixelStore is not thread safe.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class DecayingPixelStore {
+
+	/** Pixels that have decayed below this weight are forgotten when the store is settled. */
+	public static final float MIN_WEIGHT = 0.5f;
+
+	private static final int TILE_SHIFT = PixelCountStore.TILE_SHIFT;
+	private static final int TILE_SIZE = PixelCountStore.TILE_SIZE;
+	private static final int TILE_MASK = TILE_SIZE - 1;
+	private static final int TILE_AREA = TILE_SIZE * TILE_SIZE;
+	private static final int MINIMUM_SPARSE_CAPACITY = 16;
+
+	private final int originX;
+	private final int originY;
+	private final int width;
+	private final int height;
+	private final int tilesX;
+	private final float[][] weights;
+	private final int[][] times;
+	private final boolean[] tileDirty;
+	private final int[] dirtyTiles;
+	private int dirtyTileCount;
+	private final LongIntTable sparseSlots;
+	private long[] sparseKeys;
+	private float[] sparseWeights;
+	private int[] sparseTimes;
+	private int sparseSize;
+	private double decayRate;
+
+	/**
+	 * Creates a new, empty DecayingPixelStore.
+	 *
+	 * @param denseBounds	The area where pixels are stored in tiles, normally the virtual desktop
+	 * @param halfLife		The time it takes the weight of a sample to halve, in ticks of the clock
+	 */
+	public DecayingPixelStore(Rectangle denseBounds, double halfLife) {
+		this.originX = denseBounds.x;
+		this.originY = denseBounds.y;
+		this.width = Math.max(0, denseBounds.width);
+		this.height = Math.max(0, denseBounds.height);
+		this.tilesX = (this.width + TILE_MASK) >> TILE_SHIFT;
+		int tiles = this.tilesX * ((this.height + TILE_MASK) >> TILE_SHIFT);
+		this.weights = new float[tiles][];
+		this.times = new int[tiles][];
+		this.tileDirty = new boolean[tiles];
+		this.dirtyTiles = new int[tiles];
+		this.sparseSlots = new LongIntTable();
+		this.sparseKeys = new long[MINIMUM_SPARSE_CAPACITY];
+		this.sparseWeights = new float[MINIMUM_SPARSE_CAPACITY];
+		this.sparseTimes = new int[MINIMUM_SPARSE_CAPACITY];
+		this.setHalfLife(halfLife);
+	}
+
+	/**
+	 * Changes the half-life. Weights already in the store decay at the new rate from their latest write on.
+	 *
+	 * @param halfLife	The time it takes the weight of a sample to halve, in ticks of the clock
+	 */
+	public void setHalfLife(double halfLife) {
+		if (!(halfLife > 0)) {
+			throw new IllegalArgumentException("The half-life must be positive: " + halfLife);
+		}
+		this.decayRate = Math.log(2) / halfLife;
+	}
+
+	/**
+	 * @return	The time it takes the weight of a sample to halve, in ticks of the clock.
+	 */
+	public double getHalfLife() {
+		return Math.log(2) / this.decayRate;
+	}
+
+	/**
+	 * Adds the weight of a sample to a pixel, after decaying the weight that the pixel already had.
+	 *
+	 * @param x			The x coordinate of the pixel
+	 * @param y			The y coordinate of the pixel
+	 * @param weight	The weight of the sample, e.g. the number of sample periods it stands for
+	 * @param now		The time of the sample, on the clock of the store; never earlier than an earlier sample
+	 */
+	public void add(int x, int y, float weight, long now) {
+		int dx = x - this.originX;
+		int dy = y - this.originY;
+		if (dx >= 0 && dy >= 0 && dx < this.width && dy < this.height) {
+			int tileIndex = (dy >> TILE_SHIFT) * this.tilesX + (dx >> TILE_SHIFT);
+			if (!this.tileDirty[tileIndex]) {
+				this.markDirty(tileIndex);
+			}
+			float[] tileWeights = this.weights[tileIndex];
+			int[] tileTimes = this.times[tileIndex];
+			int cell = ((dy & TILE_MASK) << TILE_SHIFT) | (dx & TILE_MASK);
+			tileWeights[cell] = this.decay(tileWeights[cell], tileTimes[cell], now) + weight;
+			tileTimes[cell] = (int) now;
+		} else {
+			int slot = this.sparseSlot(LongIntTable.pack(x, y));
+			this.sparseWeights[slot] = this.decay(this.sparseWeights[slot], this.sparseTimes[slot], now) + weight;
+			this.sparseTimes[slot] = (int) now;
+		}
+	}
+
+	/**
+	 * Moves all weights of this store into another store with the same dense area, leaving this store empty.
+	 * Only the tiles written to since the last drain are visited.
+	 *
+	 * @param target	The store to add the weights to
+	 */
+	void drainInto(DecayingPixelStore target) {
+		for (int i = 0; i < this.dirtyTileCount; i++) {
+			int tileIndex = this.dirtyTiles[i];
+			float[] sourceWeights = this.weights[tileIndex];
+			int[] sourceTimes = this.times[tileIndex];
+			if (!target.tileDirty[tileIndex]) {
+				target.markDirty(tileIndex);
+			}
+			float[] targetWeights = target.weights[tileIndex];
+			int[] targetTimes = target.times[tileIndex];
+			for (int cell = 0; cell < TILE_AREA; cell++) {
+				if (sourceWeights[cell] != 0) {
+					int time = later(sourceTimes[cell], targetTimes[cell], targetWeights[cell]);
+					targetWeights[cell] = target.decay(targetWeights[cell], targetTimes[cell], time)
+							+ target.decay(sourceWeights[cell], sourceTimes[cell], time);
+					targetTimes[cell] = time;
+					sourceWeights[cell] = 0;
+				}
+			}
+			this.tileDirty[tileIndex] = false;
+		}
+		this.dirtyTileCount = 0;
+		for (int i = 0; i < this.sparseSize; i++) {
+			int slot = target.sparseSlot(this.sparseKeys[i]);
+			int time = later(this.sparseTimes[i], target.sparseTimes[slot], target.sparseWeights[slot]);
+			target.sparseWeights[slot] = target.decay(target.sparseWeights[slot], target.sparseTimes[slot], time)
+					+ target.decay(this.sparseWeights[i], this.sparseTimes[i], time);
+			target.sparseTimes[slot] = time;
+		}
+		this.clearSparse();
+	}
+
+	/**
+	 * Decays every pixel to the current time and copies the weights, rounded to whole counts, into a new
+	 * PixelCountStore that maps can be drawn from. Pixels that have decayed below MIN_WEIGHT are forgotten, and
+	 * tiles without any pixels left are freed, so the store only keeps what the pointer did lately.
+	 *
+	 * This visits every pixel in the store, but none of the pixels that have been forgotten.
+	 *
+	 * @param now	The current time on the clock of the store
+	 * @return	The decayed weights as counts.
+	 */
+	public PixelCountStore toCounts(long now) {
+		PixelCountStore counts = new PixelCountStore(this.originX, this.originY, this.width, this.height);
+		for (int tileIndex = 0; tileIndex < this.weights.length; tileIndex++) {
+			float[] tileWeights = this.weights[tileIndex];
+			if (tileWeights == null) {
+				continue;
+			}
+			int[] tileTimes = this.times[tileIndex];
+			int baseX = this.originX + ((tileIndex % this.tilesX) << TILE_SHIFT);
+			int baseY = this.originY + ((tileIndex / this.tilesX) << TILE_SHIFT);
+			boolean empty = true;
+			for (int cell = 0; cell < TILE_AREA; cell++) {
+				if (tileWeights[cell] != 0) {
+					float weight = this.settle(tileWeights, tileTimes, cell, now);
+					if (weight != 0) {
+						empty = false;
+						counts.add(baseX + (cell & TILE_MASK), baseY + (cell >> TILE_SHIFT), Math.round(weight));
+					}
+				}
+			}
+			if (empty) {
+				this.weights[tileIndex] = null;
+				this.times[tileIndex] = null;
+				this.tileDirty[tileIndex] = false;
+			}
+		}
+		int dirty = 0;
+		for (int i = 0; i < this.dirtyTileCount; i++) {
+			if (this.tileDirty[this.dirtyTiles[i]]) {
+				this.dirtyTiles[dirty++] = this.dirtyTiles[i];
+			}
+		}
+		this.dirtyTileCount = dirty;
+		int kept = 0;
+		for (int i = 0; i < this.sparseSize; i++) {
+			float weight = this.settle(this.sparseWeights, this.sparseTimes, i, now);
+			if (weight != 0) {
+				counts.add(LongIntTable.unpackX(this.sparseKeys[i]), LongIntTable.unpackY(this.sparseKeys[i]), Math.round(weight));
+				this.sparseKeys[kept] = this.sparseKeys[i];
+				this.sparseWeights[kept] = weight;
+				this.sparseTimes[kept] = this.sparseTimes[i];
+				kept++;
+			}
+		}
+		if (kept != this.sparseSize) {
+			// The slots of the pixels that were kept have moved, so the table is built again
+			this.sparseSlots.clear();
+			for (int i = 0; i < kept; i++) {
+				this.sparseSlots.add(this.sparseKeys[i], i + 1);
+			}
+			this.sparseSize = kept;
+		}
+		return counts;
+	}
+
+	/**
+	 * Forgets all pixels. Allocated tiles are kept and reused.
+	 */
+	public void clear() {
+		for (int tileIndex = 0; tileIndex < this.weights.length; tileIndex++) {
+			if (this.weights[tileIndex] != null) {
+				Arrays.fill(this.weights[tileIndex], 0);
+			}
+			this.tileDirty[tileIndex] = false;
+		}
+		this.dirtyTileCount = 0;
+		this.clearSparse();
+	}
+
+	/**
+	 * @return	An estimate of the heap memory used by the store, in bytes.
+	 */
+	public long estimateMemoryBytes() {
+		long bytes = 16L + 9L * this.weights.length + this.sparseSlots.estimateMemoryBytes() + 16L * this.sparseKeys.length;
+		for (float[] tile : this.weights) {
+			if (tile != null) {
+				bytes += 32L + 8L * TILE_AREA;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return	A weight written at a given time, decayed to a later time.
+	 */
+	private float decay(float weight, int time, long now) {
+		if (weight == 0) {
+			return 0;
+		}
+		// Only the low bits of the times are kept, which is enough for the difference
+		int elapsed = (int) now - time;
+		return elapsed <= 0 ? weight : (float) (weight * Math.exp(-elapsed * this.decayRate));
+	}
+
+	/**
+	 * Decays a pixel to the current time in place, or forgets it if it has decayed below MIN_WEIGHT.
+	 *
+	 * @return	The weight of the pixel, or 0 if it was forgotten.
+	 */
+	private float settle(float[] weights, int[] times, int index, long now) {
+		float weight = this.decay(weights[index], times[index], now);
+		if (weight < MIN_WEIGHT) {
+			weight = 0;
+		}
+		weights[index] = weight;
+		times[index] = (int) now;
+		return weight;
+	}
+
+	/**
+	 * @return	The later of the time of a new weight and the time of an existing weight, which is ignored if the
+	 * 			existing weight is 0.
+	 */
+	private static int later(int time, int existingTime, float existingWeight) {
+		return existingWeight != 0 && existingTime - time > 0 ? existingTime : time;
+	}
+
+	/**
+	 * Makes sure a tile exists and marks it as dirty.
+	 */
+	private void markDirty(int tileIndex) {
+		if (this.weights[tileIndex] == null) {
+			this.weights[tileIndex] = new float[TILE_AREA];
+			this.times[tileIndex] = new int[TILE_AREA];
+		}
+		this.tileDirty[tileIndex] = true;
+		this.dirtyTiles[this.dirtyTileCount++] = tileIndex;
+	}
+
+	/**
+	 * Finds the slot of a pixel outside the dense area, and gives it a slot if it has none.
+	 */
+	private int sparseSlot(long key) {
+		int slot = this.sparseSlots.get(key) - 1;
+		if (slot >= 0) {
+			return slot;
+		}
+		if (this.sparseSize == this.sparseKeys.length) {
+			int capacity = 2 * this.sparseKeys.length;
+			this.sparseKeys = Arrays.copyOf(this.sparseKeys, capacity);
+			this.sparseWeights = Arrays.copyOf(this.sparseWeights, capacity);
+			this.sparseTimes = Arrays.copyOf(this.sparseTimes, capacity);
+		}
+		slot = this.sparseSize++;
+		this.sparseKeys[slot] = key;
+		this.sparseWeights[slot] = 0;
+		this.sparseSlots.add(key, slot + 1);
+		return slot;
+	}
+
+	/**
+	 * Forgets all pixels outside the dense area.
+	 */
+	private void clearSparse() {
+		this.sparseSlots.clear();
+		this.sparseSize = 0;
+	}
+}
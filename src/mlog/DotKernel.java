@@ -0,0 +1,203 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Splats the dots of a dot map into a density buffer and colors the buffer.
+ *
+ * A pixel logged n times used to be drawn as n circles of radius i = n..1 with alpha 255/i, one on top of the
+ * other. Circles with a radius of 256 or more have an alpha of 0, so a dot never reaches further than 255
+ * pixels, and how a pixel of a dot looks only depends on the count of the dot and the smallest circle that
+ * covers the pixel. The kernel holds that look for every pair, worked out once by blending the circles the way
+ * they used to be drawn.
+ *
+ * The kernel values are stored as the logarithm of how much of the background shows through. Where dots
+ * overlap those values add up, so splatting a dot is one addition per covered pixel, whatever its count. The
+ * opacity that the sum comes to is colored through a ColorRamp.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+final class DotKernel {
+
+	/** The radius of the largest circle that is visible; larger circles have an alpha of 0. */
+	static final int MAX_RADIUS = 255;
+	private static final int STRIDE = MAX_RADIUS + 1;
+	/** Stands in for the log of no transmittance in buffers that dots are taken away from; exp(OPAQUE) is about 0. */
+	private static final double OPAQUE = -64;
+	/** Density values closer to 0 than this are left over from dots that were taken away, and count as empty. */
+	private static final double EMPTY = 1e-9;
+
+	/**
+	 * A pixel whose center is at distance d from the center of a dot is covered by the circles with a radius
+	 * above d. With e = 4d^2, which is an even integer for pixel centers, COVERING[e / 2] is the radius of the
+	 * smallest circle that covers the pixel.
+	 */
+	private static final short[] COVERING;
+
+	static {
+		int maxE = 2 * (2 * MAX_RADIUS + 1) * (2 * MAX_RADIUS + 1);
+		COVERING = new short[maxE / 2 + 1];
+		int radius = 1;
+		for (int half = 0; half < COVERING.length; half++) {
+			while (2 * radius * radius <= half) {
+				radius++;
+			}
+			COVERING[half] = (short) radius;
+		}
+	}
+
+	/** The kernel, indexed by count * STRIDE + covering radius. */
+	private final float[] logTransmittance;
+	private final Color color;
+
+	/**
+	 * Creates the kernel for dots of the given color.
+	 *
+	 * @param color	The color of the dots
+	 */
+	DotKernel(Color color) {
+		this.color = color;
+		this.logTransmittance = new float[STRIDE * STRIDE];
+		// The brightest channel shows the effect of rounding the best
+		int channel = Math.max(color.getRed(), Math.max(color.getGreen(), color.getBlue()));
+		if (channel == 0) {
+			return;
+		}
+		for (int count = 1; count <= MAX_RADIUS; count++) {
+			int value = 0;
+			for (int radius = count; radius >= 1; radius--) {
+				int alpha = 255 / radius;
+				// Source over, rounded to 8 bits like Java 2D does
+				value = mul8(255 - alpha, value) + mul8(alpha, channel);
+				double transmittance = 1 - value / (double) channel;
+				this.logTransmittance[count * STRIDE + radius] = transmittance <= 0 ? Float.NEGATIVE_INFINITY : (float) Math.log(transmittance);
+			}
+		}
+	}
+
+	private static int mul8(int a, int b) {
+		return (a * b + 127) / 255;
+	}
+
+	/**
+	 * Adds one dot to a density buffer.
+	 *
+	 * @param density	The density buffer, one value per pixel in rows of the given width
+	 * @param width		The width of the buffer
+	 * @param height	The height of the buffer
+	 * @param x			The x coordinate of the dot
+	 * @param y			The y coordinate of the dot
+	 * @param count		The number of times the pixel of the dot was logged
+	 */
+	void splat(float[] density, int width, int height, int x, int y, int count) {
+		if (count <= 0) {
+			return;
+		}
+		int radius = Math.min(count, MAX_RADIUS);
+		int kernelRow = radius * STRIDE;
+		int limit = 4 * radius * radius;
+		// The circles are centered on the corner at (x, y), so they cover pixels x - radius .. x + radius - 1
+		int top = Math.max(y - radius, 0);
+		int bottom = Math.min(y + radius, height);
+		int left = Math.max(x - radius, 0);
+		int right = Math.min(x + radius, width);
+		for (int py = top; py < bottom; py++) {
+			int ey = 2 * (py - y) + 1;
+			ey *= ey;
+			int row = py * width;
+			for (int px = left; px < right; px++) {
+				int ex = 2 * (px - x) + 1;
+				int e = ex * ex + ey;
+				if (e < limit) {
+					density[row + px] += this.logTransmittance[kernelRow + COVERING[e >> 1]];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces a dot in a density buffer that is kept up to date as counts grow, see TimeLapseExporter, with the
+	 * dot of another count, in one pass over the pixels of the larger dot. Fully opaque pixels of a dot count as
+	 * OPAQUE instead of negative infinity, so that taking a dot away leaves the buffer as it was, up to rounding.
+	 *
+	 * @param density	The density buffer, one value per pixel in rows of the given width
+	 * @param width		The width of the buffer
+	 * @param fromRow	The first row of the buffer to update, so bands of rows can be updated in parallel
+	 * @param toRow		The row after the last row to update, at most the height of the buffer
+	 * @param x			The x coordinate of the dot
+	 * @param y			The y coordinate of the dot
+	 * @param before	The count of the dot in the buffer, or 0 if it has none
+	 * @param after		The count of the dot that replaces it
+	 */
+	void resplat(double[] density, int width, int fromRow, int toRow, int x, int y, int before, int after) {
+		int radiusBefore = Math.max(0, Math.min(before, MAX_RADIUS));
+		int radiusAfter = Math.max(0, Math.min(after, MAX_RADIUS));
+		int radius = Math.max(radiusBefore, radiusAfter);
+		int rowBefore = radiusBefore * STRIDE;
+		int rowAfter = radiusAfter * STRIDE;
+		int limitBefore = 4 * radiusBefore * radiusBefore;
+		int limitAfter = 4 * radiusAfter * radiusAfter;
+		int top = Math.max(y - radius, fromRow);
+		int bottom = Math.min(y + radius, toRow);
+		int left = Math.max(x - radius, 0);
+		int right = Math.min(x + radius, width);
+		for (int py = top; py < bottom; py++) {
+			int ey = 2 * (py - y) + 1;
+			ey *= ey;
+			int row = py * width;
+			for (int px = left; px < right; px++) {
+				int ex = 2 * (px - x) + 1;
+				int e = ex * ex + ey;
+				double change = 0;
+				if (e < limitAfter) {
+					change += Math.max(this.logTransmittance[rowAfter + COVERING[e >> 1]], OPAQUE);
+				}
+				if (e < limitBefore) {
+					change -= Math.max(this.logTransmittance[rowBefore + COVERING[e >> 1]], OPAQUE);
+				}
+				density[row + px] += change;
+			}
+		}
+	}
+
+	/**
+	 * @param value		A value of a density buffer
+	 * @param colors	The colors of the 256 levels of opacity, see ColorRamp
+	 * @return	The color of the value, the same as colorize gives it; black for a value of about 0.
+	 */
+	static int color(double value, int[] colors) {
+		if (value > -EMPTY) {
+			return 0;
+		}
+		return colors[(int) ((1 - Math.exp(value)) * 255 + 0.5)];
+	}
+
+	/**
+	 * @return	The color of the dots.
+	 */
+	Color getColor() {
+		return this.color;
+	}
+
+	/**
+	 * Colors a density buffer onto an image with a black background.
+	 *
+	 * @param density	The density buffer, one value per pixel in rows of the image width
+	 * @param colors	The colors of the 256 levels of opacity, see ColorRamp
+	 * @param image		An image of type TYPE_INT_RGB to color
+	 */
+	void colorize(float[] density, int[] colors, BufferedImage image) {
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		for (int i = 0; i < pixels.length; i++) {
+			float value = density[i];
+			if (value == 0) {
+				pixels[i] = 0;
+				continue;
+			}
+			pixels[i] = colors[(int) ((1 - Math.exp(value)) * 255 + 0.5)];
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Renders dot maps: every logged pixel is a gradient dot that grows with its count, as normalised by the
+ * CountScale of the map. The dots of a tile are splatted into a density buffer and colored at once through the
+ * ColorRamp of the map, see DotKernel.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class DotMapRenderer implements MapRenderer {
+
+	private volatile DotKernel kernel;
+
+	@Override
+	public String getMapType() {
+		return MapGenerator.MAP_TYPE_DOTMAP;
+	}
+
+	@Override
+	public TilePainter prepare(RenderContext context) {
+		final PixelCountStore pixelMap = context.getPixelMap();
+		final ScratchBuffers scratchBuffers = context.getScratchBuffers();
+		ColorRamp ramp = context.getColorRamp();
+		final int[] colors = ramp.getColors();
+		// A dot grows with its level, so the scale decides how large and strong the dots of the counts are. It only
+		// ever squeezes the counts of busy logs into the levels; the counts of a quiet log are not stretched to them
+		String normalisation = context.getNormalisation();
+		CountHistogram histogram = CountScale.NORMALISATION_NONE.equals(normalisation) ? null : CountHistogram.of(pixelMap);
+		long ceiling = Math.max(CountScale.ceiling(normalisation, histogram), DotKernel.MAX_RADIUS);
+		final CountScale scale = new CountScale(normalisation, ceiling, null);
+		final DotKernel kernel = this.kernelFor(new Color(ramp.getColor(ColorRamp.LEVELS - 1)));
+		return new TilePainter() {
+			@Override
+			public void paintTile(BufferedImage tile, final Rectangle bounds) {
+				// Splat every logged pixel that reaches into the tile once into a density buffer, then color it
+				final int width = bounds.width;
+				final int height = bounds.height;
+				final float[] density = scratchBuffers.borrowFloats(width * height);
+				Rectangle reach = new Rectangle(bounds);
+				reach.grow(DotKernel.MAX_RADIUS, DotKernel.MAX_RADIUS);
+				pixelMap.forEachIn(reach, new PixelVisitor() {
+					@Override
+					public void visit(int x, int y, int count) {
+						kernel.splat(density, width, height, x - bounds.x, y - bounds.y, scale.get(count));
+					}
+				});
+				kernel.colorize(density, colors, tile);
+				scratchBuffers.release(density);
+			}
+		};
+	}
+
+	/**
+	 * @return	The kernel of dots of a color, the same as for the previous map if it had the same color.
+	 */
+	private DotKernel kernelFor(Color dotColor) {
+		DotKernel last = this.kernel;
+		if (last != null && last.getColor().equals(dotColor)) {
+			return last;
+		}
+		DotKernel created = new DotKernel(dotColor);
+		this.kernel = created;
+		return created;
+	}
+}
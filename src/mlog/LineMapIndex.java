@@ -0,0 +1,411 @@
+package mlog;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A uniform grid over the pixels of a line map, for finding the pairs of pixels that get a line between them.
+ *
+ * A line is drawn between two pixels if they are more than 20 pixels apart and its alpha, which falls with the
+ * squared distance, is at least 20. That only holds below a distance of about 290 pixels, so with grid cells of
+ * that size, every partner of a pixel is in the same cell or one of the eight cells around it.
+ *
+ * The lines of a map are found once, in chunks of pixels on a fork-join pool, and sorted into the tiles of the map
+ * that they reach into, see findLines. A line takes 9 bytes, and 4 more for every tile it reaches into; lines are
+ * at most 290 pixels long, so that is at most four tiles of the default size.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+final class LineMapIndex {
+
+	private static final int MIN_DISTANCE_SQUARED = 20 * 20;
+	private static final int MIN_ALPHA = 20;
+	private static final int ALPHA_FALLOFF = 7000;
+	/** alpha = 255 / (d^2 / ALPHA_FALLOFF + 1) is at least MIN_ALPHA only below this squared distance. */
+	static final int MAX_DISTANCE_SQUARED = (255 / MIN_ALPHA) * ALPHA_FALLOFF;
+	private static final int CELL_SIZE = (int) Math.ceil(Math.sqrt(MAX_DISTANCE_SQUARED));
+	/** The number of pixels that the lines are found from in one task. */
+	static final int CHUNK_PIXELS = 512;
+
+	private final int[] xs;
+	private final int[] ys;
+	private final int minX;
+	private final int minY;
+	private final int columns;
+	private final int rows;
+	/** The pixels of cell c are cellPixels[cellStart[c]] .. cellPixels[cellStart[c + 1] - 1], in ascending order. */
+	private final int[] cellStart;
+	private final int[] cellPixels;
+	private final int[] cellOf;
+
+	/**
+	 * Builds the grid over the first pixels of the given arrays, which may be longer.
+	 *
+	 * @param xs	The x coordinates of the pixels
+	 * @param ys	The y coordinates of the pixels
+	 * @param n		The number of pixels
+	 */
+	LineMapIndex(int[] xs, int[] ys, int n) {
+		this.xs = xs;
+		this.ys = ys;
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++) {
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		if (n == 0) {
+			minX = minY = maxX = maxY = 0;
+		}
+		this.minX = minX;
+		this.minY = minY;
+		this.columns = (int) (((long) maxX - minX) / CELL_SIZE) + 1;
+		this.rows = (int) (((long) maxY - minY) / CELL_SIZE) + 1;
+
+		// Counting sort of the pixels by cell, which keeps the pixels of each cell in ascending order
+		this.cellOf = new int[n];
+		this.cellStart = new int[this.columns * this.rows + 1];
+		for (int i = 0; i < n; i++) {
+			int cell = this.cellOf(xs[i], ys[i]);
+			this.cellOf[i] = cell;
+			this.cellStart[cell + 1]++;
+		}
+		for (int c = 0; c < this.columns * this.rows; c++) {
+			this.cellStart[c + 1] += this.cellStart[c];
+		}
+		int[] next = Arrays.copyOf(this.cellStart, this.cellStart.length - 1);
+		this.cellPixels = new int[n];
+		for (int i = 0; i < n; i++) {
+			this.cellPixels[next[this.cellOf[i]]++] = i;
+		}
+	}
+
+	private int cellOf(int x, int y) {
+		return (int) (((long) y - this.minY) / CELL_SIZE) * this.columns + (int) (((long) x - this.minX) / CELL_SIZE);
+	}
+
+	/**
+	 * The alpha of the line between two pixels, as it has always been computed for line maps.
+	 *
+	 * @return	The alpha of the line, or 0 if no line is drawn between the pixels.
+	 */
+	static int lineAlpha(int x1, int y1, int x2, int y2) {
+		double distance = Math.sqrt(Math.pow(x1 - x2, 2) + Math.pow(y1 - y2, 2));
+		int alpha = 255/((int)Math.pow(distance, 2)/ALPHA_FALLOFF + 1);
+		if (distance < 800 && distance > 20 && alpha >= MIN_ALPHA) {
+			return alpha;
+		}
+		return 0;
+	}
+
+	/**
+	 * Finds every line of the map once, in the order a nested loop over all pairs would find them: by the index
+	 * of the first pixel, then by the index of the second. Every line is put into each square of a grid over the
+	 * map that it reaches into, so the lines of any part of the map can be visited without looking for them again.
+	 *
+	 * The pixels are split into chunks of CHUNK_PIXELS, which find their lines at the same time on the pool. The
+	 * lines of the chunks are put together in the order of the chunks, so the order of the lines is kept.
+	 *
+	 * @param area		The area of the map; lines that do not reach into it are left out
+	 * @param binSize	The width and height of the squares, best the size of the tiles the map is painted in
+	 * @param pool		The workers to find the lines on, or null to find them on the calling thread
+	 * @return	The lines of the map.
+	 */
+	Lines findLines(Rectangle area, int binSize, ForkJoinPool pool) {
+		int n = this.cellOf.length;
+		List<ForkJoinTask<Lines>> chunks = new ArrayList<ForkJoinTask<Lines>>();
+		for (int from = 0; from < n; from += CHUNK_PIXELS) {
+			PairTask chunk = new PairTask(from, Math.min(from + CHUNK_PIXELS, n), area, binSize);
+			chunks.add(pool == null ? chunk : pool.submit(chunk));
+		}
+		Lines lines = new Lines(area, binSize);
+		for (ForkJoinTask<Lines> chunk : chunks) {
+			lines.addAll(pool == null ? chunk.invoke() : chunk.join());
+		}
+		lines.bin();
+		return lines;
+	}
+
+	/**
+	 * Finds the lines from a range of pixels to the pixels with a higher index.
+	 */
+	private class PairTask extends RecursiveTask<Lines> {
+
+		private static final long serialVersionUID = 6015473029161750488L;
+
+		private final int from;
+		private final int to;
+		private final Rectangle area;
+		private final int binSize;
+
+		PairTask(int from, int to, Rectangle area, int binSize) {
+			this.from = from;
+			this.to = to;
+			this.area = area;
+			this.binSize = binSize;
+		}
+
+		@Override
+		protected Lines compute() {
+			Lines lines = new Lines(this.area, this.binSize);
+			int[] partners = new int[16];
+			for (int i = this.from; i < this.to; i++) {
+				int x = xs[i];
+				int y = ys[i];
+				partners = findPartners(i, partners);
+				for (int k = 1; k <= partners[0]; k++) {
+					int j = partners[k];
+					int alpha = lineAlpha(x, y, xs[j], ys[j]);
+					if (alpha != 0) {
+						lines.add(i, j, alpha);
+					}
+				}
+			}
+			return lines;
+		}
+	}
+
+	/**
+	 * Finds the pixels with a higher index that may get a line from a pixel.
+	 *
+	 * @param i			The index of the pixel
+	 * @param partners	An array to reuse for the result
+	 * @return	The partners in ascending order, from index 1, with their number at index 0.
+	 */
+	private int[] findPartners(int i, int[] partners) {
+		int x = this.xs[i];
+		int y = this.ys[i];
+		int column = this.cellOf[i] % this.columns;
+		int row = this.cellOf[i] / this.columns;
+		int found = 0;
+		for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, this.rows - 1); r++) {
+			for (int c = Math.max(column - 1, 0); c <= Math.min(column + 1, this.columns - 1); c++) {
+				int cell = r * this.columns + c;
+				for (int k = this.cellStart[cell]; k < this.cellStart[cell + 1]; k++) {
+					int j = this.cellPixels[k];
+					if (j <= i) {
+						continue;
+					}
+					long dx = (long) this.xs[j] - x;
+					long dy = (long) this.ys[j] - y;
+					long distanceSquared = dx * dx + dy * dy;
+					if (distanceSquared > MIN_DISTANCE_SQUARED && distanceSquared <= MAX_DISTANCE_SQUARED) {
+						if (found + 1 == partners.length) {
+							partners = Arrays.copyOf(partners, partners.length * 2);
+						}
+						partners[++found] = j;
+					}
+				}
+			}
+		}
+		// The cells are visited out of order, so sort the partners to draw them in the same order as always
+		Arrays.sort(partners, 1, found + 1);
+		partners[0] = found;
+		return partners;
+	}
+
+	/**
+	 * The lines of a line map, sorted into the squares of a grid over the map. Lines are only added on one thread
+	 * at a time; once they are binned any number of threads can visit them at the same time.
+	 */
+	final class Lines {
+
+		private final Rectangle area;
+		private final int binSize;
+		private final int columns;
+		private final int rows;
+		private int[] first = new int[64];
+		private int[] second = new int[64];
+		private byte[] alphas = new byte[64];
+		private int size;
+		/** The lines in square b are binLines[binStart[b]] .. binLines[binStart[b + 1] - 1], in the order they were found. */
+		private int[] binStart;
+		private int[] binLines;
+
+		Lines(Rectangle area, int binSize) {
+			this.area = new Rectangle(area);
+			this.binSize = binSize;
+			this.columns = Math.max(0, (area.width + binSize - 1) / binSize);
+			this.rows = Math.max(0, (area.height + binSize - 1) / binSize);
+		}
+
+		void add(int i, int j, int alpha) {
+			if (this.size == this.first.length) {
+				this.first = Arrays.copyOf(this.first, this.size * 2);
+				this.second = Arrays.copyOf(this.second, this.size * 2);
+				this.alphas = Arrays.copyOf(this.alphas, this.size * 2);
+			}
+			this.first[this.size] = i;
+			this.second[this.size] = j;
+			this.alphas[this.size] = (byte) alpha;
+			this.size++;
+		}
+
+		/**
+		 * Adds the lines of another chunk of pixels after the lines found so far.
+		 */
+		void addAll(Lines other) {
+			if (this.size + other.size > this.first.length) {
+				int capacity = Math.max(this.size + other.size, this.first.length * 2);
+				this.first = Arrays.copyOf(this.first, capacity);
+				this.second = Arrays.copyOf(this.second, capacity);
+				this.alphas = Arrays.copyOf(this.alphas, capacity);
+			}
+			System.arraycopy(other.first, 0, this.first, this.size, other.size);
+			System.arraycopy(other.second, 0, this.second, this.size, other.size);
+			System.arraycopy(other.alphas, 0, this.alphas, this.size, other.size);
+			this.size += other.size;
+		}
+
+		/**
+		 * Puts every line into the squares it reaches into, with a counting sort that keeps the lines of each
+		 * square in the order they were found.
+		 */
+		void bin() {
+			this.binStart = new int[this.columns * this.rows + 1];
+			int[] squares = new int[4];
+			for (int line = 0; line < this.size; line++) {
+				if (this.squaresOf(line, squares)) {
+					for (int r = squares[2]; r <= squares[3]; r++) {
+						for (int c = squares[0]; c <= squares[1]; c++) {
+							this.binStart[r * this.columns + c + 1]++;
+						}
+					}
+				}
+			}
+			for (int b = 0; b < this.columns * this.rows; b++) {
+				this.binStart[b + 1] += this.binStart[b];
+			}
+			int[] next = Arrays.copyOf(this.binStart, this.binStart.length - 1);
+			this.binLines = new int[this.binStart[this.binStart.length - 1]];
+			for (int line = 0; line < this.size; line++) {
+				if (this.squaresOf(line, squares)) {
+					for (int r = squares[2]; r <= squares[3]; r++) {
+						for (int c = squares[0]; c <= squares[1]; c++) {
+							this.binLines[next[r * this.columns + c]++] = line;
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Finds the squares that the bounding box of a line overlaps.
+		 *
+		 * @return	False if the line does not reach into the map; otherwise the first and last column and the first
+		 * 			and last row of the squares are in squares[0] to squares[3].
+		 */
+		private boolean squaresOf(int line, int[] squares) {
+			int x1 = xs[this.first[line]];
+			int y1 = ys[this.first[line]];
+			int x2 = xs[this.second[line]];
+			int y2 = ys[this.second[line]];
+			return this.squaresOf(Math.min(x1, x2), Math.min(y1, y2), (long) Math.max(x1, x2) + 1,
+					(long) Math.max(y1, y2) + 1, squares);
+		}
+
+		/**
+		 * Finds the squares that overlap a rectangle, given by its edges in map coordinates.
+		 *
+		 * @return	False if the rectangle misses the map; otherwise the first and last column and the first and last
+		 * 			row of the squares are in squares[0] to squares[3].
+		 */
+		private boolean squaresOf(long left, long top, long right, long bottom, int[] squares) {
+			left = Math.max(left - this.area.x, 0);
+			top = Math.max(top - this.area.y, 0);
+			right = Math.min(right - this.area.x, this.area.width);
+			bottom = Math.min(bottom - this.area.y, this.area.height);
+			if (left >= right || top >= bottom) {
+				return false;
+			}
+			squares[0] = (int) (left / this.binSize);
+			squares[1] = (int) ((right - 1) / this.binSize);
+			squares[2] = (int) (top / this.binSize);
+			squares[3] = (int) ((bottom - 1) / this.binSize);
+			return true;
+		}
+
+		/**
+		 * Visits the lines that reach into a part of the map, in the order they were found. Only the lines in the
+		 * squares that overlap the part are looked at.
+		 *
+		 * @param bounds	The part of the map that the lines must reach into
+		 * @param visitor	The visitor to call
+		 */
+		void forEachLine(Rectangle bounds, LineVisitor visitor) {
+			int[] squares = new int[4];
+			if (!this.squaresOf(bounds.x, bounds.y, (long) bounds.x + bounds.width, (long) bounds.y + bounds.height, squares)) {
+				return;
+			}
+			int[] found;
+			int from;
+			int to;
+			if (squares[0] == squares[1] && squares[2] == squares[3]) {
+				// A tile painted in the squares of the grid needs no merging
+				int square = squares[2] * this.columns + squares[0];
+				found = this.binLines;
+				from = this.binStart[square];
+				to = this.binStart[square + 1];
+			} else {
+				int count = 0;
+				for (int r = squares[2]; r <= squares[3]; r++) {
+					count += this.binStart[r * this.columns + squares[1] + 1] - this.binStart[r * this.columns + squares[0]];
+				}
+				found = new int[count];
+				count = 0;
+				for (int r = squares[2]; r <= squares[3]; r++) {
+					// The squares of a row are next to each other in binLines
+					int start = this.binStart[r * this.columns + squares[0]];
+					int length = this.binStart[r * this.columns + squares[1] + 1] - start;
+					System.arraycopy(this.binLines, start, found, count, length);
+					count += length;
+				}
+				Arrays.sort(found);
+				from = 0;
+				to = count;
+			}
+			int previous = -1;
+			for (int k = from; k < to; k++) {
+				int line = found[k];
+				if (line == previous) {
+					// A line that reaches into several of the squares is in each of them
+					continue;
+				}
+				previous = line;
+				int x1 = xs[this.first[line]];
+				int y1 = ys[this.first[line]];
+				int x2 = xs[this.second[line]];
+				int y2 = ys[this.second[line]];
+				if (Math.max(x1, x2) < bounds.x || Math.min(x1, x2) >= bounds.x + bounds.width
+						|| Math.max(y1, y2) < bounds.y || Math.min(y1, y2) >= bounds.y + bounds.height) {
+					continue;
+				}
+				visitor.visit(x1, y1, x2, y2, this.alphas[line] & 0xFF);
+			}
+		}
+	}
+
+	/**
+	 * Receives the lines of a line map.
+	 */
+	interface LineVisitor {
+
+		/**
+		 * Called once for every visited line.
+		 *
+		 * @param x1	The x coordinate of the first pixel
+		 * @param y1	The y coordinate of the first pixel
+		 * @param x2	The x coordinate of the second pixel
+		 * @param y2	The y coordinate of the second pixel
+		 * @param alpha	The alpha of the line
+		 */
+		void visit(int x1, int y1, int x2, int y2, int alpha);
+	}
+}
@@ -0,0 +1,67 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Renders line maps: a line is drawn between every two logged pixels that are near each other, fainter the
+ * further apart they are. The pairs are found once per map through a LineMapIndex, in chunks of pixels on the
+ * workers of the map, and sorted into the tiles they reach into.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class LineMapRenderer implements MapRenderer {
+
+	@Override
+	public String getMapType() {
+		return MapGenerator.MAP_TYPE_LINEMAP;
+	}
+
+	@Override
+	public TilePainter prepare(RenderContext context) {
+		PixelCountStore pixelMap = context.getPixelMap();
+		Color lineColor = context.getElementColor();
+		int size = pixelMap.size();
+		int[] xs = context.borrowInts(size);
+		int[] ys = context.borrowInts(size);
+		pixelMap.copyTo(xs, ys, null);
+		Rectangle area = new Rectangle(0, 0, context.getWidth(), context.getHeight());
+		final LineMapIndex.Lines lines = new LineMapIndex(xs, ys, size).findLines(area, TiledMapRenderer.DEFAULT_TILE_SIZE,
+				context.getPool());
+		final Color[] colors = new Color[256];
+		final int[] argbs = new int[256];
+		for (int alpha = 0; alpha < colors.length; alpha++) {
+			colors[alpha] = new Color(lineColor.getRed(), lineColor.getGreen(), lineColor.getBlue(), alpha);
+			argbs[alpha] = RasterCanvas.resolve(lineColor, alpha);
+		}
+		final boolean direct = context.isDirectRaster();
+		return new TilePainter() {
+			@Override
+			public void paintTile(BufferedImage tile, Rectangle bounds) {
+				// The lines reaching into the tile are drawn in the same order as they would be on the whole map
+				if (direct) {
+					final RasterCanvas canvas = new RasterCanvas(tile, bounds.x, bounds.y);
+					lines.forEachLine(bounds, new LineMapIndex.LineVisitor() {
+						@Override
+						public void visit(int x1, int y1, int x2, int y2, int alpha) {
+							canvas.drawLine(x1, y1, x2, y2, argbs[alpha]);
+						}
+					});
+					return;
+				}
+				final Graphics2D pixelTimeMapImage = TiledMapRenderer.createGraphics(tile, bounds);
+				lines.forEachLine(bounds, new LineMapIndex.LineVisitor() {
+					@Override
+					public void visit(int x1, int y1, int x2, int y2, int alpha) {
+						pixelTimeMapImage.setColor(colors[alpha]);
+						pixelTimeMapImage.drawLine(x1, y1, x2, y2);
+					}
+				});
+				pixelTimeMapImage.dispose();
+			}
+		};
+	}
+}
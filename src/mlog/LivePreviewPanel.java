@@ -0,0 +1,311 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+/**
+ * Shows a scaled-down heat map of the log while the mouse is being logged.
+ *
+ * The panel is fed by the sampler as a SampleListener. Every cell of the preview adds up the counts of a square
+ * of pixels of the virtual desktop, and the blocks of cells that a sample changes are marked dirty in a bitmap,
+ * without locking. A Swing timer, capped at a few frames per second, recolors only the dirty blocks and repaints
+ * only their areas. Both a sample and a frame take the same short time however long the session has run.
+ *
+ * Cells are colored on a log scale up to a ceiling that is doubled whenever the busiest cell outgrows it, so the
+ * whole preview is only recolored a few times over a session. The colors of all counts up to the ceiling are
+ * looked up in a CountScale that is only worked out again when the ceiling or the color changes.
+ *
+ * With a half-life set, the cells decay like a DecayingPixelStore: a sample decays the weight of its cell to the
+ * time of the sample before adding to it, and about once a second a frame decays every cell to the current time
+ * and recolors the whole preview, with a ceiling that follows the busiest cell down again.
+ *
+ * Clearing the log replaces the cells as a whole rather than clearing them, so the sampler never writes to cells
+ * that are being cleared, and the frames only ever see the cells before or after.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class LivePreviewPanel extends JPanel implements SampleListener {
+
+	private static final long serialVersionUID = -5031718924087411273L;
+	private static final int BLOCK_SHIFT = 4;
+	private static final int FRAME_INTERVAL_MILLIS = 100;
+	private static final int INITIAL_CEILING = 64;
+	private static final int FRAMES_PER_DECAY = 10;
+
+	private final Rectangle area;
+	private final int cellSize;
+	private final int columns;
+	private final int rows;
+	private final int blockColumns;
+	private volatile Cells cells;
+	private final AtomicLongArray dirtyBlocks;
+	private final BufferedImage image;
+	private final int[] pixels;
+	private final Timer frameTimer;
+	private volatile int busiestCount;
+	private volatile boolean cleared;
+	private volatile boolean recolorAll;
+	private volatile Color elementColor;
+	private volatile double decayRate;
+	private volatile long clock;
+	private int framesSinceDecay;
+	private int ceiling = INITIAL_CEILING;
+	private CountScale scale;
+
+	/**
+	 * Creates a new, empty preview of an area.
+	 *
+	 * @param area			The area to preview, normally the virtual desktop
+	 * @param maxWidth		The largest width of the preview, in pixels
+	 * @param maxHeight		The largest height of the preview, in pixels
+	 * @param elementColor	The color of the most logged cells
+	 */
+	public LivePreviewPanel(Rectangle area, int maxWidth, int maxHeight, Color elementColor) {
+		this.area = new Rectangle(area.x, area.y, Math.max(area.width, 1), Math.max(area.height, 1));
+		this.cellSize = Math.max(1, Math.max((this.area.width + maxWidth - 1) / maxWidth, (this.area.height + maxHeight - 1) / maxHeight));
+		this.columns = (this.area.width + this.cellSize - 1) / this.cellSize;
+		this.rows = (this.area.height + this.cellSize - 1) / this.cellSize;
+		this.blockColumns = (this.columns >> BLOCK_SHIFT) + 1;
+		int blocks = this.blockColumns * ((this.rows >> BLOCK_SHIFT) + 1);
+		this.cells = new Cells(this.columns * this.rows);
+		this.dirtyBlocks = new AtomicLongArray((blocks + 63) >> 6);
+		this.image = new BufferedImage(this.columns, this.rows, BufferedImage.TYPE_INT_RGB);
+		this.pixels = ((DataBufferInt) this.image.getRaster().getDataBuffer()).getData();
+		this.elementColor = elementColor;
+		this.setPreferredSize(new Dimension(this.columns, this.rows));
+		this.setBackground(Color.BLACK);
+
+		this.frameTimer = new Timer(FRAME_INTERVAL_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent event) {
+				updateFrame();
+			}
+		});
+		this.frameTimer.setCoalesce(true);
+	}
+
+	/**
+	 * Adds the counts of a store to the preview, for example the log as it was when the preview was opened.
+	 * Safe to call from any thread, but not at the same time as samples are added.
+	 *
+	 * @param pixelMap	The counts to add
+	 */
+	public void addAll(PixelCountStore pixelMap) {
+		pixelMap.forEachIn(this.area, new PixelVisitor() {
+			@Override
+			public void visit(int x, int y, int count) {
+				add(x, y, count, clock);
+			}
+		});
+	}
+
+	/**
+	 * Makes the cells decay, see MouseLogger.setHalfLife. Should be set before any counts are added.
+	 *
+	 * @param halfLife	The time it takes the weight of a sample to halve, in sample periods, or 0 for no decay
+	 */
+	public void setHalfLife(double halfLife) {
+		this.decayRate = halfLife > 0 ? Math.log(2) / halfLife : 0;
+		this.recolorAll = true;
+	}
+
+	/**
+	 * Chooses the color of the most logged cells. The whole preview is recolored on the next frame.
+	 *
+	 * @param elementColor	The new color
+	 */
+	public void setElementColor(Color elementColor) {
+		this.elementColor = elementColor;
+		this.recolorAll = true;
+	}
+
+	@Override
+	public void sampleLogged(int x, int y, int periods) {
+		// Only the sampling thread moves the clock
+		long now = this.clock + periods;
+		this.clock = now;
+		this.add(x, y, periods, now);
+	}
+
+	/**
+	 * Adds a count to the cell of a pixel, at a time on the clock of the preview.
+	 */
+	private void add(int x, int y, int periods, long now) {
+		int column = (x - this.area.x) / this.cellSize;
+		int row = (y - this.area.y) / this.cellSize;
+		if (x < this.area.x || y < this.area.y || column >= this.columns || row >= this.rows) {
+			return;
+		}
+		// A sample that races a clear may still go to the old cells, which are dropped
+		Cells cells = this.cells;
+		int cell = row * this.columns + column;
+		int count;
+		double rate = this.decayRate;
+		if (rate > 0) {
+			float weight = decay(cells.weights[cell], cells.times[cell], now, rate) + periods;
+			cells.weights[cell] = weight;
+			cells.times[cell] = (int) now;
+			count = Math.round(weight);
+		} else {
+			count = cells.counts[cell] + periods;
+		}
+		cells.counts[cell] = count;
+		if (count > this.busiestCount) {
+			this.busiestCount = count;
+		}
+		// Setting the bit publishes the count to the frame that clears it
+		int block = (row >> BLOCK_SHIFT) * this.blockColumns + (column >> BLOCK_SHIFT);
+		long bit = 1L << (block & 63);
+		long word;
+		do {
+			word = this.dirtyBlocks.get(block >> 6);
+		} while ((word & bit) == 0 && !this.dirtyBlocks.compareAndSet(block >> 6, word, word | bit));
+	}
+
+	@Override
+	public void logCleared() {
+		this.cells = new Cells(this.columns * this.rows);
+		this.busiestCount = 0;
+		this.cleared = true;
+	}
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		// Frames are only drawn while the preview is on screen; samples keep being added meanwhile
+		this.recolorAll = true;
+		this.frameTimer.start();
+	}
+
+	@Override
+	public void removeNotify() {
+		this.frameTimer.stop();
+		super.removeNotify();
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		g.drawImage(this.image, 0, 0, null);
+	}
+
+	/**
+	 * Recolors what changed since the last frame and repaints it. Runs on the Event Dispatch Thread.
+	 */
+	private void updateFrame() {
+		if (this.cleared) {
+			this.cleared = false;
+			this.ceiling = INITIAL_CEILING;
+			this.recolorAll = true;
+		}
+		double rate = this.decayRate;
+		if (rate > 0 && ++this.framesSinceDecay >= FRAMES_PER_DECAY) {
+			this.framesSinceDecay = 0;
+			this.decayAll(rate);
+		}
+		if (this.busiestCount > this.ceiling) {
+			while (this.busiestCount > this.ceiling) {
+				this.ceiling *= 2;
+			}
+			this.recolorAll = true;
+		}
+		if (this.recolorAll) {
+			this.recolorAll = false;
+			this.scale = new CountScale(CountScale.NORMALISATION_LOG, this.ceiling,
+					ColorRamp.create(ColorRamp.RAMP_SINGLE_HUE, this.elementColor).getColors());
+			for (int i = 0; i < this.dirtyBlocks.length(); i++) {
+				this.dirtyBlocks.getAndSet(i, 0);
+			}
+			this.recolor(0, 0, this.columns, this.rows);
+			this.repaint();
+			return;
+		}
+		for (int i = 0; i < this.dirtyBlocks.length(); i++) {
+			long word = this.dirtyBlocks.get(i) == 0 ? 0 : this.dirtyBlocks.getAndSet(i, 0);
+			while (word != 0) {
+				int block = (i << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				int left = (block % this.blockColumns) << BLOCK_SHIFT;
+				int top = (block / this.blockColumns) << BLOCK_SHIFT;
+				int right = Math.min(left + (1 << BLOCK_SHIFT), this.columns);
+				int bottom = Math.min(top + (1 << BLOCK_SHIFT), this.rows);
+				this.recolor(left, top, right, bottom);
+				this.repaint(left, top, right - left, bottom - top);
+			}
+		}
+	}
+
+	/**
+	 * Decays the counts of every cell to the current time and lowers the ceiling to fit the busiest cell.
+	 * The weights are left to the sampler, so a cell that is sampled meanwhile is only shown a frame late.
+	 */
+	private void decayAll(double rate) {
+		long now = this.clock;
+		Cells cells = this.cells;
+		int busiest = 0;
+		for (int cell = 0; cell < cells.counts.length; cell++) {
+			if (cells.counts[cell] != 0) {
+				int count = Math.round(decay(cells.weights[cell], cells.times[cell], now, rate));
+				cells.counts[cell] = count;
+				busiest = Math.max(busiest, count);
+			}
+		}
+		this.busiestCount = busiest;
+		int ceiling = INITIAL_CEILING;
+		while (busiest > ceiling) {
+			ceiling *= 2;
+		}
+		this.ceiling = ceiling;
+		this.recolorAll = true;
+	}
+
+	/**
+	 * @return	A weight written at a given time, decayed to a later time.
+	 */
+	private static float decay(float weight, int time, long now, double rate) {
+		int elapsed = (int) now - time;
+		return weight == 0 || elapsed <= 0 ? weight : (float) (weight * Math.exp(-elapsed * rate));
+	}
+
+	/**
+	 * Colors the cells in a rectangle of the preview from their counts.
+	 */
+	private void recolor(int left, int top, int right, int bottom) {
+		CountScale scale = this.scale;
+		int[] counts = this.cells.counts;
+		for (int row = top; row < bottom; row++) {
+			for (int column = left; column < right; column++) {
+				int cell = row * this.columns + column;
+				this.pixels[cell] = scale.get(counts[cell]);
+			}
+		}
+	}
+
+	/**
+	 * The counts of the cells, and with a half-life their weights and the times they were written. Replaced as a
+	 * whole when the log is cleared.
+	 */
+	private static class Cells {
+
+		private final int[] counts;
+		private final float[] weights;
+		private final int[] times;
+
+		Cells(int size) {
+			this.counts = new int[size];
+			this.weights = new float[size];
+			this.times = new int[size];
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package mlog;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash table from primitive long keys to positive int values.
+ *
+ * A slot with the value 0 is considered empty, which means that a key can never be mapped to 0.
+ * Lookups and updates never allocate; the backing arrays are only replaced when the table grows.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+class LongIntTable {
+
+	private static final int MINIMUM_CAPACITY = 16;
+
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+
+	/**
+	 * Creates a new, empty LongIntTable.
+	 */
+	public LongIntTable() {
+		this(MINIMUM_CAPACITY);
+	}
+
+	/**
+	 * Creates a new, empty LongIntTable with room for at least the given number of keys before growing.
+	 *
+	 * @param expectedSize	The number of keys the table should hold without growing
+	 */
+	public LongIntTable(int expectedSize) {
+		int capacity = MINIMUM_CAPACITY;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		this.allocate(capacity);
+	}
+
+	/**
+	 * Packs two int coordinates into a single long key.
+	 *
+	 * @param x	The x coordinate
+	 * @param y	The y coordinate
+	 * @return	The packed key.
+	 */
+	public static long pack(int x, int y) {
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param key	A key created by pack(int, int)
+	 * @return	The x coordinate of the packed key.
+	 */
+	public static int unpackX(long key) {
+		return (int) (key >> 32);
+	}
+
+	/**
+	 * @param key	A key created by pack(int, int)
+	 * @return	The y coordinate of the packed key.
+	 */
+	public static int unpackY(long key) {
+		return (int) key;
+	}
+
+	/**
+	 * Adds the given amount to the value of a key, inserting the key if it was not present. The value stops at
+	 * Integer.MAX_VALUE instead of wrapping around.
+	 *
+	 * @param key	The key to update
+	 * @param delta	The (positive) amount to add
+	 * @return	The value of the key before the update, 0 if the key was not present.
+	 */
+	public int add(long key, int delta) {
+		int slot = this.findSlot(key);
+		int previous = this.values[slot];
+		if (previous == 0) {
+			this.keys[slot] = key;
+			this.values[slot] = delta;
+			if (++this.size * 2 > this.keys.length) {
+				this.grow();
+			}
+		} else {
+			this.values[slot] = PixelCountStore.saturatedAdd(previous, delta);
+		}
+		return previous;
+	}
+
+	/**
+	 * @param key	The key to look up
+	 * @return	The value of the key, or 0 if the key is not present.
+	 */
+	public int get(long key) {
+		return this.values[this.findSlot(key)];
+	}
+
+	/**
+	 * @return	The number of keys in the table.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return	The number of slots in the table. Used together with keyAt and valueAt for iteration.
+	 */
+	public int capacity() {
+		return this.keys.length;
+	}
+
+	/**
+	 * @param slot	A slot index between 0 and capacity()
+	 * @return	The key stored in the slot. Only meaningful if valueAt(slot) is not 0.
+	 */
+	public long keyAt(int slot) {
+		return this.keys[slot];
+	}
+
+	/**
+	 * @param slot	A slot index between 0 and capacity()
+	 * @return	The value stored in the slot, 0 if the slot is empty.
+	 */
+	public int valueAt(int slot) {
+		return this.values[slot];
+	}
+
+	/**
+	 * Removes all keys from the table without shrinking it.
+	 */
+	public void clear() {
+		Arrays.fill(this.values, 0);
+		this.size = 0;
+	}
+
+	/**
+	 * @return	A deep copy of the table.
+	 */
+	public LongIntTable copy() {
+		LongIntTable copy = new LongIntTable();
+		copy.keys = this.keys.clone();
+		copy.values = this.values.clone();
+		copy.mask = this.mask;
+		copy.size = this.size;
+		return copy;
+	}
+
+	/**
+	 * @return	An estimate of the heap memory used by the table, in bytes.
+	 */
+	public long estimateMemoryBytes() {
+		return 12L * this.keys.length + 48;
+	}
+
+	/**
+	 * Finds the slot holding the given key, or the empty slot where it would be inserted.
+	 */
+	private int findSlot(long key) {
+		int slot = mix(key) & this.mask;
+		while (this.values[slot] != 0 && this.keys[slot] != key) {
+			slot = (slot + 1) & this.mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Doubles the capacity of the table and rehashes all keys.
+	 */
+	private void grow() {
+		long[] oldKeys = this.keys;
+		int[] oldValues = this.values;
+		this.allocate(oldKeys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != 0) {
+				int slot = this.findSlot(oldKeys[i]);
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Spreads the bits of a key so that neighbouring coordinates end up in different slots.
+	 */
+	private static int mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+}
@@ -11,10 +11,22 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
@@ -26,6 +38,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -36,7 +49,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
  * TODO: The timer needs some fixing.
  * 
  * @author Filip stermark
- * @version 2013-09-13
+ * @version 2026-10-18
  */
 public class MLog extends JFrame{
 
@@ -46,21 +59,37 @@ public class MLog extends JFrame{
 	private static MapGenerator mapGenerator;
 	private static Color mapColor;
 	private static Timer timer;
+	private static ExecutorService mapJobExecutor;
+	private static LinkedList<MapJob> mapJobs;
 	private static HashMap<Integer, String> mapTypeIndices;
 	private static final int INITIAL_WINDOW_WIDTH = 220;
-	private static final int INITIAL_WINDOW_HEIGHT = 300;
+	private static final int INITIAL_WINDOW_HEIGHT = 340;
 	private static final int EXPANDED_WINDOW_WIDTH = INITIAL_WINDOW_WIDTH + 260;
 	private static final long STANDARD_MOUSE_LOGGER_SLEEP_TIME = 1000L;
+	private static final String SAMPLE_RATE_ARGUMENT = "--rate=";
+	private static final String SESSION_FILE_ARGUMENT = "--session=";
+	private static final String REGIONS_FILE_ARGUMENT = "--regions=";
+	private static final String HALF_LIFE_ARGUMENT = "--half-life=";
+	private static final String REGION_STATS_DIRECTORY_SUFFIX = "-stats";
+	private static final String STANDARD_SESSION_FILE_NAME = "mlog-session" + SessionFile.FILE_EXTENSION;
+	private static final long CHECKPOINT_INTERVAL_MILLIS = 30000L;
 	private static final String RUNNING_LABEL = "RUNNING";
 	private static final String NOT_RUNNING_LABEL = "NOT RUNNING";
 	private static final String TOTAL_RUNTIME_LABEL = "TOTAL RUNTIME: ";
+	private static final String NO_MAP_JOBS_LABEL = "MAPS IN PROGRESS: NONE";
 	private static final Color STANDARD_MAP_COLOR = Color.GREEN;
+	private static final int PREVIEW_MAX_WIDTH = 480;
+	private static final int PREVIEW_MAX_HEIGHT = 300;
 	private static JButton startButton;
 	private static JButton pauseButton;
 	private static JButton generateMapButton;
 	private static JButton resetButton;
 	private static JButton saveButton;
 	private static JButton backButton;
+	private static JButton cancelButton;
+	private static JButton previewButton;
+	private static JFrame previewWindow;
+	private static LivePreviewPanel previewPanel;
 	private static JComboBox<String> mapTypeDropDown;
 	private static ColorPickerPanel colorPickerPanel;
 	private static JLabel mapTypeLabel;
@@ -68,20 +97,133 @@ public class MLog extends JFrame{
 	private static JLabel totalRuntimeLabel;
 	private static JLabel mapElementColorLabel;
 	private static JLabel numberOfPixelsLabel;
+	private static JLabel mapJobLabel;
 
 	/**
 	 * Creates the main window and runs the program.
+	 * 
+	 * The number of mouse pointer samples per second can be given as --rate=N, from 1 up to 1000.
+	 * The log is saved to a session file in the home directory, or the file given as --session=PATH,
+	 * and logging continues from that file the next time the program is started. The counts of a session are
+	 * measured in its sample periods, so a session keeps the rate it was created with: a --rate that differs
+	 * from the rate of an existing session file is rejected with a message, and the session's rate is used.
+	 * Metrics of the sampler, the log and map generation are published over JMX, e.g. to JConsole.
+	 * Regions of interest can be given as --regions=PATH, see RegionTracker.read; their dwell, entries and
+	 * transitions are published over JMX too, and written to the directory PATH-stats when the program exits.
+	 * With --half-life=SECONDS, maps and the preview show what the pointer did lately rather than over the whole
+	 * session, see MouseLogger.setHalfLife; the session file still keeps every sample.
+	 *
+	 * The window is only shown once the session, the regions and the metrics are set up and the sampler runs,
+	 * since the logger cannot take a session file while it is logging.
 	 */
 	public static void main(String[] args) {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		mapGenerator = new MapGenerator();
+		mouseLogger = new MouseLogger(STANDARD_MOUSE_LOGGER_SLEEP_TIME);
+		File sessionFile = new File(System.getProperty("user.home"), STANDARD_SESSION_FILE_NAME);
+		File regionsFile = null;
+		boolean sampleRateGiven = false;
+		for (String arg : args) {
+			if (arg.startsWith(SAMPLE_RATE_ARGUMENT)) {
+				try {
+					mouseLogger.setSampleRate(Integer.parseInt(arg.substring(SAMPLE_RATE_ARGUMENT.length())));
+					sampleRateGiven = true;
+				} catch (NumberFormatException nfe) {
+					System.err.println("Invalid sample rate: " + arg + ". Using the standard sample rate.");
+				}
+			} else if (arg.startsWith(SESSION_FILE_ARGUMENT)) {
+				sessionFile = new File(arg.substring(SESSION_FILE_ARGUMENT.length()));
+			} else if (arg.startsWith(REGIONS_FILE_ARGUMENT)) {
+				regionsFile = new File(arg.substring(REGIONS_FILE_ARGUMENT.length()));
+			} else if (arg.startsWith(HALF_LIFE_ARGUMENT)) {
+				try {
+					mouseLogger.setHalfLife(TimeUnit.SECONDS.toMillis(Long.parseLong(arg.substring(HALF_LIFE_ARGUMENT.length()))));
+				} catch (NumberFormatException nfe) {
+					System.err.println("Invalid half-life: " + arg + ". Maps will show the whole session.");
+				}
+			}
+		}
+		openSession(sessionFile, sampleRateGiven);
+		if (regionsFile != null) {
+			trackRegions(regionsFile);
+		}
+		publishMetrics();
+		executor.execute(mouseLogger);
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
 				new MLog();
 			}
 		});
-		ExecutorService executor = Executors.newCachedThreadPool();
-		mapGenerator = new MapGenerator();
-		mouseLogger = new MouseLogger(STANDARD_MOUSE_LOGGER_SLEEP_TIME);
-		executor.execute(mouseLogger);
+	}
+
+	/**
+	 * Publishes the sampler statistics, the size of the log and the map stage timings over JMX, under the
+	 * "mlog" domain of the platform MBean server.
+	 */
+	private static void publishMetrics() {
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		metrics.add("MouseLogger", null, new SamplerMetrics(mouseLogger));
+		metrics.publish(ManagementFactory.getPlatformMBeanServer());
+	}
+
+	/**
+	 * Counts the dwell, entries and transitions of the regions of interest in a file while the mouse is logged,
+	 * publishes them over JMX and writes them next to the file when the program exits. If the file cannot be read,
+	 * the program runs without the regions.
+	 *
+	 * @param file	The regions file
+	 */
+	private static void trackRegions(File file) {
+		final RegionTracker regionTracker;
+		try {
+			regionTracker = RegionTracker.read(file);
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			System.err.println("The regions file " + file + " could not be read. No regions will be tracked.");
+			return;
+		}
+		mouseLogger.addSampleListener(regionTracker);
+		MetricsRegistry.getDefault().add("Regions", null, new RegionMetrics(regionTracker));
+		final File statsDirectory = new File(file.getPath() + REGION_STATS_DIRECTORY_SUFFIX);
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					regionTracker.getStats().export(statsDirectory);
+				} catch (IOException ioe) {
+					ioe.printStackTrace();
+					System.err.println("The region stats could not be written to " + statsDirectory + ".");
+				}
+			}
+		}, "MLOG region stats"));
+	}
+
+	/**
+	 * Continues from the session file if it exists, or creates it at the current sample rate otherwise.
+	 * If the session file cannot be used, the program runs without saving the log.
+	 * 
+	 * @param file				The session file
+	 * @param sampleRateGiven	True if the sample rate was given on the command line
+	 */
+	private static void openSession(File file, boolean sampleRateGiven) {
+		try {
+			SessionFile session;
+			if (file.exists()) {
+				session = SessionFile.open(file);
+			} else {
+				session = SessionFile.create(file, MouseLogger.getVirtualScreenBounds(), mouseLogger.getSamplePeriodNanos());
+			}
+			long requestedPeriod = mouseLogger.getSamplePeriodNanos();
+			mouseLogger.setSessionFile(session, CHECKPOINT_INTERVAL_MILLIS);
+			if (sampleRateGiven && mouseLogger.getSamplePeriodNanos() != requestedPeriod) {
+				System.err.println(String.format(Locale.ROOT, "The session file %s was logged at %.0f samples per second,"
+						+ " which it keeps; --rate only applies to new session files. Use --session=PATH to start a new"
+						+ " session at another rate.", file, mouseLogger.getSampleRate()));
+			}
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			System.err.println("The session file " + file + " could not be used. The log will not be saved.");
+		}
 	}
 
 	/**
@@ -89,11 +231,22 @@ public class MLog extends JFrame{
 	 */
 	public MLog() {
 		mapTypeIndices = new HashMap<Integer, String>();
-		mapTypeIndices.put(0, MapGenerator.MAP_TYPE_DOTMAP);
-		mapTypeIndices.put(1, MapGenerator.MAP_TYPE_LINEMAP);
-		mapTypeIndices.put(2, MapGenerator.MAP_TYPE_CIRCLEMAP);
-		mapTypeIndices.put(3, MapGenerator.MAP_TYPE_BARMAP);
+		// The built-in map types come first, then any that were found on the class path
+		String[] mapTypes = MapGenerator.getMapTypes();
+		for (int i = 0; i < mapTypes.length; i++) {
+			mapTypeIndices.put(i, mapTypes[i]);
+		}
 		mapColor = STANDARD_MAP_COLOR;
+		mapJobs = new LinkedList<MapJob>();
+		// Maps are generated one at a time, in the order they were asked for, while the GUI stays responsive
+		mapJobExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "MLog map generator");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 
 		initUI();
 		initTimer();
@@ -134,6 +287,93 @@ public class MLog extends JFrame{
 		repaint();
 	}
 
+	/**
+	 * Queues a map job and follows its progress in the GUI. Must be called on the Event Dispatch Thread.
+	 * 
+	 * @param job	The job to queue
+	 */
+	private void submitMapJob(final MapJob job) {
+		job.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent event) {
+				if ("state".equals(event.getPropertyName()) && event.getNewValue() == SwingWorker.StateValue.DONE) {
+					mapJobs.remove(job);
+					showMapJobResult(job);
+				}
+				updateMapJobLabel();
+			}
+		});
+		mapJobs.add(job);
+		updateMapJobLabel();
+		mapJobExecutor.execute(job);
+	}
+
+	/**
+	 * Shows the stage of the oldest unfinished map job, and how many more are queued.
+	 */
+	private static void updateMapJobLabel() {
+		cancelButton.setEnabled(!mapJobs.isEmpty());
+		if (mapJobs.isEmpty()) {
+			return;
+		}
+		MapJob job = mapJobs.getFirst();
+		String text = "MAPS IN PROGRESS: " + job.getMapType() + " " + job.getStage();
+		if (mapJobs.size() > 1) {
+			text += " +" + (mapJobs.size() - 1);
+		}
+		mapJobLabel.setText(text);
+	}
+
+	/**
+	 * Tells the user how a finished map job went.
+	 * 
+	 * @param job	The finished job
+	 */
+	private void showMapJobResult(MapJob job) {
+		String text;
+		try {
+			File map = job.get();
+			text = map == null ? NO_MAP_JOBS_LABEL : "MAP SAVED: " + map.getName();
+		} catch (CancellationException ce) {
+			text = "MAP CANCELLED";
+		} catch (InterruptedException ie) {
+			text = NO_MAP_JOBS_LABEL;
+		} catch (ExecutionException ee) {
+			ee.getCause().printStackTrace();
+			text = "MAP NOT SAVED";
+			JOptionPane.showMessageDialog(this, "The map " + job.getOutput() + " could not be saved: " + ee.getCause().getMessage(),
+					"The map could not be saved.", JOptionPane.ERROR_MESSAGE);
+		}
+		// While other jobs are left, the label shows their progress instead
+		if (mapJobs.isEmpty()) {
+			mapJobLabel.setText(text);
+		}
+	}
+
+	/**
+	 * Shows the live preview window, creating it the first time. The preview starts from the log as it is and is
+	 * then fed by every sample, also while the window is closed, so it is up to date whenever it is opened again.
+	 */
+	private void showPreview() {
+		if (previewPanel == null) {
+			previewPanel = new LivePreviewPanel(MouseLogger.getVirtualScreenBounds(), PREVIEW_MAX_WIDTH, PREVIEW_MAX_HEIGHT,
+					colorPickerPanel.getForegroundColor());
+			previewPanel.setHalfLife(mouseLogger.getHalfLifePeriods());
+			previewPanel.addAll(mouseLogger.getRecentPixelTimeLog());
+			mouseLogger.addSampleListener(previewPanel);
+			previewWindow = new JFrame("MLOG PREVIEW");
+			previewWindow.setIconImage(this.getIconImage());
+			previewWindow.setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+			previewWindow.setResizable(false);
+			previewWindow.getContentPane().add(previewPanel);
+			previewWindow.pack();
+			previewWindow.setLocationRelativeTo(this);
+		}
+		previewPanel.setElementColor(colorPickerPanel.getForegroundColor());
+		previewWindow.setVisible(true);
+		previewWindow.toFront();
+	}
+
 	/**
 	 * Initializes the timer counting the total time the logger has run.
 	 */
@@ -260,7 +500,7 @@ public class MLog extends JFrame{
 				startButton.setEnabled(false);
 				pauseButton.setEnabled(false);
 				setMapSettingsVisible(true);
-				numberOfPixelsLabel.setText("NUMBER OF PIXELS LOGGED: " + mouseLogger.getPixelTimeLog().size());
+				numberOfPixelsLabel.setText("NUMBER OF PIXELS LOGGED: " + mouseLogger.getLogSize());
 			}
 		});
 		panel.add(generateMapButton);
@@ -280,16 +520,27 @@ public class MLog extends JFrame{
 		});
 		panel.add(resetButton);
 
+		// Opens a window that shows the heat map while the mouse is being logged
+		previewButton = new CustomButton("PREVIEW");
+		previewButton.setBounds(55, 190, 110, 30);
+		previewButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				showPreview();
+			}
+		});
+		panel.add(previewButton);
+
 		// A label to indicate whether or the mouse is being logged
 		runningIndicatorLabel = new JLabel(NOT_RUNNING_LABEL);
-		runningIndicatorLabel.setBounds(0, 200, this.getWidth(), 30);
+		runningIndicatorLabel.setBounds(0, 240, this.getWidth(), 30);
 		runningIndicatorLabel.setHorizontalAlignment(SwingConstants.CENTER);
 		runningIndicatorLabel.setForeground(Color.RED);
 		panel.add(runningIndicatorLabel);
 
 		// A label that shows the total time that the user has been logging the mouse
 		totalRuntimeLabel = new JLabel(TOTAL_RUNTIME_LABEL + "00:00:00");
-		totalRuntimeLabel.setBounds(0, 220, this.getWidth(), 30);
+		totalRuntimeLabel.setBounds(0, 260, this.getWidth(), 30);
 		totalRuntimeLabel.setHorizontalAlignment(SwingConstants.CENTER);
 		totalRuntimeLabel.setForeground(Color.WHITE);
 		panel.add(totalRuntimeLabel);
@@ -345,7 +596,7 @@ public class MLog extends JFrame{
 
 		// The button that lets the user generate and save maps
 		saveButton = new CustomButton("SAVE");
-		saveButton.setBounds(375, 210, 80, 30);
+		saveButton.setBounds(390, 210, 65, 30);
 		saveButton.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent event) {
 				JFileChooser chooser = new JFileChooser();
@@ -359,15 +610,35 @@ public class MLog extends JFrame{
 					}
 
 					int index = mapTypeDropDown.getSelectedIndex();
-					mapGenerator.generateMap(getScreenResolution(), mouseLogger.getPixelTimeLog(), colorPickerPanel.getForegroundColor(), mapTypeIndices.get(index), chooser.getSelectedFile().getAbsolutePath());
+					submitMapJob(new MapJob(mapGenerator, mouseLogger, getScreenResolution(), colorPickerPanel.getForegroundColor(), mapTypeIndices.get(index), chooser.getSelectedFile().getAbsoluteFile()));
 				}
 			}
 		});
 		panel.add(saveButton);
 
+		// A label that shows how the maps being generated are coming along
+		mapJobLabel = new JLabel(NO_MAP_JOBS_LABEL);
+		mapJobLabel.setBounds(240, 182, 215, 20);
+		mapJobLabel.setForeground(Color.WHITE);
+		mapJobLabel.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 11));
+		panel.add(mapJobLabel);
+
+		// The button that cancels the maps being generated
+		cancelButton = new CustomButton("CANCEL");
+		cancelButton.setBounds(315, 210, 65, 30);
+		cancelButton.setEnabled(false);
+		cancelButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				for (MapJob job : new ArrayList<MapJob>(mapJobs)) {
+					job.cancel(true);
+				}
+			}
+		});
+		panel.add(cancelButton);
+
 		// The button to hide the map generation menu
 		backButton = new CustomButton("HIDE");
-		backButton.setBounds(240, 210, 80, 30);
+		backButton.setBounds(240, 210, 65, 30);
 		backButton.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent event) {
 				setMapSettingsVisible(false);
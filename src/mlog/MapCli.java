@@ -0,0 +1,541 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders maps from saved session files without a display, for example on a build server.
+ *
+ * Usage: java -cp build/libs/mlog-VERSION.jar mlog.MapCli [options] INPUT...
+ *
+ * Every input is a session file or a directory of session files. Each session is rendered to a PNG file with
+ * the same name in the output directory. Sessions are rendered concurrently by a fixed number of workers, so
+ * at most that many logs and images are held in memory at a time. The time spent reading, rendering and
+ * writing each session is printed when it is done. With --merge, the counts of all sessions are added up by a
+ * SessionMerger instead, and rendered to a single merged.png, e.g. one heat map for a whole fleet of machines.
+ *
+ * Options:
+ *   --type=TYPE			DOTMAP, LINEMAP, CIRCLEMAP, BARMAP or a plugged-in type (default DOTMAP)
+ *   --color=COLOR			The color of the map elements, as #RRGGBB (default #00FF00)
+ *   --resolution=WxH		The size of the maps (default: the area covered by each session's screens)
+ *   --output=DIR			The directory to save the maps in (default: the current directory)
+ *   --threads=N			The number of sessions rendered at a time (default: the number of processors)
+ *   --backend=BACKEND		RASTER or JAVA2D, how map elements are drawn (default RASTER)
+ *   --ramp=RAMP			SINGLE_HUE, HEAT or VIRIDIS, the colors of dot maps and pyramids (default SINGLE_HUE,
+ *   					which fades to the element color)
+ *   --normalisation=NORM	NONE, LINEAR, LOG or PERCENTILE, how the counts of dot maps are scaled (default NONE)
+ *   --bars=CxR			The number of columns and rows that bar maps have bars for (default 32x0)
+ *   --compression=LEVEL	0 to 9, from fastest saving to smallest maps (default 4)
+ *   --band-height=ROWS	Render and save each map ROWS rows at a time, so only a band of it and up to 16 MB of
+ *   					rows waiting to be compressed are held in memory; for maps too large for the heap
+ *   					(default: render whole maps)
+ *   --pyramid			Export a Deep Zoom tile pyramid (NAME.dzi and NAME_files) of the counts of each
+ *   					session instead of a map, for browsing very large maps
+ *   --timelapse=FRAMES	Export a time-lapse of the dot map of each session, in FRAMES frames over its logging time,
+ *   					instead of a map; needs sessions saved with a trajectory
+ *   --timelapse-format=F	APNG or PNG_SEQUENCE, an animated NAME_timelapse.png or the files of NAME_timelapse
+ *   					(default APNG)
+ *   --frame-millis=MS		How long each frame of an animated time-lapse is shown (default 100)
+ *   --merge				Add up the counts of all sessions and render them to one map or pyramid named merged,
+ *   					in the shortest sample period of the sessions
+ *
+ * A session is either rendered to a map, exported as a pyramid or exported as a time-lapse, so --pyramid and
+ * --timelapse cannot be given together, and --band-height only goes with maps. Merged sessions have no
+ * trajectory, so --merge does not go with --timelapse.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class MapCli {
+
+	private static final String TYPE_ARGUMENT = "--type=";
+	private static final String COLOR_ARGUMENT = "--color=";
+	private static final String RESOLUTION_ARGUMENT = "--resolution=";
+	private static final String OUTPUT_ARGUMENT = "--output=";
+	private static final String THREADS_ARGUMENT = "--threads=";
+	private static final String BACKEND_ARGUMENT = "--backend=";
+	private static final String RAMP_ARGUMENT = "--ramp=";
+	private static final String NORMALISATION_ARGUMENT = "--normalisation=";
+	private static final String BARS_ARGUMENT = "--bars=";
+	private static final String COMPRESSION_ARGUMENT = "--compression=";
+	private static final String BAND_HEIGHT_ARGUMENT = "--band-height=";
+	private static final String PYRAMID_ARGUMENT = "--pyramid";
+	private static final String TIMELAPSE_ARGUMENT = "--timelapse=";
+	private static final String TIMELAPSE_FORMAT_ARGUMENT = "--timelapse-format=";
+	private static final String FRAME_MILLIS_ARGUMENT = "--frame-millis=";
+	private static final String MERGE_ARGUMENT = "--merge";
+	private static final String MERGED_NAME = "merged";
+	private static final Color STANDARD_MAP_COLOR = Color.GREEN;
+	private static final int EXIT_FAILURE = 1;
+	private static final int EXIT_USAGE = 2;
+
+	private final MapGenerator mapGenerator;
+	private final String mapType;
+	private final Color mapColor;
+	private final Dimension resolution;
+	private final File outputDirectory;
+	private final TilePyramidExporter pyramidExporter;
+	private final TimeLapseExporter timeLapseExporter;
+	private int bandHeight;
+	private boolean exportPyramid;
+	private int timeLapseFrames;
+	private String timeLapseFormat = TimeLapseExporter.FORMAT_APNG;
+
+	/**
+	 * Renders the maps given on the command line and exits with status 0 if all of them were saved.
+	 */
+	public static void main(String[] args) {
+		// Must be set before anything touches the AWT toolkit
+		System.setProperty("java.awt.headless", "true");
+
+		String mapType = MapGenerator.MAP_TYPE_DOTMAP;
+		Color mapColor = STANDARD_MAP_COLOR;
+		Dimension resolution = null;
+		File outputDirectory = new File(".");
+		int threads = Runtime.getRuntime().availableProcessors();
+		String renderBackend = MapGenerator.RENDER_BACKEND_RASTER;
+		String colorRamp = ColorRamp.RAMP_SINGLE_HUE;
+		String normalisation = CountScale.NORMALISATION_NONE;
+		Dimension barBins = new Dimension(32, 0);
+		int compressionLevel = PngEncoder.DEFAULT_COMPRESSION_LEVEL;
+		int bandHeight = 0;
+		boolean exportPyramid = false;
+		int timeLapseFrames = 0;
+		String timeLapseFormat = TimeLapseExporter.FORMAT_APNG;
+		int frameMillis = TimeLapseExporter.DEFAULT_FRAME_MILLIS;
+		boolean merge = false;
+		List<File> inputs = new ArrayList<File>();
+		try {
+			for (String arg : args) {
+				if (arg.startsWith(TYPE_ARGUMENT)) {
+					mapType = arg.substring(TYPE_ARGUMENT.length()).toUpperCase(Locale.ROOT);
+					if (!MapGenerator.isMapType(mapType)) {
+						throw new IllegalArgumentException("Unknown map type: " + mapType);
+					}
+				} else if (arg.startsWith(COLOR_ARGUMENT)) {
+					mapColor = Color.decode(arg.substring(COLOR_ARGUMENT.length()));
+				} else if (arg.startsWith(RESOLUTION_ARGUMENT)) {
+					resolution = parseResolution(arg.substring(RESOLUTION_ARGUMENT.length()));
+				} else if (arg.startsWith(OUTPUT_ARGUMENT)) {
+					outputDirectory = new File(arg.substring(OUTPUT_ARGUMENT.length()));
+				} else if (arg.startsWith(THREADS_ARGUMENT)) {
+					threads = Integer.parseInt(arg.substring(THREADS_ARGUMENT.length()));
+					if (threads < 1) {
+						throw new IllegalArgumentException("The number of threads must be at least 1");
+					}
+				} else if (arg.startsWith(BACKEND_ARGUMENT)) {
+					renderBackend = arg.substring(BACKEND_ARGUMENT.length()).toUpperCase(Locale.ROOT);
+					if (!MapGenerator.RENDER_BACKEND_RASTER.equals(renderBackend) && !MapGenerator.RENDER_BACKEND_JAVA2D.equals(renderBackend)) {
+						throw new IllegalArgumentException("Unknown render backend: " + renderBackend);
+					}
+				} else if (arg.startsWith(RAMP_ARGUMENT)) {
+					colorRamp = arg.substring(RAMP_ARGUMENT.length()).toUpperCase(Locale.ROOT);
+					if (!ColorRamp.isRamp(colorRamp)) {
+						throw new IllegalArgumentException("Unknown color ramp: " + colorRamp);
+					}
+				} else if (arg.startsWith(NORMALISATION_ARGUMENT)) {
+					normalisation = arg.substring(NORMALISATION_ARGUMENT.length()).toUpperCase(Locale.ROOT);
+					if (!CountScale.isNormalisation(normalisation)) {
+						throw new IllegalArgumentException("Unknown normalisation: " + normalisation);
+					}
+				} else if (arg.startsWith(BARS_ARGUMENT)) {
+					barBins = parseBins(arg.substring(BARS_ARGUMENT.length()));
+				} else if (arg.startsWith(COMPRESSION_ARGUMENT)) {
+					compressionLevel = Integer.parseInt(arg.substring(COMPRESSION_ARGUMENT.length()));
+					if (compressionLevel < 0 || compressionLevel > 9) {
+						throw new IllegalArgumentException("The compression level must be from 0 to 9");
+					}
+				} else if (arg.startsWith(BAND_HEIGHT_ARGUMENT)) {
+					bandHeight = Integer.parseInt(arg.substring(BAND_HEIGHT_ARGUMENT.length()));
+					if (bandHeight < 1) {
+						throw new IllegalArgumentException("The band height must be at least 1");
+					}
+				} else if (arg.equals(PYRAMID_ARGUMENT)) {
+					exportPyramid = true;
+				} else if (arg.startsWith(TIMELAPSE_ARGUMENT)) {
+					timeLapseFrames = Integer.parseInt(arg.substring(TIMELAPSE_ARGUMENT.length()));
+					if (timeLapseFrames < 1) {
+						throw new IllegalArgumentException("A time-lapse must have at least 1 frame");
+					}
+				} else if (arg.startsWith(TIMELAPSE_FORMAT_ARGUMENT)) {
+					timeLapseFormat = arg.substring(TIMELAPSE_FORMAT_ARGUMENT.length()).toUpperCase(Locale.ROOT);
+					if (!TimeLapseExporter.isFormat(timeLapseFormat)) {
+						throw new IllegalArgumentException("Unknown time-lapse format: " + timeLapseFormat);
+					}
+				} else if (arg.startsWith(FRAME_MILLIS_ARGUMENT)) {
+					frameMillis = Integer.parseInt(arg.substring(FRAME_MILLIS_ARGUMENT.length()));
+					if (frameMillis < 1 || frameMillis > 0xFFFF) {
+						throw new IllegalArgumentException("The frame time must be from 1 to 65535 ms");
+					}
+				} else if (arg.equals(MERGE_ARGUMENT)) {
+					merge = true;
+				} else if (arg.startsWith("--")) {
+					throw new IllegalArgumentException("Unknown option: " + arg);
+				} else {
+					File input = new File(arg);
+					if (input.isDirectory()) {
+						inputs.addAll(SessionMerger.listSessions(input));
+					} else {
+						inputs.add(input);
+					}
+				}
+			}
+			if (exportPyramid && timeLapseFrames > 0) {
+				throw new IllegalArgumentException("--pyramid and --timelapse cannot be given together");
+			}
+			if (bandHeight > 0 && (exportPyramid || timeLapseFrames > 0)) {
+				throw new IllegalArgumentException("--band-height only applies to maps, not to --pyramid or --timelapse");
+			}
+			if (merge && timeLapseFrames > 0) {
+				throw new IllegalArgumentException("--merge and --timelapse cannot be given together");
+			}
+		} catch (IllegalArgumentException iae) {
+			// NumberFormatException is an IllegalArgumentException too
+			System.err.println(iae.getMessage());
+			printUsage();
+			System.exit(EXIT_USAGE);
+		}
+		if (inputs.isEmpty()) {
+			printUsage();
+			System.exit(EXIT_USAGE);
+		}
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			System.err.println("The output directory " + outputDirectory + " could not be created.");
+			System.exit(EXIT_FAILURE);
+		}
+
+		// The stage timings of long batches can be watched over JMX
+		MetricsRegistry.getDefault().publish(ManagementFactory.getPlatformMBeanServer());
+		MapCli cli = new MapCli(mapType, mapColor, resolution, outputDirectory);
+		cli.mapGenerator.setRenderBackend(renderBackend);
+		cli.mapGenerator.setColorRamp(colorRamp);
+		cli.mapGenerator.setNormalisation(normalisation);
+		cli.mapGenerator.setBarBins(barBins.width, barBins.height);
+		cli.mapGenerator.setCompressionLevel(compressionLevel);
+		cli.pyramidExporter.setCompressionLevel(compressionLevel);
+		cli.setBandHeight(bandHeight);
+		cli.setExportPyramid(exportPyramid);
+		cli.timeLapseExporter.setCompressionLevel(compressionLevel);
+		cli.timeLapseExporter.setFrameMillis(frameMillis);
+		cli.setTimeLapse(timeLapseFrames, timeLapseFormat);
+		int failures = merge ? cli.renderMerged(inputs, threads) : cli.renderAll(inputs, threads);
+		System.exit(failures == 0 ? 0 : EXIT_FAILURE);
+	}
+
+	/**
+	 * Creates a new MapCli that renders maps with the given settings.
+	 *
+	 * @param mapType			The type of the maps
+	 * @param mapColor			The color of the map elements
+	 * @param resolution		The size of the maps, or null to use the area covered by each session
+	 * @param outputDirectory	The directory to save the maps in
+	 */
+	public MapCli(String mapType, Color mapColor, Dimension resolution, File outputDirectory) {
+		this.mapGenerator = new MapGenerator();
+		this.pyramidExporter = new TilePyramidExporter();
+		this.timeLapseExporter = new TimeLapseExporter();
+		this.mapType = mapType;
+		this.mapColor = mapColor;
+		this.resolution = resolution;
+		this.outputDirectory = outputDirectory;
+	}
+
+	/**
+	 * Makes the maps render and save a band of rows at a time, so that only a band of each map and the rows that
+	 * wait to be compressed are held in memory instead of the whole map.
+	 *
+	 * @param bandHeight	The number of rows in a band, or 0 to render whole maps
+	 */
+	public void setBandHeight(int bandHeight) {
+		this.bandHeight = bandHeight;
+	}
+
+	/**
+	 * Makes each session export a Deep Zoom tile pyramid of its counts instead of a map.
+	 *
+	 * @param exportPyramid	True to export pyramids, false to render maps
+	 */
+	public void setExportPyramid(boolean exportPyramid) {
+		this.exportPyramid = exportPyramid;
+	}
+
+	/**
+	 * Makes each session export a time-lapse of its dot map instead of a map, see TimeLapseExporter. The sessions
+	 * must have been saved with a trajectory.
+	 *
+	 * @param frames	The number of frames of each time-lapse, or 0 to render maps
+	 * @param format	TimeLapseExporter.FORMAT_APNG or TimeLapseExporter.FORMAT_PNG_SEQUENCE
+	 */
+	public void setTimeLapse(int frames, String format) {
+		if (!TimeLapseExporter.isFormat(format)) {
+			throw new IllegalArgumentException("Unknown time-lapse format: " + format);
+		}
+		this.timeLapseFrames = frames;
+		this.timeLapseFormat = format;
+	}
+
+	/**
+	 * Renders a map for every session file, using a fixed number of workers.
+	 * A line with the timings of each session is printed in the order the sessions were given.
+	 *
+	 * @param sessions	The session files to render
+	 * @param threads	The number of sessions to render at a time
+	 * @return	The number of sessions that could not be rendered.
+	 */
+	public int renderAll(List<File> sessions, int threads) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sessions.size())));
+		List<Future<String>> results = new ArrayList<Future<String>>(sessions.size());
+		for (final File session : sessions) {
+			results.add(executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return render(session);
+				}
+			}));
+		}
+		executor.shutdown();
+
+		long start = System.nanoTime();
+		int failures = 0;
+		for (int i = 0; i < results.size(); i++) {
+			try {
+				System.out.println(results.get(i).get());
+			} catch (ExecutionException ee) {
+				failures++;
+				System.err.println(sessions.get(i) + ": FAILED: " + ee.getCause().getMessage());
+			} catch (InterruptedException ie) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+				return failures + results.size() - i;
+			}
+		}
+		System.out.println(String.format(Locale.ROOT, "%d of %d maps rendered in %.1f s",
+				sessions.size() - failures, sessions.size(), (System.nanoTime() - start) / 1e9));
+		return failures;
+	}
+
+	/**
+	 * Adds up the counts of all session files and renders them to a single map, or exports them as a single
+	 * pyramid, named merged. The counts are measured in the shortest sample period of the sessions, see
+	 * SessionMerger. Session files that cannot be read are left out of the map.
+	 *
+	 * @param sessions	The session files to merge
+	 * @param threads	The number of sessions to read at a time
+	 * @return	The number of sessions that could not be merged, or all of them if the map could not be saved.
+	 */
+	public int renderMerged(List<File> sessions, int threads) {
+		long readStart = System.nanoTime();
+		SessionMerger merger = new SessionMerger(threads);
+		PixelCountStore counts;
+		try {
+			counts = merger.merge(sessions);
+		} finally {
+			merger.shutdown();
+		}
+		int failures = merger.getFailedSessions().size();
+		if (failures == sessions.size()) {
+			System.err.println("None of the " + sessions.size() + " sessions could be merged.");
+			return failures;
+		}
+		String label = String.format(Locale.ROOT, "%d sessions in sample periods of %.1f ms",
+				sessions.size() - failures, merger.getSamplePeriodNanos() / 1e6);
+		try {
+			System.out.println(this.renderCounts(label, MERGED_NAME, counts, readStart));
+		} catch (IOException ioe) {
+			System.err.println(label + ": FAILED: " + ioe.getMessage());
+			return sessions.size();
+		}
+		return failures;
+	}
+
+	/**
+	 * Reads, renders and saves the map of one session file.
+	 *
+	 * @param sessionFile	The session file
+	 * @return	A line with the timings of the session.
+	 * @throws IOException	If the session could not be read or the map could not be saved
+	 */
+	public String render(File sessionFile) throws IOException {
+		if (this.timeLapseFrames > 0 && this.exportPyramid) {
+			throw new IllegalStateException("A session cannot be exported as a time-lapse and a pyramid at once");
+		}
+		if (this.timeLapseFrames > 0) {
+			return this.exportTimeLapse(sessionFile);
+		}
+		long readStart = System.nanoTime();
+		SessionFile session = SessionFile.openReadOnly(sessionFile);
+		PixelCountStore counts;
+		try {
+			counts = session.readCounts();
+		} finally {
+			session.close();
+		}
+		return this.renderCounts(sessionFile.toString(), outputName(sessionFile), counts, readStart);
+	}
+
+	/**
+	 * Renders and saves the map of counts that have been read, or exports them as a pyramid.
+	 *
+	 * @param label		What the counts were read from, for the line with the timings
+	 * @param name		The name of the map file without its extension, or of the pyramid
+	 * @param counts	The counts
+	 * @param readStart	The System.nanoTime() at which reading the counts started
+	 * @return	A line with the timings of the map.
+	 * @throws IOException	If the map could not be saved
+	 */
+	private String renderCounts(String label, String name, PixelCountStore counts, long readStart) throws IOException {
+		long renderStart = System.nanoTime();
+		Rectangle bounds = counts.getDenseBounds();
+		Dimension size = this.resolution;
+		if (size == null) {
+			// Maps are drawn in screen coordinates, so the image must reach the far edges of the screens
+			size = new Dimension(Math.max(1, bounds.x + bounds.width), Math.max(1, bounds.y + bounds.height));
+		}
+		if (this.exportPyramid) {
+			ColorRamp colorRamp = ColorRamp.create(this.mapGenerator.getColorRamp(), this.mapColor);
+			File descriptor = this.pyramidExporter.export(counts, size, colorRamp, this.outputDirectory, name);
+			long end = System.nanoTime();
+			return String.format(Locale.ROOT, "%s -> %s: %d pixels, read %d ms, export %d ms",
+					label, descriptor, counts.size(),
+					TimeUnit.NANOSECONDS.toMillis(renderStart - readStart),
+					TimeUnit.NANOSECONDS.toMillis(end - renderStart));
+		}
+		File output = new File(this.outputDirectory, name + ".png");
+		if (this.bandHeight > 0) {
+			// Bands are written while the next ones render, so rendering and writing are timed together
+			this.mapGenerator.streamMap(size, counts, this.mapColor, this.mapType, output, this.bandHeight);
+			long end = System.nanoTime();
+			return String.format(Locale.ROOT, "%s -> %s: %d pixels, read %d ms, render and write %d ms",
+					label, output, counts.size(),
+					TimeUnit.NANOSECONDS.toMillis(renderStart - readStart),
+					TimeUnit.NANOSECONDS.toMillis(end - renderStart));
+		}
+		BufferedImage map = this.mapGenerator.renderMap(size, counts, this.mapColor, this.mapType);
+
+		long writeStart = System.nanoTime();
+		boolean saved = this.mapGenerator.saveImage(output.getPath(), map);
+		this.mapGenerator.releaseMap(map);
+		if (!saved) {
+			throw new IOException("The map could not be saved at " + output);
+		}
+		long end = System.nanoTime();
+
+		return String.format(Locale.ROOT, "%s -> %s: %d pixels, read %d ms, render %d ms, write %d ms",
+				label, output, counts.size(),
+				TimeUnit.NANOSECONDS.toMillis(renderStart - readStart),
+				TimeUnit.NANOSECONDS.toMillis(writeStart - renderStart),
+				TimeUnit.NANOSECONDS.toMillis(end - writeStart));
+	}
+
+	/**
+	 * Exports the time-lapse of one session file. The trajectory is read while the frames are built, so reading
+	 * and exporting are timed together.
+	 *
+	 * @param sessionFile	The session file
+	 * @return	A line with the timings of the session.
+	 * @throws IOException	If the session could not be read or the time-lapse could not be saved
+	 */
+	private String exportTimeLapse(File sessionFile) throws IOException {
+		long start = System.nanoTime();
+		SessionFile session = SessionFile.openReadOnly(sessionFile);
+		File output;
+		long records;
+		try {
+			Rectangle bounds = session.getDenseBounds();
+			Dimension size = this.resolution;
+			if (size == null) {
+				size = new Dimension(Math.max(1, bounds.x + bounds.width), Math.max(1, bounds.y + bounds.height));
+			}
+			ColorRamp colorRamp = ColorRamp.create(this.mapGenerator.getColorRamp(), this.mapColor);
+			output = this.timeLapseExporter.export(session, size, colorRamp, this.mapGenerator.getNormalisation(),
+					this.timeLapseFrames, this.timeLapseFormat, this.outputDirectory, outputName(sessionFile));
+			records = session.getTrajectoryRecordCount();
+		} finally {
+			session.close();
+		}
+		long end = System.nanoTime();
+		return String.format(Locale.ROOT, "%s -> %s: %d records, %d frames, read and export %d ms",
+				sessionFile, output, records, this.timeLapseFrames, TimeUnit.NANOSECONDS.toMillis(end - start));
+	}
+
+	/**
+	 * @return	The name of the map file of a session file, without its extension.
+	 */
+	private static String outputName(File sessionFile) {
+		String name = sessionFile.getName();
+		if (name.endsWith(SessionFile.FILE_EXTENSION)) {
+			name = name.substring(0, name.length() - SessionFile.FILE_EXTENSION.length());
+		}
+		return name;
+	}
+
+	/**
+	 * Parses a resolution given as WIDTHxHEIGHT.
+	 */
+	private static Dimension parseResolution(String value) {
+		int separator = value.toLowerCase(Locale.ROOT).indexOf('x');
+		if (separator < 0) {
+			throw new IllegalArgumentException("Invalid resolution: " + value + ". Use WIDTHxHEIGHT, e.g. 1920x1080.");
+		}
+		int width = Integer.parseInt(value.substring(0, separator).trim());
+		int height = Integer.parseInt(value.substring(separator + 1).trim());
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("Invalid resolution: " + value);
+		}
+		return new Dimension(width, height);
+	}
+
+	/**
+	 * Parses the numbers of columns and rows of bar maps, e.g. "32x0".
+	 */
+	private static Dimension parseBins(String value) {
+		int separator = value.toLowerCase(Locale.ROOT).indexOf('x');
+		if (separator < 0) {
+			throw new IllegalArgumentException("Invalid bars: " + value + ". Use COLUMNSxROWS, e.g. 32x0.");
+		}
+		int columns = Integer.parseInt(value.substring(0, separator).trim());
+		int rows = Integer.parseInt(value.substring(separator + 1).trim());
+		if (columns < 0 || rows < 0) {
+			throw new IllegalArgumentException("Invalid bars: " + value);
+		}
+		return new Dimension(columns, rows);
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: java mlog.MapCli [options] INPUT...");
+		System.err.println("  INPUT              A session file or a directory of session files");
+		System.err.println("  --type=TYPE        One of " + Arrays.toString(MapGenerator.getMapTypes()) + " (default DOTMAP)");
+		System.err.println("  --color=#RRGGBB    The color of the map elements (default #00FF00)");
+		System.err.println("  --resolution=WxH   The size of the maps (default: the area covered by the session)");
+		System.err.println("  --output=DIR       The directory to save the maps in (default: .)");
+		System.err.println("  --threads=N        The number of sessions rendered at a time (default: processors)");
+		System.err.println("  --backend=BACKEND  RASTER or JAVA2D, how map elements are drawn (default RASTER)");
+		System.err.println("  --ramp=RAMP        SINGLE_HUE, HEAT or VIRIDIS, the colors of dot maps (default SINGLE_HUE)");
+		System.err.println("  --normalisation=N  NONE, LINEAR, LOG or PERCENTILE, how dot map counts are scaled (default NONE)");
+		System.err.println("  --bars=CxR         The number of columns and rows of bar maps (default 32x0)");
+		System.err.println("  --compression=N    0 to 9, from fastest saving to smallest maps (default 4)");
+		System.err.println("  --band-height=N    Render and save maps N rows at a time, for maps too large for memory");
+		System.err.println("  --pyramid          Export a Deep Zoom tile pyramid of the counts instead of a map");
+		System.err.println("  --timelapse=N      Export a time-lapse of N frames over the session instead of a map");
+		System.err.println("  --timelapse-format=F  APNG or PNG_SEQUENCE, the format of time-lapses (default APNG)");
+		System.err.println("  --frame-millis=N   How long each frame of an animated time-lapse is shown (default 100)");
+		System.err.println("  --merge            Add up all sessions and render them to one map or pyramid named merged");
+		System.err.println("--pyramid and --timelapse cannot be given together, and --band-height only goes with maps.");
+		System.err.println("--merge cannot be given with --timelapse.");
+	}
+}
@@ -3,18 +3,42 @@ package mlog;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
-
-import javax.imageio.ImageIO;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CancellationException;
 
 /**
  * Handles generation of maps from mouse coordinates over time.
  * 
+ * Every map type is drawn by a MapRenderer. The four built-in types are always there, and more are found on the
+ * class path with ServiceLoader. A map is made in a pipeline of stages: the renderer prepares the map from a
+ * snapshot of the log, normalising its counts, the tiles are painted and colored from what it prepared, and the
+ * map is encoded as PNG. Dot maps are colored through a ColorRamp, from counts normalised by a CountScale.
+ * Images and buffers that are only needed while a map is made are borrowed from the ScratchBuffers of the tile
+ * renderer, so repeated maps of the same size reuse them.
+ * 
+ * The time every stage of generating a map takes is recorded in the default MetricsRegistry, per map type:
+ * preparing the map ("render.TYPE.prepare"), painting its tiles ("render.TYPE.paint"), streaming it to a file
+ * ("render.TYPE.stream"), and saving a map to a file ("saveImage").
+ * 
  * @author Filip stermark
- * @version 2013-09-14
+ * @version 2026-10-18
  */
 public class MapGenerator {
 
@@ -22,189 +46,398 @@ public class MapGenerator {
 	public final static String MAP_TYPE_LINEMAP = "LINEMAP";
 	public final static String MAP_TYPE_CIRCLEMAP = "CIRCLEMAP";
 	public final static String MAP_TYPE_BARMAP = "BARMAP";
+	public final static String RENDER_BACKEND_RASTER = "RASTER";
+	public final static String RENDER_BACKEND_JAVA2D = "JAVA2D";
+
+	private static final Map<String, MapRenderer> MAP_RENDERERS = loadMapRenderers();
+
+	private final TiledMapRenderer renderer;
+	private final PngEncoder pngEncoder;
+	private final Map<String, StageTimer> prepareTimers = new HashMap<String, StageTimer>();
+	private final Map<String, StageTimer> paintTimers = new HashMap<String, StageTimer>();
+	private final Map<String, StageTimer> streamTimers = new HashMap<String, StageTimer>();
+	private final StageTimer saveTimer;
+	private volatile boolean directRaster = true;
+	private volatile String colorRamp = ColorRamp.RAMP_SINGLE_HUE;
+	private volatile String normalisation = CountScale.NORMALISATION_NONE;
+	private volatile Dimension barBins = new Dimension(32, 0);
+
+	/**
+	 * Standard constructor for the map generator. Maps are rendered in tiles and saved in bands, on one worker
+	 * per processor.
+	 */
+	public MapGenerator() {
+		this(new TiledMapRenderer());
+	}
+
+	/**
+	 * Creates a map generator that renders maps with the given renderer.
+	 * 
+	 * @param renderer	The renderer that paints the tiles of the maps
+	 */
+	public MapGenerator(TiledMapRenderer renderer) {
+		this(renderer, new PngEncoder());
+	}
+
+	/**
+	 * Creates a map generator that renders maps with the given renderer and saves them with the given encoder.
+	 * 
+	 * @param renderer		The renderer that paints the tiles of the maps
+	 * @param pngEncoder	The encoder that saves the maps
+	 */
+	public MapGenerator(TiledMapRenderer renderer, PngEncoder pngEncoder) {
+		this.renderer = renderer;
+		this.pngEncoder = pngEncoder;
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		for (String mapType : MAP_RENDERERS.keySet()) {
+			this.prepareTimers.put(mapType, metrics.timer("render." + mapType + ".prepare"));
+			this.paintTimers.put(mapType, metrics.timer("render." + mapType + ".paint"));
+			this.streamTimers.put(mapType, metrics.timer("render." + mapType + ".stream"));
+		}
+		this.saveTimer = metrics.timer("saveImage");
+	}
+
+	/**
+	 * Chooses how map elements are drawn. RASTER, the default, writes the pixels of lines, circles and bars
+	 * straight into the image. JAVA2D draws them through Graphics2D, which is slower but antialiases exactly as
+	 * maps always have been. Dot maps are always rendered from their density buffer.
+	 * 
+	 * @param renderBackend	RENDER_BACKEND_RASTER or RENDER_BACKEND_JAVA2D
+	 */
+	public void setRenderBackend(String renderBackend) {
+		if (RENDER_BACKEND_RASTER.equals(renderBackend)) {
+			this.directRaster = true;
+		} else if (RENDER_BACKEND_JAVA2D.equals(renderBackend)) {
+			this.directRaster = false;
+		} else {
+			throw new IllegalArgumentException("Invalid render backend: " + renderBackend);
+		}
+	}
+
+	/**
+	 * @return	The way map elements are drawn, RENDER_BACKEND_RASTER or RENDER_BACKEND_JAVA2D.
+	 */
+	public String getRenderBackend() {
+		return this.directRaster ? RENDER_BACKEND_RASTER : RENDER_BACKEND_JAVA2D;
+	}
+
+	/**
+	 * Chooses the colors that dot maps are drawn in. SINGLE_HUE, the default, fades from black to the element
+	 * color; the other ramps do not use the element color.
+	 * 
+	 * @param colorRamp	ColorRamp.RAMP_SINGLE_HUE, ColorRamp.RAMP_HEAT or ColorRamp.RAMP_VIRIDIS
+	 */
+	public void setColorRamp(String colorRamp) {
+		if (!ColorRamp.isRamp(colorRamp)) {
+			throw new IllegalArgumentException("Invalid color ramp: " + colorRamp);
+		}
+		this.colorRamp = colorRamp;
+	}
+
+	/**
+	 * @return	The name of the colors that dot maps are drawn in.
+	 */
+	public String getColorRamp() {
+		return this.colorRamp;
+	}
+
+	/**
+	 * Chooses how the counts of the log are normalised before dot maps are drawn from them, see CountScale. NONE,
+	 * the default, draws every count as it is, so dots stop growing at a count of 255.
+	 * 
+	 * @param normalisation	One of the normalisations of CountScale
+	 */
+	public void setNormalisation(String normalisation) {
+		if (!CountScale.isNormalisation(normalisation)) {
+			throw new IllegalArgumentException("Invalid normalisation: " + normalisation);
+		}
+		this.normalisation = normalisation;
+	}
+
+	/**
+	 * @return	How the counts of the log are normalised before dot maps are drawn from them.
+	 */
+	public String getNormalisation() {
+		return this.normalisation;
+	}
+
+	/**
+	 * Chooses how many bars bar maps have. The screen is split into columns that get bars from the bottom, and
+	 * into rows that get bars from the left edge. The default is 32 columns and no rows.
+	 * 
+	 * @param columns	The number of columns, or 0 for none
+	 * @param rows		The number of rows, or 0 for none
+	 */
+	public void setBarBins(int columns, int rows) {
+		if (columns < 0 || rows < 0) {
+			throw new IllegalArgumentException("Invalid number of bars: " + columns + "x" + rows);
+		}
+		this.barBins = new Dimension(columns, rows);
+	}
+
+	/**
+	 * @return	The number of columns (width) and rows (height) that bar maps are split into.
+	 */
+	public Dimension getBarBins() {
+		return new Dimension(this.barBins);
+	}
+
+	/**
+	 * Chooses between small map files and fast saving, see PngEncoder.setCompressionLevel.
+	 * 
+	 * @param compressionLevel	A compression level from 0 to 9, or -1 for zlib's default
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		this.pngEncoder.setCompressionLevel(compressionLevel);
+	}
 
 	/**
-	 * Standard constructor for the map generator.
+	 * @return	The compression level that maps are saved with.
 	 */
-	public MapGenerator() { }
+	public int getCompressionLevel() {
+		return this.pngEncoder.getCompressionLevel();
+	}
 
 	/**
 	 * Generates a map (from mouse coordinates over time) of the specified type.
 	 * 
 	 * @param resolution	The user's screen resolution
-	 * @param pixelMap		A HashMap of mouse coordinates over time
+	 * @param pixelMap		A store of mouse coordinates over time
 	 * @param elementColor	The color of the map elements
 	 * @param mapType		The type of map to be generated
 	 * @param filePath			The output picture file
+	 * @return	True if the map was generated and saved.
 	 */
-	public void generateMap(Dimension resolution, HashMap<PixelPoint, Integer> pixelMap, Color elementColor, String mapType, String filePath) {
-		if (mapType.equals(MAP_TYPE_DOTMAP)) {
-			this.generateDotMap(resolution, pixelMap, elementColor, filePath);
-		}
-		else if (mapType.equals(MAP_TYPE_LINEMAP)) {
-			this.generateLineMap(resolution, pixelMap, elementColor, filePath);
+	public boolean generateMap(Dimension resolution, PixelCountStore pixelMap, Color elementColor, String mapType, String filePath) {
+		BufferedImage map = this.renderMap(resolution, pixelMap, elementColor, mapType);
+		if (map == null) {
+			return false;
 		}
-		else if (mapType.equals(MAP_TYPE_CIRCLEMAP)) {
-			this.generateCircleMap(resolution, pixelMap, elementColor, filePath);
-		}
-		else if (mapType.equals(MAP_TYPE_BARMAP)) {
-			this.generateBarMap(resolution, pixelMap, elementColor, filePath);
-		} else {
+		boolean saved = this.saveImage(filePath, map);
+		this.releaseMap(map);
+		return saved;
+	}
+
+	/**
+	 * Renders a map (from mouse coordinates over time) of the specified type, without saving it.
+	 * The map can be given back with releaseMap once it is no longer needed, to be reused by a later map.
+	 * 
+	 * @param resolution	The user's screen resolution
+	 * @param pixelMap		A store of mouse coordinates over time
+	 * @param elementColor	The color of the map elements
+	 * @param mapType		The type of map to be rendered
+	 * @return	The rendered map, or null if the map type was invalid.
+	 */
+	public BufferedImage renderMap(Dimension resolution, PixelCountStore pixelMap, Color elementColor, String mapType) {
+		mapType = mapTypeKey(mapType);
+		MapRenderer mapRenderer = MAP_RENDERERS.get(mapType);
+		if (mapRenderer == null) {
 			System.err.println("Invalid map type. The map type parameter was invalid and the map could not be generated.");
+			return null;
+		}
+		RenderContext context = this.createContext(resolution, pixelMap, elementColor);
+		try {
+			long start = System.nanoTime();
+			TilePainter painter = mapRenderer.prepare(context);
+			this.prepareTimers.get(mapType).stop(start);
+			start = System.nanoTime();
+			BufferedImage map = this.renderer.render((int)resolution.getWidth(), (int)resolution.getHeight(), painter);
+			this.paintTimers.get(mapType).stop(start);
+			return map;
+		} finally {
+			context.releaseAll();
 		}
 	}
 
 	/**
-	 * Generates a dot map of mouse pointer positions over time.
+	 * Gives back a map returned by renderMap, so its image can be reused by a later map of the same size. A map
+	 * too large for the scratch buffers is left to the garbage collector. The map must not be used afterwards.
 	 * 
-	 * @param resolution	The user's screen resolution
-	 * @param pixelMap		A HashMap of mouse pointer positions over time
-	 * @param dotColor		The color of the dots
-	 * @param filePath		The file path to save the image at
-	 */
-	public void generateDotMap(Dimension resolution, HashMap<PixelPoint, Integer> pixelMap, Color dotColor, String filePath) {
-		int screenWidth = (int)resolution.getWidth();
-		int screenHeight = (int)resolution.getHeight();
-
-		BufferedImage pixelTimeMapBuffer = new BufferedImage(screenWidth, screenHeight, BufferedImage.TYPE_INT_RGB);
-		Graphics2D pixelTimeMapImage = pixelTimeMapBuffer.createGraphics();
-		pixelTimeMapImage.setColor(Color.BLACK);
-		pixelTimeMapImage.fillRect(0, 0, screenWidth, screenHeight); // Set background color
-		pixelTimeMapImage.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-		// Generate all the dots on the picture
-		synchronized(pixelMap) {
-			for (PixelPoint pixel : pixelMap.keySet()) {
-				for (int i = pixelMap.get(pixel); i > 0; i--) {
-					int radius = i;
-					int alpha = 255/i;
-					pixelTimeMapImage.setColor(new Color(dotColor.getRed(), dotColor.getGreen(), dotColor.getBlue(), alpha));
-					pixelTimeMapImage.fillOval((int)(pixel.getX() - radius), (int)(pixel.getY() - radius), 2*radius, 2*radius);
-				}
+	 * @param map	The map
+	 */
+	public void releaseMap(BufferedImage map) {
+		this.renderer.getScratchBuffers().release(map);
+	}
+
+	/**
+	 * Renders a map band by band and writes every band to a PNG file as soon as it is rendered, so the whole map
+	 * is never held in memory. Memory use is bounded by the band height instead of the size of the map, which
+	 * makes it possible to render maps far larger than the heap.
+	 * 
+	 * If the calling thread is interrupted, rendering stops and the file is left unfinished.
+	 * 
+	 * @param resolution	The size of the map
+	 * @param pixelMap		A store of mouse coordinates over time
+	 * @param elementColor	The color of the map elements
+	 * @param mapType		The type of map to be rendered
+	 * @param file			The PNG file to write the map to
+	 * @param bandHeight	The number of rows rendered at a time; the map comes out the same whatever it is
+	 * @throws IOException	If the file could not be written, or the calling thread was interrupted
+	 */
+	public void streamMap(Dimension resolution, PixelCountStore pixelMap, Color elementColor, String mapType, File file,
+			int bandHeight) throws IOException {
+		if (bandHeight < 1) {
+			throw new IllegalArgumentException("The band height must be at least 1: " + bandHeight);
+		}
+		String key = mapTypeKey(mapType);
+		MapRenderer mapRenderer = MAP_RENDERERS.get(key);
+		if (mapRenderer == null) {
+			throw new IllegalArgumentException("Invalid map type: " + mapType);
+		}
+		RenderContext context = this.createContext(resolution, pixelMap, elementColor);
+		try {
+			this.streamMap(key, mapRenderer, context, file, bandHeight);
+		} finally {
+			context.releaseAll();
+		}
+	}
+
+	/**
+	 * Renders a prepared map band by band and writes every band to a PNG file.
+	 *
+	 * @param mapType	The map type as returned by mapTypeKey, which the timers of the map type are kept under
+	 */
+	private void streamMap(String mapType, MapRenderer mapRenderer, RenderContext context, File file, int bandHeight)
+			throws IOException {
+		long start = System.nanoTime();
+		TilePainter painter = mapRenderer.prepare(context);
+		this.prepareTimers.get(mapType).stop(start);
+		start = System.nanoTime();
+		int width = context.getWidth();
+		int height = context.getHeight();
+		bandHeight = Math.min(bandHeight, height);
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		PngEncoder.BandWriter writer = null;
+		try {
+			writer = this.pngEncoder.open(channel, width, height, false);
+			// The next band is rendered while the bands before it are still being compressed
+			for (int y = 0; y < height; y += bandHeight) {
+				writer.writeRows(this.renderer.render(new Rectangle(0, y, width, Math.min(bandHeight, height - y)), painter));
+			}
+			writer.finish();
+			writer = null;
+			this.streamTimers.get(mapType).stop(start);
+		} catch (CancellationException ce) {
+			throw new InterruptedIOException(ce.getMessage());
+		} finally {
+			if (writer != null) {
+				writer.cancel();
 			}
+			channel.close();
 		}
+	}
 
-		this.saveImage(filePath, pixelTimeMapBuffer);
+	/**
+	 * Creates the context that the renderers prepare a map in.
+	 */
+	private RenderContext createContext(Dimension resolution, PixelCountStore pixelMap, Color elementColor) {
+		return new RenderContext(resolution, pixelMap, elementColor, ColorRamp.create(this.colorRamp, elementColor),
+				this.normalisation, this.barBins, this.directRaster, this.renderer.getScratchBuffers(),
+				this.renderer.getPool());
 	}
 
 	/**
-	 * Generates a line map of the mouse pointer positions over time.
-	 * 
-	 * @param resolution	The user's screen resolution
-	 * @param pixelMap		A HashMap of mouse pointer positions over time
-	 * @param lineColor		The color of the dots
-	 * @param filePath		The file path to save the image at
-	 */
-	public void generateLineMap(Dimension resolution, HashMap<PixelPoint, Integer> pixelMap, Color lineColor, String filePath) {
-		int screenWidth = (int)resolution.getWidth();
-		int screenHeight = (int)resolution.getHeight();
-		BufferedImage pixelTimeMapBuffer = new BufferedImage(screenWidth, screenHeight, BufferedImage.TYPE_INT_RGB);
-		Graphics2D pixelTimeMapImage = pixelTimeMapBuffer.createGraphics();
-		pixelTimeMapImage.setColor(Color.BLACK);
-		pixelTimeMapImage.fillRect(0, 0, screenWidth, screenHeight); // Set background color
-		pixelTimeMapImage.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-		// Generate all the dots on the picture
-		synchronized(pixelMap) {
-			PixelPoint[] pixelArray = pixelMap.keySet().toArray(new PixelPoint[0]);
-			for (int i = 0; i < pixelArray.length; i++) {
-				for (int j = i + 1; j < pixelArray.length; j++) {
-					double distance = Math.sqrt(Math.pow(pixelArray[i].getX() - pixelArray[j].getX(), 2) + Math.pow(pixelArray[i].getY() - pixelArray[j].getY(), 2));
-					int alpha = 255/((int)Math.pow(distance, 2)/7000 + 1);
-					if (distance < 800 && distance > 20 && alpha >= 20) {
-						pixelTimeMapImage.setColor(new Color(lineColor.getRed(), lineColor.getGreen(), lineColor.getBlue(), alpha));
-						pixelTimeMapImage.drawLine((int)pixelArray[i].getX(), (int)pixelArray[i].getY(), (int)pixelArray[j].getX(), (int)pixelArray[j].getY());
-					}
+	 * @param mapType	A map type name
+	 * @return	True if the name is one of the map types that can be generated.
+	 */
+	public static boolean isMapType(String mapType) {
+		return MAP_RENDERERS.containsKey(mapTypeKey(mapType));
+	}
+
+	/**
+	 * Map types are kept in capitals, whatever case a renderer or a caller names them in.
+	 *
+	 * @param mapType	A map type name, or null
+	 * @return	The name that the map type is kept under, or null.
+	 */
+	private static String mapTypeKey(String mapType) {
+		return mapType == null ? null : mapType.toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * @return	The names of all map types that can be generated, the built-in ones first.
+	 */
+	public static String[] getMapTypes() {
+		return MAP_RENDERERS.keySet().toArray(new String[MAP_RENDERERS.size()]);
+	}
+
+	/**
+	 * Finds the renderers of all map types: the built-in ones, and those listed in META-INF/services/mlog.MapRenderer
+	 * anywhere on the class path. A map type that is already known is not replaced.
+	 */
+	private static Map<String, MapRenderer> loadMapRenderers() {
+		Map<String, MapRenderer> renderers = new LinkedHashMap<String, MapRenderer>();
+		for (MapRenderer builtIn : new MapRenderer[] { new DotMapRenderer(), new LineMapRenderer(), new CircleMapRenderer(), new BarMapRenderer() }) {
+			renderers.put(mapTypeKey(builtIn.getMapType()), builtIn);
+		}
+		Iterator<MapRenderer> found = ServiceLoader.load(MapRenderer.class).iterator();
+		while (true) {
+			try {
+				if (!found.hasNext()) {
+					break;
 				}
+				MapRenderer renderer = found.next();
+				String mapType = mapTypeKey(renderer.getMapType());
+				if (!renderers.containsKey(mapType)) {
+					renderers.put(mapType, renderer);
+				}
+			} catch (ServiceConfigurationError sce) {
+				sce.printStackTrace();
+				System.err.println("A map type could not be loaded and is left out.");
 			}
 		}
-
-		this.saveImage(filePath, pixelTimeMapBuffer);
+		return renderers;
 	}
 
 	/**
-	 * Generates a dot map of mouse pointer positions over time.
+	 * Renders a dot map of mouse pointer positions over time.
 	 * 
 	 * @param resolution	The user's screen resolution
-	 * @param pixelMap		A HashMap of mouse pointer positions over time
+	 * @param pixelMap		A store of mouse pointer positions over time
 	 * @param dotColor		The color of the dots
-	 * @param filePath		The file path to save the image at
-	 */
-	public void generateCircleMap(Dimension resolution, HashMap<PixelPoint, Integer> pixelMap, Color dotColor, String filePath) {
-		int screenWidth = (int)resolution.getWidth();
-		int screenHeight = (int)resolution.getHeight();
-		BufferedImage pixelTimeMapBuffer = new BufferedImage(screenWidth, screenHeight, BufferedImage.TYPE_INT_RGB);
-		Graphics2D pixelTimeMapImage = pixelTimeMapBuffer.createGraphics();
-		pixelTimeMapImage.setColor(Color.BLACK);
-		pixelTimeMapImage.fillRect(0, 0, screenWidth, screenHeight);
-		pixelTimeMapImage.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-		// Generate all the circles on the picture
-		synchronized(pixelMap) {
-			for (PixelPoint pixel : pixelMap.keySet()) {
-				int radius = pixelMap.get(pixel);
-				pixelTimeMapImage.setColor(new Color(dotColor.getRed(), dotColor.getGreen(), dotColor.getBlue()));
-				pixelTimeMapImage.drawOval((int)(pixel.getX() - radius), (int)(pixel.getY() - radius), 2*radius, 2*radius);
-			}
-		}
+	 * @return	The rendered map.
+	 */
+	public BufferedImage renderDotMap(Dimension resolution, PixelCountStore pixelMap, Color dotColor) {
+		return this.renderMap(resolution, pixelMap, dotColor, MAP_TYPE_DOTMAP);
+	}
 
-		this.saveImage(filePath, pixelTimeMapBuffer);
+	/**
+	 * Renders a line map of the mouse pointer positions over time.
+	 * 
+	 * @param resolution	The user's screen resolution
+	 * @param pixelMap		A store of mouse pointer positions over time
+	 * @param lineColor		The color of the dots
+	 * @return	The rendered map.
+	 */
+	public BufferedImage renderLineMap(Dimension resolution, PixelCountStore pixelMap, Color lineColor) {
+		return this.renderMap(resolution, pixelMap, lineColor, MAP_TYPE_LINEMAP);
 	}
-	
+
 	/**
-	 * Generates a bar map of mouse pointer positions over time.
+	 * Renders a circle map of mouse pointer positions over time.
 	 * 
 	 * @param resolution	The user's screen resolution
-	 * @param pixelMap		A HashMap of mouse pointer positions over time
-	 * @param barColor		The color of the bars
-	 * @param filePath		The file path to save the image at
-	 */
-	public void generateBarMap(Dimension resolution, HashMap<PixelPoint, Integer> pixelMap, Color barColor, String filePath) {
-		int screenWidth = (int)resolution.getWidth();
-		int screenHeight = (int)resolution.getHeight();
-		BufferedImage pixelTimeMapBuffer = new BufferedImage(screenWidth, screenHeight, BufferedImage.TYPE_INT_RGB);
-		Graphics2D pixelTimeMapImage = pixelTimeMapBuffer.createGraphics();
-		pixelTimeMapImage.setColor(Color.BLACK);
-		pixelTimeMapImage.fillRect(0, 0, screenWidth, screenHeight);
-		pixelTimeMapImage.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-		final int numberOfBars = 32;
-		int barWidth = screenWidth / numberOfBars;
-		int[] barHeights = new int[numberOfBars];
-		int currentBar;
-		
-		// Generate all the circles on the picture
-		synchronized(pixelMap) {
-			for (PixelPoint pixel : pixelMap.keySet()) {
-				currentBar = (int)(pixel.getX() / barWidth);
-				barHeights[currentBar] += pixelMap.get(pixel);
-			}
-		}
+	 * @param pixelMap		A store of mouse pointer positions over time
+	 * @param dotColor		The color of the dots
+	 * @return	The rendered map.
+	 */
+	public BufferedImage renderCircleMap(Dimension resolution, PixelCountStore pixelMap, Color dotColor) {
+		return this.renderMap(resolution, pixelMap, dotColor, MAP_TYPE_CIRCLEMAP);
+	}
 
-		//final int barTopFade = 50; // The height of the fading at the top of the bar
-		
-		for (int i = 0; i < numberOfBars; i++) {
-			int barTopFade = 127; // Maximum safe value to use calculating alpha
-			if (barHeights[i] < 255) {
-				barTopFade = barHeights[i]/2;
-			}
-			int barYCoordinate = screenHeight - barHeights[i];
-			pixelTimeMapImage.setColor(new Color(barColor.getRed(), barColor.getGreen(), barColor.getBlue()));
-			// The + 1 and -2 constants are there to separate the bars from each other
-			pixelTimeMapImage.fillRect(i*barWidth + 1, barYCoordinate + barTopFade, barWidth - 2, barHeights[i] - barTopFade);
-	
-			if (barHeights[i] != 0) {
-				for (int k = 1; k <= barTopFade; k++) {
-					int alpha = 255 - k*(255/barTopFade);
-					pixelTimeMapImage.setColor(new Color(barColor.getRed(), barColor.getGreen(), barColor.getBlue(), alpha));
-					pixelTimeMapImage.drawLine(i*barWidth + 1, barYCoordinate + barTopFade - k, (i + 1)*barWidth - 2, barYCoordinate + barTopFade - k);
-				}
-			}
-		}
-		
-		this.saveImage(filePath, pixelTimeMapBuffer);
+	/**
+	 * Renders a bar map of mouse pointer positions over time.
+	 * 
+	 * @param resolution	The user's screen resolution
+	 * @param pixelMap		A store of mouse pointer positions over time
+	 * @param barColor		The color of the bars
+	 * @return	The rendered map.
+	 */
+	public BufferedImage renderBarMap(Dimension resolution, PixelCountStore pixelMap, Color barColor) {
+		return this.renderMap(resolution, pixelMap, barColor, MAP_TYPE_BARMAP);
 	}
-	
+
 	/**
 	 * Draws a single gradient dot.
 	 * 
@@ -227,16 +460,49 @@ public class MapGenerator {
 	 * 
 	 * @param filePath	The file path to save the image at
 	 * @param image		The image to save
+	 * @return	True if the image was saved.
 	 */
-	private void saveImage(String filePath, BufferedImage bufferedImage) {
+	public boolean saveImage(String filePath, BufferedImage bufferedImage) {
 		try {
 			if (!filePath.endsWith(".png")) {
 				filePath += ".png";
 			}
-			ImageIO.write(bufferedImage, "png", new File(filePath));
+			this.writeImage(bufferedImage, new File(filePath));
+			return true;
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.err.println("The map could not be saved. Try specifying another path to save at.");
+			return false;
+		}
+	}
+
+	/**
+	 * Writes an image to a PNG file, compressing it on all workers of the encoder.
+	 * 
+	 * @param image	The image to write
+	 * @param file	The file to write to
+	 * @throws IOException	If the file could not be written, or the calling thread was interrupted
+	 */
+	public void writeImage(BufferedImage image, File file) throws IOException {
+		long start = System.nanoTime();
+		this.pngEncoder.write(image, file);
+		this.saveTimer.stop(start);
+	}
+
+	/**
+	 * Replaces a file with a complete temporary file, atomically where the file system can, so the file is
+	 * always either the old one or the new one.
+	 * 
+	 * @param temporary	The complete file, normally next to the target
+	 * @param target	The file to replace
+	 * @throws IOException	If the file could not be replaced
+	 */
+	static void moveIntoPlace(File temporary, File target) throws IOException {
+		try {
+			Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException amnse) {
+			Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
 		}
 	}
 }
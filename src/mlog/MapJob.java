@@ -0,0 +1,148 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.swing.SwingWorker;
+
+/**
+ * Generates and saves a map in the background, off the Event Dispatch Thread.
+ *
+ * The job goes through the stages SNAPSHOT, RENDER, ENCODE and WRITE; the map is encoded into a temporary file,
+ * which is then moved into place. Every time it enters a stage, a "stage" property change is fired on the Event
+ * Dispatch Thread, and the progress is set to the share of stages done.
+ * A job can be cancelled with cancel(true) at any time; a cancelled job stops rendering as soon as the tiles it
+ * has started are done, and never leaves a partly written map behind.
+ *
+ * Jobs can be queued by handing them to an executor, as they are Runnable.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class MapJob extends SwingWorker<File, MapJob.Stage> {
+
+	/**
+	 * The stages of a job, in order.
+	 */
+	public enum Stage {
+		QUEUED, SNAPSHOT, RENDER, ENCODE, WRITE, DONE
+	}
+
+	public static final String STAGE_PROPERTY = "stage";
+
+	private final MapGenerator mapGenerator;
+	private final MouseLogger mouseLogger;
+	private final Dimension resolution;
+	private final Color elementColor;
+	private final String mapType;
+	private final File output;
+	private volatile Stage stage = Stage.QUEUED;
+
+	/**
+	 * Creates a new job that generates a map of the log of a mouse logger.
+	 *
+	 * @param mapGenerator	The map generator to render with
+	 * @param mouseLogger	The logger to take a snapshot of the log from; it may keep logging meanwhile
+	 * @param resolution	The size of the map
+	 * @param elementColor	The color of the map elements
+	 * @param mapType		The type of map to be generated
+	 * @param output		The file to save the map in; ".png" is added if it is missing
+	 */
+	public MapJob(MapGenerator mapGenerator, MouseLogger mouseLogger, Dimension resolution, Color elementColor, String mapType, File output) {
+		this.mapGenerator = mapGenerator;
+		this.mouseLogger = mouseLogger;
+		this.resolution = resolution;
+		this.elementColor = elementColor;
+		this.mapType = mapType;
+		if (!output.getName().endsWith(".png")) {
+			output = new File(output.getPath() + ".png");
+		}
+		this.output = output;
+	}
+
+	@Override
+	protected File doInBackground() throws Exception {
+		this.enter(Stage.SNAPSHOT);
+		PixelCountStore pixelMap = this.mouseLogger.getRecentPixelTimeLog();
+
+		this.enter(Stage.RENDER);
+		BufferedImage map = this.mapGenerator.renderMap(this.resolution, pixelMap, this.elementColor, this.mapType);
+		if (map == null) {
+			throw new IllegalArgumentException("Invalid map type: " + this.mapType);
+		}
+		pixelMap = null;
+
+		this.enter(Stage.ENCODE);
+		// Encode next to the target and rename, so a cancelled or failed job leaves no broken map behind
+		File temporary = new File(this.output.getPath() + ".part");
+		try {
+			this.mapGenerator.writeImage(map, temporary);
+		} catch (IOException ioe) {
+			temporary.delete();
+			throw ioe;
+		} finally {
+			this.mapGenerator.releaseMap(map);
+		}
+		map = null;
+
+		try {
+			this.enter(Stage.WRITE);
+		} catch (InterruptedException ie) {
+			temporary.delete();
+			throw ie;
+		}
+		try {
+			// Replacing rather than deleting first, so a failed move leaves the old map
+			MapGenerator.moveIntoPlace(temporary, this.output);
+		} catch (IOException ioe) {
+			temporary.delete();
+			throw new IOException("The map could not be saved at " + this.output, ioe);
+		}
+
+		this.enter(Stage.DONE);
+		return this.output;
+	}
+
+	/**
+	 * Enters a stage, unless the job has been cancelled.
+	 */
+	private void enter(Stage stage) throws InterruptedException {
+		if (this.isCancelled() || Thread.currentThread().isInterrupted()) {
+			throw new InterruptedException("The map job was cancelled");
+		}
+		this.publish(stage);
+		this.setProgress(100 * (stage.ordinal() - 1) / (Stage.DONE.ordinal() - 1));
+	}
+
+	@Override
+	protected void process(List<Stage> stages) {
+		Stage previous = this.stage;
+		this.stage = stages.get(stages.size() - 1);
+		this.firePropertyChange(STAGE_PROPERTY, previous, this.stage);
+	}
+
+	/**
+	 * @return	The latest stage that has been reported on the Event Dispatch Thread.
+	 */
+	public Stage getStage() {
+		return this.stage;
+	}
+
+	/**
+	 * @return	The type of map the job generates.
+	 */
+	public String getMapType() {
+		return this.mapType;
+	}
+
+	/**
+	 * @return	The file the map is saved in.
+	 */
+	public File getOutput() {
+		return this.output;
+	}
+}
@@ -0,0 +1,33 @@
+package mlog;
+
+/**
+ * A type of map that MapGenerator can render, such as the dot map.
+ *
+ * A map is made in stages. The log is a snapshot that does not change while the map is made. prepare() goes
+ * through the whole log once and accumulates what the map needs from it, such as an index of the pixels or the
+ * totals of the bars, and finds the scale that the counts are normalised to. The painter it returns then
+ * colours any part of the map, tile by tile and on several threads, and MapGenerator encodes the result.
+ *
+ * The map types are found with ServiceLoader: a map type is added by putting a class that implements this
+ * interface, with a public constructor without parameters, on the class path and listing it in
+ * META-INF/services/mlog.MapRenderer. A renderer is created once and used for every map of its type, so any
+ * state it keeps between maps must be safe to use from several threads.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public interface MapRenderer {
+
+	/**
+	 * @return	The name of the map type, in capitals, e.g. "DOTMAP".
+	 */
+	String getMapType();
+
+	/**
+	 * Prepares a map of a log.
+	 *
+	 * @param context	The log, the size and the color of the map, and the scratch buffers to borrow from
+	 * @return	A painter of any part of the map.
+	 */
+	TilePainter prepare(RenderContext context);
+}
@@ -0,0 +1,117 @@
+package mlog;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the metrics of MLOG by name and shows them over JMX, where tools such as JConsole and VisualVM can
+ * read them from a running application.
+ *
+ * Metrics can be added before or after the registry is published to an MBean server; the ones added before are
+ * published along with it. Timers are looked up once, when the code that records them is set up, so the
+ * recording itself never goes through the registry.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class MetricsRegistry {
+
+	public static final String DOMAIN = "mlog";
+
+	private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+	private final ConcurrentHashMap<String, StageTimer> timers = new ConcurrentHashMap<String, StageTimer>();
+	private final Map<ObjectName, Object> beans = new TreeMap<ObjectName, Object>();
+	private MBeanServer server;
+
+	/**
+	 * @return	The registry shared by the whole application.
+	 */
+	public static MetricsRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Finds the timer of a stage, and creates it the first time it is asked for.
+	 *
+	 * @param name	The name of the stage, e.g. "render.DOTMAP.paint"
+	 * @return	The timer of the stage.
+	 */
+	public StageTimer timer(String name) {
+		StageTimer timer = this.timers.get(name);
+		if (timer == null) {
+			StageTimer created = new StageTimer(name);
+			timer = this.timers.putIfAbsent(name, created);
+			if (timer == null) {
+				timer = created;
+				this.add(objectName("StageTimer", name), created);
+			}
+		}
+		return timer;
+	}
+
+	/**
+	 * Adds an MBean to the registry, replacing any earlier MBean of the same type and name.
+	 *
+	 * @param type	The type of the MBean, e.g. "MouseLogger"
+	 * @param name	The name of the MBean, or null if there is only one of its type
+	 * @param bean	The MBean
+	 */
+	public void add(String type, String name, Object bean) {
+		this.add(objectName(type, name), bean);
+	}
+
+	/**
+	 * Publishes the metrics of the registry, and every metric added to it later, to an MBean server.
+	 *
+	 * @param server	The MBean server, normally ManagementFactory.getPlatformMBeanServer()
+	 */
+	public synchronized void publish(MBeanServer server) {
+		this.server = server;
+		for (Map.Entry<ObjectName, Object> bean : this.beans.entrySet()) {
+			this.register(bean.getKey(), bean.getValue());
+		}
+	}
+
+	/**
+	 * @return	The timers of all stages, sorted by name.
+	 */
+	public Map<String, StageTimer> getTimers() {
+		return new TreeMap<String, StageTimer>(this.timers);
+	}
+
+	private synchronized void add(ObjectName objectName, Object bean) {
+		this.beans.put(objectName, bean);
+		if (this.server != null) {
+			this.register(objectName, bean);
+		}
+	}
+
+	/**
+	 * Registers an MBean with the server, in place of any MBean registered under the same name before.
+	 */
+	private void register(ObjectName objectName, Object bean) {
+		try {
+			if (this.server.isRegistered(objectName)) {
+				this.server.unregisterMBean(objectName);
+			}
+			this.server.registerMBean(bean, objectName);
+		} catch (JMException jme) {
+			jme.printStackTrace();
+			System.err.println("The metrics " + objectName + " could not be published.");
+		}
+	}
+
+	private static ObjectName objectName(String type, String name) {
+		try {
+			return new ObjectName(DOMAIN + ":type=" + type + (name == null ? "" : ",name=" + ObjectName.quote(name)));
+		} catch (JMException jme) {
+			throw new IllegalArgumentException("Invalid metrics name: " + type + " " + name, jme);
+		}
+	}
+}
@@ -1,58 +1,129 @@
 package mlog;
 
-import java.awt.MouseInfo;
-import java.awt.PointerInfo;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Uses a HashMap of PixelPoints and Integers to log mouse pointer positions over time.
+ * Uses a ConcurrentPixelLog to log mouse pointer positions over time.
+ * The positions come from a PointerSource, normally the live mouse pointer.
+ * Other threads can take snapshots of the log while the mouse is being logged.
+ * The order and timing of the samples are kept in a TrajectoryBuffer.
+ * If a SessionFile is set, the log and the trajectory are checkpointed to it periodically.
+ * SampleListeners are told about every sample as soon as it has been logged.
+ * If a half-life is set, the samples are also weighed in a DecayingPixelLog, for maps of recent behaviour.
  * 
  * @author Filip stermark
- * @version 2013-05-27
+ * @version 2026-10-18
  */
 public class MouseLogger implements Runnable {
 
-	private long sleepTimeMillis;
-	private PointerInfo pointer;
-	private HashMap<PixelPoint, Integer> pixelTimeLog;
+	public static final int MIN_SAMPLE_RATE = 1;
+	public static final int MAX_SAMPLE_RATE = 1000;
+	private static final int IDLE_SAMPLES_BEFORE_BACKOFF = 8;
+	private static final long MAX_IDLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+	private static final long DWELL_INDEX_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private volatile long samplePeriodNanos;
+	private volatile Thread samplerThread;
+	private final PointerSource pointerSource;
+	private final Point pointer = new Point();
+	private volatile ConcurrentPixelLog pixelTimeLog;
+	private volatile DecayingPixelLog recentLog;
+	private volatile long halfLifeMillis;
+	private long loggedPeriods;
+	private volatile TrajectoryBuffer trajectory;
+	private volatile TrajectoryBuffer appendingTrajectory;
+	private volatile SessionFile session;
+	private ScheduledExecutorService checkpointExecutor;
+	private volatile SamplerStats samplerStats;
+	// Replaced rather than changed, so the sampler can loop over it without a lock and without allocating
+	private volatile SampleListener[] sampleListeners = new SampleListener[0];
 	private volatile boolean running;
+	private volatile int logClears;
+	private volatile PublishedDwellIndex dwellIndex;
+	private final ReentrantLock dwellIndexBuild = new ReentrantLock();
 
 	private final boolean DEBUG = false;
 
 	/**
-	 * Logs the mouse pointer position.
+	 * Logs the mouse pointer position at a fixed rate until the thread is interrupted.
+	 * 
+	 * Samples are scheduled against deadlines on System.nanoTime(), so the rate does not drift with the time
+	 * each sample takes. While the pointer stays in one place the time between samples is gradually stretched.
+	 * Every sample is weighted with the number of sample periods it stands for, including deadlines that were
+	 * missed, so the logged counts are always measured in sample periods. While paused the thread is parked.
+	 * Time is measured on the clock of the pointer source, and the thread also stops when the source has ended.
 	 */
 	@Override
 	public void run() {
-		while (true) {
-			while (!this.running) {
-				Thread.yield();
-				try {
-					Thread.sleep(this.sleepTimeMillis);
-				} catch (InterruptedException ie) {
-					ie.printStackTrace();
-					// TODO: Catch exception
-				}
+		this.samplerThread = Thread.currentThread();
+		PointerSource source = this.pointerSource;
+		long deadline = source.nanoTime();
+		int stride = 1;
+		int unchangedSamples = 0;
+		int lastX = Integer.MIN_VALUE;
+		int lastY = Integer.MIN_VALUE;
+		while (!Thread.currentThread().isInterrupted() && !source.hasEnded()) {
+			if (!this.running) {
+				LockSupport.park(this);
+				// Start over with a fresh schedule once the logger is started again
+				deadline = source.nanoTime();
+				stride = 1;
+				unchangedSamples = 0;
+				continue;
 			}
-			this.pointer = MouseInfo.getPointerInfo();
-			PixelPoint currentPointerLocation = new PixelPoint(this.pointer.getLocation());
-			this.updatePixelTime(currentPointerLocation);
-
-			if (DEBUG) {
-				int mouseX = (int) currentPointerLocation.getX();
-				int mouseY = (int) currentPointerLocation.getY();
-				System.out.println("{ " + mouseX + " ; " + mouseY + " }");
+			long now = source.nanoTime();
+			if (now < deadline) {
+				source.parkUntil(this, deadline);
+				continue;
 			}
 
-			try {
-				Thread.sleep(this.sleepTimeMillis);
-			} catch (InterruptedException ie) {
-				ie.printStackTrace();
-				// TODO: Catch exception
+			long period = this.samplePeriodNanos;
+			long maxStride = Math.max(1L, MAX_IDLE_INTERVAL_NANOS / period);
+			long jitter = now - deadline;
+			long missed = jitter / period;
+			long queryStart = System.nanoTime();
+			boolean known = source.readPointer(now, this.pointer);
+			long pointerQueryNanos = System.nanoTime() - queryStart;
+			if (known) {
+				Point currentPointerLocation = this.pointer;
+				if (currentPointerLocation.x == lastX && currentPointerLocation.y == lastY) {
+					if (++unchangedSamples >= IDLE_SAMPLES_BEFORE_BACKOFF) {
+						stride = (int) Math.min(2L * stride, maxStride);
+					}
+				} else {
+					lastX = currentPointerLocation.x;
+					lastY = currentPointerLocation.y;
+					unchangedSamples = 0;
+					stride = 1;
+				}
+				// Long gaps, like a suspended computer, are not credited to the pointer position in full
+				int periods = (int) (Math.min(missed, maxStride) + stride);
+				this.updatePixelTime(lastX, lastY, periods);
+				this.appendTrajectory(now, lastX, lastY, periods);
+				SampleListener[] listeners = this.sampleListeners;
+				for (int i = 0; i < listeners.length; i++) {
+					listeners[i].sampleLogged(lastX, lastY, periods);
+				}
+
+				if (DEBUG) {
+					System.out.println("{ " + lastX + " ; " + lastY + " }");
+				}
 			}
+			this.samplerStats.recordSample(now, jitter, missed, stride, pointerQueryNanos);
+			deadline += (missed + stride) * period;
 		}
 	}
 
@@ -62,9 +133,252 @@ public class MouseLogger implements Runnable {
 	 * @param sleepTimeMillis	The amount of sleep between mouse pointer position log updates
 	 */
 	public MouseLogger(long sleepTimeMillis) {
-		this.sleepTimeMillis = sleepTimeMillis;
+		this(sleepTimeMillis, new AwtPointerSource());
+	}
+
+	/**
+	 * Creates a new MouseLogger that logs the positions of a pointer source with a given time interval,
+	 * for example a replayed session or a synthetic pointer.
+	 * 
+	 * @param sleepTimeMillis	The amount of sleep between mouse pointer position log updates
+	 * @param pointerSource		The source of the pointer positions and of the time
+	 */
+	public MouseLogger(long sleepTimeMillis, PointerSource pointerSource) {
+		this.samplePeriodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, sleepTimeMillis));
 		this.running = false;
-		this.pixelTimeLog = new HashMap<PixelPoint, Integer>();
+		this.pointerSource = pointerSource;
+		this.pixelTimeLog = new ConcurrentPixelLog(pointerSource.getBounds());
+		this.samplerStats = new SamplerStats();
+		this.trajectory = createTrajectoryBuffer(pointerSource.nanoTime(), TrajectoryBuffer.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a trajectory buffer that spills to a temporary file.
+	 * If no temporary file can be created, old records are dropped instead.
+	 * 
+	 * @param startNanos	The time the trajectory starts, on the clock of the pointer source, normally its current time
+	 * @param capacity		The number of records to keep in memory
+	 * @return	The new trajectory buffer.
+	 */
+	public static TrajectoryBuffer createTrajectoryBuffer(long startNanos, int capacity) {
+		try {
+			File spillFile = File.createTempFile("mlog-trajectory", ".bin");
+			spillFile.deleteOnExit();
+			return new TrajectoryBuffer(startNanos, capacity, spillFile);
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			System.err.println("No trajectory spill file could be created. Old trajectory records will be dropped.");
+		}
+		try {
+			return new TrajectoryBuffer(startNanos, capacity, null);
+		} catch (IOException ioe) {
+			// Cannot happen without a spill file
+			throw new IllegalStateException(ioe);
+		}
+	}
+
+	/**
+	 * Replaces the trajectory buffer, for example to change its capacity. The old buffer is closed once the
+	 * sampler has stopped appending to it. Safe to call while the mouse is being logged.
+	 * 
+	 * @param trajectory	The new trajectory buffer
+	 */
+	public synchronized void setTrajectoryBuffer(TrajectoryBuffer trajectory) {
+		TrajectoryBuffer old = this.trajectory;
+		this.trajectory = trajectory;
+		// The sampler can at most be in the middle of a single append to the old buffer
+		while (this.appendingTrajectory == old) {
+			Thread.yield();
+		}
+		old.close();
+	}
+
+	/**
+	 * Appends a sample to the trajectory buffer. Called from the sampling thread only.
+	 */
+	private void appendTrajectory(long nanoTime, int x, int y, int periods) {
+		TrajectoryBuffer buffer;
+		// Announce which buffer is about to be written, then make sure it was not replaced meanwhile
+		do {
+			buffer = this.trajectory;
+			this.appendingTrajectory = buffer;
+		} while (buffer != this.trajectory);
+		buffer.append(nanoTime, x, y, periods);
+		this.appendingTrajectory = null;
+	}
+
+	/**
+	 * Makes the logger continue from a session file and checkpoint to it periodically, as well as when it is
+	 * paused and when the program exits. The log is replaced by the counts in the session file, and the sample
+	 * rate is set to the one the session was logged with, through setSampleRate, since the counts are measured in
+	 * its sample periods. Must not be called while the mouse is being logged.
+	 * 
+	 * @param sessionFile					The session file to continue from and checkpoint to
+	 * @param checkpointIntervalMillis		The time between two periodic checkpoints
+	 * @throws IOException	If the counts could not be read from the session file
+	 */
+	public synchronized void setSessionFile(SessionFile sessionFile, long checkpointIntervalMillis) throws IOException {
+		if (this.running) {
+			throw new IllegalStateException("The session file cannot be changed while the mouse is being logged");
+		}
+		this.pixelTimeLog = new ConcurrentPixelLog(sessionFile.readCounts());
+		this.setSampleRate((int) Math.round((double) TimeUnit.SECONDS.toNanos(1) / sessionFile.getSamplePeriodNanos()));
+		this.session = sessionFile;
+		if (this.checkpointExecutor == null) {
+			this.checkpointExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "MLOG checkpoint");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			Runnable checkpointTask = new Runnable() {
+				@Override
+				public void run() {
+					checkpoint();
+				}
+			};
+			this.checkpointExecutor.scheduleWithFixedDelay(checkpointTask, checkpointIntervalMillis, checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+			Runtime.getRuntime().addShutdownHook(new Thread(checkpointTask, "MLOG final checkpoint"));
+		}
+	}
+
+	/**
+	 * Writes a checkpoint of the log and the trajectory to the session file, if there is one.
+	 */
+	public void checkpoint() {
+		SessionFile currentSession = this.session;
+		if (currentSession != null) {
+			try {
+				// The trajectory is timed on the clock of the pointer source, which need not be the system clock
+				currentSession.checkpoint(this.getPixelTimeLog(), this.trajectory, this.pointerSource.nanoTime());
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+				System.err.println("The session could not be saved to " + currentSession.getFile() + ".");
+			}
+		}
+	}
+
+	/**
+	 * @return	The session file that the log is checkpointed to, or null if there is none.
+	 */
+	public SessionFile getSessionFile() {
+		return this.session;
+	}
+
+	/**
+	 * @return	The source of the pointer positions and of the time.
+	 */
+	public PointerSource getPointerSource() {
+		return this.pointerSource;
+	}
+
+	/**
+	 * @return	The order and timing of the logged mouse pointer positions.
+	 */
+	public TrajectoryBuffer getTrajectoryBuffer() {
+		return this.trajectory;
+	}
+
+	/**
+	 * Adds a listener that is told about every sample from now on, on the sampling thread.
+	 * 
+	 * @param listener	The listener to add
+	 */
+	public synchronized void addSampleListener(SampleListener listener) {
+		SampleListener[] listeners = Arrays.copyOf(this.sampleListeners, this.sampleListeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+		this.sampleListeners = listeners;
+	}
+
+	/**
+	 * Removes a listener that was added with addSampleListener.
+	 * 
+	 * @param listener	The listener to remove
+	 */
+	public synchronized void removeSampleListener(SampleListener listener) {
+		SampleListener[] listeners = this.sampleListeners;
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i].equals(listener)) {
+				SampleListener[] remaining = Arrays.copyOf(listeners, listeners.length - 1);
+				System.arraycopy(listeners, i + 1, remaining, i, listeners.length - i - 1);
+				this.sampleListeners = remaining;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Sets how many times per second the mouse pointer position is logged.
+	 * The rate is clamped to the range from MIN_SAMPLE_RATE to MAX_SAMPLE_RATE.
+	 * 
+	 * @param samplesPerSecond	The number of samples per second
+	 */
+	public synchronized void setSampleRate(int samplesPerSecond) {
+		int rate = Math.max(MIN_SAMPLE_RATE, Math.min(MAX_SAMPLE_RATE, samplesPerSecond));
+		this.samplePeriodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+		// The recent log decays in sample periods, so its half-life is measured again in the new periods
+		DecayingPixelLog recent = this.recentLog;
+		if (recent != null) {
+			recent.setHalfLife(this.getHalfLifePeriods());
+		}
+	}
+
+	/**
+	 * Makes maps show what the pointer did lately: the weight of every sample in getRecentPixelTimeLog halves
+	 * each half-life of logging time after it was taken. The full log, which is saved to the session file, keeps
+	 * every sample. The recent log starts out empty when a half-life is first set, since the times of earlier
+	 * samples are not known.
+	 * 
+	 * @param halfLifeMillis	The half-life, in milliseconds of logging time, or 0 to stop decaying and show the
+	 * 							full log in maps again
+	 */
+	public synchronized void setHalfLife(long halfLifeMillis) {
+		this.halfLifeMillis = Math.max(0, halfLifeMillis);
+		if (this.halfLifeMillis == 0) {
+			this.recentLog = null;
+		} else if (this.recentLog == null) {
+			this.recentLog = new DecayingPixelLog(this.pointerSource.getBounds(), this.getHalfLifePeriods());
+		} else {
+			this.recentLog.setHalfLife(this.getHalfLifePeriods());
+		}
+	}
+
+	/**
+	 * @return	The half-life of the recent log, in milliseconds of logging time, or 0 if the log does not decay.
+	 */
+	public long getHalfLifeMillis() {
+		return this.halfLifeMillis;
+	}
+
+	/**
+	 * @return	The half-life of the recent log, in sample periods at the current sample rate.
+	 */
+	public double getHalfLifePeriods() {
+		return (double) TimeUnit.MILLISECONDS.toNanos(this.halfLifeMillis) / this.samplePeriodNanos;
+	}
+
+	/**
+	 * @return	The number of samples per second, when the pointer is moving.
+	 */
+	public double getSampleRate() {
+		return (double) TimeUnit.SECONDS.toNanos(1) / this.samplePeriodNanos;
+	}
+
+	/**
+	 * @return	The time between two samples when the pointer is moving, in nanoseconds.
+	 */
+	public long getSamplePeriodNanos() {
+		return this.samplePeriodNanos;
+	}
+
+	/**
+	 * @return	Statistics about how well the sampler keeps to its schedule, since the logger was created or last
+	 * 			reset. A reset starts new statistics instead of clearing these.
+	 */
+	public SamplerStats getSamplerStats() {
+		return this.samplerStats;
 	}
 
 	/**
@@ -72,6 +386,10 @@ public class MouseLogger implements Runnable {
 	 */
 	public void start() {
 		this.running = true;
+		Thread sampler = this.samplerThread;
+		if (sampler != null) {
+			LockSupport.unpark(sampler);
+		}
 	}
 
 	/**
@@ -82,6 +400,14 @@ public class MouseLogger implements Runnable {
 	public void pause() throws InterruptedException
 	{
 		this.running = false;
+		if (this.checkpointExecutor != null) {
+			this.checkpointExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					checkpoint();
+				}
+			});
+		}
 	}
 
 	/**
@@ -96,6 +422,24 @@ public class MouseLogger implements Runnable {
 	 */
 	public void clearLog() {
 		this.pixelTimeLog.clear();
+		DecayingPixelLog recent = this.recentLog;
+		if (recent != null) {
+			recent.clear();
+		}
+		this.logClears++;
+		SampleListener[] listeners = this.sampleListeners;
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].logCleared();
+		}
+		SessionFile currentSession = this.session;
+		if (currentSession != null) {
+			try {
+				currentSession.reset();
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+				System.err.println("The session file could not be reset.");
+			}
+		}
 	}
 	
 	/**
@@ -103,6 +447,9 @@ public class MouseLogger implements Runnable {
 	 */
 	public void reset() {
 		clearLog();
+		this.setTrajectoryBuffer(createTrajectoryBuffer(this.pointerSource.nanoTime(), this.trajectory.getCapacity()));
+		// The sampler thread owns the fields of its statistics, so they are replaced rather than cleared under it
+		this.samplerStats = new SamplerStats();
 		//this.totalRuntime = 0;
 	}
 	
@@ -114,34 +461,150 @@ public class MouseLogger implements Runnable {
 	public void printLog() {
 		if (DEBUG) {
 			System.out.println("---MOUSE LOG---");
-			Set<Entry<PixelPoint, Integer>> loggedPositionListKeySet = this.pixelTimeLog.entrySet();
-			Iterator<Entry<PixelPoint, Integer>> it = loggedPositionListKeySet.iterator();
-			while (it.hasNext()) {
-				Entry<PixelPoint, Integer> entry = it.next();
-				System.out.println("PIXEL: " + entry.getKey() + " , TIME: " + entry.getValue());
-			}
+			this.getPixelTimeLog().forEach(new PixelVisitor() {
+				@Override
+				public void visit(int x, int y, int count) {
+					System.out.println("PIXEL: { " + x + " ; " + y + " } , TIME: " + count);
+				}
+			});
 			System.out.println("---------------");
 		}
 	}
 
 	/**
-	 * @return	The log of the mouse pointer positions over time.
+	 * Takes a snapshot of the log. Safe to call from any thread while the mouse is being logged.
+	 * 
+	 * @return	The log of the mouse pointer positions over time, as it was when the method was called.
 	 */
-	public HashMap<PixelPoint, Integer> getPixelTimeLog() {
-		return this.pixelTimeLog;
+	public PixelCountStore getPixelTimeLog() {
+		return this.pixelTimeLog.snapshot();
 	}
 
 	/**
-	 * Updates the log of mouse pointer positions over time.
-	 * The value is incremented if the pixel was previously visited, otherwise it is set to 1.
+	 * Takes a snapshot of the log to draw maps from. If a half-life is set, the counts are the decayed weights of
+	 * the samples, see setHalfLife; otherwise this is the same as getPixelTimeLog. Safe to call from any thread
+	 * while the mouse is being logged.
+	 * 
+	 * @return	The recent log of the mouse pointer positions, as it was when the method was called.
 	 */
-	private void updatePixelTime(PixelPoint pixel) {
-		Integer currentPixelTime;
-		// Check if the pixel was previously visited
-		if ((currentPixelTime = pixelTimeLog.get(pixel)) != null) {
-			this.pixelTimeLog.put(pixel, currentPixelTime + 1);
+	public PixelCountStore getRecentPixelTimeLog() {
+		DecayingPixelLog recent = this.recentLog;
+		return recent != null ? recent.snapshot() : this.pixelTimeLog.snapshot();
+	}
+
+	/**
+	 * Finds how long the pointer stayed inside any rectangle of the virtual desktop, see DwellIndex. The index is
+	 * built from a snapshot of the log, at most once a second while the mouse is being logged, and shared by all
+	 * callers in between, so it may miss the samples of the last second. After the log is cleared or replaced, the
+	 * next call waits for a new index. Building it does not hold up the logger. Safe to call from any thread while
+	 * the mouse is being logged.
+	 * 
+	 * @return	An index of the log as it was at most about a second before the method was called.
+	 */
+	public DwellIndex getDwellIndex() {
+		PublishedDwellIndex published = this.dwellIndex;
+		if (published != null && published.isCurrent(this.pixelTimeLog, this.logClears)
+				&& System.nanoTime() - published.builtNanos < DWELL_INDEX_INTERVAL_NANOS) {
+			return published.index;
+		}
+		// While another caller builds a new index, the one before it is good enough, unless the log was cleared
+		if (published != null && published.isCurrent(this.pixelTimeLog, this.logClears)) {
+			if (!this.dwellIndexBuild.tryLock()) {
+				return published.index;
+			}
 		} else {
-			this.pixelTimeLog.put(pixel, 1);
+			this.dwellIndexBuild.lock();
+		}
+		try {
+			ConcurrentPixelLog log = this.pixelTimeLog;
+			int clears = this.logClears;
+			published = this.dwellIndex;
+			if (published != null && published.isCurrent(log, clears)
+					&& System.nanoTime() - published.builtNanos < DWELL_INDEX_INTERVAL_NANOS) {
+				return published.index;
+			}
+			PixelCountStore snapshot = log.snapshot();
+			// Counts only grow until the log is cleared, so an equal total in the same log means nothing changed
+			DwellIndex index = published != null && published.isCurrent(log, clears)
+					&& published.total == snapshot.getTotalCount()
+					? published.index : DwellIndex.of(snapshot, this.pointerSource.getBounds());
+			published = new PublishedDwellIndex(index, log, clears, snapshot.getTotalCount(), System.nanoTime());
+			this.dwellIndex = published;
+			return published.index;
+		} finally {
+			this.dwellIndexBuild.unlock();
+		}
+	}
+
+	/**
+	 * A dwell index together with the log it was built from.
+	 */
+	private static final class PublishedDwellIndex {
+		final DwellIndex index;
+		final ConcurrentPixelLog log;
+		final int clears;
+		final long total;
+		final long builtNanos;
+
+		PublishedDwellIndex(DwellIndex index, ConcurrentPixelLog log, int clears, long total, long builtNanos) {
+			this.index = index;
+			this.log = log;
+			this.clears = clears;
+			this.total = total;
+			this.builtNanos = builtNanos;
+		}
+
+		/**
+		 * @return	True if the index was built from the given log since it was last cleared.
+		 */
+		boolean isCurrent(ConcurrentPixelLog currentLog, int currentClears) {
+			return this.log == currentLog && this.clears == currentClears;
+		}
+	}
+
+	/**
+	 * @return	The number of distinct pixels in the log.
+	 */
+	public int getLogSize() {
+		return this.pixelTimeLog.size();
+	}
+
+	/**
+	 * @return	An estimate of the heap memory used by the log, in bytes.
+	 */
+	public long estimateLogMemoryBytes() {
+		DecayingPixelLog recent = this.recentLog;
+		return this.pixelTimeLog.estimateMemoryBytes() + (recent != null ? recent.estimateMemoryBytes() : 0);
+	}
+
+	/**
+	 * Updates the log of mouse pointer positions over time.
+	 * The value is increased by the number of sample periods that the sample stands for.
+	 */
+	private void updatePixelTime(int x, int y, int periods) {
+		this.pixelTimeLog.add(x, y, periods);
+		this.loggedPeriods += periods;
+		DecayingPixelLog recent = this.recentLog;
+		if (recent != null) {
+			recent.add(x, y, periods, this.loggedPeriods);
+		}
+	}
+
+	/**
+	 * Finds the bounds of the virtual desktop, i.e. the union of the bounds of all screens.
+	 * 
+	 * @return	The virtual desktop bounds, or an empty rectangle if there is no display.
+	 */
+	public static Rectangle getVirtualScreenBounds() {
+		Rectangle virtualBounds = null;
+		try {
+			for (GraphicsDevice device : GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices()) {
+				Rectangle deviceBounds = device.getDefaultConfiguration().getBounds();
+				virtualBounds = virtualBounds == null ? deviceBounds : virtualBounds.union(deviceBounds);
+			}
+		} catch (HeadlessException he) {
+			// Without a display every pixel ends up outside the dense area of the store
 		}
+		return virtualBounds == null ? new Rectangle() : virtualBounds;
 	}
 }
@@ -0,0 +1,631 @@
+package mlog;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Counts how many times each pixel has been logged, using primitive ints only.
+ *
+ * Pixels inside the dense area (normally the virtual desktop) are kept in square int[] tiles that are
+ * allocated the first time a pixel inside them is logged. Pixels outside the dense area fall back to an
+ * open-addressing table keyed on the packed coordinates, so huge and mostly empty desktops stay cheap.
+ * Once a tile exists, incrementing a pixel never allocates. A count stops at Integer.MAX_VALUE instead of
+ * wrapping around, e.g. when many long sessions are merged.
+ *
+ * Pixels outside the dense area are sorted into tile sized squares the first time forEachIn needs them, so
+ * visiting a small area only looks at the few of them that are near it.
+ *
+ * Snapshots share their tiles with the store they were taken from. A shared tile is copied the first time
+ * either store writes to it, so a snapshot never changes after it has been taken.
+ *
+ * A PixelCountStore is not thread safe.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class PixelCountStore {
+
+	public static final int TILE_SHIFT = 6;
+	public static final int TILE_SIZE = 1 << TILE_SHIFT;
+	private static final int TILE_MASK = TILE_SIZE - 1;
+	private static final int TILE_AREA = TILE_SIZE * TILE_SIZE;
+	private static final byte TILE_SHARED = 1;
+	private static final byte TILE_DIRTY = 2;
+
+	private final int originX;
+	private final int originY;
+	private final int width;
+	private final int height;
+	private final int tilesX;
+	private final int tilesY;
+	private int[][] tiles;
+	private byte[] tileFlags;
+	private int[] dirtyTiles;
+	private int dirtyTileCount;
+	private LongIntTable sparse;
+	// Built on demand and dropped whenever the sparse table gains or loses pixels, see sparseIndex()
+	private volatile SparseIndex sparseIndex;
+	private int distinct;
+	private long total;
+
+	/**
+	 * Creates a new, empty PixelCountStore with the given dense area.
+	 *
+	 * @param denseBounds	The area where pixels are stored in tiles, normally the virtual desktop
+	 */
+	public PixelCountStore(Rectangle denseBounds) {
+		this(denseBounds.x, denseBounds.y, denseBounds.width, denseBounds.height);
+	}
+
+	/**
+	 * Creates a new, empty PixelCountStore with the given dense area.
+	 *
+	 * @param originX	The x coordinate of the top left corner of the dense area
+	 * @param originY	The y coordinate of the top left corner of the dense area
+	 * @param width		The width of the dense area
+	 * @param height	The height of the dense area
+	 */
+	public PixelCountStore(int originX, int originY, int width, int height) {
+		this.originX = originX;
+		this.originY = originY;
+		this.width = Math.max(0, width);
+		this.height = Math.max(0, height);
+		this.tilesX = (this.width + TILE_MASK) >> TILE_SHIFT;
+		this.tilesY = (this.height + TILE_MASK) >> TILE_SHIFT;
+		this.tiles = new int[this.tilesX * this.tilesY][];
+		this.tileFlags = new byte[this.tiles.length];
+		this.dirtyTiles = new int[this.tiles.length];
+		this.sparse = new LongIntTable();
+	}
+
+	/**
+	 * Increments the count of a pixel by one.
+	 *
+	 * @param x	The x coordinate of the pixel
+	 * @param y	The y coordinate of the pixel
+	 */
+	public void increment(int x, int y) {
+		this.add(x, y, 1);
+	}
+
+	/**
+	 * Adds to the count of a pixel.
+	 *
+	 * @param x		The x coordinate of the pixel
+	 * @param y		The y coordinate of the pixel
+	 * @param count	The (positive) amount to add
+	 */
+	public void add(int x, int y, int count) {
+		int dx = x - this.originX;
+		int dy = y - this.originY;
+		int previous;
+		if (dx >= 0 && dy >= 0 && dx < this.width && dy < this.height) {
+			int tileIndex = (dy >> TILE_SHIFT) * this.tilesX + (dx >> TILE_SHIFT);
+			// Only tiles that are missing, shared or not yet marked as dirty need any extra work
+			int[] tile = this.tileFlags[tileIndex] == TILE_DIRTY ? this.tiles[tileIndex] : this.writableTile(tileIndex);
+			int cell = ((dy & TILE_MASK) << TILE_SHIFT) | (dx & TILE_MASK);
+			previous = tile[cell];
+			tile[cell] = saturatedAdd(previous, count);
+		} else {
+			previous = this.sparse.add(LongIntTable.pack(x, y), count);
+			if (previous == 0) {
+				this.sparseIndex = null;
+			}
+		}
+		if (previous == 0) {
+			this.distinct++;
+		}
+		this.total += saturatedAdd(previous, count) - previous;
+	}
+
+	/**
+	 * @param count	A count of at least 0
+	 * @param delta	The amount to add, at least 0
+	 * @return	The sum, or Integer.MAX_VALUE if it does not fit in an int.
+	 */
+	static int saturatedAdd(int count, int delta) {
+		int sum = count + delta;
+		// Neither is negative, so an overflow always ends up below 0
+		return sum < 0 ? Integer.MAX_VALUE : sum;
+	}
+
+	/**
+	 * Makes sure a tile exists and is owned by this store, and marks it as dirty.
+	 *
+	 * @param tileIndex	The index of the tile
+	 * @return	The tile, ready to be written to.
+	 */
+	private int[] writableTile(int tileIndex) {
+		int[] tile = this.tiles[tileIndex];
+		if (tile == null) {
+			tile = new int[TILE_AREA];
+			this.tiles[tileIndex] = tile;
+		} else if ((this.tileFlags[tileIndex] & TILE_SHARED) != 0) {
+			tile = tile.clone();
+			this.tiles[tileIndex] = tile;
+		}
+		if ((this.tileFlags[tileIndex] & TILE_DIRTY) == 0) {
+			this.dirtyTiles[this.dirtyTileCount++] = tileIndex;
+		}
+		this.tileFlags[tileIndex] = TILE_DIRTY;
+		return tile;
+	}
+
+	/**
+	 * @param x	The x coordinate of the pixel
+	 * @param y	The y coordinate of the pixel
+	 * @return	The number of times the pixel has been logged.
+	 */
+	public int get(int x, int y) {
+		int dx = x - this.originX;
+		int dy = y - this.originY;
+		if (dx >= 0 && dy >= 0 && dx < this.width && dy < this.height) {
+			int[] tile = this.tiles[(dy >> TILE_SHIFT) * this.tilesX + (dx >> TILE_SHIFT)];
+			return tile == null ? 0 : tile[((dy & TILE_MASK) << TILE_SHIFT) | (dx & TILE_MASK)];
+		}
+		return this.sparse.get(LongIntTable.pack(x, y));
+	}
+
+	/**
+	 * Calls the visitor once for every logged pixel. Dense pixels are visited tile by tile, followed by the
+	 * pixels outside the dense area.
+	 *
+	 * @param visitor	The visitor to call
+	 */
+	public void forEach(PixelVisitor visitor) {
+		for (int tileY = 0; tileY < this.tilesY; tileY++) {
+			for (int tileX = 0; tileX < this.tilesX; tileX++) {
+				int[] tile = this.tiles[tileY * this.tilesX + tileX];
+				if (tile == null) {
+					continue;
+				}
+				int baseX = this.originX + (tileX << TILE_SHIFT);
+				int baseY = this.originY + (tileY << TILE_SHIFT);
+				for (int cell = 0; cell < TILE_AREA; cell++) {
+					if (tile[cell] != 0) {
+						visitor.visit(baseX + (cell & TILE_MASK), baseY + (cell >> TILE_SHIFT), tile[cell]);
+					}
+				}
+			}
+		}
+		this.forEachSparse(visitor);
+	}
+
+	/**
+	 * Calls the visitor once for every logged pixel inside an area, in the same order as forEach visits them.
+	 * Only the tiles that overlap the area are looked at.
+	 *
+	 * @param area		The area to visit the pixels of
+	 * @param visitor	The visitor to call
+	 */
+	public void forEachIn(Rectangle area, PixelVisitor visitor) {
+		long left = Math.max((long) area.x - this.originX, 0);
+		long top = Math.max((long) area.y - this.originY, 0);
+		long right = Math.min((long) area.x + area.width - this.originX, this.width);
+		long bottom = Math.min((long) area.y + area.height - this.originY, this.height);
+		if (left < right && top < bottom) {
+			for (int tileY = (int) (top >> TILE_SHIFT); tileY <= (int) ((bottom - 1) >> TILE_SHIFT); tileY++) {
+				for (int tileX = (int) (left >> TILE_SHIFT); tileX <= (int) ((right - 1) >> TILE_SHIFT); tileX++) {
+					int[] tile = this.tiles[tileY * this.tilesX + tileX];
+					if (tile == null) {
+						continue;
+					}
+					int baseX = tileX << TILE_SHIFT;
+					int baseY = tileY << TILE_SHIFT;
+					// The part of the tile inside the area, relative to the tile
+					int fromX = (int) Math.max(left - baseX, 0);
+					int toX = (int) Math.min(right - baseX, TILE_SIZE);
+					int fromY = (int) Math.max(top - baseY, 0);
+					int toY = (int) Math.min(bottom - baseY, TILE_SIZE);
+					for (int cellY = fromY; cellY < toY; cellY++) {
+						for (int cellX = fromX; cellX < toX; cellX++) {
+							int count = tile[(cellY << TILE_SHIFT) | cellX];
+							if (count != 0) {
+								visitor.visit(this.originX + baseX + cellX, this.originY + baseY + cellY, count);
+							}
+						}
+					}
+				}
+			}
+		}
+		if (this.sparse.size() > 0 && area.width > 0 && area.height > 0) {
+			int[] slots = this.sparseIndex().slotsIn(area);
+			for (int slot : slots) {
+				int count = this.sparse.valueAt(slot);
+				if (count != 0) {
+					long key = this.sparse.keyAt(slot);
+					int x = LongIntTable.unpackX(key);
+					int y = LongIntTable.unpackY(key);
+					if (area.contains(x, y)) {
+						visitor.visit(x, y, count);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Snapshots are painted by several threads at once, so two of them may both build the index. Either copy
+	 * is complete when it is published.
+	 *
+	 * @return	The squares of the pixels outside the dense area, built now if they are not known yet.
+	 */
+	private SparseIndex sparseIndex() {
+		SparseIndex index = this.sparseIndex;
+		if (index == null) {
+			index = new SparseIndex(this.sparse);
+			this.sparseIndex = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Copies the logged pixels into parallel arrays, in the same order as forEach visits them.
+	 *
+	 * @param xs		Receives the x coordinates, must have room for size() elements
+	 * @param ys		Receives the y coordinates, must have room for size() elements
+	 * @param counts	Receives the counts, must have room for size() elements, or null if not needed
+	 */
+	public void copyTo(final int[] xs, final int[] ys, final int[] counts) {
+		this.forEach(new PixelVisitor() {
+			private int index = 0;
+			@Override
+			public void visit(int x, int y, int count) {
+				xs[index] = x;
+				ys[index] = y;
+				if (counts != null) {
+					counts[index] = count;
+				}
+				index++;
+			}
+		});
+	}
+
+	/**
+	 * Adds all the counts of another store to this store.
+	 * If both stores have the same dense area, the counts are added a whole tile at a time.
+	 *
+	 * @param other	The store to add
+	 */
+	public void addAll(PixelCountStore other) {
+		if (other.originX == this.originX && other.originY == this.originY
+				&& other.width == this.width && other.height == this.height) {
+			for (int tileIndex = 0; tileIndex < other.tiles.length; tileIndex++) {
+				if (other.tiles[tileIndex] != null) {
+					this.addTile(tileIndex, other.tiles[tileIndex]);
+				}
+			}
+			other.forEachSparse(new PixelVisitor() {
+				@Override
+				public void visit(int x, int y, int count) {
+					add(x, y, count);
+				}
+			});
+			return;
+		}
+		other.forEach(new PixelVisitor() {
+			@Override
+			public void visit(int x, int y, int count) {
+				add(x, y, count);
+			}
+		});
+	}
+
+	/**
+	 * Moves all counts of this store into another store with the same dense area, leaving this store empty.
+	 * Only the tiles written to since the last drain are visited, so draining a store that saw few
+	 * updates is cheap however large the dense area is.
+	 *
+	 * @param target	The store to add the counts to
+	 */
+	void drainInto(PixelCountStore target) {
+		for (int i = 0; i < this.dirtyTileCount; i++) {
+			int tileIndex = this.dirtyTiles[i];
+			int[] source = this.tiles[tileIndex];
+			int[] destination = target.writableTile(tileIndex);
+			for (int cell = 0; cell < TILE_AREA; cell++) {
+				int count = source[cell];
+				if (count != 0) {
+					int previous = destination[cell];
+					if (previous == 0) {
+						target.distinct++;
+					}
+					destination[cell] = saturatedAdd(previous, count);
+					target.total += destination[cell] - previous;
+					source[cell] = 0;
+				}
+			}
+			this.tileFlags[tileIndex] = 0;
+		}
+		this.dirtyTileCount = 0;
+		if (this.sparse.size() != 0) {
+			for (int slot = 0; slot < this.sparse.capacity(); slot++) {
+				int count = this.sparse.valueAt(slot);
+				if (count != 0) {
+					// Both stores have the same dense area, so sparse pixels stay sparse in the target
+					int previous = target.sparse.add(this.sparse.keyAt(slot), count);
+					if (previous == 0) {
+						target.sparseIndex = null;
+					}
+					if (previous == 0) {
+						target.distinct++;
+					}
+					target.total += saturatedAdd(previous, count) - previous;
+				}
+			}
+			this.sparse.clear();
+			this.sparseIndex = null;
+		}
+		this.total = 0;
+		this.distinct = 0;
+	}
+
+	/**
+	 * Takes a snapshot of the store. The snapshot shares all tiles with this store; whichever of the two
+	 * writes to a shared tile first gets its own copy of it.
+	 *
+	 * @return	A snapshot of the store.
+	 */
+	public PixelCountStore snapshot() {
+		PixelCountStore snapshot = new PixelCountStore(this.originX, this.originY, this.width, this.height);
+		snapshot.tiles = this.tiles.clone();
+		for (int i = 0; i < this.tiles.length; i++) {
+			if (this.tiles[i] != null) {
+				this.tileFlags[i] |= TILE_SHARED;
+				snapshot.tileFlags[i] = TILE_SHARED;
+			}
+		}
+		snapshot.sparse = this.sparse.copy();
+		snapshot.distinct = this.distinct;
+		snapshot.total = this.total;
+		return snapshot;
+	}
+
+	/**
+	 * @return	A deep copy of the store.
+	 */
+	public PixelCountStore copy() {
+		PixelCountStore copy = new PixelCountStore(this.originX, this.originY, this.width, this.height);
+		for (int i = 0; i < this.tiles.length; i++) {
+			if (this.tiles[i] != null) {
+				copy.tiles[i] = this.tiles[i].clone();
+			}
+		}
+		copy.sparse = this.sparse.copy();
+		copy.distinct = this.distinct;
+		copy.total = this.total;
+		return copy;
+	}
+
+	/**
+	 * Forgets all logged pixels. Allocated tiles are kept and reused, unless they are shared with a snapshot.
+	 */
+	public void clear() {
+		for (int i = 0; i < this.tiles.length; i++) {
+			if ((this.tileFlags[i] & TILE_SHARED) != 0) {
+				this.tiles[i] = null;
+			} else if (this.tiles[i] != null) {
+				Arrays.fill(this.tiles[i], 0);
+			}
+			this.tileFlags[i] = 0;
+		}
+		this.dirtyTileCount = 0;
+		this.sparse.clear();
+		this.sparseIndex = null;
+		this.distinct = 0;
+		this.total = 0;
+	}
+
+	/**
+	 * @return	The number of distinct pixels that have been logged.
+	 */
+	public int size() {
+		return this.distinct;
+	}
+
+	/**
+	 * @return	True if no pixel has been logged, false if not.
+	 */
+	public boolean isEmpty() {
+		return this.distinct == 0;
+	}
+
+	/**
+	 * @return	The sum of the counts of all pixels.
+	 */
+	public long getTotalCount() {
+		return this.total;
+	}
+
+	/**
+	 * @return	The area where pixels are stored in tiles.
+	 */
+	public Rectangle getDenseBounds() {
+		return new Rectangle(this.originX, this.originY, this.width, this.height);
+	}
+
+	/**
+	 * @return	The number of tiles in the dense area.
+	 */
+	int getTileCount() {
+		return this.tiles.length;
+	}
+
+	/**
+	 * @return	The number of tile columns in the dense area.
+	 */
+	int getTileColumns() {
+		return this.tilesX;
+	}
+
+	/**
+	 * Returns a tile without copying it. The tile must not be written to, since it may be shared with a snapshot.
+	 *
+	 * @param tileIndex	The index of the tile, row by row from the top left corner of the dense area
+	 * @return	The tile, or null if no pixel inside it has been logged.
+	 */
+	int[] getTile(int tileIndex) {
+		return this.tiles[tileIndex];
+	}
+
+	/**
+	 * Adds the counts of a whole tile to the store.
+	 *
+	 * @param tileIndex	The index of the tile, row by row from the top left corner of the dense area
+	 * @param counts	The counts of the tile, TILE_SIZE * TILE_SIZE values row by row
+	 */
+	void addTile(int tileIndex, int[] counts) {
+		int[] tile = this.writableTile(tileIndex);
+		for (int cell = 0; cell < TILE_AREA; cell++) {
+			int count = counts[cell];
+			if (count != 0) {
+				int previous = tile[cell];
+				if (previous == 0) {
+					this.distinct++;
+				}
+				tile[cell] = saturatedAdd(previous, count);
+				this.total += tile[cell] - previous;
+			}
+		}
+	}
+
+	/**
+	 * Calls the visitor once for every logged pixel outside the dense area.
+	 *
+	 * @param visitor	The visitor to call
+	 */
+	void forEachSparse(PixelVisitor visitor) {
+		for (int slot = 0; slot < this.sparse.capacity(); slot++) {
+			int count = this.sparse.valueAt(slot);
+			if (count != 0) {
+				long key = this.sparse.keyAt(slot);
+				visitor.visit(LongIntTable.unpackX(key), LongIntTable.unpackY(key), count);
+			}
+		}
+	}
+
+	/**
+	 * @return	The number of logged pixels outside the dense area.
+	 */
+	int getSparseSize() {
+		return this.sparse.size();
+	}
+
+	/**
+	 * @return	An estimate of the heap memory used by the store, in bytes.
+	 */
+	public long estimateMemoryBytes() {
+		long bytes = 16L + 4L * this.tiles.length + this.sparse.estimateMemoryBytes();
+		for (int[] tile : this.tiles) {
+			if (tile != null) {
+				bytes += 16L + 4L * TILE_AREA;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * The slots of the sparse table sorted by the tile sized square their pixel lies in. The squares line up
+	 * with multiples of TILE_SIZE, not with the dense area. Within a square the slots are kept in ascending
+	 * order, so the pixels can still be visited in the order of the table.
+	 */
+	private static final class SparseIndex {
+
+		// Maps the packed column and row of a square to its number plus one
+		private final LongIntTable squares;
+		private final long[] squareKeys;
+		private final int[] squareStart;
+		private final int[] slots;
+
+		SparseIndex(LongIntTable sparse) {
+			this.squares = new LongIntTable();
+			long[] keys = new long[16];
+			int[] sizes = new int[16];
+			int squareCount = 0;
+			for (int slot = 0; slot < sparse.capacity(); slot++) {
+				if (sparse.valueAt(slot) != 0) {
+					long square = squareOf(sparse.keyAt(slot));
+					int number = this.squares.get(square) - 1;
+					if (number < 0) {
+						if (squareCount == keys.length) {
+							keys = Arrays.copyOf(keys, squareCount * 2);
+							sizes = Arrays.copyOf(sizes, squareCount * 2);
+						}
+						number = squareCount++;
+						this.squares.add(square, number + 1);
+						keys[number] = square;
+					}
+					sizes[number]++;
+				}
+			}
+			this.squareKeys = Arrays.copyOf(keys, squareCount);
+			this.squareStart = new int[squareCount + 1];
+			for (int i = 0; i < squareCount; i++) {
+				this.squareStart[i + 1] = this.squareStart[i] + sizes[i];
+			}
+			this.slots = new int[this.squareStart[squareCount]];
+			int[] next = Arrays.copyOf(this.squareStart, squareCount);
+			for (int slot = 0; slot < sparse.capacity(); slot++) {
+				if (sparse.valueAt(slot) != 0) {
+					this.slots[next[this.squares.get(squareOf(sparse.keyAt(slot))) - 1]++] = slot;
+				}
+			}
+		}
+
+		/**
+		 * @param key	A packed pixel
+		 * @return	The packed column and row of the square the pixel lies in.
+		 */
+		private static long squareOf(long key) {
+			return LongIntTable.pack(LongIntTable.unpackX(key) >> TILE_SHIFT, LongIntTable.unpackY(key) >> TILE_SHIFT);
+		}
+
+		/**
+		 * @param area	A non-empty area
+		 * @return	The slots in the squares that overlap the area, in ascending order. Some of their pixels
+		 * 			may lie outside the area.
+		 */
+		int[] slotsIn(Rectangle area) {
+			int left = area.x >> TILE_SHIFT;
+			int top = area.y >> TILE_SHIFT;
+			int right = (int) (Math.min((long) area.x + area.width - 1, Integer.MAX_VALUE) >> TILE_SHIFT);
+			int bottom = (int) (Math.min((long) area.y + area.height - 1, Integer.MAX_VALUE) >> TILE_SHIFT);
+			long squareCount = (long) (right - left + 1) * (bottom - top + 1);
+			int[] numbers = new int[(int) Math.min(squareCount, this.squareKeys.length)];
+			int found = 0;
+			// Look up every square of the area, unless there are fewer occupied squares than that
+			if (squareCount <= this.squareKeys.length) {
+				for (int row = top; row <= bottom; row++) {
+					for (int column = left; column <= right; column++) {
+						int number = this.squares.get(LongIntTable.pack(column, row)) - 1;
+						if (number >= 0) {
+							numbers[found++] = number;
+						}
+					}
+				}
+			} else {
+				for (int number = 0; number < this.squareKeys.length; number++) {
+					int column = LongIntTable.unpackX(this.squareKeys[number]);
+					int row = LongIntTable.unpackY(this.squareKeys[number]);
+					if (column >= left && column <= right && row >= top && row <= bottom) {
+						numbers[found++] = number;
+					}
+				}
+			}
+			int size = 0;
+			for (int i = 0; i < found; i++) {
+				size += this.squareStart[numbers[i] + 1] - this.squareStart[numbers[i]];
+			}
+			int[] result = new int[size];
+			size = 0;
+			for (int i = 0; i < found; i++) {
+				int start = this.squareStart[numbers[i]];
+				int length = this.squareStart[numbers[i] + 1] - start;
+				System.arraycopy(this.slots, start, result, size, length);
+				size += length;
+			}
+			Arrays.sort(result);
+			return result;
+		}
+	}
+}
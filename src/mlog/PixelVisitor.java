@@ -0,0 +1,19 @@
+package mlog;
+
+/**
+ * Receives the logged pixels of a PixelCountStore one at a time, without any boxing.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public interface PixelVisitor {
+
+	/**
+	 * Called once for every logged pixel.
+	 *
+	 * @param x		The x coordinate of the pixel
+	 * @param y		The y coordinate of the pixel
+	 * @param count	The number of times the pixel was logged, always positive
+	 */
+	void visit(int x, int y, int count);
+}
@@ -0,0 +1,51 @@
+package mlog;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+
+/**
+ * Tells a MouseLogger where the pointer is, and keeps the clock that the samples are scheduled against.
+ *
+ * The live pointer follows the system clock. Other sources can run their clock faster than real time, or let it
+ * jump straight to the next deadline, so the log can be filled as fast as the sampler runs, without a display.
+ * Only the sampling thread reads the pointer and waits; the clock may be read from any thread.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public interface PointerSource {
+
+	/**
+	 * @return	The area that the pointer moves in.
+	 */
+	Rectangle getBounds();
+
+	/**
+	 * @return	The current time of the source, on the same scale as System.nanoTime().
+	 */
+	long nanoTime();
+
+	/**
+	 * Waits until the clock of the source reaches a time. May return early, for example when the thread is
+	 * unparked or interrupted.
+	 *
+	 * @param blocker	The object the thread is waiting on, as in LockSupport.parkNanos
+	 * @param nanoTime	The time to wait for, on the clock of the source
+	 */
+	void parkUntil(Object blocker, long nanoTime);
+
+	/**
+	 * Finds where the pointer is at a time of the clock of the source.
+	 *
+	 * @param nanoTime	The time of the sample, never earlier than the time of the previous sample
+	 * @param location	Receives the position of the pointer
+	 * @return	False if the position of the pointer is not known, for example if there is no mouse.
+	 */
+	boolean readPointer(long nanoTime, Point location);
+
+	/**
+	 * @return	True if the source has no more positions, for example at the end of a replay. The logger stops
+	 * 			sampling for good.
+	 */
+	boolean hasEnded();
+}
@@ -0,0 +1,249 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Draws straight into the pixel array of an image, without going through Java 2D.
+ *
+ * Colors are given as ARGB ints that are resolved once, for example with resolve, so drawing does not
+ * allocate. Lines and circle outlines are antialiased by how much of each pixel they cover, and every drawn
+ * pixel is blended with source over. Coordinates are map coordinates; the canvas can cover any part of the
+ * map, such as one tile.
+ *
+ * A canvas is not thread-safe, but canvases over different images can be used on different threads.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class RasterCanvas {
+
+	private final int[] pixels;
+	private final int width;
+	private final int height;
+	private final int originX;
+	private final int originY;
+	private final boolean hasAlpha;
+
+	/**
+	 * Creates a new canvas over an image.
+	 *
+	 * @param image		An image of type TYPE_INT_RGB or TYPE_INT_ARGB
+	 * @param originX	The map x coordinate of the left edge of the image
+	 * @param originY	The map y coordinate of the top edge of the image
+	 */
+	public RasterCanvas(BufferedImage image, int originX, int originY) {
+		if (image.getType() != BufferedImage.TYPE_INT_RGB && image.getType() != BufferedImage.TYPE_INT_ARGB) {
+			throw new IllegalArgumentException("Only TYPE_INT_RGB and TYPE_INT_ARGB images can be drawn on directly");
+		}
+		this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+		this.originX = originX;
+		this.originY = originY;
+		this.hasAlpha = image.getType() == BufferedImage.TYPE_INT_ARGB;
+	}
+
+	/**
+	 * @param color	A color
+	 * @return	The color as an ARGB int.
+	 */
+	public static int resolve(Color color) {
+		return color.getRGB();
+	}
+
+	/**
+	 * @param color	A color
+	 * @param alpha	An alpha from 0 to 255
+	 * @return	The color with the given alpha, as an ARGB int.
+	 */
+	public static int resolve(Color color, int alpha) {
+		return (alpha << 24) | (color.getRGB() & 0xFFFFFF);
+	}
+
+	/**
+	 * Blends a color onto a pixel.
+	 *
+	 * @param x		The x coordinate of the pixel
+	 * @param y		The y coordinate of the pixel
+	 * @param argb	The color
+	 */
+	public void blendPixel(int x, int y, int argb) {
+		x -= this.originX;
+		y -= this.originY;
+		if (x >= 0 && y >= 0 && x < this.width && y < this.height) {
+			this.blend(y * this.width + x, argb, argb >>> 24);
+		}
+	}
+
+	/**
+	 * Fills a rectangle with a color.
+	 *
+	 * @param x			The x coordinate of the left edge
+	 * @param y			The y coordinate of the top edge
+	 * @param width		The width of the rectangle
+	 * @param height	The height of the rectangle
+	 * @param argb		The color
+	 */
+	public void fillRect(int x, int y, int width, int height, int argb) {
+		long left = Math.max((long) x - this.originX, 0);
+		long top = Math.max((long) y - this.originY, 0);
+		long right = Math.min((long) x + width - this.originX, this.width);
+		long bottom = Math.min((long) y + height - this.originY, this.height);
+		int alpha = argb >>> 24;
+		for (int row = (int) top; row < bottom; row++) {
+			int offset = row * this.width;
+			for (int column = (int) left; column < right; column++) {
+				this.blend(offset + column, argb, alpha);
+			}
+		}
+	}
+
+	/**
+	 * Draws an antialiased line, one pixel wide, between the centers of two pixels.
+	 *
+	 * @param x1	The x coordinate of the first pixel
+	 * @param y1	The y coordinate of the first pixel
+	 * @param x2	The x coordinate of the second pixel
+	 * @param y2	The y coordinate of the second pixel
+	 * @param argb	The color
+	 */
+	public void drawLine(int x1, int y1, int x2, int y2, int argb) {
+		x1 -= this.originX;
+		x2 -= this.originX;
+		y1 -= this.originY;
+		y2 -= this.originY;
+		int alpha = argb >>> 24;
+		boolean steep = Math.abs(y2 - y1) > Math.abs(x2 - x1);
+		if (steep) {
+			// Step along y instead, with the roles of x and y swapped
+			int swap = x1; x1 = y1; y1 = swap;
+			swap = x2; x2 = y2; y2 = swap;
+		}
+		if (x1 > x2) {
+			int swap = x1; x1 = x2; x2 = swap;
+			swap = y1; y1 = y2; y2 = swap;
+		}
+		int majorLimit = steep ? this.height : this.width;
+		int minorLimit = steep ? this.width : this.height;
+		if (x2 < 0 || x1 >= majorLimit) {
+			return;
+		}
+		// Wu's algorithm: the two pixels across the line share its coverage
+		double gradient = x2 == x1 ? 0 : (y2 - y1) / (double) (x2 - x1);
+		int from = Math.max(x1, 0);
+		int to = Math.min(x2, majorLimit - 1);
+		for (int x = from; x <= to; x++) {
+			// Computed afresh for every x, so a line covers the same pixels whichever part of the map is drawn
+			double y = y1 + gradient * (x - x1);
+			int below = (int) Math.floor(y);
+			int coverage = (int) ((y - below) * 256);
+			if (below >= 0 && below < minorLimit) {
+				this.blend(steep ? x * this.width + below : below * this.width + x, argb, alpha * (256 - coverage) >> 8);
+			}
+			if (coverage != 0 && below + 1 >= 0 && below + 1 < minorLimit) {
+				this.blend(steep ? x * this.width + below + 1 : (below + 1) * this.width + x, argb, alpha * coverage >> 8);
+			}
+		}
+	}
+
+	/**
+	 * Draws an antialiased circle outline, one pixel wide. Like a stroked Graphics2D.drawOval, the outline runs
+	 * through pixel centers, so the center is the center of the given pixel.
+	 *
+	 * @param centerX	The x coordinate of the center pixel
+	 * @param centerY	The y coordinate of the center pixel
+	 * @param radius	The radius of the circle
+	 * @param argb		The color
+	 */
+	public void drawCircle(int centerX, int centerY, int radius, int argb) {
+		this.circle(centerX + 0.5, centerY + 0.5, radius, argb, false);
+	}
+
+	/**
+	 * Fills an antialiased circle.
+	 *
+	 * @param centerX	The x coordinate of the center, at the top left corner of a pixel
+	 * @param centerY	The y coordinate of the center, at the top left corner of a pixel
+	 * @param radius	The radius of the circle
+	 * @param argb		The color
+	 */
+	public void fillCircle(int centerX, int centerY, int radius, int argb) {
+		this.circle(centerX, centerY, radius, argb, true);
+	}
+
+	/**
+	 * Draws the pixels of a circle, row by row, only visiting the spans of a row that the circle covers.
+	 */
+	private void circle(double centerX, double centerY, int radius, int argb, boolean fill) {
+		if (radius <= 0) {
+			return;
+		}
+		double cx = centerX - this.originX;
+		double cy = centerY - this.originY;
+		double outer = radius + 1;
+		double inner = fill ? 0 : radius - 1;
+		int alpha = argb >>> 24;
+		int top = (int) Math.max(Math.floor(cy - outer), 0);
+		int bottom = (int) Math.min(Math.ceil(cy + outer), this.height);
+		for (int row = top; row < bottom; row++) {
+			double dy = row + 0.5 - cy;
+			if (Math.abs(dy) >= outer) {
+				continue;
+			}
+			double outerSpan = Math.sqrt(outer * outer - dy * dy);
+			double innerSpan = Math.abs(dy) < inner ? Math.sqrt(inner * inner - dy * dy) : 0;
+			int left = (int) Math.max(Math.floor(cx - outerSpan), 0);
+			int right = (int) Math.min(Math.ceil(cx + outerSpan), this.width);
+			// The inside of an outline is skipped
+			int holeLeft = (int) Math.ceil(cx - innerSpan);
+			int holeRight = (int) Math.floor(cx + innerSpan);
+			int offset = row * this.width;
+			for (int column = left; column < right; column++) {
+				if (column >= holeLeft && column < holeRight) {
+					column = holeRight - 1;
+					continue;
+				}
+				double dx = column + 0.5 - cx;
+				double distance = Math.sqrt(dx * dx + dy * dy);
+				double coverage = fill ? radius + 0.5 - distance : 1 - Math.abs(distance - radius);
+				if (coverage > 0) {
+					this.blend(offset + column, argb, coverage >= 1 ? alpha : (int) (alpha * coverage));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Blends a color with the given opacity over the pixel at an index, source over.
+	 */
+	private void blend(int index, int argb, int alpha) {
+		if (alpha <= 0) {
+			return;
+		}
+		int destination = this.pixels[index];
+		if (alpha >= 255 && !this.hasAlpha) {
+			this.pixels[index] = argb & 0xFFFFFF;
+			return;
+		}
+		int inverse = 255 - alpha;
+		if (!this.hasAlpha) {
+			int red = (((argb >> 16) & 0xFF) * alpha + ((destination >> 16) & 0xFF) * inverse + 127) / 255;
+			int green = (((argb >> 8) & 0xFF) * alpha + ((destination >> 8) & 0xFF) * inverse + 127) / 255;
+			int blue = ((argb & 0xFF) * alpha + (destination & 0xFF) * inverse + 127) / 255;
+			this.pixels[index] = red << 16 | green << 8 | blue;
+			return;
+		}
+		// The destination has alpha of its own, so the result is normalised by the combined alpha
+		int destinationAlpha = (destination >>> 24) * inverse / 255;
+		int resultAlpha = alpha + destinationAlpha;
+		if (resultAlpha == 0) {
+			return;
+		}
+		int red = (((argb >> 16) & 0xFF) * alpha + ((destination >> 16) & 0xFF) * destinationAlpha) / resultAlpha;
+		int green = (((argb >> 8) & 0xFF) * alpha + ((destination >> 8) & 0xFF) * destinationAlpha) / resultAlpha;
+		int blue = ((argb & 0xFF) * alpha + (destination & 0xFF) * destinationAlpha) / resultAlpha;
+		this.pixels[index] = resultAlpha << 24 | red << 16 | green << 8 | blue;
+	}
+}
@@ -0,0 +1,60 @@
+package mlog;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Shows the dwell, entries and transitions of the regions of a RegionTracker over JMX.
+ *
+ * Every value is copied out of the tracker when it is asked for, without stopping the sampler.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class RegionMetrics implements RegionMetricsMBean {
+
+	private final RegionTracker regionTracker;
+
+	/**
+	 * Creates the metrics of a region tracker.
+	 *
+	 * @param regionTracker	The region tracker
+	 */
+	public RegionMetrics(RegionTracker regionTracker) {
+		this.regionTracker = regionTracker;
+	}
+
+	@Override
+	public String[] getRegionNames() {
+		String[] names = new String[this.regionTracker.getRegionCount()];
+		for (int region = 0; region < names.length; region++) {
+			names[region] = this.regionTracker.getName(region);
+		}
+		return names;
+	}
+
+	@Override
+	public long[] getDwellPeriods() {
+		return this.regionTracker.getStats().getDwell();
+	}
+
+	@Override
+	public long[] getEntries() {
+		return this.regionTracker.getStats().getEntries();
+	}
+
+	@Override
+	public long getOutsidePeriods() {
+		return this.regionTracker.getStats().getOutsidePeriods();
+	}
+
+	@Override
+	public int getTransitionCount() {
+		return this.regionTracker.getStats().getTransitionCount();
+	}
+
+	@Override
+	public void export(String directory) throws IOException {
+		this.regionTracker.getStats().export(new File(directory));
+	}
+}
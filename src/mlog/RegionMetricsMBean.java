@@ -0,0 +1,45 @@
+package mlog;
+
+import java.io.IOException;
+
+/**
+ * The management interface of a RegionTracker, as it is shown over JMX.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public interface RegionMetricsMBean {
+
+	/**
+	 * @return	The names of the regions, in the order they were defined.
+	 */
+	String[] getRegionNames();
+
+	/**
+	 * @return	The number of sample periods spent in each region.
+	 */
+	long[] getDwellPeriods();
+
+	/**
+	 * @return	The number of times the pointer entered each region.
+	 */
+	long[] getEntries();
+
+	/**
+	 * @return	The number of sample periods spent outside all regions.
+	 */
+	long getOutsidePeriods();
+
+	/**
+	 * @return	The number of distinct transitions between regions that were made at least once.
+	 */
+	int getTransitionCount();
+
+	/**
+	 * Writes the regions and the transitions between them as CSV files to a directory.
+	 *
+	 * @param directory	The path of the directory
+	 * @throws IOException	If the files cannot be written
+	 */
+	void export(String directory) throws IOException;
+}
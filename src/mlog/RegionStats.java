@@ -0,0 +1,246 @@
+package mlog;
+
+import java.awt.Rectangle;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The dwell, entries and transitions of the regions of a RegionTracker, as copied out at one moment.
+ *
+ * Dwell is measured in sample periods. A transition is a move of the pointer from the topmost region under it to
+ * another one; the transitions that happened at least once are kept in order of the region they came from and
+ * then the region they went to, so the matrix of transitions between thousands of regions stays small.
+ *
+ * A RegionStats never changes, so it can be read from any thread.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class RegionStats {
+
+	public static final String REGIONS_FILE_NAME = "regions.csv";
+	public static final String TRANSITIONS_FILE_NAME = "transitions.csv";
+
+	private final String[] names;
+	private final Rectangle[] bounds;
+	private final long[] dwell;
+	private final long[] entries;
+	private final long[] transitionKeys;
+	private final long[] transitionCounts;
+	private final long totalPeriods;
+	private final long outsidePeriods;
+
+	/**
+	 * Creates the stats of a set of regions. The arrays are kept, not copied.
+	 *
+	 * @param names				The names of the regions
+	 * @param bounds			The bounds of the regions
+	 * @param dwell				The number of sample periods spent in each region
+	 * @param entries			The number of times each region was entered
+	 * @param transitionKeys	The from and to regions of every transition, packed by LongIntTable.pack, in any order
+	 * @param transitionCounts	The number of times each transition was made
+	 * @param totalPeriods		The number of sample periods counted
+	 * @param outsidePeriods	The number of sample periods spent outside all regions
+	 */
+	RegionStats(String[] names, Rectangle[] bounds, long[] dwell, long[] entries, long[] transitionKeys,
+			long[] transitionCounts, long totalPeriods, long outsidePeriods) {
+		this.names = names;
+		this.bounds = bounds;
+		this.dwell = dwell;
+		this.entries = entries;
+		this.totalPeriods = totalPeriods;
+		this.outsidePeriods = outsidePeriods;
+
+		// Region indices are never negative, so the packed keys sort by from region and then by to region
+		LongIntTable positions = new LongIntTable(transitionKeys.length);
+		for (int i = 0; i < transitionKeys.length; i++) {
+			positions.add(transitionKeys[i], i + 1);
+		}
+		this.transitionKeys = Arrays.copyOf(transitionKeys, transitionKeys.length);
+		Arrays.sort(this.transitionKeys);
+		this.transitionCounts = new long[transitionCounts.length];
+		for (int i = 0; i < this.transitionKeys.length; i++) {
+			this.transitionCounts[i] = transitionCounts[positions.get(this.transitionKeys[i]) - 1];
+		}
+	}
+
+	/**
+	 * @return	The number of regions.
+	 */
+	public int getRegionCount() {
+		return this.names.length;
+	}
+
+	/**
+	 * @param region	The index of a region, in the order the regions were defined
+	 * @return	The name of the region.
+	 */
+	public String getName(int region) {
+		return this.names[region];
+	}
+
+	/**
+	 * @param region	The index of a region, in the order the regions were defined
+	 * @return	The bounds of the region.
+	 */
+	public Rectangle getBounds(int region) {
+		return new Rectangle(this.bounds[region]);
+	}
+
+	/**
+	 * @param region	The index of a region, in the order the regions were defined
+	 * @return	The number of sample periods spent in the region.
+	 */
+	public long getDwell(int region) {
+		return this.dwell[region];
+	}
+
+	/**
+	 * @return	The number of sample periods spent in each region.
+	 */
+	public long[] getDwell() {
+		return Arrays.copyOf(this.dwell, this.dwell.length);
+	}
+
+	/**
+	 * @param region	The index of a region, in the order the regions were defined
+	 * @return	The number of times the pointer entered the region.
+	 */
+	public long getEntries(int region) {
+		return this.entries[region];
+	}
+
+	/**
+	 * @return	The number of times the pointer entered each region.
+	 */
+	public long[] getEntries() {
+		return Arrays.copyOf(this.entries, this.entries.length);
+	}
+
+	/**
+	 * @return	The number of sample periods counted, inside or outside the regions.
+	 */
+	public long getTotalPeriods() {
+		return this.totalPeriods;
+	}
+
+	/**
+	 * @return	The number of sample periods spent outside all regions.
+	 */
+	public long getOutsidePeriods() {
+		return this.outsidePeriods;
+	}
+
+	/**
+	 * @return	The number of distinct transitions that were made at least once.
+	 */
+	public int getTransitionCount() {
+		return this.transitionKeys.length;
+	}
+
+	/**
+	 * @param transition	A transition, from 0 to getTransitionCount() - 1
+	 * @return	The index of the region that the transition came from.
+	 */
+	public int getTransitionFrom(int transition) {
+		return LongIntTable.unpackX(this.transitionKeys[transition]);
+	}
+
+	/**
+	 * @param transition	A transition, from 0 to getTransitionCount() - 1
+	 * @return	The index of the region that the transition went to.
+	 */
+	public int getTransitionTo(int transition) {
+		return LongIntTable.unpackY(this.transitionKeys[transition]);
+	}
+
+	/**
+	 * @param transition	A transition, from 0 to getTransitionCount() - 1
+	 * @return	The number of times the transition was made.
+	 */
+	public long getTransitions(int transition) {
+		return this.transitionCounts[transition];
+	}
+
+	/**
+	 * @param from	The index of the region that the pointer left
+	 * @param to	The index of the region that the pointer went to
+	 * @return	The number of times the pointer went from the one region to the other.
+	 */
+	public long getTransitions(int from, int to) {
+		int transition = Arrays.binarySearch(this.transitionKeys, LongIntTable.pack(from, to));
+		return transition < 0 ? 0 : this.transitionCounts[transition];
+	}
+
+	/**
+	 * Writes the dwell and entries of every region as CSV, one region per line.
+	 *
+	 * @param writer	The writer to write to; it is not closed
+	 * @throws IOException	If the writer fails
+	 */
+	public void writeRegions(Writer writer) throws IOException {
+		writer.write("region,x,y,width,height,dwell_periods,entries\n");
+		for (int region = 0; region < this.names.length; region++) {
+			Rectangle r = this.bounds[region];
+			writer.write(quote(this.names[region]) + "," + r.x + "," + r.y + "," + r.width + "," + r.height + ","
+					+ this.dwell[region] + "," + this.entries[region] + "\n");
+		}
+	}
+
+	/**
+	 * Writes every transition that was made at least once as CSV, one transition per line.
+	 *
+	 * @param writer	The writer to write to; it is not closed
+	 * @throws IOException	If the writer fails
+	 */
+	public void writeTransitions(Writer writer) throws IOException {
+		writer.write("from,to,count\n");
+		for (int transition = 0; transition < this.transitionKeys.length; transition++) {
+			writer.write(quote(this.names[this.getTransitionFrom(transition)]) + ","
+					+ quote(this.names[this.getTransitionTo(transition)]) + "," + this.transitionCounts[transition] + "\n");
+		}
+	}
+
+	/**
+	 * Writes the regions and the transitions to REGIONS_FILE_NAME and TRANSITIONS_FILE_NAME in a directory, in
+	 * UTF-8, replacing any earlier files.
+	 *
+	 * @param directory	The directory, which is created if it does not exist
+	 * @throws IOException	If the files cannot be written
+	 */
+	public void export(File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create the directory " + directory);
+		}
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(directory, REGIONS_FILE_NAME)),
+				StandardCharsets.UTF_8));
+		try {
+			this.writeRegions(writer);
+		} finally {
+			writer.close();
+		}
+		writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(directory, TRANSITIONS_FILE_NAME)),
+				StandardCharsets.UTF_8));
+		try {
+			this.writeTransitions(writer);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * @return	The name as a CSV field, in quotes if it contains a comma, a quote or a line break.
+	 */
+	private static String quote(String name) {
+		if (name.indexOf(',') < 0 && name.indexOf('"') < 0 && name.indexOf('\n') < 0 && name.indexOf('\r') < 0) {
+			return name;
+		}
+		return "\"" + name.replace("\"", "\"\"") + "\"";
+	}
+}
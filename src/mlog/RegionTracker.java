@@ -0,0 +1,419 @@
+package mlog;
+
+import java.awt.Rectangle;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long the pointer stays in each of a set of regions of interest, such as the buttons and panels of a
+ * user interface, how often it enters them, and how often it moves from one region to another, while the mouse
+ * is being logged. Add it to a MouseLogger with addSampleListener.
+ *
+ * The area of the regions is split into square cells, and every cell lists the regions that overlap it, so a
+ * sample is only tested against the few regions of its cell, however many regions there are. Regions may
+ * overlap; a sample counts towards the dwell of every region that contains it. Regions defined later lie on top
+ * of earlier ones, and the topmost region under the pointer is the one that transitions are counted between.
+ * Time outside all regions does not break a transition, so moving from A over empty space to B counts as A to B.
+ *
+ * Dwell is measured in sample periods. Multiply by the sample period of the logger for time.
+ *
+ * The counts are kept in primitive arrays that only the sampling thread writes, and getStats copies them out at
+ * any time without stopping the sampler; neither side ever takes a lock.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class RegionTracker implements SampleListener {
+
+	/** The width and height of a cell of the index, in pixels, unless the area needs larger cells. */
+	public static final int CELL_SIZE = 32;
+	/** The most cells of an index; the cells grow until the area fits. */
+	public static final int MAX_CELLS = 1 << 20;
+
+	private final String[] names;
+	private final int[] lefts;
+	private final int[] tops;
+	private final int[] rights;
+	private final int[] bottoms;
+	private final int areaX;
+	private final int areaY;
+	private final int columns;
+	private final int rows;
+	private final int cellShift;
+	private final int[] cellStarts;
+	private final int[] cellRegions;
+	private volatile Counts counts;
+
+	// Only used by the sampling thread
+	private Counts sampledCounts;
+	private int[] hits;
+	private int[] previousHits;
+	private int previousHitCount;
+	private int previousTop = -1;
+
+	/**
+	 * Creates a tracker of a set of regions.
+	 *
+	 * @param names		The names of the regions
+	 * @param bounds	The bounds of the regions, in the same order as the names; later regions lie on top
+	 */
+	public RegionTracker(String[] names, Rectangle[] bounds) {
+		if (names.length != bounds.length) {
+			throw new IllegalArgumentException("There are " + names.length + " names for " + bounds.length + " regions");
+		}
+		int regions = names.length;
+		this.names = Arrays.copyOf(names, regions);
+		this.lefts = new int[regions];
+		this.tops = new int[regions];
+		this.rights = new int[regions];
+		this.bottoms = new int[regions];
+		Rectangle area = null;
+		for (int region = 0; region < regions; region++) {
+			Rectangle r = bounds[region];
+			if (r.width <= 0 || r.height <= 0) {
+				throw new IllegalArgumentException("The region " + names[region] + " is empty: " + r.width + "x" + r.height);
+			}
+			this.lefts[region] = r.x;
+			this.tops[region] = r.y;
+			this.rights[region] = r.x + r.width;
+			this.bottoms[region] = r.y + r.height;
+			area = area == null ? new Rectangle(r) : area.union(r);
+		}
+		if (area == null) {
+			area = new Rectangle(0, 0, 1, 1);
+		}
+		this.areaX = area.x;
+		this.areaY = area.y;
+		int shift = Integer.numberOfTrailingZeros(CELL_SIZE);
+		while ((((long) area.width + (1L << shift) - 1) >> shift) * (((long) area.height + (1L << shift) - 1) >> shift) > MAX_CELLS) {
+			shift++;
+		}
+		this.cellShift = shift;
+		this.columns = (int) (((long) area.width + (1L << shift) - 1) >> shift);
+		this.rows = (int) (((long) area.height + (1L << shift) - 1) >> shift);
+
+		// Every cell lists its regions in one shared array, in the order the regions were defined
+		this.cellStarts = new int[this.columns * this.rows + 1];
+		for (int region = 0; region < regions; region++) {
+			for (int row = this.rowOf(this.tops[region]); row <= this.rowOf(this.bottoms[region] - 1); row++) {
+				for (int column = this.columnOf(this.lefts[region]); column <= this.columnOf(this.rights[region] - 1); column++) {
+					this.cellStarts[row * this.columns + column + 1]++;
+				}
+			}
+		}
+		int mostInCell = 0;
+		for (int cell = 1; cell < this.cellStarts.length; cell++) {
+			mostInCell = Math.max(mostInCell, this.cellStarts[cell]);
+			this.cellStarts[cell] += this.cellStarts[cell - 1];
+		}
+		this.cellRegions = new int[this.cellStarts[this.cellStarts.length - 1]];
+		int[] filled = Arrays.copyOf(this.cellStarts, this.cellStarts.length - 1);
+		for (int region = 0; region < regions; region++) {
+			for (int row = this.rowOf(this.tops[region]); row <= this.rowOf(this.bottoms[region] - 1); row++) {
+				for (int column = this.columnOf(this.lefts[region]); column <= this.columnOf(this.rights[region] - 1); column++) {
+					this.cellRegions[filled[row * this.columns + column]++] = region;
+				}
+			}
+		}
+		this.hits = new int[mostInCell];
+		this.previousHits = new int[mostInCell];
+		this.counts = new Counts(regions);
+	}
+
+	/**
+	 * Reads the regions of a tracker from a text file with one region per line, as name,x,y,width,height. Empty
+	 * lines and lines that start with # are skipped. The name may contain commas.
+	 *
+	 * @param file	The file, in UTF-8
+	 * @return	A tracker of the regions.
+	 * @throws IOException	If the file cannot be read or a line is not a region
+	 */
+	public static RegionTracker read(File file) throws IOException {
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<Rectangle> bounds = new ArrayList<Rectangle>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				// The name is everything before the last four fields, so it may contain commas itself
+				int nameEnd = line.length();
+				for (int i = 0; i < 4 && nameEnd >= 0; i++) {
+					nameEnd = line.lastIndexOf(',', nameEnd - 1);
+				}
+				if (nameEnd < 0) {
+					throw new IOException(file + ", line " + lineNumber + ": expected name,x,y,width,height");
+				}
+				String[] fields = line.substring(nameEnd + 1).split(",", -1);
+				int[] numbers = new int[4];
+				try {
+					for (int i = 0; i < 4; i++) {
+						numbers[i] = Integer.parseInt(fields[i].trim());
+					}
+				} catch (NumberFormatException nfe) {
+					throw new IOException(file + ", line " + lineNumber + ": " + nfe.getMessage());
+				}
+				names.add(line.substring(0, nameEnd).trim());
+				bounds.add(new Rectangle(numbers[0], numbers[1], numbers[2], numbers[3]));
+			}
+		} finally {
+			reader.close();
+		}
+		try {
+			return new RegionTracker(names.toArray(new String[names.size()]), bounds.toArray(new Rectangle[bounds.size()]));
+		} catch (IllegalArgumentException iae) {
+			throw new IOException(file + ": " + iae.getMessage());
+		}
+	}
+
+	@Override
+	public void sampleLogged(int x, int y, int periods) {
+		Counts current = this.counts;
+		if (current != this.sampledCounts) {
+			// The counts were reset since the last sample, which starts over with no region entered
+			this.sampledCounts = current;
+			this.previousHitCount = 0;
+			this.previousTop = -1;
+		}
+		current.totalPeriods += periods;
+
+		int hitCount = 0;
+		int column = this.columnOf(x);
+		int row = this.rowOf(y);
+		if (x >= this.areaX && y >= this.areaY && column < this.columns && row < this.rows) {
+			int cell = row * this.columns + column;
+			for (int i = this.cellStarts[cell]; i < this.cellStarts[cell + 1]; i++) {
+				int region = this.cellRegions[i];
+				if (x >= this.lefts[region] && x < this.rights[region] && y >= this.tops[region] && y < this.bottoms[region]) {
+					this.hits[hitCount++] = region;
+				}
+			}
+		}
+		if (hitCount == 0) {
+			current.outsidePeriods += periods;
+			this.previousHitCount = 0;
+			return;
+		}
+
+		// Both lists of hits are in the order the regions were defined, so the regions entered are found in one pass
+		int previous = 0;
+		for (int i = 0; i < hitCount; i++) {
+			int region = this.hits[i];
+			// Only this thread writes the counts, so they need no atomic increments, just a release
+			current.dwell.lazySet(region, current.dwell.get(region) + periods);
+			while (previous < this.previousHitCount && this.previousHits[previous] < region) {
+				previous++;
+			}
+			if (previous == this.previousHitCount || this.previousHits[previous] != region) {
+				current.entries.lazySet(region, current.entries.get(region) + 1);
+			}
+		}
+		int top = this.hits[hitCount - 1];
+		if (this.previousTop >= 0 && top != this.previousTop) {
+			current.addTransition(this.previousTop, top);
+		}
+		this.previousTop = top;
+		int[] swap = this.previousHits;
+		this.previousHits = this.hits;
+		this.hits = swap;
+		this.previousHitCount = hitCount;
+	}
+
+	@Override
+	public void logCleared() {
+		this.reset();
+	}
+
+	/**
+	 * Forgets all counts. The sampling thread starts on the new counts with its next sample.
+	 */
+	public void reset() {
+		this.counts = new Counts(this.names.length);
+	}
+
+	/**
+	 * Copies out the counts of every region and transition. May be called from any thread at any time; samples
+	 * that are being counted while the copy is made may be left out of it.
+	 *
+	 * @return	The counts.
+	 */
+	public RegionStats getStats() {
+		Counts current = this.counts;
+		int regions = this.names.length;
+		long[] dwell = new long[regions];
+		long[] entries = new long[regions];
+		for (int region = 0; region < regions; region++) {
+			dwell[region] = current.dwell.get(region);
+			entries[region] = current.entries.get(region);
+		}
+		Rectangle[] bounds = new Rectangle[regions];
+		for (int region = 0; region < regions; region++) {
+			bounds[region] = this.getBounds(region);
+		}
+
+		TransitionTable transitions = current.transitions;
+		int size = 0;
+		long[] keys = new long[transitions.keys.length()];
+		long[] values = new long[keys.length];
+		for (int slot = 0; slot < keys.length; slot++) {
+			long key = transitions.keys.get(slot);
+			if (key != 0) {
+				keys[size] = key;
+				values[size++] = transitions.counts.get(slot);
+			}
+		}
+		return new RegionStats(this.names, bounds, dwell, entries, Arrays.copyOf(keys, size), Arrays.copyOf(values, size),
+				current.totalPeriods, current.outsidePeriods);
+	}
+
+	/**
+	 * @return	The number of regions.
+	 */
+	public int getRegionCount() {
+		return this.names.length;
+	}
+
+	/**
+	 * @param region	The index of a region, in the order the regions were defined
+	 * @return	The name of the region.
+	 */
+	public String getName(int region) {
+		return this.names[region];
+	}
+
+	/**
+	 * @param region	The index of a region, in the order the regions were defined
+	 * @return	The bounds of the region.
+	 */
+	public Rectangle getBounds(int region) {
+		return new Rectangle(this.lefts[region], this.tops[region], this.rights[region] - this.lefts[region],
+				this.bottoms[region] - this.tops[region]);
+	}
+
+	/**
+	 * @return	The column of the cell that an x coordinate inside the area falls in.
+	 */
+	private int columnOf(int x) {
+		return (int) (((long) x - this.areaX) >> this.cellShift);
+	}
+
+	/**
+	 * @return	The row of the cell that a y coordinate inside the area falls in.
+	 */
+	private int rowOf(int y) {
+		return (int) (((long) y - this.areaY) >> this.cellShift);
+	}
+
+	/**
+	 * The counts since the last reset. Replaced as a whole on reset, so the sampling thread never has to clear
+	 * arrays that another thread is reading.
+	 */
+	private static class Counts {
+
+		private final AtomicLongArray dwell;
+		private final AtomicLongArray entries;
+		private volatile TransitionTable transitions = new TransitionTable(TransitionTable.MINIMUM_CAPACITY);
+		private volatile long totalPeriods;
+		private volatile long outsidePeriods;
+
+		private Counts(int regions) {
+			this.dwell = new AtomicLongArray(regions);
+			this.entries = new AtomicLongArray(regions);
+		}
+
+		/**
+		 * Counts a transition. Only called by the sampling thread.
+		 */
+		private void addTransition(int from, int to) {
+			TransitionTable table = this.transitions;
+			if (!table.increment(LongIntTable.pack(from, to))) {
+				table = table.grow();
+				table.increment(LongIntTable.pack(from, to));
+				this.transitions = table;
+			}
+		}
+	}
+
+	/**
+	 * An open-addressing hash table from the packed from and to regions of a transition to its count, which one
+	 * thread writes while others read it. A slot is taken by writing its count before its key, so a reader that
+	 * sees a key also sees its count. The table is never written after it has been replaced by a larger one.
+	 * The key 0 marks an empty slot; it would be a transition from region 0 to itself, which is never counted.
+	 */
+	private static class TransitionTable {
+
+		private static final int MINIMUM_CAPACITY = 64;
+
+		private final AtomicLongArray keys;
+		private final AtomicLongArray counts;
+		private final int mask;
+		private int size;
+
+		private TransitionTable(int capacity) {
+			this.keys = new AtomicLongArray(capacity);
+			this.counts = new AtomicLongArray(capacity);
+			this.mask = capacity - 1;
+		}
+
+		/**
+		 * @return	False if the key is new and the table is too full to take it.
+		 */
+		private boolean increment(long key) {
+			int slot = slot(key) & this.mask;
+			long slotKey;
+			while ((slotKey = this.keys.get(slot)) != 0) {
+				if (slotKey == key) {
+					this.counts.lazySet(slot, this.counts.get(slot) + 1);
+					return true;
+				}
+				slot = (slot + 1) & this.mask;
+			}
+			if (2 * (this.size + 1) > this.keys.length()) {
+				return false;
+			}
+			this.counts.lazySet(slot, 1);
+			this.keys.lazySet(slot, key);
+			this.size++;
+			return true;
+		}
+
+		/**
+		 * @return	The first slot to look for a key in, before masking.
+		 */
+		private static int slot(long key) {
+			return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+		}
+
+		/**
+		 * @return	A copy of the table with twice the capacity.
+		 */
+		private TransitionTable grow() {
+			TransitionTable table = new TransitionTable(2 * this.keys.length());
+			for (int slot = 0; slot < this.keys.length(); slot++) {
+				long key = this.keys.get(slot);
+				if (key != 0) {
+					int newSlot = slot(key) & table.mask;
+					while (table.keys.get(newSlot) != 0) {
+						newSlot = (newSlot + 1) & table.mask;
+					}
+					table.counts.lazySet(newSlot, this.counts.get(slot));
+					table.keys.lazySet(newSlot, key);
+					table.size++;
+				}
+			}
+			return table;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Everything a MapRenderer needs to know to prepare a map.
+ *
+ * Buffers that are needed for as long as the map is made, such as copies of the coordinates of the log, are
+ * borrowed from the context and given back by MapGenerator when the map is done. Buffers that a painter only needs
+ * for one tile are borrowed straight from the scratch buffers, and given back by the painter.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class RenderContext {
+
+	private final Dimension resolution;
+	private final PixelCountStore pixelMap;
+	private final Color elementColor;
+	private final ColorRamp colorRamp;
+	private final String normalisation;
+	private final Dimension barBins;
+	private final boolean directRaster;
+	private final ScratchBuffers scratchBuffers;
+	private final ForkJoinPool pool;
+	private final List<int[]> borrowedInts = new ArrayList<int[]>();
+
+	/**
+	 * Creates a new RenderContext.
+	 *
+	 * @param resolution		The size of the map
+	 * @param pixelMap			A store of mouse coordinates over time, which must not change while the map is made
+	 * @param elementColor		The color of the map elements
+	 * @param colorRamp			The colors that maps colored by count are drawn in
+	 * @param normalisation		How the counts of the log are normalised, see CountScale
+	 * @param barBins			The number of columns and rows that bar maps are split into
+	 * @param directRaster		True to write the pixels of map elements straight into the tiles, false to draw
+	 * 							them through Graphics2D
+	 * @param scratchBuffers	The pool to borrow scratch buffers from
+	 * @param pool				The workers that paint the map, which a renderer may also prepare the map on
+	 */
+	public RenderContext(Dimension resolution, PixelCountStore pixelMap, Color elementColor, ColorRamp colorRamp,
+			String normalisation, Dimension barBins, boolean directRaster, ScratchBuffers scratchBuffers,
+			ForkJoinPool pool) {
+		this.resolution = new Dimension(resolution);
+		this.pixelMap = pixelMap;
+		this.elementColor = elementColor;
+		this.colorRamp = colorRamp;
+		this.normalisation = normalisation;
+		this.barBins = new Dimension(barBins);
+		this.directRaster = directRaster;
+		this.scratchBuffers = scratchBuffers;
+		this.pool = pool;
+	}
+
+	/**
+	 * @return	The size of the map.
+	 */
+	public Dimension getResolution() {
+		return new Dimension(this.resolution);
+	}
+
+	/**
+	 * @return	The width of the map.
+	 */
+	public int getWidth() {
+		return this.resolution.width;
+	}
+
+	/**
+	 * @return	The height of the map.
+	 */
+	public int getHeight() {
+		return this.resolution.height;
+	}
+
+	/**
+	 * @return	The store of mouse coordinates over time to make the map of.
+	 */
+	public PixelCountStore getPixelMap() {
+		return this.pixelMap;
+	}
+
+	/**
+	 * @return	The color of the map elements.
+	 */
+	public Color getElementColor() {
+		return this.elementColor;
+	}
+
+	/**
+	 * @return	The colors that maps colored by count, such as dot maps, are drawn in.
+	 */
+	public ColorRamp getColorRamp() {
+		return this.colorRamp;
+	}
+
+	/**
+	 * @return	How the counts of the log are normalised, one of the normalisations of CountScale.
+	 */
+	public String getNormalisation() {
+		return this.normalisation;
+	}
+
+	/**
+	 * @return	The number of columns (width) and rows (height) that bar maps are split into.
+	 */
+	public Dimension getBarBins() {
+		return new Dimension(this.barBins);
+	}
+
+	/**
+	 * @return	True to write the pixels of map elements straight into the tiles, false to draw them through
+	 * 			Graphics2D, see MapGenerator.setRenderBackend.
+	 */
+	public boolean isDirectRaster() {
+		return this.directRaster;
+	}
+
+	/**
+	 * @return	The pool to borrow scratch buffers from.
+	 */
+	public ScratchBuffers getScratchBuffers() {
+		return this.scratchBuffers;
+	}
+
+	/**
+	 * @return	The workers that paint the map. A renderer may split the work of preparing a large map across them;
+	 * 			the tiles are only painted once prepare has returned.
+	 */
+	public ForkJoinPool getPool() {
+		return this.pool;
+	}
+
+	/**
+	 * Borrows an array of ints for as long as the map is made.
+	 *
+	 * @param length	The number of ints needed
+	 * @return	An array of at least the given length, with any values in it.
+	 */
+	public synchronized int[] borrowInts(int length) {
+		int[] buffer = this.scratchBuffers.borrowInts(length);
+		this.borrowedInts.add(buffer);
+		return buffer;
+	}
+
+	/**
+	 * Gives back every buffer borrowed for the map. Called when the map is done.
+	 */
+	synchronized void releaseAll() {
+		for (int[] buffer : this.borrowedInts) {
+			this.scratchBuffers.release(buffer);
+		}
+		this.borrowedInts.clear();
+	}
+}
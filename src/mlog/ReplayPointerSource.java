@@ -0,0 +1,125 @@
+package mlog;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Replays the trajectory of a session file, at the speed it was logged or faster. At any time the pointer is
+ * where the latest record before that time put it. The replay ends after the last record.
+ *
+ * Record times count from the creation of the session file, so a session logged over several runs of the
+ * program has the downtime between the runs in it, like any other pause of the logger. Every record stands for
+ * a known number of sample periods, and the logger never lets more time pass between two records than those
+ * periods cover, so a longer gap is downtime. It is cut down to what the records cover, and every run is replayed
+ * right after the one before it. Times that go backwards, after the system clock was set back, are replayed as
+ * no time at all.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class ReplayPointerSource implements PointerSource {
+
+	private final Rectangle bounds;
+	private final SourceClock clock;
+	private long[] times = new long[1024];
+	private int[] xs = new int[1024];
+	private int[] ys = new int[1024];
+	private int size;
+	private int next;
+
+	/**
+	 * Reads the trajectory of a session file to replay it.
+	 *
+	 * @param sessionFile	The session file
+	 * @param speed			How many times faster than it was logged the session is replayed, or
+	 * 						Double.POSITIVE_INFINITY to replay it as fast as the logger can sample
+	 * @throws IOException	If the session file could not be read, or has no trajectory
+	 */
+	public ReplayPointerSource(File sessionFile, double speed) throws IOException {
+		SessionFile session = SessionFile.openReadOnly(sessionFile);
+		try {
+			if (!session.hasTrajectory()) {
+				throw new IOException("The session file has no trajectory to replay: " + sessionFile);
+			}
+			this.bounds = session.getDenseBounds();
+			final long samplePeriodNanos = session.getSamplePeriodNanos();
+			session.readTrajectory(new TrajectoryVisitor() {
+				private long lastTimeNanos;
+				private int lastPeriods;
+
+				@Override
+				public void visit(long timeNanos, int x, int y, int periods) {
+					if (size == 0) {
+						append(timeNanos, x, y);
+					} else {
+						// A record is at most the strides of the record before it and its own missed periods,
+						// and less than a period of jitter, after the record before it
+						long maxGapNanos = (this.lastPeriods + (long) periods + 1) * samplePeriodNanos;
+						long gapNanos = Math.max(0, Math.min(timeNanos - this.lastTimeNanos, maxGapNanos));
+						append(times[size - 1] + gapNanos, x, y);
+					}
+					this.lastTimeNanos = timeNanos;
+					this.lastPeriods = periods;
+				}
+			});
+		} finally {
+			session.close();
+		}
+		this.clock = new SourceClock(speed);
+	}
+
+	@Override
+	public Rectangle getBounds() {
+		return new Rectangle(this.bounds);
+	}
+
+	@Override
+	public long nanoTime() {
+		return this.clock.nanoTime();
+	}
+
+	@Override
+	public void parkUntil(Object blocker, long nanoTime) {
+		this.clock.parkUntil(blocker, nanoTime);
+	}
+
+	@Override
+	public boolean readPointer(long nanoTime, Point location) {
+		long elapsed = this.clock.elapsedNanos(nanoTime) + (this.size == 0 ? 0 : this.times[0]);
+		while (this.next < this.size && this.times[this.next] <= elapsed) {
+			this.next++;
+		}
+		if (this.next == 0) {
+			return false;
+		}
+		location.setLocation(this.xs[this.next - 1], this.ys[this.next - 1]);
+		return true;
+	}
+
+	@Override
+	public boolean hasEnded() {
+		return this.next >= this.size;
+	}
+
+	/**
+	 * @return	The number of records replayed.
+	 */
+	public int getRecordCount() {
+		return this.size;
+	}
+
+	private void append(long time, int x, int y) {
+		if (this.size == this.times.length) {
+			this.times = Arrays.copyOf(this.times, this.size * 2);
+			this.xs = Arrays.copyOf(this.xs, this.size * 2);
+			this.ys = Arrays.copyOf(this.ys, this.size * 2);
+		}
+		this.times[this.size] = time;
+		this.xs[this.size] = x;
+		this.ys[this.size] = y;
+		this.size++;
+	}
+}
@@ -0,0 +1,25 @@
+package mlog;
+
+/**
+ * Is told about every sample that a MouseLogger adds to its log, for example to show the log while it grows.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public interface SampleListener {
+
+	/**
+	 * Called on the sampling thread after a sample has been added to the log. Must return quickly and must not
+	 * block, since the next sample waits for it.
+	 *
+	 * @param x			The x coordinate of the mouse pointer
+	 * @param y			The y coordinate of the mouse pointer
+	 * @param periods	The number of sample periods that the sample stands for
+	 */
+	void sampleLogged(int x, int y, int periods);
+
+	/**
+	 * Called when all logged pixels have been forgotten.
+	 */
+	void logCleared();
+}
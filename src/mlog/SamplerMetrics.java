@@ -0,0 +1,93 @@
+package mlog;
+
+/**
+ * Shows the sampler statistics and the size of the log of a MouseLogger over JMX.
+ *
+ * Every value is read when it is asked for; nothing is added to the sampling path. Counting the pixels of the log
+ * briefly takes the lock that snapshots take, which the sampler never waits for.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class SamplerMetrics implements SamplerMetricsMBean {
+
+	private final MouseLogger mouseLogger;
+
+	/**
+	 * Creates the metrics of a mouse logger.
+	 *
+	 * @param mouseLogger	The mouse logger
+	 */
+	public SamplerMetrics(MouseLogger mouseLogger) {
+		this.mouseLogger = mouseLogger;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.mouseLogger.isRunning();
+	}
+
+	@Override
+	public long getSampleCount() {
+		return this.mouseLogger.getSamplerStats().getSampleCount();
+	}
+
+	@Override
+	public double getSamplesPerSecond() {
+		return this.mouseLogger.getSamplerStats().getSamplesPerSecond();
+	}
+
+	@Override
+	public long getMissedDeadlines() {
+		return this.mouseLogger.getSamplerStats().getMissedDeadlines();
+	}
+
+	@Override
+	public long getAverageJitterNanos() {
+		return this.mouseLogger.getSamplerStats().getAverageJitterNanos();
+	}
+
+	@Override
+	public long getMaxJitterNanos() {
+		return this.mouseLogger.getSamplerStats().getMaxJitterNanos();
+	}
+
+	@Override
+	public long[] getJitterHistogram() {
+		return this.mouseLogger.getSamplerStats().getJitterHistogram();
+	}
+
+	@Override
+	public long[] getJitterBucketLimitsNanos() {
+		long[] limits = new long[SamplerStats.JITTER_BUCKETS];
+		for (int i = 0; i < limits.length; i++) {
+			limits[i] = SamplerStats.getJitterBucketLimitNanos(i);
+		}
+		return limits;
+	}
+
+	@Override
+	public long getAveragePointerQueryNanos() {
+		return this.mouseLogger.getSamplerStats().getAveragePointerQueryNanos();
+	}
+
+	@Override
+	public long getMaxPointerQueryNanos() {
+		return this.mouseLogger.getSamplerStats().getMaxPointerQueryNanos();
+	}
+
+	@Override
+	public int getIdleStride() {
+		return this.mouseLogger.getSamplerStats().getIdleStride();
+	}
+
+	@Override
+	public int getDistinctPixels() {
+		return this.mouseLogger.getLogSize();
+	}
+
+	@Override
+	public long getEstimatedLogBytes() {
+		return this.mouseLogger.estimateLogMemoryBytes();
+	}
+}
@@ -0,0 +1,75 @@
+package mlog;
+
+/**
+ * The management interface of the sampler of a MouseLogger and its log, as it is shown over JMX.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public interface SamplerMetricsMBean {
+
+	/**
+	 * @return	True if the logger is logging, false while it is paused.
+	 */
+	boolean isRunning();
+
+	/**
+	 * @return	The number of samples taken.
+	 */
+	long getSampleCount();
+
+	/**
+	 * @return	The number of samples taken per second, measured over the latest second or so of sampling.
+	 */
+	double getSamplesPerSecond();
+
+	/**
+	 * @return	The number of deadlines that were skipped because the sampler was running late.
+	 */
+	long getMissedDeadlines();
+
+	/**
+	 * @return	The average time between a deadline and the sample taken for it, in nanoseconds.
+	 */
+	long getAverageJitterNanos();
+
+	/**
+	 * @return	The longest time between a deadline and the sample taken for it, in nanoseconds.
+	 */
+	long getMaxJitterNanos();
+
+	/**
+	 * @return	The number of samples in each bucket of the jitter histogram.
+	 */
+	long[] getJitterHistogram();
+
+	/**
+	 * @return	The jitter below which the samples of each bucket of the jitter histogram are, in nanoseconds.
+	 */
+	long[] getJitterBucketLimitsNanos();
+
+	/**
+	 * @return	The average time it took to ask for the position of the pointer, in nanoseconds.
+	 */
+	long getAveragePointerQueryNanos();
+
+	/**
+	 * @return	The longest time it took to ask for the position of the pointer, in nanoseconds.
+	 */
+	long getMaxPointerQueryNanos();
+
+	/**
+	 * @return	The number of sample periods between the latest two samples; above 1 while the pointer is idle.
+	 */
+	int getIdleStride();
+
+	/**
+	 * @return	The number of distinct pixels in the log.
+	 */
+	int getDistinctPixels();
+
+	/**
+	 * @return	An estimate of the heap memory used by the log, in bytes.
+	 */
+	long getEstimatedLogBytes();
+}
@@ -0,0 +1,157 @@
+package mlog;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Statistics about how well the MouseLogger sampler keeps to its schedule.
+ *
+ * Only the sampling thread records values; any thread may read them. Every field is written by a single
+ * thread, so plain volatile fields are enough and recording never blocks or allocates. For the same reason the
+ * values are never cleared; the MouseLogger starts a new SamplerStats instead.
+ *
+ * The jitter of the samples is also counted in a histogram with buckets that double in width, from below a
+ * microsecond up to a second, and the sampling rate is measured over windows of about a second.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class SamplerStats {
+
+	public static final int JITTER_BUCKETS = 22;
+
+	private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final AtomicLongArray jitterHistogram = new AtomicLongArray(JITTER_BUCKETS);
+	private volatile long sampleCount;
+	private volatile long missedDeadlines;
+	private volatile long totalJitterNanos;
+	private volatile long maxJitterNanos;
+	private volatile long totalPointerQueryNanos;
+	private volatile long maxPointerQueryNanos;
+	private volatile int idleStride = 1;
+	private volatile double samplesPerSecond;
+	private long rateWindowStartNanos;
+	private long rateWindowSamples;
+	private long lastSampleNanos;
+
+	/**
+	 * Records one sample.
+	 *
+	 * @param nanoTime			The System.nanoTime() value when the sample was taken
+	 * @param jitterNanos		How late the sample was taken compared to its deadline
+	 * @param missed			The number of deadlines that passed before the sample could be taken
+	 * @param stride			The number of sample periods until the next sample
+	 * @param pointerQueryNanos	The time it took to ask for the position of the pointer
+	 */
+	void recordSample(long nanoTime, long jitterNanos, long missed, int stride, long pointerQueryNanos) {
+		this.sampleCount++;
+		this.missedDeadlines += missed;
+		this.totalJitterNanos += jitterNanos;
+		if (jitterNanos > this.maxJitterNanos) {
+			this.maxJitterNanos = jitterNanos;
+		}
+		this.totalPointerQueryNanos += pointerQueryNanos;
+		if (pointerQueryNanos > this.maxPointerQueryNanos) {
+			this.maxPointerQueryNanos = pointerQueryNanos;
+		}
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(jitterNanos / 1000), JITTER_BUCKETS - 1);
+		// Only this thread writes the histogram, so the count needs no atomic increment, just a release
+		this.jitterHistogram.lazySet(bucket, this.jitterHistogram.get(bucket) + 1);
+		this.idleStride = stride;
+
+		// A gap longer than the window means the sampler was paused, which does not count as sampling slowly
+		if (this.rateWindowSamples == 0 || nanoTime - this.lastSampleNanos > RATE_WINDOW_NANOS) {
+			this.rateWindowStartNanos = nanoTime;
+			this.rateWindowSamples = 0;
+		} else if (nanoTime - this.rateWindowStartNanos >= RATE_WINDOW_NANOS) {
+			this.samplesPerSecond = this.rateWindowSamples * (double) RATE_WINDOW_NANOS / (nanoTime - this.rateWindowStartNanos);
+			this.rateWindowStartNanos = nanoTime;
+			this.rateWindowSamples = 0;
+		}
+		this.rateWindowSamples++;
+		this.lastSampleNanos = nanoTime;
+	}
+
+	/**
+	 * @return	The number of samples taken.
+	 */
+	public long getSampleCount() {
+		return this.sampleCount;
+	}
+
+	/**
+	 * @return	The number of deadlines that were skipped because the sampler was running late.
+	 */
+	public long getMissedDeadlines() {
+		return this.missedDeadlines;
+	}
+
+	/**
+	 * @return	The average time between a deadline and the sample taken for it, in nanoseconds.
+	 */
+	public long getAverageJitterNanos() {
+		long samples = this.sampleCount;
+		return samples == 0 ? 0 : this.totalJitterNanos / samples;
+	}
+
+	/**
+	 * @return	The longest time between a deadline and the sample taken for it, in nanoseconds.
+	 */
+	public long getMaxJitterNanos() {
+		return this.maxJitterNanos;
+	}
+
+	/**
+	 * @return	The number of sample periods between the latest two samples; above 1 while the pointer is idle.
+	 */
+	public int getIdleStride() {
+		return this.idleStride;
+	}
+
+	/**
+	 * @return	The number of samples taken per second, measured over the latest second or so of sampling.
+	 */
+	public double getSamplesPerSecond() {
+		return this.samplesPerSecond;
+	}
+
+	/**
+	 * @return	The average time it took to ask for the position of the pointer, in nanoseconds.
+	 */
+	public long getAveragePointerQueryNanos() {
+		long samples = this.sampleCount;
+		return samples == 0 ? 0 : this.totalPointerQueryNanos / samples;
+	}
+
+	/**
+	 * @return	The longest time it took to ask for the position of the pointer, in nanoseconds.
+	 */
+	public long getMaxPointerQueryNanos() {
+		return this.maxPointerQueryNanos;
+	}
+
+	/**
+	 * Counts the samples by their jitter. Bucket 0 counts the samples less than a microsecond late, every other
+	 * bucket the samples less than getJitterBucketLimitNanos(i) late that are not in an earlier bucket, and the
+	 * last bucket all the samples about a second late or more.
+	 *
+	 * @return	The number of samples in each bucket, a copy.
+	 */
+	public long[] getJitterHistogram() {
+		long[] histogram = new long[JITTER_BUCKETS];
+		for (int i = 0; i < JITTER_BUCKETS; i++) {
+			histogram[i] = this.jitterHistogram.get(i);
+		}
+		return histogram;
+	}
+
+	/**
+	 * @param bucket	A bucket of the jitter histogram
+	 * @return	The jitter below which the samples of the bucket are, in nanoseconds; Long.MAX_VALUE for the last
+	 * 			bucket.
+	 */
+	public static long getJitterBucketLimitNanos(int bucket) {
+		return bucket == JITTER_BUCKETS - 1 ? Long.MAX_VALUE : 1000L << bucket;
+	}
+}
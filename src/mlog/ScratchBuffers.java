@@ -0,0 +1,214 @@
+package mlog;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of the images and arrays that rendering a map needs only for a while, such as tile images and density
+ * buffers. Buffers are borrowed for a tile or a render and given back afterwards, so a renderer that renders many
+ * maps of the same size, as a batch job does, allocates its buffers once instead of for every map.
+ *
+ * Any number of threads may borrow and give back buffers at the same time. Only a few buffers of each kind are
+ * kept, and no more than a given number of bytes in all; more are left to the garbage collector. A buffer that
+ * does not fit pushes out pooled images of other sizes, which a renderer that moved on to another size no longer
+ * borrows, and a buffer larger than the whole pool, like the map of a very large screen, is never kept.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class ScratchBuffers {
+
+	private static final int MAX_POOLED = 64;
+
+	/**
+	 * The number of bytes of buffers that are pooled by default.
+	 */
+	public final static long DEFAULT_MAX_POOLED_BYTES = 64L << 20;
+
+	private final long maxPooledBytes;
+	private final AtomicLong pooledBytes = new AtomicLong();
+	private final ConcurrentHashMap<Long, Queue<BufferedImage>> images = new ConcurrentHashMap<Long, Queue<BufferedImage>>();
+	private final Queue<float[]> floats = new ConcurrentLinkedQueue<float[]>();
+	private final Queue<int[]> ints = new ConcurrentLinkedQueue<int[]>();
+
+	/**
+	 * Creates a pool that keeps up to DEFAULT_MAX_POOLED_BYTES of buffers.
+	 */
+	public ScratchBuffers() {
+		this(DEFAULT_MAX_POOLED_BYTES);
+	}
+
+	/**
+	 * Creates a pool.
+	 *
+	 * @param maxPooledBytes	The most bytes of buffers that are kept at a time
+	 */
+	public ScratchBuffers(long maxPooledBytes) {
+		if (maxPooledBytes < 0) {
+			throw new IllegalArgumentException("The pool size must not be negative: " + maxPooledBytes);
+		}
+		this.maxPooledBytes = maxPooledBytes;
+	}
+
+	/**
+	 * Borrows an image with a black background.
+	 *
+	 * @param width		The width of the image
+	 * @param height	The height of the image
+	 * @return	An image of type TYPE_INT_RGB and the given size.
+	 */
+	public BufferedImage borrowImage(int width, int height) {
+		BufferedImage image = this.imagesOfSize(width, height).poll();
+		if (image == null) {
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		}
+		this.pooledBytes.addAndGet(-bytesOf(image));
+		Arrays.fill(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0);
+		return image;
+	}
+
+	/**
+	 * Gives back a borrowed image. It must not be used afterwards.
+	 *
+	 * @param image	An image of type TYPE_INT_RGB
+	 */
+	public void release(BufferedImage image) {
+		long bytes = bytesOf(image);
+		Queue<BufferedImage> pool = this.imagesOfSize(image.getWidth(), image.getHeight());
+		if (bytes <= this.maxPooledBytes && this.pooledBytes.get() + bytes > this.maxPooledBytes) {
+			this.evictImagesExcept(pool, bytes);
+		}
+		this.offer(pool, image, bytes);
+	}
+
+	/**
+	 * Borrows an array of floats, for example a density buffer.
+	 *
+	 * @param length	The number of floats needed
+	 * @return	An array of at least the given length, the first length of them zero.
+	 */
+	public float[] borrowFloats(int length) {
+		float[] buffer = this.floats.poll();
+		if (buffer != null) {
+			this.pooledBytes.addAndGet(-4L * buffer.length);
+		}
+		if (buffer == null || buffer.length < length) {
+			return new float[length];
+		}
+		Arrays.fill(buffer, 0, length, 0);
+		return buffer;
+	}
+
+	/**
+	 * Gives back a borrowed array of floats. It must not be used afterwards.
+	 *
+	 * @param buffer	The array
+	 */
+	public void release(float[] buffer) {
+		this.offer(this.floats, buffer, 4L * buffer.length);
+	}
+
+	/**
+	 * Borrows an array of ints, for example to copy the coordinates of a log into.
+	 *
+	 * @param length	The number of ints needed
+	 * @return	An array of at least the given length, with any values in it.
+	 */
+	public int[] borrowInts(int length) {
+		int[] buffer = this.ints.poll();
+		if (buffer != null) {
+			this.pooledBytes.addAndGet(-4L * buffer.length);
+		}
+		if (buffer == null || buffer.length < length) {
+			return new int[length];
+		}
+		return buffer;
+	}
+
+	/**
+	 * Gives back a borrowed array of ints. It must not be used afterwards.
+	 *
+	 * @param buffer	The array
+	 */
+	public void release(int[] buffer) {
+		this.offer(this.ints, buffer, 4L * buffer.length);
+	}
+
+	/**
+	 * Lets the garbage collector have all pooled buffers.
+	 */
+	public void clear() {
+		this.images.clear();
+		this.floats.clear();
+		this.ints.clear();
+		this.pooledBytes.set(0);
+	}
+
+	/**
+	 * @return	The number of bytes of the buffers in the pool.
+	 */
+	public long getPooledBytes() {
+		return this.pooledBytes.get();
+	}
+
+	private Queue<BufferedImage> imagesOfSize(int width, int height) {
+		Long size = Long.valueOf((long) width << 32 | height);
+		Queue<BufferedImage> pool = this.images.get(size);
+		if (pool == null) {
+			Queue<BufferedImage> created = new ConcurrentLinkedQueue<BufferedImage>();
+			pool = this.images.putIfAbsent(size, created);
+			if (pool == null) {
+				pool = created;
+			}
+		}
+		return pool;
+	}
+
+	private <T> void offer(Queue<T> pool, T buffer, long bytes) {
+		// The size of a concurrent queue is counted, but only a few buffers are ever pooled
+		if (pool.size() < MAX_POOLED && this.reserve(bytes)) {
+			pool.offer(buffer);
+		}
+	}
+
+	/**
+	 * Counts bytes into the pool, if they fit.
+	 *
+	 * @return	true if the bytes fit and were counted.
+	 */
+	private boolean reserve(long bytes) {
+		while (true) {
+			long pooled = this.pooledBytes.get();
+			if (pooled + bytes > this.maxPooledBytes) {
+				return false;
+			}
+			if (this.pooledBytes.compareAndSet(pooled, pooled + bytes)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Drops pooled images of other sizes until a number of bytes fit, or there are none left.
+	 */
+	private void evictImagesExcept(Queue<BufferedImage> keep, long bytes) {
+		for (Queue<BufferedImage> pool : this.images.values()) {
+			if (pool == keep) {
+				continue;
+			}
+			BufferedImage image;
+			while (this.pooledBytes.get() + bytes > this.maxPooledBytes && (image = pool.poll()) != null) {
+				this.pooledBytes.addAndGet(-bytesOf(image));
+			}
+		}
+	}
+
+	private static long bytesOf(BufferedImage image) {
+		return 4L * image.getWidth() * image.getHeight();
+	}
+}
@@ -0,0 +1,892 @@
+package mlog;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A versioned binary file that a logging session is checkpointed to, so that it survives restarts and crashes.
+ *
+ * The file starts with two header slots, each with its own bitmap, followed by a memory-mapped region with room
+ * for two copies of every tile of the dense area (stored little-endian, so that reading and writing tiles are
+ * plain copies on common hardware), and an append-only log of chunks. The bitmap of a header slot tells which
+ * tiles have been written and which of their copies is current.
+ *
+ * Every checkpoint writes the tiles that changed since the last checkpoint into their other copies, and the
+ * header and bitmap into the slot that was not used last time, after everything else has been forced to disk.
+ * Nothing that the previous header refers to is written, so a crash during a checkpoint leaves the previous
+ * checkpoint intact. The log holds the trajectory records and the changes of the pixels outside the dense area,
+ * and only the part up to the length in the header is ever read.
+ *
+ * Reopening a file only reads the header, the bitmap and the tiles that were written, so it is fast even for
+ * sessions that have run for many hours.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class SessionFile {
+
+	public static final int VERSION = 2;
+	public static final String FILE_EXTENSION = ".mlog";
+	private static final int MAGIC = 0x4D4C4F47; // "MLOG"
+	private static final int PAGE_BYTES = 4096;
+	static final int HEADER_SLOT_BYTES = 128;
+	private static final int HEADER_BYTES = 84;
+	private static final int TILE_BYTES = PixelCountStore.TILE_SIZE * PixelCountStore.TILE_SIZE * 4;
+	private static final int TILES_PER_SEGMENT = (1 << 30) / TILE_BYTES;
+	private static final int CHUNK_SPARSE = 1;
+	private static final int CHUNK_TRAJECTORY = 2;
+	private static final int CHUNK_OVERHEAD = 12;
+	private static final int FLAG_TRAJECTORY = 1;
+	private static final int TRAJECTORY_BATCH_RECORDS = 4096;
+	private static final int READ_BATCH_TILES = 64;
+
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+	private final Rectangle denseBounds;
+	private final int tileCount;
+	private final long tileRegionOffset;
+	private final long logOffset;
+	private final long bitmapBytes;
+	private final ByteBuffer bitmaps;
+	private final boolean readOnly;
+	private final MappedByteBuffer[] tileSegments;
+
+	private long samplePeriodNanos;
+	private long startTimeMillis;
+	private long checkpointSequence;
+	private long totalCount;
+	private int distinctCount;
+	private long logLength;
+	private long trajectoryRecords;
+	private int flags;
+	private ByteBuffer bitmap;
+
+	private int[][] writtenTiles;
+	private LongIntTable writtenSparse;
+	private TrajectoryBuffer writtenTrajectory;
+	private long writtenTrajectoryRecords;
+	private long trajectoryTimeOffset;
+	// The time of the latest trajectory record in the file, read on demand after the file was opened
+	private boolean trajectoryEndKnown;
+	private long trajectoryEndNanos;
+
+	/**
+	 * Opens the file and lays out its regions. The header fields are filled in by create or open.
+	 * A read-only session keeps a copy of the bitmap of the checkpoint on the heap instead of mapping the file.
+	 *
+	 * @param checkpointSequence	The checkpoint whose bitmap is read
+	 */
+	private SessionFile(File file, Rectangle denseBounds, boolean readOnly, long checkpointSequence) throws IOException {
+		this.file = file;
+		this.denseBounds = new Rectangle(denseBounds);
+		PixelCountStore geometry = new PixelCountStore(denseBounds);
+		this.tileCount = geometry.getTileCount();
+		// Two bits for every tile: whether it was written, and which copy is current
+		this.bitmapBytes = roundUpToPage((2L * this.tileCount + 7) / 8);
+		this.tileRegionOffset = PAGE_BYTES + 2 * this.bitmapBytes;
+		this.logOffset = this.tileRegionOffset + 2L * this.tileCount * TILE_BYTES;
+		this.readOnly = readOnly;
+		this.randomAccessFile = new RandomAccessFile(file, readOnly ? "r" : "rw");
+		this.channel = this.randomAccessFile.getChannel();
+		this.checkpointSequence = checkpointSequence;
+		if (readOnly) {
+			this.bitmaps = null;
+			this.bitmap = ByteBuffer.allocate((int) this.bitmapBytes);
+			readFully(this.channel, this.bitmap, PAGE_BYTES + (checkpointSequence & 1) * this.bitmapBytes);
+		} else {
+			this.bitmaps = this.channel.map(FileChannel.MapMode.READ_WRITE, PAGE_BYTES, 2 * this.bitmapBytes);
+			this.bitmap = this.bitmapOfSlot(checkpointSequence);
+		}
+		this.tileSegments = new MappedByteBuffer[(int) ((2L * this.tileCount + TILES_PER_SEGMENT - 1) / TILES_PER_SEGMENT)];
+		this.writtenTiles = new int[this.tileCount][];
+	}
+
+	/**
+	 * Creates a new, empty session file, replacing any existing file.
+	 *
+	 * @param file					The file to create
+	 * @param denseBounds			The dense area of the logged counts, normally the virtual desktop
+	 * @param samplePeriodNanos		The time that one count stands for, in nanoseconds
+	 * @return	The new session file.
+	 * @throws IOException	If the file could not be created
+	 */
+	public static SessionFile create(File file, Rectangle denseBounds, long samplePeriodNanos) throws IOException {
+		if (file.exists() && !file.delete()) {
+			throw new IOException("The existing session file could not be replaced: " + file);
+		}
+		SessionFile session = new SessionFile(file, denseBounds, false, 0);
+		session.samplePeriodNanos = samplePeriodNanos;
+		session.startTimeMillis = System.currentTimeMillis();
+		session.trajectoryEndKnown = true;
+		session.trajectoryEndNanos = Long.MIN_VALUE;
+		session.writeHeader();
+		session.channel.force(true);
+		return session;
+	}
+
+	/**
+	 * Opens an existing session file to continue logging to it, using the latest checkpoint that was completely written.
+	 *
+	 * @param file	The file to open
+	 * @return	The opened session file.
+	 * @throws IOException	If the file could not be read or is not a valid session file
+	 */
+	public static SessionFile open(File file) throws IOException {
+		return open(file, false);
+	}
+
+	/**
+	 * Opens an existing session file for reading only, for example to render or merge it. The file is never
+	 * changed and is not memory-mapped, so many sessions can be read one after another without running out of
+	 * address space.
+	 *
+	 * @param file	The file to open
+	 * @return	The opened session file, which cannot be checkpointed.
+	 * @throws IOException	If the file could not be read or is not a valid session file
+	 */
+	public static SessionFile openReadOnly(File file) throws IOException {
+		return open(file, true);
+	}
+
+	/**
+	 * Reads the dense area of a session file without reading anything else.
+	 *
+	 * @param file	The session file
+	 * @return	The dense area of the logged counts.
+	 * @throws IOException	If the file could not be read or is not a valid session file
+	 */
+	public static Rectangle readDenseBounds(File file) throws IOException {
+		ByteBuffer header = readLatestHeader(file);
+		return new Rectangle(header.getInt(16), header.getInt(20), header.getInt(24), header.getInt(28));
+	}
+
+	/**
+	 * Reads the sample period of a session file without reading anything else.
+	 *
+	 * @param file	The session file
+	 * @return	The time between two samples, in nanoseconds, which the counts are measured in.
+	 * @throws IOException	If the file could not be read or is not a valid session file
+	 */
+	public static long readSamplePeriodNanos(File file) throws IOException {
+		return readLatestHeader(file).getLong(32);
+	}
+
+	/**
+	 * Reads both header slots of a session file.
+	 *
+	 * @return	The valid header with the highest checkpoint sequence.
+	 */
+	private static ByteBuffer readLatestHeader(File file) throws IOException {
+		ByteBuffer header = null;
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			FileChannel inputChannel = input.getChannel();
+			long bestSequence = -1;
+			for (int slot = 0; slot < 2; slot++) {
+				ByteBuffer candidate = ByteBuffer.allocate(HEADER_BYTES);
+				readFully(inputChannel, candidate, (long) slot * HEADER_SLOT_BYTES);
+				if (isValidHeader(candidate) && candidate.getLong(8) > bestSequence) {
+					bestSequence = candidate.getLong(8);
+					header = candidate;
+				}
+			}
+		} finally {
+			input.close();
+		}
+		if (header == null) {
+			throw new IOException("Not a valid MLOG session file: " + file);
+		}
+		return header;
+	}
+
+	/**
+	 * Opens an existing session file.
+	 */
+	private static SessionFile open(File file, boolean readOnly) throws IOException {
+		ByteBuffer header = readLatestHeader(file);
+		int version = header.getShort(4);
+		if (version > VERSION) {
+			throw new IOException("The session file was written by a newer version of MLOG (format " + version + ")");
+		}
+		if (version < VERSION) {
+			throw new IOException("The session file was written in an older format that cannot be read (format " + version + ")");
+		}
+		if (header.getShort(6) != PixelCountStore.TILE_SHIFT) {
+			throw new IOException("The session file uses an unsupported tile size");
+		}
+		Rectangle denseBounds = new Rectangle(header.getInt(16), header.getInt(20), header.getInt(24), header.getInt(28));
+		SessionFile session = new SessionFile(file, denseBounds, readOnly, header.getLong(8));
+		session.samplePeriodNanos = header.getLong(32);
+		session.startTimeMillis = header.getLong(40);
+		session.totalCount = header.getLong(48);
+		session.distinctCount = header.getInt(56);
+		session.flags = header.getInt(60);
+		session.logLength = header.getLong(64);
+		session.trajectoryRecords = header.getLong(72);
+		if (!readOnly) {
+			// Anything after the committed log may be a torn write from a crash
+			session.channel.truncate(session.logOffset + session.logLength);
+		}
+		return session;
+	}
+
+	/**
+	 * Reads the counts of the latest checkpoint.
+	 *
+	 * @return	The logged counts, in a store with the dense area of the session.
+	 * @throws IOException	If the file could not be read
+	 */
+	public PixelCountStore readCounts() throws IOException {
+		PixelCountStore counts = new PixelCountStore(this.denseBounds);
+		this.accumulateInto(counts);
+		return counts;
+	}
+
+	/**
+	 * Adds the counts of the latest checkpoint to a store. The store does not need to have the same dense
+	 * area as the session, but adding whole tiles is only possible when it does.
+	 *
+	 * @param counts	The store to add the counts to
+	 * @throws IOException	If the file could not be read
+	 */
+	public void accumulateInto(PixelCountStore counts) throws IOException {
+		this.accumulateInto(counts, this.getSamplePeriodNanos());
+	}
+
+	/**
+	 * Adds the counts of the latest checkpoint to a store, converted from sample periods of this session to
+	 * another time unit, so sessions logged at different rates can be added up. Converted counts are rounded,
+	 * but a logged pixel always keeps a count of at least 1.
+	 *
+	 * @param counts	The store to add the counts to
+	 * @param unitNanos	The time unit of the counts of the store, in nanoseconds, e.g. the shortest sample period
+	 * 					of the sessions that are added up
+	 * @throws IOException	If the file could not be read
+	 */
+	public synchronized void accumulateInto(final PixelCountStore counts, long unitNanos) throws IOException {
+		double scale = (double) this.samplePeriodNanos / unitNanos;
+		boolean scaled = this.samplePeriodNanos != unitNanos;
+		boolean sameGeometry = counts.getDenseBounds().equals(this.denseBounds);
+		int[] tile = new int[TILE_BYTES / 4];
+		ByteBuffer batch = ByteBuffer.allocateDirect(READ_BATCH_TILES * TILE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		int tileIndex = 0;
+		while (tileIndex < this.tileCount) {
+			if (!this.isTileWritten(tileIndex)) {
+				tileIndex++;
+				continue;
+			}
+			// Read runs of written tiles in the same copy with one positional read instead of faulting in the mapping
+			int copy = this.currentCopy(tileIndex);
+			int runEnd = tileIndex + 1;
+			while (runEnd < this.tileCount && runEnd - tileIndex < READ_BATCH_TILES && this.isTileWritten(runEnd)
+					&& this.currentCopy(runEnd) == copy) {
+				runEnd++;
+			}
+			batch.clear();
+			batch.limit((runEnd - tileIndex) * TILE_BYTES);
+			readFully(this.channel, batch, this.tileOffset(tileIndex, copy));
+			batch.flip();
+			IntBuffer batchInts = batch.asIntBuffer();
+			for (; tileIndex < runEnd; tileIndex++) {
+				batchInts.get(tile);
+				if (scaled) {
+					for (int cell = 0; cell < tile.length; cell++) {
+						tile[cell] = scaleCount(tile[cell], scale);
+					}
+				}
+				if (sameGeometry) {
+					counts.addTile(tileIndex, tile);
+				} else {
+					this.addTileByPixel(tileIndex, tile, counts);
+				}
+			}
+		}
+		LongIntTable sparse = this.readSparse();
+		for (int slot = 0; slot < sparse.capacity(); slot++) {
+			int count = sparse.valueAt(slot);
+			if (count != 0) {
+				long key = sparse.keyAt(slot);
+				counts.add(LongIntTable.unpackX(key), LongIntTable.unpackY(key), scaleCount(count, scale));
+			}
+		}
+	}
+
+	/**
+	 * Adds up the changes of the pixels outside the dense area in the committed log.
+	 *
+	 * @return	The counts of the pixels outside the dense area.
+	 */
+	private LongIntTable readSparse() throws IOException {
+		final LongIntTable sparse = new LongIntTable();
+		this.readLog(CHUNK_SPARSE, new ChunkReader() {
+			@Override
+			public void read(ByteBuffer payload) {
+				int pixels = payload.getInt();
+				for (int i = 0; i < pixels; i++) {
+					sparse.add(LongIntTable.pack(payload.getInt(), payload.getInt()), payload.getInt());
+				}
+			}
+		});
+		return sparse;
+	}
+
+	/**
+	 * @return	A count converted to another time unit, at least 1 unless it is 0, and at most Integer.MAX_VALUE.
+	 */
+	private static int scaleCount(int count, double scale) {
+		if (count == 0 || scale == 1) {
+			return count;
+		}
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(count * scale)));
+	}
+
+	/**
+	 * Adds the counts of a tile of this session to a store with another dense area, one pixel at a time.
+	 */
+	private void addTileByPixel(int tileIndex, int[] tile, PixelCountStore counts) {
+		int tileSize = PixelCountStore.TILE_SIZE;
+		int tileColumns = (this.denseBounds.width + tileSize - 1) / tileSize;
+		int baseX = this.denseBounds.x + (tileIndex % tileColumns) * tileSize;
+		int baseY = this.denseBounds.y + (tileIndex / tileColumns) * tileSize;
+		for (int cell = 0; cell < tile.length; cell++) {
+			if (tile[cell] != 0) {
+				counts.add(baseX + cell % tileSize, baseY + cell / tileSize, tile[cell]);
+			}
+		}
+	}
+
+	/**
+	 * Visits all trajectory records of the latest checkpoint, in the order they were logged.
+	 * Record times are measured in nanoseconds since the session was created.
+	 *
+	 * @param visitor	The visitor to call
+	 * @throws IOException	If the file could not be read
+	 */
+	public synchronized void readTrajectory(final TrajectoryVisitor visitor) throws IOException {
+		this.readLog(CHUNK_TRAJECTORY, new ChunkReader() {
+			@Override
+			public void read(ByteBuffer payload) {
+				while (payload.hasRemaining()) {
+					visitor.visit(payload.getLong(), payload.getInt(), payload.getInt(), payload.getInt());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes a checkpoint of the counts and of a trajectory that was logged on the system clock, see
+	 * checkpoint(PixelCountStore, TrajectoryBuffer, long).
+	 *
+	 * @param snapshot		A snapshot of the logged counts, with the same dense area as the session
+	 * @param trajectory	The trajectory of the session, with times on System.nanoTime(), or null to not write any
+	 * 						trajectory
+	 * @throws IOException	If the checkpoint could not be written
+	 */
+	public void checkpoint(PixelCountStore snapshot, TrajectoryBuffer trajectory) throws IOException {
+		this.checkpoint(snapshot, trajectory, System.nanoTime());
+	}
+
+	/**
+	 * Writes a checkpoint. Only tiles that changed since the previous checkpoint are written, only the pixels
+	 * outside the dense area that changed are appended, and only trajectory records that were not written before.
+	 * If it fails, the previous checkpoint stays the latest one, and the next checkpoint writes everything again
+	 * that this one would have.
+	 *
+	 * The first time a trajectory is written, its times are lined up with the time since the session was created:
+	 * the current time of its clock is taken to be now. A trajectory never starts before the latest record that is
+	 * already in the file, so the runs of a session follow each other even if their clocks ran faster than real
+	 * time.
+	 *
+	 * @param snapshot		A snapshot of the logged counts, with the same dense area as the session
+	 * @param trajectory	The trajectory of the session, or null to not write any trajectory
+	 * @param nowNanos		The current time of the clock the trajectory was logged on, e.g. of the PointerSource
+	 * @throws IOException	If the checkpoint could not be written
+	 */
+	public synchronized void checkpoint(final PixelCountStore snapshot, TrajectoryBuffer trajectory, long nowNanos)
+			throws IOException {
+		this.checkWritable();
+		if (!snapshot.getDenseBounds().equals(this.denseBounds)) {
+			throw new IllegalArgumentException("The snapshot does not have the dense area of the session");
+		}
+		ByteBuffer nextBitmap = this.bitmapOfSlot(this.checkpointSequence + 1);
+		nextBitmap.put(this.bitmap.duplicate()).clear();
+		// Tiles are copied when they are written to after a snapshot, so a changed tile is a different array
+		int[][] changedTiles = new int[this.tileCount][];
+		boolean tilesWritten = false;
+		for (int tileIndex = 0; tileIndex < this.tileCount; tileIndex++) {
+			int[] tile = snapshot.getTile(tileIndex);
+			if (tile != null && tile != this.writtenTiles[tileIndex]) {
+				int copy = this.isTileWritten(tileIndex) ? 1 - this.currentCopy(tileIndex) : 0;
+				this.tileInts(tileIndex, copy).put(tile);
+				setTileWritten(nextBitmap, tileIndex, copy);
+				changedTiles[tileIndex] = tile;
+				tilesWritten = true;
+			}
+		}
+		if (tilesWritten) {
+			for (MappedByteBuffer segment : this.tileSegments) {
+				if (segment != null) {
+					segment.force();
+				}
+			}
+		}
+		((MappedByteBuffer) this.bitmaps).force();
+
+		long logEnd = this.logOffset + this.logLength;
+		ByteBuffer sparseChanges = this.sparseChanges(snapshot);
+		long sequenceBefore = this.checkpointSequence;
+		long logLengthBefore = this.logLength;
+		long totalCountBefore = this.totalCount;
+		int distinctCountBefore = this.distinctCount;
+		long trajectoryRecordsBefore = this.trajectoryRecords;
+		int flagsBefore = this.flags;
+		TrajectoryBuffer writtenTrajectoryBefore = this.writtenTrajectory;
+		long writtenTrajectoryRecordsBefore = this.writtenTrajectoryRecords;
+		long trajectoryTimeOffsetBefore = this.trajectoryTimeOffset;
+		boolean trajectoryEndKnownBefore = this.trajectoryEndKnown;
+		long trajectoryEndBefore = this.trajectoryEndNanos;
+		try {
+			if (sparseChanges != null) {
+				logEnd = this.appendChunk(CHUNK_SPARSE, sparseChanges, logEnd);
+			}
+			if (trajectory != null) {
+				logEnd = this.appendTrajectory(trajectory, nowNanos, logEnd);
+			}
+			if (logEnd != this.logOffset + this.logLength) {
+				this.channel.force(false);
+			}
+			this.logLength = logEnd - this.logOffset;
+			this.totalCount = snapshot.getTotalCount();
+			this.distinctCount = snapshot.size();
+			this.checkpointSequence++;
+			this.writeHeader();
+			this.channel.force(false);
+		} catch (IOException ioe) {
+			// Nothing of this checkpoint counts as written, so the next one writes it all again
+			this.checkpointSequence = sequenceBefore;
+			this.logLength = logLengthBefore;
+			this.totalCount = totalCountBefore;
+			this.distinctCount = distinctCountBefore;
+			this.trajectoryRecords = trajectoryRecordsBefore;
+			this.flags = flagsBefore;
+			this.writtenTrajectory = writtenTrajectoryBefore;
+			this.writtenTrajectoryRecords = writtenTrajectoryRecordsBefore;
+			this.trajectoryTimeOffset = trajectoryTimeOffsetBefore;
+			this.trajectoryEndKnown = trajectoryEndKnownBefore;
+			this.trajectoryEndNanos = trajectoryEndBefore;
+			throw ioe;
+		}
+
+		this.bitmap = nextBitmap;
+		for (int tileIndex = 0; tileIndex < this.tileCount; tileIndex++) {
+			if (changedTiles[tileIndex] != null) {
+				this.writtenTiles[tileIndex] = changedTiles[tileIndex];
+			}
+		}
+		if (sparseChanges != null) {
+			sparseChanges.rewind();
+			int pixels = sparseChanges.getInt();
+			for (int i = 0; i < pixels; i++) {
+				this.writtenSparse.add(LongIntTable.pack(sparseChanges.getInt(), sparseChanges.getInt()), sparseChanges.getInt());
+			}
+		}
+	}
+
+	/**
+	 * Forgets everything in the session, as if it had just been created.
+	 *
+	 * @throws IOException	If the file could not be written
+	 */
+	public synchronized void reset() throws IOException {
+		this.checkWritable();
+		ByteBuffer nextBitmap = this.bitmapOfSlot(this.checkpointSequence + 1);
+		for (int i = 0; i < nextBitmap.capacity(); i++) {
+			nextBitmap.put(i, (byte) 0);
+		}
+		((MappedByteBuffer) this.bitmaps).force();
+		this.bitmap = nextBitmap;
+		this.writtenTiles = new int[this.tileCount][];
+		this.writtenSparse = new LongIntTable();
+		this.writtenTrajectory = null;
+		this.writtenTrajectoryRecords = 0;
+		this.trajectoryEndKnown = true;
+		this.trajectoryEndNanos = Long.MIN_VALUE;
+		this.logLength = 0;
+		this.trajectoryRecords = 0;
+		this.totalCount = 0;
+		this.distinctCount = 0;
+		this.flags = 0;
+		this.startTimeMillis = System.currentTimeMillis();
+		this.checkpointSequence++;
+		this.writeHeader();
+		this.channel.force(false);
+		this.channel.truncate(this.logOffset);
+	}
+
+	/**
+	 * @throws IOException	If the session was opened for reading only
+	 */
+	private void checkWritable() throws IOException {
+		if (this.readOnly) {
+			throw new IOException("The session file " + this.file + " was opened for reading only");
+		}
+	}
+
+	/**
+	 * Closes the file. Changes that were not checkpointed are lost.
+	 */
+	public synchronized void close() {
+		try {
+			this.channel.close();
+			this.randomAccessFile.close();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return	The file that the session is stored in.
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * @return	The dense area of the logged counts.
+	 */
+	public Rectangle getDenseBounds() {
+		return new Rectangle(this.denseBounds);
+	}
+
+	/**
+	 * @return	The time that one count stands for, in nanoseconds.
+	 */
+	public synchronized long getSamplePeriodNanos() {
+		return this.samplePeriodNanos;
+	}
+
+	/**
+	 * @return	The time when the session was created, in milliseconds since the epoch.
+	 */
+	public synchronized long getStartTimeMillis() {
+		return this.startTimeMillis;
+	}
+
+	/**
+	 * @return	The number of checkpoints written to the session since it was created.
+	 */
+	public synchronized long getCheckpointSequence() {
+		return this.checkpointSequence;
+	}
+
+	/**
+	 * @return	The sum of all counts at the latest checkpoint.
+	 */
+	public synchronized long getTotalCount() {
+		return this.totalCount;
+	}
+
+	/**
+	 * @return	The number of distinct pixels at the latest checkpoint.
+	 */
+	public synchronized int getDistinctCount() {
+		return this.distinctCount;
+	}
+
+	/**
+	 * @return	The number of trajectory records at the latest checkpoint.
+	 */
+	public synchronized long getTrajectoryRecordCount() {
+		return this.trajectoryRecords;
+	}
+
+	/**
+	 * @return	True if the session holds trajectory records, false if not.
+	 */
+	public synchronized boolean hasTrajectory() {
+		return (this.flags & FLAG_TRAJECTORY) != 0;
+	}
+
+	/**
+	 * Collects the pixels outside the dense area whose counts changed since they were last written, so a long
+	 * session does not write all of them again at every checkpoint.
+	 *
+	 * @return	A chunk payload with the number of changed pixels and, for each, its coordinates and the amount its
+	 * 			count grew by, or null if no pixel changed.
+	 */
+	private ByteBuffer sparseChanges(PixelCountStore snapshot) throws IOException {
+		if (this.writtenSparse == null) {
+			this.writtenSparse = this.readSparse();
+		}
+		final LongIntTable written = this.writtenSparse;
+		final int[] changed = new int[1];
+		snapshot.forEachSparse(new PixelVisitor() {
+			@Override
+			public void visit(int x, int y, int count) {
+				if (count != written.get(LongIntTable.pack(x, y))) {
+					changed[0]++;
+				}
+			}
+		});
+		if (changed[0] == 0) {
+			return null;
+		}
+		final ByteBuffer payload = ByteBuffer.allocate(4 + 12 * changed[0]);
+		payload.putInt(changed[0]);
+		// Counts only grow between resets, and stop at Integer.MAX_VALUE on both sides
+		snapshot.forEachSparse(new PixelVisitor() {
+			@Override
+			public void visit(int x, int y, int count) {
+				int before = written.get(LongIntTable.pack(x, y));
+				if (count != before) {
+					payload.putInt(x).putInt(y).putInt(count - before);
+				}
+			}
+		});
+		payload.flip();
+		return payload;
+	}
+
+	/**
+	 * @return	The time of the latest trajectory record in the file, or Long.MIN_VALUE if it has none.
+	 */
+	private long trajectoryEnd() throws IOException {
+		if (!this.trajectoryEndKnown) {
+			final long[] end = { Long.MIN_VALUE };
+			this.readTrajectory(new TrajectoryVisitor() {
+				@Override
+				public void visit(long timeNanos, int x, int y, int periods) {
+					end[0] = Math.max(end[0], timeNanos);
+				}
+			});
+			this.trajectoryEndNanos = end[0];
+			this.trajectoryEndKnown = true;
+		}
+		return this.trajectoryEndNanos;
+	}
+
+	/**
+	 * Appends the trajectory records that were not written before to the log.
+	 *
+	 * @param nowNanos	The current time of the clock the trajectory was logged on
+	 * @return	The new end of the log.
+	 */
+	private long appendTrajectory(TrajectoryBuffer trajectory, long nowNanos, long logEnd) throws IOException {
+		if (trajectory != this.writtenTrajectory) {
+			// Times in the file are measured from the creation of the session, also across restarts
+			long sinceSessionStart = (System.currentTimeMillis() - this.startTimeMillis) * 1000000L;
+			this.trajectoryTimeOffset = Math.max(sinceSessionStart - (nowNanos - trajectory.getStartNanos()),
+					this.trajectoryEnd());
+			this.writtenTrajectory = trajectory;
+			this.writtenTrajectoryRecords = 0;
+		}
+		long end = trajectory.size();
+		final ByteBuffer payload = ByteBuffer.allocate(TRAJECTORY_BATCH_RECORDS * TrajectoryBuffer.RECORD_BYTES);
+		final long timeOffset = this.trajectoryTimeOffset;
+		while (this.writtenTrajectoryRecords < end) {
+			long batchEnd = Math.min(end, this.writtenTrajectoryRecords + TRAJECTORY_BATCH_RECORDS);
+			payload.clear();
+			trajectory.read(this.writtenTrajectoryRecords, batchEnd, new TrajectoryVisitor() {
+				@Override
+				public void visit(long timeNanos, int x, int y, int periods) {
+					payload.putLong(timeNanos + timeOffset).putInt(x).putInt(y).putInt(periods);
+					trajectoryEndNanos = Math.max(trajectoryEndNanos, timeNanos + timeOffset);
+				}
+			});
+			payload.flip();
+			// Records that were dropped from memory before they could be written are skipped
+			if (payload.hasRemaining()) {
+				this.trajectoryRecords += payload.remaining() / TrajectoryBuffer.RECORD_BYTES;
+				logEnd = this.appendChunk(CHUNK_TRAJECTORY, payload, logEnd);
+				this.flags |= FLAG_TRAJECTORY;
+			}
+			this.writtenTrajectoryRecords = batchEnd;
+		}
+		return logEnd;
+	}
+
+	/**
+	 * Writes a chunk (type, payload length, payload, CRC of the payload) at the given position.
+	 *
+	 * @return	The position after the chunk.
+	 */
+	private long appendChunk(int type, ByteBuffer payload, long position) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+		ByteBuffer chunkHeader = ByteBuffer.allocate(8);
+		chunkHeader.putInt(type).putInt(payload.remaining()).flip();
+		ByteBuffer chunkTrailer = ByteBuffer.allocate(4);
+		chunkTrailer.putInt((int) crc.getValue()).flip();
+		position = writeFully(this.channel, chunkHeader, position);
+		position = writeFully(this.channel, payload, position);
+		return writeFully(this.channel, chunkTrailer, position);
+	}
+
+	/**
+	 * Receives the chunks of the log.
+	 */
+	private interface ChunkReader {
+		void read(ByteBuffer payload);
+	}
+
+	/**
+	 * Reads all chunks of a type from the committed log. Chunks of other types are skipped without being read,
+	 * and so are chunks with a wrong checksum.
+	 */
+	private void readLog(int chunkType, ChunkReader reader) throws IOException {
+		long position = this.logOffset;
+		long end = this.logOffset + this.logLength;
+		ByteBuffer chunkHeader = ByteBuffer.allocate(8);
+		ByteBuffer chunkTrailer = ByteBuffer.allocate(4);
+		while (position + CHUNK_OVERHEAD <= end) {
+			chunkHeader.clear();
+			readFully(this.channel, chunkHeader, position);
+			int type = chunkHeader.getInt(0);
+			int length = chunkHeader.getInt(4);
+			if (length < 0 || position + CHUNK_OVERHEAD + length > end) {
+				throw new IOException("The session file log is corrupt");
+			}
+			if (type != chunkType) {
+				position += CHUNK_OVERHEAD + length;
+				continue;
+			}
+			ByteBuffer payload = ByteBuffer.allocate(length);
+			readFully(this.channel, payload, position + 8);
+			chunkTrailer.clear();
+			readFully(this.channel, chunkTrailer, position + 8 + length);
+			CRC32 crc = new CRC32();
+			crc.update(payload.array(), 0, length);
+			if ((int) crc.getValue() == chunkTrailer.getInt(0)) {
+				payload.rewind();
+				reader.read(payload);
+			} else {
+				System.err.println("Skipping a corrupt chunk in the session file at position " + position + ".");
+			}
+			position += CHUNK_OVERHEAD + length;
+		}
+	}
+
+	/**
+	 * Writes the header into the slot that the previous checkpoint did not use.
+	 */
+	private void writeHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(MAGIC);
+		header.putShort((short) VERSION);
+		header.putShort((short) PixelCountStore.TILE_SHIFT);
+		header.putLong(this.checkpointSequence);
+		header.putInt(this.denseBounds.x);
+		header.putInt(this.denseBounds.y);
+		header.putInt(this.denseBounds.width);
+		header.putInt(this.denseBounds.height);
+		header.putLong(this.samplePeriodNanos);
+		header.putLong(this.startTimeMillis);
+		header.putLong(this.totalCount);
+		header.putInt(this.distinctCount);
+		header.putInt(this.flags);
+		header.putLong(this.logLength);
+		header.putLong(this.trajectoryRecords);
+		CRC32 crc = new CRC32();
+		crc.update(header.array(), 0, HEADER_BYTES - 4);
+		header.position(HEADER_BYTES - 4);
+		header.putInt((int) crc.getValue());
+		header.flip();
+		writeFully(this.channel, header, (this.checkpointSequence & 1) * HEADER_SLOT_BYTES);
+	}
+
+	/**
+	 * @return	True if the buffer holds a header with the right magic number and checksum.
+	 */
+	private static boolean isValidHeader(ByteBuffer header) {
+		if (header.getInt(0) != MAGIC) {
+			return false;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(header.array(), 0, HEADER_BYTES - 4);
+		return (int) crc.getValue() == header.getInt(HEADER_BYTES - 4);
+	}
+
+	/**
+	 * @return	A view of the counts of a copy of a tile in the mapped tile region.
+	 */
+	private IntBuffer tileInts(int tileIndex, int copy) throws IOException {
+		long slot = (long) copy * this.tileCount + tileIndex;
+		int segmentIndex = (int) (slot / TILES_PER_SEGMENT);
+		MappedByteBuffer segment = this.tileSegments[segmentIndex];
+		if (segment == null) {
+			long firstSlot = (long) segmentIndex * TILES_PER_SEGMENT;
+			long slots = Math.min(TILES_PER_SEGMENT, 2L * this.tileCount - firstSlot);
+			segment = this.channel.map(FileChannel.MapMode.READ_WRITE,
+					this.tileRegionOffset + firstSlot * TILE_BYTES, slots * TILE_BYTES);
+			this.tileSegments[segmentIndex] = segment;
+		}
+		ByteBuffer tileBytes = segment.duplicate();
+		tileBytes.position((int) (slot % TILES_PER_SEGMENT) * TILE_BYTES);
+		tileBytes.limit(tileBytes.position() + TILE_BYTES);
+		return tileBytes.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+	}
+
+	/**
+	 * @return	The position of a copy of a tile in the file.
+	 */
+	private long tileOffset(int tileIndex, int copy) {
+		return this.tileRegionOffset + ((long) copy * this.tileCount + tileIndex) * TILE_BYTES;
+	}
+
+	/**
+	 * @return	A view of the bitmap of the header slot that a checkpoint is written to.
+	 */
+	private ByteBuffer bitmapOfSlot(long checkpointSequence) {
+		ByteBuffer slot = this.bitmaps.duplicate();
+		slot.position((int) ((checkpointSequence & 1) * this.bitmapBytes));
+		slot.limit(slot.position() + (int) this.bitmapBytes);
+		return slot.slice();
+	}
+
+	private boolean isTileWritten(int tileIndex) {
+		return (this.bitmap.get(tileIndex >> 2) & (1 << ((tileIndex & 3) << 1))) != 0;
+	}
+
+	/**
+	 * @return	The copy of a written tile that the latest checkpoint refers to, 0 or 1.
+	 */
+	private int currentCopy(int tileIndex) {
+		return (this.bitmap.get(tileIndex >> 2) >> (((tileIndex & 3) << 1) + 1)) & 1;
+	}
+
+	private static void setTileWritten(ByteBuffer bitmap, int tileIndex, int copy) {
+		int index = tileIndex >> 2;
+		int shift = (tileIndex & 3) << 1;
+		bitmap.put(index, (byte) (bitmap.get(index) & ~(3 << shift) | (1 | copy << 1) << shift));
+	}
+
+	private static long roundUpToPage(long bytes) {
+		return Math.max(PAGE_BYTES, (bytes + PAGE_BYTES - 1) / PAGE_BYTES * PAGE_BYTES);
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Unexpected end of session file");
+			}
+			position += read;
+		}
+	}
+
+	private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		return position;
+	}
+}
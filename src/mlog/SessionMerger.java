@@ -0,0 +1,201 @@
+package mlog;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Merges the counts of many session files into one store, for example to make one heat map for a whole fleet
+ * of test machines.
+ *
+ * The list of sessions is split in halves recursively on a fork-join pool. Each leaf streams its sessions one
+ * at a time into a partial store of its own, and partial stores are added together pairwise on the way back up.
+ * A worker only holds the partial stores of the tasks it is working on, so memory use grows with the number of
+ * workers and the size of the output, not with the number of sessions.
+ *
+ * Counts are measured in sample periods, so sessions logged at different rates are converted to the shortest
+ * sample period among them before they are added up; otherwise the sessions with the fastest rates would weigh
+ * the most. Counts stop at Integer.MAX_VALUE rather than wrapping around.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class SessionMerger {
+
+	private static final int LEAVES_PER_WORKER = 4;
+
+	private final ForkJoinPool pool;
+	private final List<File> failedSessions;
+	private volatile long samplePeriodNanos;
+
+	/**
+	 * Creates a new SessionMerger that uses one worker per available processor.
+	 */
+	public SessionMerger() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a new SessionMerger with the given number of workers.
+	 *
+	 * @param parallelism	The number of sessions that are read at the same time
+	 */
+	public SessionMerger(int parallelism) {
+		this.pool = new ForkJoinPool(Math.max(1, parallelism));
+		this.failedSessions = Collections.synchronizedList(new ArrayList<File>());
+	}
+
+	/**
+	 * Merges the counts of all given session files. The merged store covers the union of the dense areas of the
+	 * sessions, and its counts are measured in the shortest sample period of the sessions, see
+	 * getSamplePeriodNanos. Session files that cannot be read are skipped and reported by getFailedSessions.
+	 *
+	 * @param sessions	The session files to merge
+	 * @return	The sum of the counts of all sessions.
+	 */
+	public PixelCountStore merge(List<File> sessions) {
+		this.failedSessions.clear();
+		List<File> readable = new ArrayList<File>(sessions.size());
+		Rectangle bounds = null;
+		long unitNanos = Long.MAX_VALUE;
+		// Only the headers are read here, to find the dense area and the time unit of the merged store
+		for (File session : sessions) {
+			try {
+				Rectangle sessionBounds = SessionFile.readDenseBounds(session);
+				long sessionPeriod = SessionFile.readSamplePeriodNanos(session);
+				if (sessionPeriod <= 0) {
+					throw new IOException("The session file has no sample period");
+				}
+				bounds = bounds == null ? sessionBounds : bounds.union(sessionBounds);
+				unitNanos = Math.min(unitNanos, sessionPeriod);
+				readable.add(session);
+			} catch (IOException ioe) {
+				this.reportFailure(session, ioe);
+			}
+		}
+		if (bounds == null) {
+			this.samplePeriodNanos = 0;
+			return new PixelCountStore(new Rectangle());
+		}
+		this.samplePeriodNanos = unitNanos;
+		File[] files = readable.toArray(new File[readable.size()]);
+		int leafSize = Math.max(1, files.length / (this.pool.getParallelism() * LEAVES_PER_WORKER));
+		return this.pool.invoke(new MergeTask(files, 0, files.length, bounds, unitNanos, leafSize));
+	}
+
+	/**
+	 * @return	The time unit that the counts of the latest merge are measured in, in nanoseconds: the shortest
+	 * 			sample period of the merged sessions, or 0 if no session could be read.
+	 */
+	public long getSamplePeriodNanos() {
+		return this.samplePeriodNanos;
+	}
+
+	/**
+	 * @return	The session files that could not be read by the latest merge.
+	 */
+	public List<File> getFailedSessions() {
+		synchronized (this.failedSessions) {
+			return new ArrayList<File>(this.failedSessions);
+		}
+	}
+
+	/**
+	 * Shuts down the workers of the merger.
+	 */
+	public void shutdown() {
+		this.pool.shutdown();
+	}
+
+	/**
+	 * Lists the session files in a directory, sorted by name.
+	 *
+	 * @param directory	The directory to look in
+	 * @return	The session files in the directory.
+	 */
+	public static List<File> listSessions(File directory) {
+		File[] files = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(SessionFile.FILE_EXTENSION);
+			}
+		});
+		if (files == null) {
+			return new ArrayList<File>();
+		}
+		Arrays.sort(files);
+		return new ArrayList<File>(Arrays.asList(files));
+	}
+
+	private void reportFailure(File session, IOException ioe) {
+		this.failedSessions.add(session);
+		System.err.println("The session file " + session + " could not be read and was skipped: " + ioe.getMessage());
+	}
+
+	/**
+	 * Merges a range of the session files.
+	 */
+	private class MergeTask extends RecursiveTask<PixelCountStore> {
+
+		private static final long serialVersionUID = -4126610388514725733L;
+
+		private final File[] files;
+		private final int from;
+		private final int to;
+		private final Rectangle bounds;
+		private final long unitNanos;
+		private final int leafSize;
+
+		MergeTask(File[] files, int from, int to, Rectangle bounds, long unitNanos, int leafSize) {
+			this.files = files;
+			this.from = from;
+			this.to = to;
+			this.bounds = bounds;
+			this.unitNanos = unitNanos;
+			this.leafSize = leafSize;
+		}
+
+		@Override
+		protected PixelCountStore compute() {
+			if (this.to - this.from <= this.leafSize) {
+				PixelCountStore partial = new PixelCountStore(this.bounds);
+				for (int i = this.from; i < this.to; i++) {
+					this.accumulate(this.files[i], partial);
+				}
+				return partial;
+			}
+			int middle = (this.from + this.to) >>> 1;
+			MergeTask left = new MergeTask(this.files, this.from, middle, this.bounds, this.unitNanos, this.leafSize);
+			left.fork();
+			PixelCountStore right = new MergeTask(this.files, middle, this.to, this.bounds, this.unitNanos,
+					this.leafSize).compute();
+			PixelCountStore merged = left.join();
+			merged.addAll(right);
+			return merged;
+		}
+
+		/**
+		 * Streams the counts of one session file into a partial store, in the time unit of the merge.
+		 */
+		private void accumulate(File file, PixelCountStore partial) {
+			SessionFile session = null;
+			try {
+				session = SessionFile.openReadOnly(file);
+				session.accumulateInto(partial, this.unitNanos);
+			} catch (IOException ioe) {
+				reportFailure(file, ioe);
+			} finally {
+				if (session != null) {
+					session.close();
+				}
+			}
+		}
+	}
+}
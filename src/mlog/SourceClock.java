@@ -0,0 +1,89 @@
+package mlog;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The clock of a pointer source that does not follow real time. It either runs a given number of times faster
+ * than the system clock, or, at infinite speed, stands still until the sampler waits for a time and then jumps
+ * straight to it, so samples are taken back to back and always exactly on their deadlines.
+ *
+ * The clock starts when the sampler first reads the pointer or waits for a time, not when it is created, so
+ * setting up the logger does not eat into the pointer source. Until then it follows the system clock.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+final class SourceClock {
+
+	private final double speed;
+	private volatile boolean started;
+	private volatile long startNanos;
+	private volatile long virtualNanos;
+
+	/**
+	 * Creates a clock that has not started yet.
+	 *
+	 * @param speed	How many times faster than real time the clock runs, or Double.POSITIVE_INFINITY to not wait
+	 * 				at all
+	 */
+	SourceClock(double speed) {
+		if (!(speed > 0)) {
+			throw new IllegalArgumentException("The speed must be positive: " + speed);
+		}
+		this.speed = speed;
+	}
+
+	/**
+	 * Starts the clock at the current system time, unless it has already started.
+	 */
+	private void start() {
+		if (this.started) {
+			return;
+		}
+		synchronized (this) {
+			if (!this.started) {
+				this.startNanos = System.nanoTime();
+				this.virtualNanos = this.startNanos;
+				this.started = true;
+			}
+		}
+	}
+
+	/**
+	 * @return	The current time, on the same scale as System.nanoTime().
+	 */
+	long nanoTime() {
+		if (!this.started) {
+			return System.nanoTime();
+		}
+		if (Double.isInfinite(this.speed)) {
+			return this.virtualNanos;
+		}
+		return this.startNanos + (long) ((System.nanoTime() - this.startNanos) * this.speed);
+	}
+
+	/**
+	 * Waits until the clock reaches a time.
+	 */
+	void parkUntil(Object blocker, long nanoTime) {
+		this.start();
+		if (Double.isInfinite(this.speed)) {
+			this.virtualNanos = Math.max(this.virtualNanos, nanoTime);
+			return;
+		}
+		long waitNanos = (long) ((nanoTime - this.nanoTime()) / this.speed);
+		if (waitNanos > 0) {
+			LockSupport.parkNanos(blocker, waitNanos);
+		}
+	}
+
+	/**
+	 * Starts the clock if it has not started yet.
+	 *
+	 * @return	The time since the clock was started, in nanoseconds of the clock, or 0 for a time before that.
+	 */
+	long elapsedNanos(long nanoTime) {
+		this.start();
+		return Math.max(0, nanoTime - this.startNanos);
+	}
+}
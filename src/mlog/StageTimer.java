@@ -0,0 +1,106 @@
+package mlog;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adds up how long a stage of work takes, such as painting the tiles of a map, over all the times it runs.
+ *
+ * Any number of threads may record at the same time. Recording only updates a few atomic counters, so it never
+ * blocks and never allocates.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class StageTimer implements StageTimerMBean {
+
+	private final String name;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private volatile long lastNanos;
+
+	/**
+	 * Creates a new timer that has not recorded anything.
+	 *
+	 * @param name	The name of the stage
+	 */
+	public StageTimer(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Records a run of the stage that started at a given time and ended now.
+	 *
+	 * @param startNanos	The System.nanoTime() value when the stage started
+	 */
+	public void stop(long startNanos) {
+		this.record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Records a run of the stage.
+	 *
+	 * @param nanos	The time the run took, in nanoseconds
+	 */
+	public void record(long nanos) {
+		this.count.incrementAndGet();
+		this.totalNanos.addAndGet(nanos);
+		this.lastNanos = nanos;
+		long max;
+		do {
+			max = this.maxNanos.get();
+		} while (nanos > max && !this.maxNanos.compareAndSet(max, nanos));
+	}
+
+	/**
+	 * @return	The name of the stage.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public long getCount() {
+		return this.count.get();
+	}
+
+	@Override
+	public double getTotalMillis() {
+		return toMillis(this.totalNanos.get());
+	}
+
+	@Override
+	public double getAverageMillis() {
+		long runs = this.count.get();
+		return runs == 0 ? 0 : toMillis(this.totalNanos.get()) / runs;
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return toMillis(this.maxNanos.get());
+	}
+
+	@Override
+	public double getLastMillis() {
+		return toMillis(this.lastNanos);
+	}
+
+	@Override
+	public void reset() {
+		this.count.set(0);
+		this.totalNanos.set(0);
+		this.maxNanos.set(0);
+		this.lastNanos = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d runs, %.1f ms average, %.1f ms max", this.name, this.getCount(),
+				this.getAverageMillis(), this.getMaxMillis());
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,40 @@
+package mlog;
+
+/**
+ * The management interface of a StageTimer, as it is shown over JMX.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public interface StageTimerMBean {
+
+	/**
+	 * @return	The number of times the stage has run.
+	 */
+	long getCount();
+
+	/**
+	 * @return	The time spent in the stage altogether, in milliseconds.
+	 */
+	double getTotalMillis();
+
+	/**
+	 * @return	The average time of a run of the stage, in milliseconds.
+	 */
+	double getAverageMillis();
+
+	/**
+	 * @return	The longest run of the stage, in milliseconds.
+	 */
+	double getMaxMillis();
+
+	/**
+	 * @return	The latest run of the stage, in milliseconds.
+	 */
+	double getLastMillis();
+
+	/**
+	 * Forgets all recorded runs.
+	 */
+	void reset();
+}
@@ -0,0 +1,202 @@
+package mlog;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Random;
+
+/**
+ * Moves a make-believe pointer around an area, for logging without a display. The same seed always makes the
+ * same movements, and with a clock of infinite speed the samples are taken at the same times too, so a whole
+ * session can be reproduced exactly.
+ *
+ * The pointer moves a given number of times per second of the clock, following one of three models:
+ * RANDOM_WALK moves a few pixels in a random direction at a time, SACCADE rests a while and then jumps to a
+ * random point of the area over a few moves, and HOTSPOT jumps like SACCADE but only between a few busy spots,
+ * some much busier than others, and rests there longer.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class SyntheticPointerSource implements PointerSource {
+
+	public final static String MODEL_RANDOM_WALK = "RANDOM_WALK";
+	public final static String MODEL_SACCADE = "SACCADE";
+	public final static String MODEL_HOTSPOT = "HOTSPOT";
+
+	private static final int WALK_STEP = 8;
+	private static final int HOTSPOTS = 8;
+	private static final int TREMOR = 1;
+	private static final double REST_SECONDS = 0.3;
+	private static final double HOTSPOT_REST_SECONDS = 1.5;
+	private static final double JUMP_SECONDS = 0.05;
+
+	private final String model;
+	private final Rectangle bounds;
+	private final SourceClock clock;
+	private final double movesPerNano;
+	private final long durationNanos;
+	private final Random random;
+	private final int[] hotspotXs = new int[HOTSPOTS];
+	private final int[] hotspotYs = new int[HOTSPOTS];
+	private final int hotspotRadius;
+	private final long restMoves;
+	private final long jumpMoves;
+	private long moves;
+	private int x;
+	private int y;
+	private int fromX;
+	private int fromY;
+	private int targetX;
+	private int targetY;
+	private long jumpLeft;
+	private long restLeft;
+	private boolean ended;
+
+	/**
+	 * Creates a new synthetic pointer in the middle of an area.
+	 *
+	 * @param model				How the pointer moves: MODEL_RANDOM_WALK, MODEL_SACCADE or MODEL_HOTSPOT
+	 * @param bounds			The area that the pointer moves in
+	 * @param seed				The seed of the movements
+	 * @param movesPerSecond	The number of times per second of the clock that the pointer moves
+	 * @param speed				How many times faster than real time the clock runs, or Double.POSITIVE_INFINITY
+	 * 							to let the logger sample as fast as it can
+	 * @param durationNanos		How long the pointer moves, in nanoseconds of the clock, or Long.MAX_VALUE to
+	 * 							move forever
+	 */
+	public SyntheticPointerSource(String model, Rectangle bounds, long seed, int movesPerSecond, double speed,
+			long durationNanos) {
+		if (!isModel(model)) {
+			throw new IllegalArgumentException("Unknown pointer model: " + model);
+		}
+		if (bounds.isEmpty()) {
+			throw new IllegalArgumentException("The pointer needs an area to move in: " + bounds);
+		}
+		if (movesPerSecond < 1) {
+			throw new IllegalArgumentException("The pointer must move at least once per second: " + movesPerSecond);
+		}
+		this.model = model;
+		this.bounds = new Rectangle(bounds);
+		this.clock = new SourceClock(speed);
+		this.movesPerNano = movesPerSecond / 1e9;
+		this.durationNanos = durationNanos;
+		this.random = new Random(seed);
+		this.restMoves = Math.max(1, (long) (movesPerSecond * (model.equals(MODEL_HOTSPOT) ? HOTSPOT_REST_SECONDS : REST_SECONDS)));
+		this.jumpMoves = Math.max(1, (long) (movesPerSecond * JUMP_SECONDS));
+		this.hotspotRadius = Math.max(1, Math.min(bounds.width, bounds.height) / 40);
+		for (int i = 0; i < HOTSPOTS; i++) {
+			this.hotspotXs[i] = bounds.x + this.random.nextInt(bounds.width);
+			this.hotspotYs[i] = bounds.y + this.random.nextInt(bounds.height);
+		}
+		this.x = bounds.x + bounds.width / 2;
+		this.y = bounds.y + bounds.height / 2;
+		this.restLeft = 1;
+	}
+
+	/**
+	 * @param model	A pointer model name
+	 * @return	True if the name is one of the pointer models.
+	 */
+	public static boolean isModel(String model) {
+		return MODEL_RANDOM_WALK.equals(model) || MODEL_SACCADE.equals(model) || MODEL_HOTSPOT.equals(model);
+	}
+
+	@Override
+	public Rectangle getBounds() {
+		return new Rectangle(this.bounds);
+	}
+
+	@Override
+	public long nanoTime() {
+		return this.clock.nanoTime();
+	}
+
+	@Override
+	public void parkUntil(Object blocker, long nanoTime) {
+		this.clock.parkUntil(blocker, nanoTime);
+	}
+
+	@Override
+	public boolean readPointer(long nanoTime, Point location) {
+		long elapsed = this.clock.elapsedNanos(nanoTime);
+		if (elapsed >= this.durationNanos) {
+			this.ended = true;
+			elapsed = this.durationNanos;
+		}
+		long due = (long) (elapsed * this.movesPerNano);
+		while (this.moves < due) {
+			this.move();
+			this.moves++;
+		}
+		location.setLocation(this.x, this.y);
+		return true;
+	}
+
+	@Override
+	public boolean hasEnded() {
+		return this.ended;
+	}
+
+	/**
+	 * Moves the pointer once.
+	 */
+	private void move() {
+		if (this.model.equals(MODEL_RANDOM_WALK)) {
+			if (this.random.nextInt(4) != 0) {
+				this.moveTo(this.x + this.random.nextInt(2 * WALK_STEP + 1) - WALK_STEP,
+						this.y + this.random.nextInt(2 * WALK_STEP + 1) - WALK_STEP);
+			}
+			return;
+		}
+		if (this.jumpLeft > 0) {
+			// Jumps ease out, fast at first and slowing down towards the target
+			this.jumpLeft--;
+			double progress = 1 - (double) this.jumpLeft / this.jumpMoves;
+			progress = 1 - (1 - progress) * (1 - progress);
+			this.moveTo(this.fromX + (int) Math.round((this.targetX - this.fromX) * progress),
+					this.fromY + (int) Math.round((this.targetY - this.fromY) * progress));
+			return;
+		}
+		if (--this.restLeft > 0) {
+			// A resting hand still trembles a little now and then
+			if (this.random.nextInt(8) == 0) {
+				this.moveTo(this.x + this.random.nextInt(2 * TREMOR + 1) - TREMOR, this.y + this.random.nextInt(2 * TREMOR + 1) - TREMOR);
+			}
+			return;
+		}
+		if (this.model.equals(MODEL_SACCADE)) {
+			this.targetX = this.bounds.x + this.random.nextInt(this.bounds.width);
+			this.targetY = this.bounds.y + this.random.nextInt(this.bounds.height);
+		} else {
+			// The first hotspot is visited about twice as often as the second, three times as often as the third...
+			double pick = this.random.nextDouble() * harmonic(HOTSPOTS);
+			int spot = 0;
+			while (spot < HOTSPOTS - 1 && (pick -= 1.0 / (spot + 1)) > 0) {
+				spot++;
+			}
+			this.targetX = this.hotspotXs[spot] + (int) Math.round(this.random.nextGaussian() * this.hotspotRadius);
+			this.targetY = this.hotspotYs[spot] + (int) Math.round(this.random.nextGaussian() * this.hotspotRadius);
+		}
+		this.fromX = this.x;
+		this.fromY = this.y;
+		this.jumpLeft = this.jumpMoves;
+		// Rests are exponentially distributed around their average length
+		this.restLeft = 1 + (long) (-Math.log(1 - this.random.nextDouble()) * this.restMoves);
+	}
+
+	/**
+	 * Moves the pointer to a position, kept inside the area.
+	 */
+	private void moveTo(int newX, int newY) {
+		this.x = Math.max(this.bounds.x, Math.min(this.bounds.x + this.bounds.width - 1, newX));
+		this.y = Math.max(this.bounds.y, Math.min(this.bounds.y + this.bounds.height - 1, newY));
+	}
+
+	private static double harmonic(int n) {
+		double sum = 0;
+		for (int i = 1; i <= n; i++) {
+			sum += 1.0 / i;
+		}
+		return sum;
+	}
+}
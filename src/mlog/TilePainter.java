@@ -0,0 +1,23 @@
+package mlog;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Paints one tile of a map for a TiledMapRenderer.
+ *
+ * Tiles are painted on several threads at the same time, so a painter must only read shared state.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public interface TilePainter {
+
+	/**
+	 * Called once for every tile of the map.
+	 *
+	 * @param tile		An image of type TYPE_INT_RGB with a black background, the size of the tile
+	 * @param bounds	The area of the map that the tile covers, in map coordinates
+	 */
+	void paintTile(BufferedImage tile, Rectangle bounds);
+}
@@ -0,0 +1,429 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Exports the counts of a store as a Deep Zoom (DZI) tile pyramid, which viewers such as OpenSeadragon browse
+ * by loading only the tiles in view. Level 0 is a single pixel, and every level is twice the size of the one
+ * above it, up to the full size of the map. Every level is cut into tiles of 256 by 256 pixels.
+ *
+ * The pyramid is built bottom-up from the counts, without rendering the map at any level. The logged pixels are
+ * split into a quadtree on a fork-join pool: every tile of the full-size level sums the counts of its pixels into
+ * a grid, and every tile above it sums two by two cells of the grids of its four children. A tile is written as
+ * soon as its grid is complete, and a grid is dropped once its parent has summed it, so memory use grows with the
+ * number of workers and levels, not with the size of the map. Tiles without logged pixels are written from a
+ * cached black PNG.
+ *
+ * A cell is colored by its count on a log scale, relative to the most that a cell of its level can hold: the
+ * highest count of a pixel times the number of pixels in the cell. A tile can thus be colored as soon as it is
+ * complete, without looking at the rest of its level. The colors of every level are worked out into a CountScale
+ * before the export starts, so coloring a cell is a lookup.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class TilePyramidExporter {
+
+	public static final int TILE_SIZE = 256;
+	public static final String FILE_EXTENSION = ".dzi";
+
+	private final ForkJoinPool pool;
+	private final PngEncoder pngEncoder;
+	private final ConcurrentHashMap<Long, byte[]> emptyTiles;
+
+	/**
+	 * Creates a new TilePyramidExporter with one worker per available processor.
+	 */
+	public TilePyramidExporter() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a new TilePyramidExporter.
+	 *
+	 * @param parallelism	The number of tiles that are built at the same time
+	 */
+	public TilePyramidExporter(int parallelism) {
+		this.pool = new ForkJoinPool(Math.max(1, parallelism));
+		// Tiles are compressed by the workers of the pyramid, each on its own thread
+		this.pngEncoder = new PngEncoder(1, PngEncoder.DEFAULT_COMPRESSION_LEVEL);
+		this.emptyTiles = new ConcurrentHashMap<Long, byte[]>();
+	}
+
+	/**
+	 * Chooses between small tiles and fast exporting, see PngEncoder.setCompressionLevel.
+	 *
+	 * @param compressionLevel	A compression level from 0 to 9, or -1 for zlib's default
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		this.pngEncoder.setCompressionLevel(compressionLevel);
+		this.emptyTiles.clear();
+	}
+
+	/**
+	 * Exports a pyramid of the counts in a store. The tiles are written to the directory NAME_files next to the
+	 * descriptor NAME.dzi, which is written last, so a viewer never opens a pyramid that is incomplete.
+	 *
+	 * If the calling thread is interrupted, no more tiles are started and a CancellationException is thrown.
+	 * The interrupt status of the thread is kept.
+	 *
+	 * @param pixelMap		The counts to export; pixels outside the map are left out
+	 * @param resolution	The size of the map at its most detailed level
+	 * @param color			The color of the most logged pixels
+	 * @param directory		The directory to export to
+	 * @param name			The name of the pyramid
+	 * @return	The descriptor of the pyramid.
+	 * @throws IOException	If a tile or the descriptor could not be written
+	 */
+	public File export(PixelCountStore pixelMap, Dimension resolution, Color color, File directory, String name) throws IOException {
+		return this.export(pixelMap, resolution, ColorRamp.create(ColorRamp.RAMP_SINGLE_HUE, color), directory, name);
+	}
+
+	/**
+	 * Exports a pyramid of the counts in a store, colored through a ramp, see export.
+	 *
+	 * @param pixelMap		The counts to export; pixels outside the map are left out
+	 * @param resolution	The size of the map at its most detailed level
+	 * @param colorRamp		The colors of the cells
+	 * @param directory		The directory to export to
+	 * @param name			The name of the pyramid
+	 * @return	The descriptor of the pyramid.
+	 * @throws IOException	If a tile or the descriptor could not be written
+	 */
+	public File export(PixelCountStore pixelMap, Dimension resolution, ColorRamp colorRamp, File directory, String name)
+			throws IOException {
+		int width = (int)resolution.getWidth();
+		int height = (int)resolution.getHeight();
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("A pyramid must be at least one pixel in size: " + width + "x" + height);
+		}
+		int maxLevel = 0;
+		while ((1L << maxLevel) < Math.max(width, height)) {
+			maxLevel++;
+		}
+
+		// The pixels inside the map are partitioned in place, quadrant by quadrant, on the way down
+		int[] xs = new int[pixelMap.size()];
+		int[] ys = new int[pixelMap.size()];
+		int[] counts = new int[pixelMap.size()];
+		pixelMap.copyTo(xs, ys, counts);
+		int inside = 0;
+		int maxCount = 1;
+		for (int i = 0; i < xs.length; i++) {
+			if (xs[i] >= 0 && ys[i] >= 0 && xs[i] < width && ys[i] < height) {
+				xs[inside] = xs[i];
+				ys[inside] = ys[i];
+				counts[inside] = counts[i];
+				maxCount = Math.max(maxCount, counts[i]);
+				inside++;
+			}
+		}
+
+		File tileDirectory = new File(directory, name + "_files");
+		for (int level = 0; level <= maxLevel; level++) {
+			File levelDirectory = new File(tileDirectory, Integer.toString(level));
+			if (!levelDirectory.isDirectory() && !levelDirectory.mkdirs()) {
+				throw new IOException("The directory " + levelDirectory + " could not be created");
+			}
+		}
+
+		// A cell of a level holds the counts of 4^(maxLevel - level) pixels at most
+		CountScale[] scales = new CountScale[maxLevel + 1];
+		int[] colors = colorRamp.getColors();
+		for (int level = 0; level <= maxLevel; level++) {
+			long ceiling = (long) Math.min(maxCount * Math.pow(4, maxLevel - level), Long.MAX_VALUE / 2);
+			scales[level] = new CountScale(CountScale.NORMALISATION_LOG, ceiling, colors);
+		}
+
+		Pyramid pyramid = new Pyramid(xs, ys, counts, width, height, maxLevel, scales, tileDirectory);
+		ForkJoinTask<long[]> task = this.pool.submit(new TileTask(pyramid, 0, 0, 0, 0, inside));
+		try {
+			task.get();
+		} catch (InterruptedException ie) {
+			pyramid.cancelled.set(true);
+			Thread.currentThread().interrupt();
+			throw new CancellationException("The pyramid export was interrupted");
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof TileWriteException) {
+				throw (IOException) ee.getCause().getCause();
+			}
+			if (ee.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ee.getCause();
+			}
+			if (ee.getCause() instanceof Error) {
+				throw (Error) ee.getCause();
+			}
+			throw new IllegalStateException(ee.getCause());
+		}
+
+		File descriptor = new File(directory, name + FILE_EXTENSION);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(descriptor), StandardCharsets.UTF_8);
+		try {
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			writer.write("<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" Format=\"png\" Overlap=\"0\" TileSize=\""
+					+ TILE_SIZE + "\">\n");
+			writer.write("\t<Size Width=\"" + width + "\" Height=\"" + height + "\"/>\n");
+			writer.write("</Image>\n");
+		} finally {
+			writer.close();
+		}
+		return descriptor;
+	}
+
+	/**
+	 * Shuts down the workers of the exporter.
+	 */
+	public void shutdown() {
+		this.pool.shutdown();
+		this.pngEncoder.shutdown();
+	}
+
+	/**
+	 * Writes the PNG of a tile. A tile without counts is written from a cached black PNG of its size.
+	 */
+	private void writeTile(Pyramid pyramid, int level, int column, int row, int tileWidth, int tileHeight, long[] grid)
+			throws IOException {
+		File file = new File(pyramid.tileDirectory, level + File.separator + column + "_" + row + ".png");
+		if (grid == null) {
+			Long size = Long.valueOf((long) tileWidth << 32 | tileHeight);
+			byte[] empty = this.emptyTiles.get(size);
+			if (empty == null) {
+				ByteArrayOutputStream png = new ByteArrayOutputStream();
+				this.pngEncoder.writeOnCallingThread(new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB),
+						Channels.newChannel(png));
+				empty = png.toByteArray();
+				this.emptyTiles.put(size, empty);
+			}
+			Files.write(file.toPath(), empty);
+			return;
+		}
+
+		BufferedImage tile = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+		CountScale scale = pyramid.scales[level];
+		for (int i = 0; i < grid.length; i++) {
+			pixels[i] = scale.get(grid[i]);
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			this.pngEncoder.writeOnCallingThread(tile, channel);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * The state shared by all tiles of one export.
+	 */
+	private static class Pyramid {
+
+		private final int[] xs;
+		private final int[] ys;
+		private final int[] counts;
+		private final int width;
+		private final int height;
+		private final int maxLevel;
+		private final CountScale[] scales;
+		private final File tileDirectory;
+		private final AtomicBoolean cancelled = new AtomicBoolean();
+
+		Pyramid(int[] xs, int[] ys, int[] counts, int width, int height, int maxLevel, CountScale[] scales,
+				File tileDirectory) {
+			this.xs = xs;
+			this.ys = ys;
+			this.counts = counts;
+			this.width = width;
+			this.height = height;
+			this.maxLevel = maxLevel;
+			this.scales = scales;
+			this.tileDirectory = tileDirectory;
+		}
+
+		/**
+		 * @return	The number of columns or rows of pixels at a level, of a map that is size pixels wide or high.
+		 */
+		int levelSize(int size, int level) {
+			int shift = this.maxLevel - level;
+			return (int) (((long) size + (1L << shift) - 1) >> shift);
+		}
+
+		/**
+		 * Moves the pixels in a range that are left of (or above) a limit to the start of the range.
+		 *
+		 * @return	The index of the first pixel that is not left of (or above) the limit.
+		 */
+		int partition(int from, int to, boolean vertical, long limit) {
+			int[] coordinates = vertical ? this.ys : this.xs;
+			int i = from;
+			int j = to - 1;
+			while (i <= j) {
+				if (coordinates[i] < limit) {
+					i++;
+				} else {
+					this.swap(i, j--);
+				}
+			}
+			return i;
+		}
+
+		private void swap(int i, int j) {
+			int swap = this.xs[i]; this.xs[i] = this.xs[j]; this.xs[j] = swap;
+			swap = this.ys[i]; this.ys[i] = this.ys[j]; this.ys[j] = swap;
+			swap = this.counts[i]; this.counts[i] = this.counts[j]; this.counts[j] = swap;
+		}
+	}
+
+	/**
+	 * Builds and writes one tile and every tile below it, and returns the grid of summed counts of the tile, or
+	 * null if it has no counts. Owns the range of pixels that lie inside the tile.
+	 */
+	private class TileTask extends RecursiveTask<long[]> {
+
+		private static final long serialVersionUID = -2769113021840536120L;
+
+		private final Pyramid pyramid;
+		private final int level;
+		private final int column;
+		private final int row;
+		private final int from;
+		private final int to;
+
+		TileTask(Pyramid pyramid, int level, int column, int row, int from, int to) {
+			this.pyramid = pyramid;
+			this.level = level;
+			this.column = column;
+			this.row = row;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected long[] compute() {
+			Pyramid pyramid = this.pyramid;
+			if (pyramid.cancelled.get()) {
+				return null;
+			}
+			int tileWidth = Math.min(TILE_SIZE, pyramid.levelSize(pyramid.width, this.level) - this.column * TILE_SIZE);
+			int tileHeight = Math.min(TILE_SIZE, pyramid.levelSize(pyramid.height, this.level) - this.row * TILE_SIZE);
+			long[] grid = this.level == pyramid.maxLevel ? this.sumPixels(tileWidth, tileHeight)
+					: this.sumChildren(tileWidth, tileHeight);
+			try {
+				writeTile(pyramid, this.level, this.column, this.row, tileWidth, tileHeight, grid);
+			} catch (IOException ioe) {
+				throw new TileWriteException(ioe);
+			}
+			return grid;
+		}
+
+		/**
+		 * @return	The grid of a tile of the full-size level, made from the counts of its pixels.
+		 */
+		private long[] sumPixels(int tileWidth, int tileHeight) {
+			if (this.from == this.to) {
+				return null;
+			}
+			long[] grid = new long[tileWidth * tileHeight];
+			int left = this.column * TILE_SIZE;
+			int top = this.row * TILE_SIZE;
+			for (int i = this.from; i < this.to; i++) {
+				grid[(this.pyramid.ys[i] - top) * tileWidth + this.pyramid.xs[i] - left] += this.pyramid.counts[i];
+			}
+			return grid;
+		}
+
+		/**
+		 * Builds the four children of a tile in parallel.
+		 *
+		 * @return	The grid of the tile, made by summing the cells of the grids of its children two by two.
+		 */
+		private long[] sumChildren(int tileWidth, int tileHeight) {
+			Pyramid pyramid = this.pyramid;
+			// The area of the full-size map that the tile covers, and where its quadrants meet
+			long span = (long) TILE_SIZE << (pyramid.maxLevel - this.level);
+			long middleX = this.column * span + span / 2;
+			long middleY = this.row * span + span / 2;
+			int splitY = pyramid.partition(this.from, this.to, true, middleY);
+			int splitTop = pyramid.partition(this.from, splitY, false, middleX);
+			int splitBottom = pyramid.partition(splitY, this.to, false, middleX);
+			int[] bounds = { this.from, splitTop, splitY, splitBottom, this.to };
+
+			int childLevel = this.level + 1;
+			int childColumns = (pyramid.levelSize(pyramid.width, childLevel) + TILE_SIZE - 1) / TILE_SIZE;
+			int childRows = (pyramid.levelSize(pyramid.height, childLevel) + TILE_SIZE - 1) / TILE_SIZE;
+			TileTask[] children = new TileTask[4];
+			int forked = 0;
+			for (int quadrant = 0; quadrant < 4; quadrant++) {
+				int childColumn = 2 * this.column + (quadrant & 1);
+				int childRow = 2 * this.row + (quadrant >> 1);
+				if (childColumn < childColumns && childRow < childRows) {
+					children[quadrant] = new TileTask(pyramid, childLevel, childColumn, childRow, bounds[quadrant],
+							bounds[quadrant + 1]);
+					forked++;
+				}
+			}
+			TileTask[] existing = new TileTask[forked];
+			forked = 0;
+			for (TileTask child : children) {
+				if (child != null) {
+					existing[forked++] = child;
+				}
+			}
+			invokeAll(existing);
+
+			long[] grid = null;
+			for (int quadrant = 0; quadrant < 4; quadrant++) {
+				long[] childGrid = children[quadrant] == null ? null : children[quadrant].join();
+				if (childGrid == null) {
+					continue;
+				}
+				if (grid == null) {
+					grid = new long[tileWidth * tileHeight];
+				}
+				int childWidth = Math.min(TILE_SIZE,
+						pyramid.levelSize(pyramid.width, childLevel) - children[quadrant].column * TILE_SIZE);
+				int offsetX = (quadrant & 1) * TILE_SIZE / 2;
+				int offsetY = (quadrant >> 1) * TILE_SIZE / 2;
+				for (int cell = 0; cell < childGrid.length; cell++) {
+					int x = offsetX + (cell % childWidth) / 2;
+					int y = offsetY + (cell / childWidth) / 2;
+					grid[y * tileWidth + x] += childGrid[cell];
+				}
+			}
+			return grid;
+		}
+	}
+
+	/**
+	 * Carries an IOException out of a tile task.
+	 */
+	private static class TileWriteException extends RuntimeException {
+
+		private static final long serialVersionUID = 6170442155402954379L;
+
+		TileWriteException(IOException cause) {
+			super(cause);
+		}
+	}
+}
@@ -0,0 +1,571 @@
+package mlog;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Exports the trajectory of a session as a time-lapse of its dot map: a number of frames spread evenly over the
+ * logging time of the session, where every frame is the dot map of everything logged up to its end, the same as
+ * DotMapRenderer draws it up to rounding. The frames are saved as an animated PNG (APNG), or as a sequence of
+ * numbered PNG files for video tools.
+ *
+ * Frames are spaced by logging time, the sample periods of the records, not by the clock, so the time between two
+ * runs of a session does not turn into a run of frames in which nothing happens.
+ *
+ * The frames are never rendered from scratch. The trajectory is read twice: once to find the counts of the whole
+ * session, which fix the normalisation of all frames to the one of the last frame, and once to build the frames.
+ * Every frame adds only the records logged during its interval to the counts, and every pixel whose dot changed
+ * size has its old dot replaced by the new one in the density buffer of the map, see DotKernel.resplat. Only
+ * the tiles under those dots are colored again, in bands of rows on the workers of the exporter, and an animated
+ * PNG only stores the rectangle of pixels that changed color since the frame before, so a frame costs time in
+ * proportion to what happened during it rather than to the size of the map.
+ *
+ * Frames are compressed by the workers of the exporter while the next frames are built, and written in order.
+ * At most two frames per worker wait to be written, so memory use does not grow with the number of frames. Files
+ * are written next to their targets and renamed when they are complete, so a failed or cancelled export never
+ * leaves a partly written file behind.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class TimeLapseExporter {
+
+	public final static String FORMAT_APNG = "APNG";
+	public final static String FORMAT_PNG_SEQUENCE = "PNG_SEQUENCE";
+
+	/** Added to the name of a time-lapse, so it never replaces the map of the same session. */
+	public static final String NAME_SUFFIX = "_timelapse";
+	/** How long each frame is shown by default, in milliseconds. */
+	public static final int DEFAULT_FRAME_MILLIS = 100;
+
+	private static final int TILE_SHIFT = 6;
+	private static final int TILE_SIZE = 1 << TILE_SHIFT;
+	private static final String PART_EXTENSION = ".part";
+
+	private final ForkJoinPool pool;
+	private final PngEncoder pngEncoder;
+	private final int maxQueued;
+	private volatile int frameMillis = DEFAULT_FRAME_MILLIS;
+
+	/**
+	 * Creates a new TimeLapseExporter with one worker per available processor.
+	 */
+	public TimeLapseExporter() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a new TimeLapseExporter.
+	 *
+	 * @param parallelism	The number of frames that are compressed at the same time
+	 */
+	public TimeLapseExporter(int parallelism) {
+		this.pool = new ForkJoinPool(Math.max(1, parallelism));
+		// Frames are compressed by the workers of the exporter, each on its own thread
+		this.pngEncoder = new PngEncoder(1, PngEncoder.DEFAULT_COMPRESSION_LEVEL);
+		this.maxQueued = 2 * Math.max(1, parallelism);
+	}
+
+	/**
+	 * @param format	A format name
+	 * @return	True if the name is one of the formats.
+	 */
+	public static boolean isFormat(String format) {
+		return FORMAT_APNG.equals(format) || FORMAT_PNG_SEQUENCE.equals(format);
+	}
+
+	/**
+	 * Chooses between small frames and fast exporting, see PngEncoder.setCompressionLevel.
+	 *
+	 * @param compressionLevel	A compression level from 0 to 9, or -1 for zlib's default
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		this.pngEncoder.setCompressionLevel(compressionLevel);
+	}
+
+	/**
+	 * Sets how long each frame of an animated PNG is shown.
+	 *
+	 * @param frameMillis	The time in milliseconds, from 1 to 65535
+	 */
+	public void setFrameMillis(int frameMillis) {
+		if (frameMillis < 1 || frameMillis > 0xFFFF) {
+			throw new IllegalArgumentException("The frame time must be from 1 to 65535 ms: " + frameMillis);
+		}
+		this.frameMillis = frameMillis;
+	}
+
+	/**
+	 * @return	How long each frame of an animated PNG is shown, in milliseconds.
+	 */
+	public int getFrameMillis() {
+		return this.frameMillis;
+	}
+
+	/**
+	 * Exports a time-lapse of the trajectory of a session. An animated PNG is written to NAME_timelapse.png; a
+	 * sequence is written to the directory NAME_timelapse, as frame_00000.png and on.
+	 *
+	 * If the calling thread is interrupted, no more frames are started and a CancellationException is thrown.
+	 * The interrupt status of the thread is kept.
+	 *
+	 * @param session		A session with a trajectory
+	 * @param resolution	The size of the frames; dots outside them are left out
+	 * @param colorRamp		The colors of the dots
+	 * @param normalisation	How the counts are scaled, see CountScale
+	 * @param frames		The number of frames
+	 * @param format		FORMAT_APNG or FORMAT_PNG_SEQUENCE
+	 * @param directory		The directory to export to
+	 * @param name			The name of the session, which NAME_SUFFIX is added to
+	 * @return	The animated PNG, or the directory of the frames.
+	 * @throws IOException	If the session could not be read or a frame could not be written
+	 */
+	public File export(SessionFile session, Dimension resolution, ColorRamp colorRamp, String normalisation, int frames,
+			String format, File directory, String name) throws IOException {
+		int width = (int)resolution.getWidth();
+		int height = (int)resolution.getHeight();
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("A time-lapse must be at least one pixel in size: " + width + "x" + height);
+		}
+		if (frames < 1) {
+			throw new IllegalArgumentException("A time-lapse must have at least one frame: " + frames);
+		}
+		if (!isFormat(format)) {
+			throw new IllegalArgumentException("Unknown time-lapse format: " + format);
+		}
+		if (!CountScale.isNormalisation(normalisation)) {
+			throw new IllegalArgumentException("Unknown normalisation: " + normalisation);
+		}
+		if (!session.hasTrajectory()) {
+			throw new IOException("The session " + session.getFile() + " has no trajectory to make a time-lapse of");
+		}
+
+		// The first pass finds the logging time of the session and the counts of the last frame, which every frame
+		// is normalised by, the same way DotMapRenderer normalises a map
+		final Frames state = new Frames(width, height);
+		final PixelCountStore finalCounts = new PixelCountStore(new Rectangle(0, 0, width, height));
+		session.readTrajectory(new TrajectoryVisitor() {
+			@Override
+			public void visit(long timeNanos, int x, int y, int periods) {
+				finalCounts.add(x, y, periods);
+				state.totalPeriods += periods;
+			}
+		});
+		CountHistogram histogram = CountScale.NORMALISATION_NONE.equals(normalisation) ? null : CountHistogram.of(finalCounts);
+		long ceiling = Math.max(CountScale.ceiling(normalisation, histogram), DotKernel.MAX_RADIUS);
+		state.scale = new CountScale(normalisation, ceiling, null);
+		state.kernel = new DotKernel(new Color(colorRamp.getColor(ColorRamp.LEVELS - 1)));
+		state.colors = colorRamp.getColors();
+		state.frames = frames;
+		state.frameEnd = state.frameEnd(0);
+
+		boolean animation = FORMAT_APNG.equals(format);
+		File output = new File(directory, name + NAME_SUFFIX + (animation ? ".png" : ""));
+		File temporary = new File(output.getPath() + PART_EXTENSION);
+		FileChannel channel = null;
+		if (animation) {
+			channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		} else {
+			if (!output.isDirectory() && !output.mkdirs()) {
+				throw new IOException("The directory " + output + " could not be created");
+			}
+			state.frameDirectory = output;
+		}
+
+		// The second pass builds the frames, adding the records of one interval at a time
+		boolean complete = false;
+		try {
+			if (animation) {
+				state.animation = this.pngEncoder.openAnimation(channel, width, height, false, frames, 0);
+			}
+			try {
+				session.readTrajectory(new TrajectoryVisitor() {
+					@Override
+					public void visit(long timeNanos, int x, int y, int periods) {
+						// A record belongs to the frame that its logging time starts in
+						while (state.loggedPeriods >= state.frameEnd && state.frame < state.frames - 1) {
+							emitFrame(state);
+						}
+						state.add(x, y, periods);
+						state.loggedPeriods += periods;
+					}
+				});
+				while (state.frame < state.frames) {
+					emitFrame(state);
+				}
+			} catch (FrameWriteException fwe) {
+				throw (IOException) fwe.getCause();
+			}
+			while (!state.queued.isEmpty()) {
+				this.writeOldest(state);
+			}
+			if (animation) {
+				state.animation.finish();
+				channel.close();
+				MapGenerator.moveIntoPlace(temporary, output);
+			}
+			complete = true;
+		} finally {
+			for (Future<byte[]> frame : state.queued) {
+				frame.cancel(false);
+			}
+			state.queued.clear();
+			if (channel != null) {
+				channel.close();
+				if (!complete) {
+					temporary.delete();
+				}
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Shuts down the workers of the exporter.
+	 */
+	public void shutdown() {
+		this.pool.shutdown();
+		this.pngEncoder.shutdown();
+	}
+
+	/**
+	 * Brings the map up to date with the records of the frame, copies what changed since the last frame, queues
+	 * it to be compressed and starts the next frame. Writes the frames that are done, and waits for the oldest ones
+	 * if too many are queued.
+	 */
+	private void emitFrame(Frames state) {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("The time-lapse export was interrupted");
+		}
+		state.update(this.pool);
+		Rectangle changed;
+		if (state.frame == 0 || state.frameDirectory != null) {
+			// The first frame of an animation, and every file of a sequence, holds the whole map
+			changed = new Rectangle(0, 0, state.width, state.height);
+		} else if (state.right < 0) {
+			// Nothing changed; the animation still needs a frame to show the time passing
+			changed = new Rectangle(0, 0, 1, 1);
+		} else {
+			changed = new Rectangle(state.left, state.top, state.right - state.left + 1, state.bottom - state.top + 1);
+		}
+		final BufferedImage image = new BufferedImage(changed.width, changed.height, BufferedImage.TYPE_INT_RGB);
+		int[] framePixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		for (int row = 0; row < changed.height; row++) {
+			System.arraycopy(state.pixels, (changed.y + row) * state.width + changed.x, framePixels, row * changed.width,
+					changed.width);
+		}
+
+		if (state.frameDirectory != null) {
+			final File file = new File(state.frameDirectory, String.format(Locale.ROOT, "frame_%05d.png", state.frame));
+			state.queued.add(this.pool.submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() {
+					File temporary = new File(file.getPath() + PART_EXTENSION);
+					try {
+						FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+								StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+						try {
+							pngEncoder.writeOnCallingThread(image, channel);
+						} finally {
+							channel.close();
+						}
+						MapGenerator.moveIntoPlace(temporary, file);
+					} catch (IOException ioe) {
+						temporary.delete();
+						throw new FrameWriteException(ioe);
+					}
+					return null;
+				}
+			}));
+		} else {
+			state.queued.add(this.pool.submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() {
+					return pngEncoder.compress(image);
+				}
+			}));
+		}
+		state.regions.add(changed);
+
+		state.frame++;
+		state.frameEnd = state.frameEnd(state.frame);
+		try {
+			while (!state.queued.isEmpty() && (state.queued.size() > this.maxQueued || state.queued.getFirst().isDone())) {
+				this.writeOldest(state);
+			}
+		} catch (IOException ioe) {
+			throw new FrameWriteException(ioe);
+		}
+	}
+
+	/**
+	 * Waits for the oldest queued frame and writes it to the animation, or waits for it to be saved.
+	 */
+	private void writeOldest(Frames state) throws IOException {
+		try {
+			byte[] compressed = state.queued.getFirst().get();
+			state.queued.removeFirst();
+			Rectangle region = state.regions.removeFirst();
+			if (state.animation != null) {
+				state.animation.writeFrame(compressed, region.x, region.y, region.width, region.height, this.frameMillis);
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("The time-lapse export was interrupted");
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof FrameWriteException) {
+				throw (IOException) ee.getCause().getCause();
+			}
+			if (ee.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ee.getCause();
+			}
+			if (ee.getCause() instanceof Error) {
+				throw (Error) ee.getCause();
+			}
+			throw new IllegalStateException(ee.getCause());
+		}
+	}
+
+	/**
+	 * The state of one export: the counts, density and colors of the map being built, and the frames that wait to
+	 * be written.
+	 */
+	private static class Frames {
+
+		private final int width;
+		private final int height;
+		private final PixelCountStore counts;
+		private final LongIntTable pending = new LongIntTable();
+		// The dots whose size changed in the frame, as x, y, count before and count after
+		private int[] changes = new int[64];
+		private int changeCount;
+		private final double[] density;
+		private final int[] pixels;
+		private final boolean[] dirtyTiles;
+		private final int tileColumns;
+		private final LinkedList<Future<byte[]>> queued = new LinkedList<Future<byte[]>>();
+		private final LinkedList<Rectangle> regions = new LinkedList<Rectangle>();
+		private CountScale scale;
+		private DotKernel kernel;
+		private int[] colors;
+		private PngEncoder.AnimationWriter animation;
+		private File frameDirectory;
+		private long totalPeriods;
+		private long loggedPeriods;
+		private int frames;
+		private int frame;
+		private long frameEnd;
+		// The rectangle of pixels that changed color since the last frame; empty while right is -1
+		private int left;
+		private int top;
+		private int right;
+		private int bottom;
+
+		Frames(int width, int height) {
+			if ((long) width * height > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("A time-lapse of " + width + "x" + height + " pixels is too large");
+			}
+			this.width = width;
+			this.height = height;
+			this.counts = new PixelCountStore(new Rectangle(0, 0, width, height));
+			this.density = new double[width * height];
+			// An empty map is black, the same as DotKernel.colorize leaves it
+			this.pixels = new int[width * height];
+			this.tileColumns = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+			this.dirtyTiles = new boolean[this.tileColumns * ((height + TILE_SIZE - 1) >> TILE_SHIFT)];
+		}
+
+		/**
+		 * @return	The logging time that a frame ends at, in sample periods since the session started; a record
+		 * 			that starts at that time belongs to the next frame.
+		 */
+		long frameEnd(int frame) {
+			return (long) Math.ceil((double) this.totalPeriods * (frame + 1) / this.frames);
+		}
+
+		/**
+		 * Adds a record to the frame being built. Records whose dots cannot reach into the map are left out.
+		 */
+		void add(int x, int y, int periods) {
+			if (x >= -DotKernel.MAX_RADIUS && y >= -DotKernel.MAX_RADIUS && x < this.width + DotKernel.MAX_RADIUS
+					&& y < this.height + DotKernel.MAX_RADIUS) {
+				this.pending.add(LongIntTable.pack(x, y), periods);
+			}
+		}
+
+		/**
+		 * Adds the records of the frame to the counts, replaces the dots whose size changed in the density buffer,
+		 * and colors the tiles under them again, keeping the rectangle of pixels that changed color.
+		 *
+		 * @param pool	The pool to update bands of rows of the map on
+		 */
+		void update(ForkJoinPool pool) {
+			this.changeCount = 0;
+			for (int slot = 0; slot < this.pending.capacity(); slot++) {
+				int periods = this.pending.valueAt(slot);
+				if (periods == 0) {
+					continue;
+				}
+				long key = this.pending.keyAt(slot);
+				int x = LongIntTable.unpackX(key);
+				int y = LongIntTable.unpackY(key);
+				int before = this.scale.get(this.counts.get(x, y));
+				this.counts.add(x, y, periods);
+				int after = this.scale.get(this.counts.get(x, y));
+				if (after != before) {
+					if (4 * (this.changeCount + 1) > this.changes.length) {
+						this.changes = Arrays.copyOf(this.changes, 2 * this.changes.length);
+					}
+					int change = 4 * this.changeCount++;
+					this.changes[change] = x;
+					this.changes[change + 1] = y;
+					this.changes[change + 2] = before;
+					this.changes[change + 3] = after;
+					// Counts only grow, so the new dot is the larger one; it covers x - radius .. x + radius - 1
+					int radius = Math.min(after, DotKernel.MAX_RADIUS);
+					this.markDirty(x - radius, y - radius, x + radius - 1, y + radius - 1);
+				}
+			}
+			this.pending.clear();
+
+			int[] changed = pool.invoke(new BandTask(this, 0, this.dirtyTiles.length / this.tileColumns));
+			this.left = changed[0];
+			this.top = changed[1];
+			this.right = changed[2];
+			this.bottom = changed[3];
+		}
+
+		/**
+		 * Marks the tiles under a rectangle, given by its inclusive edges, to be colored again.
+		 */
+		private void markDirty(int fromX, int fromY, int toX, int toY) {
+			fromX = Math.max(fromX, 0);
+			fromY = Math.max(fromY, 0);
+			toX = Math.min(toX, this.width - 1);
+			toY = Math.min(toY, this.height - 1);
+			for (int row = fromY >> TILE_SHIFT; row <= toY >> TILE_SHIFT; row++) {
+				for (int column = fromX >> TILE_SHIFT; column <= toX >> TILE_SHIFT; column++) {
+					this.dirtyTiles[row * this.tileColumns + column] = true;
+				}
+			}
+		}
+
+		/**
+		 * Colors the pixels of a tile from the density buffer, and widens a rectangle, given as its inclusive left,
+		 * top, right and bottom edges, to the pixels that changed color.
+		 */
+		private void colorTile(int tile, int[] changed) {
+			int fromX = (tile % this.tileColumns) << TILE_SHIFT;
+			int fromY = (tile / this.tileColumns) << TILE_SHIFT;
+			int toX = Math.min(fromX + TILE_SIZE, this.width);
+			int toY = Math.min(fromY + TILE_SIZE, this.height);
+			for (int y = fromY; y < toY; y++) {
+				int row = y * this.width;
+				for (int x = fromX; x < toX; x++) {
+					int color = DotKernel.color(this.density[row + x], this.colors);
+					if (color != this.pixels[row + x]) {
+						this.pixels[row + x] = color;
+						changed[0] = Math.min(changed[0], x);
+						changed[1] = Math.min(changed[1], y);
+						changed[2] = Math.max(changed[2], x);
+						changed[3] = Math.max(changed[3], y);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces the changed dots of a frame and colors the dirty tiles in a range of rows of tiles, and returns the
+	 * rectangle of pixels that changed color, as its inclusive left, top, right and bottom edges. Every task owns
+	 * the pixels of its rows, so the dots that reach across bands are replaced one band at a time.
+	 */
+	private static class BandTask extends RecursiveTask<int[]> {
+
+		private static final long serialVersionUID = 8354200791843605129L;
+
+		private final Frames state;
+		private final int fromTileRow;
+		private final int toTileRow;
+
+		BandTask(Frames state, int fromTileRow, int toTileRow) {
+			this.state = state;
+			this.fromTileRow = fromTileRow;
+			this.toTileRow = toTileRow;
+		}
+
+		@Override
+		protected int[] compute() {
+			if (this.toTileRow - this.fromTileRow > 1) {
+				int middle = (this.fromTileRow + this.toTileRow) >>> 1;
+				BandTask upper = new BandTask(this.state, this.fromTileRow, middle);
+				upper.fork();
+				int[] lower = new BandTask(this.state, middle, this.toTileRow).compute();
+				int[] changed = upper.join();
+				changed[0] = Math.min(changed[0], lower[0]);
+				changed[1] = Math.min(changed[1], lower[1]);
+				changed[2] = Math.max(changed[2], lower[2]);
+				changed[3] = Math.max(changed[3], lower[3]);
+				return changed;
+			}
+			Frames state = this.state;
+			int[] changed = { Integer.MAX_VALUE, Integer.MAX_VALUE, -1, -1 };
+			if (this.fromTileRow == this.toTileRow) {
+				return changed;
+			}
+			int fromRow = this.fromTileRow << TILE_SHIFT;
+			int toRow = Math.min(fromRow + TILE_SIZE, state.height);
+			boolean dirty = false;
+			for (int tile = this.fromTileRow * state.tileColumns; tile < (this.fromTileRow + 1) * state.tileColumns; tile++) {
+				dirty |= state.dirtyTiles[tile];
+			}
+			if (!dirty) {
+				return changed;
+			}
+			for (int change = 0; change < 4 * state.changeCount; change += 4) {
+				int y = state.changes[change + 1];
+				int radius = Math.min(state.changes[change + 3], DotKernel.MAX_RADIUS);
+				if (y + radius > fromRow && y - radius < toRow) {
+					state.kernel.resplat(state.density, state.width, fromRow, toRow, state.changes[change], y,
+							state.changes[change + 2], state.changes[change + 3]);
+				}
+			}
+			for (int tile = this.fromTileRow * state.tileColumns; tile < (this.fromTileRow + 1) * state.tileColumns; tile++) {
+				if (state.dirtyTiles[tile]) {
+					state.dirtyTiles[tile] = false;
+					state.colorTile(tile, changed);
+				}
+			}
+			return changed;
+		}
+	}
+
+	/**
+	 * Carries an IOException out of a TrajectoryVisitor or a frame task, which cannot throw it.
+	 */
+	private static class FrameWriteException extends RuntimeException {
+
+		private static final long serialVersionUID = -4317205914418625713L;
+
+		FrameWriteException(IOException cause) {
+			super(cause);
+		}
+	}
+}
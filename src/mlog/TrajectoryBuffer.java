@@ -0,0 +1,404 @@
+package mlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps the order and timing of logged mouse pointer positions in a ring buffer of primitive records.
+ *
+ * Each record holds the time of a sample relative to the start of the trajectory, the pointer position and the
+ * number of sample periods the sample stands for. Each time a half of the ring fills up, a background thread
+ * spills it to a file, so by the time the ring is full its oldest half is on disk and can be overwritten, and the
+ * most recent records are always in memory. Without a spill file the oldest half is dropped instead. Should the
+ * spill thread fall a whole half of the ring behind, new records are dropped until it catches up.
+ *
+ * A single thread appends records without locking, allocating or doing any I/O. Any other thread can query the
+ * records of a time window at the same time; records that are evicted while a query reads them are read back from
+ * the file.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class TrajectoryBuffer {
+
+	public static final int DEFAULT_CAPACITY = 1 << 18;
+	public static final int RECORD_BYTES = 20;
+	private static final int READ_BATCH_RECORDS = 4096;
+
+	private final long startNanos;
+	private final int mask;
+	private final int spillChunk;
+	private final AtomicLongArray times;
+	private final AtomicLongArray positions;
+	private final AtomicIntegerArray periods;
+	private final File spillFile;
+	private final ByteBuffer spillBuffer;
+	private final Thread spillThread;
+	private volatile FileChannel spillChannel;
+	private volatile boolean closed;
+	private volatile long writeCount;
+	private volatile long evictedCount;
+	private volatile long spilledCount;
+	private volatile long droppedCount;
+
+	/**
+	 * Creates a new, empty TrajectoryBuffer.
+	 *
+	 * @param startNanos	The time that record times are measured from, on the clock of the PointerSource the
+	 * 						records are logged from
+	 * @param capacity		The number of records kept in memory, rounded up to a power of two
+	 * @param spillFile		The file to spill old records to, or null to drop them instead
+	 * @throws IOException	If the spill file could not be opened
+	 */
+	public TrajectoryBuffer(long startNanos, int capacity, File spillFile) throws IOException {
+		int size = 2;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.startNanos = startNanos;
+		this.mask = size - 1;
+		this.spillChunk = size / 2;
+		this.times = new AtomicLongArray(size);
+		this.positions = new AtomicLongArray(size);
+		this.periods = new AtomicIntegerArray(size);
+		this.spillFile = spillFile;
+		if (spillFile != null) {
+			RandomAccessFile file = new RandomAccessFile(spillFile, "rw");
+			file.setLength(0);
+			this.spillChannel = file.getChannel();
+			this.spillBuffer = ByteBuffer.allocateDirect(this.spillChunk * RECORD_BYTES);
+			this.spillThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					spill();
+				}
+			}, "MLOG trajectory spill");
+			this.spillThread.setDaemon(true);
+			this.spillThread.start();
+		} else {
+			this.spillBuffer = null;
+			this.spillThread = null;
+		}
+	}
+
+	/**
+	 * Appends a record. Must only be called from one thread, normally the sampler.
+	 *
+	 * @param nanoTime	The System.nanoTime() value when the sample was taken
+	 * @param x			The x coordinate of the mouse pointer
+	 * @param y			The y coordinate of the mouse pointer
+	 * @param periods	The number of sample periods that the sample stands for
+	 */
+	public void append(long nanoTime, int x, int y, int periods) {
+		long index = this.writeCount;
+		if (index - this.evictedCount > this.mask && !this.evictOldest()) {
+			this.droppedCount++;
+			return;
+		}
+		int slot = (int) index & this.mask;
+		this.times.lazySet(slot, nanoTime - this.startNanos);
+		this.positions.lazySet(slot, LongIntTable.pack(x, y));
+		this.periods.lazySet(slot, periods);
+		this.writeCount = index + 1;
+		if (this.spillThread != null && ((index + 1) & (this.spillChunk - 1)) == 0) {
+			// A half of the ring is complete; the spill thread writes it while the other half fills up
+			LockSupport.unpark(this.spillThread);
+		}
+	}
+
+	/**
+	 * Makes room for new records by evicting the oldest half of the ring, if it has been spilled or there is
+	 * nothing to spill it to.
+	 *
+	 * @return	True if the oldest half was evicted, false if it still has to be spilled.
+	 */
+	private boolean evictOldest() {
+		long first = this.evictedCount;
+		if (this.spillChannel != null && this.spilledCount < first + this.spillChunk) {
+			return false;
+		}
+		// Readers check this count after reading a record, to find out whether it was overwritten meanwhile
+		this.evictedCount = first + this.spillChunk;
+		return true;
+	}
+
+	/**
+	 * Writes every complete half of the ring to the spill file, until the buffer is closed. Runs on the spill
+	 * thread. The sampler does not evict a half before it is spilled, so it cannot change while it is written.
+	 */
+	private void spill() {
+		while (!this.closed) {
+			FileChannel channel = this.spillChannel;
+			long first = this.spilledCount;
+			if (channel == null) {
+				return;
+			}
+			if (this.writeCount - first < this.spillChunk) {
+				LockSupport.park(this);
+				continue;
+			}
+			this.spillBuffer.clear();
+			for (long index = first; index < first + this.spillChunk; index++) {
+				int slot = (int) index & this.mask;
+				long position = this.positions.get(slot);
+				this.spillBuffer.putLong(this.times.get(slot));
+				this.spillBuffer.putInt(LongIntTable.unpackX(position));
+				this.spillBuffer.putInt(LongIntTable.unpackY(position));
+				this.spillBuffer.putInt(this.periods.get(slot));
+			}
+			this.spillBuffer.flip();
+			try {
+				long filePosition = first * RECORD_BYTES;
+				while (this.spillBuffer.hasRemaining()) {
+					filePosition += channel.write(this.spillBuffer, filePosition);
+				}
+				this.spilledCount = first + this.spillChunk;
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+				System.err.println("The trajectory could not be spilled to disk. Old records will be dropped.");
+				this.spillChannel = null;
+			}
+		}
+	}
+
+	/**
+	 * Visits all records with a time in the given window, in the order they were logged.
+	 * Records that were dropped because there was no spill file are not visited.
+	 *
+	 * @param fromNanos	The start of the window (inclusive), in nanoseconds since the start of the trajectory
+	 * @param toNanos	The end of the window (exclusive), in nanoseconds since the start of the trajectory
+	 * @param visitor	The visitor to call
+	 * @throws IOException	If spilled records could not be read
+	 */
+	public void query(long fromNanos, long toNanos, TrajectoryVisitor visitor) throws IOException {
+		long end = this.writeCount;
+		long first = this.findFirst(fromNanos, end);
+		this.read(first, end, toNanos, visitor);
+	}
+
+	/**
+	 * Visits the records with an index in the given range, in the order they were logged.
+	 * The first record ever appended has index 0.
+	 *
+	 * @param fromIndex	The index of the first record to visit (inclusive)
+	 * @param toIndex	The index after the last record to visit (exclusive)
+	 * @param visitor	The visitor to call
+	 * @throws IOException	If spilled records could not be read
+	 */
+	public void read(long fromIndex, long toIndex, TrajectoryVisitor visitor) throws IOException {
+		this.read(fromIndex, Math.min(toIndex, this.writeCount), Long.MAX_VALUE, visitor);
+	}
+
+	/**
+	 * Adds the positions logged in a time window to a store, weighted by the sample periods they stand for.
+	 *
+	 * @param fromNanos	The start of the window (inclusive), in nanoseconds since the start of the trajectory
+	 * @param toNanos	The end of the window (exclusive), in nanoseconds since the start of the trajectory
+	 * @param target	The store to add the positions to
+	 * @throws IOException	If spilled records could not be read
+	 */
+	public void accumulate(long fromNanos, long toNanos, final PixelCountStore target) throws IOException {
+		this.query(fromNanos, toNanos, new TrajectoryVisitor() {
+			@Override
+			public void visit(long timeNanos, int x, int y, int periods) {
+				target.add(x, y, periods);
+			}
+		});
+	}
+
+	/**
+	 * Visits records from an index until the end index or the first record at or after a time.
+	 */
+	private void read(long index, long end, long toNanos, TrajectoryVisitor visitor) throws IOException {
+		while (index < end) {
+			long evicted = this.evictedCount;
+			if (index < evicted) {
+				// The record is no longer in memory; read the spilled records up to the ring instead
+				index = this.readSpilled(index, Math.min(end, evicted), toNanos, visitor);
+				if (index < 0) {
+					return;
+				}
+				continue;
+			}
+			int slot = (int) index & this.mask;
+			long time = this.times.get(slot);
+			long position = this.positions.get(slot);
+			int recordPeriods = this.periods.get(slot);
+			if (this.evictedCount > index) {
+				// The record may have been overwritten while it was read; go back to the file for it
+				continue;
+			}
+			if (time >= toNanos) {
+				return;
+			}
+			visitor.visit(time, LongIntTable.unpackX(position), LongIntTable.unpackY(position), recordPeriods);
+			index++;
+		}
+	}
+
+	/**
+	 * Visits spilled records from the spill file.
+	 *
+	 * @return	The index after the last record read, or -1 if the end of the time window was reached.
+	 */
+	private long readSpilled(long index, long end, long toNanos, TrajectoryVisitor visitor) throws IOException {
+		FileChannel channel = this.spillChannel;
+		long spilled = this.spilledCount;
+		if (channel == null || index >= spilled) {
+			// The records were dropped; continue with the oldest record still in memory
+			return end;
+		}
+		end = Math.min(end, spilled);
+		ByteBuffer buffer = ByteBuffer.allocate(READ_BATCH_RECORDS * RECORD_BYTES);
+		while (index < end) {
+			int records = (int) Math.min(READ_BATCH_RECORDS, end - index);
+			this.readFully(channel, buffer, index, records);
+			for (int i = 0; i < records; i++) {
+				long time = buffer.getLong();
+				int x = buffer.getInt();
+				int y = buffer.getInt();
+				int recordPeriods = buffer.getInt();
+				if (time >= toNanos) {
+					return -1;
+				}
+				visitor.visit(time, x, y, recordPeriods);
+			}
+			index += records;
+		}
+		return index;
+	}
+
+	/**
+	 * Finds the index of the first record at or after the given time, using binary search.
+	 */
+	private long findFirst(long timeNanos, long end) throws IOException {
+		long low = 0;
+		long high = end;
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			long time = this.timeAt(middle, buffer);
+			if (time < timeNanos) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return	The time of the record with the given index, or Long.MIN_VALUE if it was dropped.
+	 */
+	private long timeAt(long index, ByteBuffer buffer) throws IOException {
+		while (true) {
+			if (index >= this.evictedCount) {
+				long time = this.times.get((int) index & this.mask);
+				if (index >= this.evictedCount) {
+					return time;
+				}
+			}
+			FileChannel channel = this.spillChannel;
+			if (channel == null || index >= this.spilledCount) {
+				// Dropped records count as older than anything that is searched for
+				if (index < this.evictedCount) {
+					return Long.MIN_VALUE;
+				}
+				continue;
+			}
+			buffer.clear();
+			buffer.limit(8);
+			long filePosition = index * RECORD_BYTES;
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, filePosition + buffer.position()) < 0) {
+					throw new IOException("Unexpected end of trajectory spill file");
+				}
+			}
+			return buffer.getLong(0);
+		}
+	}
+
+	/**
+	 * Reads a number of records from the spill file into the buffer, and prepares the buffer for reading.
+	 */
+	private void readFully(FileChannel channel, ByteBuffer buffer, long index, int records) throws IOException {
+		buffer.clear();
+		buffer.limit(records * RECORD_BYTES);
+		long filePosition = index * RECORD_BYTES;
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, filePosition + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of trajectory spill file");
+			}
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * @return	The number of records appended since the buffer was created.
+	 */
+	public long size() {
+		return this.writeCount;
+	}
+
+	/**
+	 * @return	The number of records that were not appended because the spill thread had fallen behind.
+	 */
+	public long getDroppedCount() {
+		return this.droppedCount;
+	}
+
+	/**
+	 * @return	The time that record times are measured from, on the clock of the PointerSource the records are
+	 * 			logged from.
+	 */
+	public long getStartNanos() {
+		return this.startNanos;
+	}
+
+	/**
+	 * @return	The number of records that are kept in memory.
+	 */
+	public int getCapacity() {
+		return this.mask + 1;
+	}
+
+	/**
+	 * Stops the spill thread, waiting for the half of the ring it is writing, and closes and deletes the spill
+	 * file, if any. Spilled records can no longer be queried afterwards. Records must no longer be appended.
+	 */
+	public void close() {
+		this.closed = true;
+		if (this.spillThread != null) {
+			LockSupport.unpark(this.spillThread);
+			boolean interrupted = false;
+			while (this.spillThread.isAlive()) {
+				try {
+					this.spillThread.join();
+				} catch (InterruptedException ie) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		FileChannel channel = this.spillChannel;
+		this.spillChannel = null;
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
+			if (!this.spillFile.delete()) {
+				this.spillFile.deleteOnExit();
+			}
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package mlog;
+
+/**
+ * Receives trajectory records from a TrajectoryBuffer one at a time, in the order they were logged.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public interface TrajectoryVisitor {
+
+	/**
+	 * Called once for every visited record.
+	 *
+	 * @param timeNanos	The time of the sample, in nanoseconds since the trajectory was started
+	 * @param x			The x coordinate of the mouse pointer
+	 * @param y			The y coordinate of the mouse pointer
+	 * @param periods	The number of sample periods that the sample stands for
+	 */
+	void visit(long timeNanos, int x, int y, int periods);
+}
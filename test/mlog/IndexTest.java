@@ -0,0 +1,148 @@
+package mlog;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Tests LineMapIndex, DwellIndex and PixelCountStore.forEachIn against going through every pixel or pair of pixels.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class IndexTest {
+
+	@Test
+	public void lineMapIndexFindsTheLinesOfAllPairsInOrder() {
+		Random random = new Random(1);
+		int n = 1500;
+		int[] xs = new int[n + 10];
+		int[] ys = new int[n + 10];
+		for (int i = 0; i < n; i++) {
+			// Clusters and scattered pixels, some at negative coordinates of a second screen
+			if (i % 3 == 0) {
+				xs[i] = -800 + random.nextInt(2800);
+				ys[i] = -200 + random.nextInt(1400);
+			} else {
+				xs[i] = 300 + (int) (random.nextGaussian() * 150);
+				ys[i] = 400 + (int) (random.nextGaussian() * 150);
+			}
+		}
+		// The pixels are several chunks, found on the calling thread and on a pool
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			for (ForkJoinPool workers : new ForkJoinPool[] { null, pool }) {
+				// The map covers all pixels, and its squares start at a corner that is not a multiple of their size
+				LineMapIndex.Lines lines = new LineMapIndex(xs, ys, n).findLines(new Rectangle(-800, -200, 2800, 1400), 256,
+						workers);
+				Rectangle[] areas = { new Rectangle(-800, -200, 2800, 1400), new Rectangle(-800, -200, 256, 256),
+						new Rectangle(-32, 56, 256, 256), new Rectangle(0, 0, 256, 256), new Rectangle(100, 37, 700, 300),
+						new Rectangle(-300, 900, 64, 64), new Rectangle(5000, 5000, 10, 10) };
+				for (Rectangle area : areas) {
+					final List<String> found = new ArrayList<String>();
+					lines.forEachLine(area, new LineMapIndex.LineVisitor() {
+						@Override
+						public void visit(int x1, int y1, int x2, int y2, int alpha) {
+							found.add(x1 + "," + y1 + "-" + x2 + "," + y2 + ":" + alpha);
+						}
+					});
+					List<String> expected = new ArrayList<String>();
+					for (int i = 0; i < n; i++) {
+						for (int j = i + 1; j < n; j++) {
+							int alpha = LineMapIndex.lineAlpha(xs[i], ys[i], xs[j], ys[j]);
+							if (alpha != 0 && Math.max(xs[i], xs[j]) >= area.x && Math.min(xs[i], xs[j]) < area.x + area.width
+									&& Math.max(ys[i], ys[j]) >= area.y && Math.min(ys[i], ys[j]) < area.y + area.height) {
+								expected.add(xs[i] + "," + ys[i] + "-" + xs[j] + "," + ys[j] + ":" + alpha);
+							}
+						}
+					}
+					assertEquals("The lines reaching into " + area, expected, found);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void dwellIndexSumsLikeThePixels() {
+		Random random = new Random(2);
+		Rectangle area = new Rectangle(-50, 20, 333, 211);
+		PixelCountStore counts = new PixelCountStore(area);
+		for (int i = 0; i < 20000; i++) {
+			// Some counts fall outside the area, and must be left out
+			counts.add(area.x - 20 + random.nextInt(area.width + 40), area.y - 20 + random.nextInt(area.height + 40),
+					1 + random.nextInt(9));
+		}
+		DwellIndex exact = DwellIndex.of(counts, area);
+		assertEquals(1, exact.getBinWidth());
+		assertEquals(bruteForceDwell(counts, area, area), exact.getTotal());
+		for (int test = 0; test < 500; test++) {
+			Rectangle rectangle = new Rectangle(area.x - 30 + random.nextInt(area.width + 60),
+					area.y - 30 + random.nextInt(area.height + 60), random.nextInt(200), random.nextInt(200));
+			assertEquals("The dwell in " + rectangle, bruteForceDwell(counts, area, rectangle), exact.getDwell(rectangle));
+		}
+
+		// With coarser bins, rectangles on the bin edges are still exact
+		DwellIndex binned = new DwellIndex(counts, area, 8, 4);
+		for (int test = 0; test < 500; test++) {
+			Rectangle rectangle = new Rectangle(area.x + 8 * random.nextInt(area.width / 8), area.y + 4 * random.nextInt(area.height / 4),
+					8 * random.nextInt(20), 4 * random.nextInt(20));
+			assertEquals("The dwell in " + rectangle, bruteForceDwell(counts, area, rectangle), binned.getDwell(rectangle));
+		}
+	}
+
+	@Test
+	public void forEachInVisitsThePixelsOfTheAreaInOrder() {
+		Random random = new Random(3);
+		PixelCountStore counts = new PixelCountStore(new Rectangle(0, 0, 300, 200));
+		for (int i = 0; i < 5000; i++) {
+			// Most pixels lie outside the dense area, on both sides of 0
+			counts.add(-2000 + random.nextInt(4000), -1500 + random.nextInt(3000), 1 + random.nextInt(9));
+		}
+		for (int test = 0; test < 300; test++) {
+			if (test == 150) {
+				// Pixels added after the first lookups must be found too
+				for (int i = 0; i < 1000; i++) {
+					counts.add(-2000 + random.nextInt(4000), -1500 + random.nextInt(3000), 1);
+				}
+			}
+			final Rectangle area = test % 50 == 0 ? new Rectangle(-3000, -2000, 6000, 4000)
+					: new Rectangle(-2100 + random.nextInt(4200), -1600 + random.nextInt(3200), random.nextInt(400), random.nextInt(400));
+			final List<String> expected = new ArrayList<String>();
+			counts.forEach(new PixelVisitor() {
+				@Override
+				public void visit(int x, int y, int count) {
+					if (area.contains(x, y)) {
+						expected.add(x + "," + y + "=" + count);
+					}
+				}
+			});
+			final List<String> actual = new ArrayList<String>();
+			counts.forEachIn(area, new PixelVisitor() {
+				@Override
+				public void visit(int x, int y, int count) {
+					actual.add(x + "," + y + "=" + count);
+				}
+			});
+			assertEquals("The pixels in " + area, expected, actual);
+		}
+	}
+
+	private static long bruteForceDwell(PixelCountStore counts, Rectangle area, Rectangle rectangle) {
+		Rectangle inside = area.intersection(rectangle);
+		long dwell = 0;
+		for (int y = inside.y; y < inside.y + inside.height; y++) {
+			for (int x = inside.x; x < inside.x + inside.width; x++) {
+				dwell += counts.get(x, y);
+			}
+		}
+		return dwell;
+	}
+}
@@ -0,0 +1,100 @@
+package mlog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests that map types found on the class path can be rendered whatever case they are named in. The renderer
+ * below is listed in test/META-INF/services/mlog.MapRenderer.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class MapGeneratorTest {
+
+	private static final Dimension RESOLUTION = new Dimension(300, 200);
+
+	private final TiledMapRenderer renderer = new TiledMapRenderer(2, 64);
+	private final PngEncoder encoder = new PngEncoder(2, PngEncoder.DEFAULT_COMPRESSION_LEVEL);
+	private final MapGenerator mapGenerator = new MapGenerator(this.renderer, this.encoder);
+
+	@After
+	public void shutDown() {
+		this.renderer.shutdown();
+		this.encoder.shutdown();
+	}
+
+	@Test
+	public void lowerCaseMapTypeIsKeptInCapitals() {
+		assertTrue(Arrays.asList(MapGenerator.getMapTypes()).contains("LOWERCASE"));
+		assertTrue(MapGenerator.isMapType("lowercase"));
+		assertTrue(MapGenerator.isMapType("LOWERCASE"));
+	}
+
+	@Test
+	public void lowerCaseMapTypeIsRendered() {
+		for (String mapType : new String[] { "lowercase", "LOWERCASE" }) {
+			BufferedImage map = this.mapGenerator.renderMap(RESOLUTION, new PixelCountStore(new Rectangle(RESOLUTION)),
+					Color.RED, mapType);
+			assertNotNull(map);
+			assertEquals(Color.RED.getRGB(), map.getRGB(123, 45));
+		}
+	}
+
+	@Test
+	public void lowerCaseMapTypeIsStreamed() throws IOException {
+		File file = File.createTempFile("mlog-test", ".png");
+		try {
+			for (String mapType : new String[] { "lowercase", "LOWERCASE" }) {
+				this.mapGenerator.streamMap(RESOLUTION, new PixelCountStore(new Rectangle(RESOLUTION)), Color.RED,
+						mapType, file, 64);
+				BufferedImage map = ImageIO.read(file);
+				assertEquals(RESOLUTION.width, map.getWidth());
+				assertEquals(RESOLUTION.height, map.getHeight());
+				assertEquals(Color.RED.getRGB(), map.getRGB(123, 45));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * A map type named in lower case, that fills the map with the element color.
+	 */
+	public static class LowerCaseMapRenderer implements MapRenderer {
+
+		@Override
+		public String getMapType() {
+			return "lowercase";
+		}
+
+		@Override
+		public TilePainter prepare(RenderContext context) {
+			final Color color = context.getElementColor();
+			return new TilePainter() {
+				@Override
+				public void paintTile(BufferedImage tile, Rectangle bounds) {
+					for (int y = 0; y < tile.getHeight(); y++) {
+						for (int x = 0; x < tile.getWidth(); x++) {
+							tile.setRGB(x, y, color.getRGB());
+						}
+					}
+				}
+			};
+		}
+	}
+}
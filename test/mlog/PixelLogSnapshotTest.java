@@ -0,0 +1,137 @@
+package mlog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests that snapshots of ConcurrentPixelLog and DecayingPixelLog taken while the sampler writes to them are
+ * consistent: every snapshot holds exactly the samples that were logged before some moment, and never changes.
+ *
+ * The sampler adds one count at a time to the pixels of a fixed cycle, so a snapshot with a total of n must have
+ * the counts of the first n samples of the cycle.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class PixelLogSnapshotTest {
+
+	private static final Rectangle BOUNDS = new Rectangle(0, 0, 400, 300);
+	private static final int SAMPLES = 400000;
+	private static final int CYCLE = 997;
+	private static final int READERS = 3;
+
+	@Test
+	public void concurrentPixelLogSnapshotsArePrefixesOfTheSamples() throws InterruptedException {
+		final ConcurrentPixelLog log = new ConcurrentPixelLog(BOUNDS);
+		this.checkSnapshots(new Log() {
+			@Override
+			public void add(int x, int y, long sample) {
+				log.add(x, y, 1);
+			}
+
+			@Override
+			public PixelCountStore snapshot() {
+				return log.snapshot();
+			}
+		});
+	}
+
+	@Test
+	public void decayingPixelLogSnapshotsArePrefixesOfTheSamples() throws InterruptedException {
+		// With a half-life this long nothing decays by as much as half a count, so the rounded weights are counts
+		final DecayingPixelLog log = new DecayingPixelLog(BOUNDS, 1e15);
+		this.checkSnapshots(new Log() {
+			@Override
+			public void add(int x, int y, long sample) {
+				log.add(x, y, 1, sample + 1);
+			}
+
+			@Override
+			public PixelCountStore snapshot() {
+				return log.snapshot();
+			}
+		});
+	}
+
+	private interface Log {
+		void add(int x, int y, long sample);
+
+		PixelCountStore snapshot();
+	}
+
+	private void checkSnapshots(final Log log) throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] readers = new Thread[READERS];
+		final int[] snapshots = new int[READERS];
+		for (int r = 0; r < READERS; r++) {
+			final int reader = r;
+			readers[r] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						long previousTotal = 0;
+						do {
+							PixelCountStore snapshot = log.snapshot();
+							long total = snapshot.getTotalCount();
+							assertTrue("A later snapshot has fewer samples", total >= previousTotal);
+							assertPrefix(snapshot, total);
+							// A snapshot never changes, even while the sampler goes on
+							Thread.yield();
+							assertPrefix(snapshot, total);
+							previousTotal = total;
+							snapshots[reader]++;
+						} while (done.getCount() > 0);
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			});
+			readers[r].start();
+		}
+		for (long sample = 0; sample < SAMPLES; sample++) {
+			int pixel = (int) (sample % CYCLE);
+			log.add(x(pixel), y(pixel), sample);
+		}
+		done.countDown();
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertPrefix(log.snapshot(), SAMPLES);
+		for (int count : snapshots) {
+			assertTrue(count > 0);
+		}
+	}
+
+	/**
+	 * Checks that a snapshot has the counts of the first samples of the cycle.
+	 */
+	private static void assertPrefix(PixelCountStore snapshot, long samples) {
+		assertEquals(samples, snapshot.getTotalCount());
+		assertEquals(Math.min(samples, CYCLE), snapshot.size());
+		for (int pixel = 0; pixel < CYCLE; pixel++) {
+			long expected = samples / CYCLE + (pixel < samples % CYCLE ? 1 : 0);
+			assertEquals("The count of pixel " + pixel, expected, snapshot.get(x(pixel), y(pixel)));
+		}
+	}
+
+	/**
+	 * The pixels of the cycle are spread over the tiles of the dense area, and a few lie outside it.
+	 */
+	private static int x(int pixel) {
+		return pixel % 10 == 0 ? -1 - pixel : pixel * 37 % BOUNDS.width;
+	}
+
+	private static int y(int pixel) {
+		return pixel * 53 % BOUNDS.height;
+	}
+}
@@ -0,0 +1,124 @@
+package mlog;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests that the PNGs written in bands by PngEncoder decode to the images they were written from.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class PngEncoderTest {
+
+	private final PngEncoder encoder = new PngEncoder(3, PngEncoder.DEFAULT_COMPRESSION_LEVEL);
+
+	@After
+	public void shutDown() {
+		this.encoder.shutdown();
+	}
+
+	@Test
+	public void writtenImageDecodesToTheSamePixels() throws IOException {
+		// Tall enough for many bands, with rows that do not split evenly into them
+		BufferedImage image = randomImage(733, 1201, BufferedImage.TYPE_INT_RGB, new Random(1));
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		WritableByteChannel channel = Channels.newChannel(png);
+		this.encoder.write(image, channel);
+		assertSamePixels(image, decode(png));
+	}
+
+	@Test
+	public void imageWithAlphaDecodesToTheSamePixels() throws IOException {
+		BufferedImage image = randomImage(300, 517, BufferedImage.TYPE_INT_ARGB, new Random(2));
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		this.encoder.write(image, Channels.newChannel(png));
+		assertSamePixels(image, decode(png));
+	}
+
+	@Test
+	public void rowsGivenInBandsDecodeToTheWholeImage() throws IOException {
+		BufferedImage image = randomImage(1024, 999, BufferedImage.TYPE_INT_RGB, new Random(3));
+		for (int bandHeight : new int[] { 1, 37, 256, 999 }) {
+			ByteArrayOutputStream png = new ByteArrayOutputStream();
+			PngEncoder.BandWriter writer = this.encoder.open(Channels.newChannel(png), image.getWidth(), image.getHeight(), false);
+			for (int y = 0; y < image.getHeight(); y += bandHeight) {
+				int rows = Math.min(bandHeight, image.getHeight() - y);
+				// Every band is a separate image, as a band renderer gives them
+				BufferedImage band = new BufferedImage(image.getWidth(), rows, BufferedImage.TYPE_INT_RGB);
+				band.setRGB(0, 0, image.getWidth(), rows, image.getRGB(0, y, image.getWidth(), rows, null, 0, image.getWidth()),
+						0, image.getWidth());
+				writer.writeRows(band);
+			}
+			writer.finish();
+			assertSamePixels(image, decode(png));
+		}
+	}
+
+	@Test
+	public void combinedAdlerEqualsTheAdlerOfTheWhole() {
+		Random random = new Random(4);
+		for (int test = 0; test < 200; test++) {
+			byte[] data = new byte[random.nextInt(200000)];
+			random.nextBytes(data);
+			if (test % 4 == 0) {
+				// Long runs of 0xFF push the sums close to the modulus
+				Arrays.fill(data, (byte) 0xFF);
+			}
+			int split = data.length == 0 ? 0 : random.nextInt(data.length + 1);
+			Adler32 first = new Adler32();
+			first.update(data, 0, split);
+			Adler32 second = new Adler32();
+			second.update(data, split, data.length - split);
+			Adler32 whole = new Adler32();
+			whole.update(data, 0, data.length);
+			assertEquals(whole.getValue(), PngEncoder.combineAdler(first.getValue(), second.getValue(), data.length - split));
+		}
+	}
+
+	private static BufferedImage randomImage(int width, int height, int type, Random random) {
+		BufferedImage image = new BufferedImage(width, height, type);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			// Smooth areas and noise, so every PNG filter gets picked somewhere
+			for (int x = 0; x < width; x++) {
+				row[x] = y % 3 == 0 ? random.nextInt() : (x * 7 + y * 3) * 0x010101 ^ (x / 64) << 24;
+			}
+			image.setRGB(0, y, width, 1, row, 0, width);
+		}
+		return image;
+	}
+
+	private static BufferedImage decode(ByteArrayOutputStream png) throws IOException {
+		return ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+	}
+
+	private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		boolean alpha = expected.getColorModel().hasAlpha();
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				int expectedPixel = alpha ? expected.getRGB(x, y) : expected.getRGB(x, y) & 0xFFFFFF;
+				int actualPixel = alpha ? actual.getRGB(x, y) : actual.getRGB(x, y) & 0xFFFFFF;
+				if (expectedPixel != actualPixel) {
+					assertEquals("The pixel at " + x + "," + y, Integer.toHexString(expectedPixel), Integer.toHexString(actualPixel));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package mlog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Tests the dwell, entries and transitions counted by RegionTracker against going through a synthetic trace
+ * one sample at a time, testing every region.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class RegionTrackerTest {
+
+	private static final int SAMPLES = 50000;
+
+	@Test
+	public void countsMatchAPassOverEveryRegion() {
+		Random random = new Random(1);
+		Rectangle[] bounds = randomRegions(random);
+		int[][] trace = randomTrace(random, bounds, SAMPLES);
+		RegionTracker tracker = new RegionTracker(names(bounds.length), bounds);
+		for (int[] sample : trace) {
+			tracker.sampleLogged(sample[0], sample[1], sample[2]);
+		}
+		assertCounts(new Expected(bounds, trace, 0), tracker.getStats());
+	}
+
+	@Test
+	public void regionsFarApartGrowTheCells() {
+		Random random = new Random(2);
+		// Together with the regions far away the area is 400000 pixels wide, far more than MAX_CELLS cells of 32
+		Rectangle[] near = randomRegions(random);
+		Rectangle[] bounds = new Rectangle[near.length + 2];
+		System.arraycopy(near, 0, bounds, 0, near.length);
+		bounds[near.length] = new Rectangle(-200000, -150000, 40, 30);
+		bounds[near.length + 1] = new Rectangle(199950, 149000, 50, 1000);
+		int[][] trace = randomTrace(random, bounds, SAMPLES);
+		RegionTracker tracker = new RegionTracker(names(bounds.length), bounds);
+		for (int[] sample : trace) {
+			tracker.sampleLogged(sample[0], sample[1], sample[2]);
+		}
+		RegionStats stats = tracker.getStats();
+		assertCounts(new Expected(bounds, trace, 0), stats);
+		assertTrue(stats.getDwell(near.length) > 0);
+		assertTrue(stats.getDwell(near.length + 1) > 0);
+	}
+
+	@Test
+	public void topmostRegionIsTheOneMovedTo() {
+		// B lies on top of A, and C is apart from both
+		Rectangle[] bounds = { new Rectangle(0, 0, 100, 100), new Rectangle(50, 50, 20, 20), new Rectangle(300, 0, 10, 10) };
+		RegionTracker tracker = new RegionTracker(new String[] { "A", "B", "C" }, bounds);
+		int[][] moves = { { 10, 10 }, { 60, 60 }, { 10, 10 }, { 200, 200 }, { 305, 5 }, { 200, 200 }, { 1000, 1000 }, { 305, 5 },
+				{ 60, 60 } };
+		for (int[] move : moves) {
+			tracker.sampleLogged(move[0], move[1], 2);
+		}
+		RegionStats stats = tracker.getStats();
+		// Both A and B count the samples inside B, but only A was entered once, since B lies inside it
+		assertEquals(8, stats.getDwell(0));
+		assertEquals(4, stats.getDwell(1));
+		assertEquals(4, stats.getDwell(2));
+		assertEquals(2, stats.getEntries(0));
+		assertEquals(2, stats.getEntries(1));
+		assertEquals(2, stats.getEntries(2));
+		assertEquals(1, stats.getTransitions(0, 1));
+		assertEquals(1, stats.getTransitions(1, 0));
+		// Empty space in between does not break a transition, and leaving C for nothing and coming back is none
+		assertEquals(1, stats.getTransitions(0, 2));
+		assertEquals(1, stats.getTransitions(2, 1));
+		assertEquals(0, stats.getTransitions(2, 2));
+		assertEquals(4, stats.getTransitionCount());
+		assertEquals(18, stats.getTotalPeriods());
+		assertEquals(6, stats.getOutsidePeriods());
+	}
+
+	@Test
+	public void resetWhileSamplingStartsOver() throws InterruptedException {
+		Random random = new Random(3);
+		final Rectangle[] bounds = randomRegions(random);
+		final int[][] trace = randomTrace(random, bounds, 4 * SAMPLES);
+		final RegionTracker tracker = new RegionTracker(names(bounds.length), bounds);
+		final AtomicBoolean done = new AtomicBoolean();
+		Thread sampler = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int[] sample : trace) {
+					tracker.sampleLogged(sample[0], sample[1], sample[2]);
+				}
+				done.set(true);
+			}
+		});
+		sampler.start();
+		int resets = 0;
+		while (!done.get()) {
+			tracker.getStats();
+			if (!done.get()) {
+				tracker.reset();
+				resets++;
+			}
+			Thread.yield();
+		}
+		sampler.join();
+		assertTrue(resets > 0);
+
+		// The counts start at the sample the last reset was first seen at, which the total periods give away
+		RegionStats stats = tracker.getStats();
+		long periods = 0;
+		for (int start = trace.length - 1; start >= 0; start--) {
+			periods += trace[start][2];
+			if (periods == stats.getTotalPeriods()) {
+				assertCounts(new Expected(bounds, trace, start), stats);
+				return;
+			}
+		}
+		fail("The counts do not start at any sample: " + stats.getTotalPeriods() + " periods");
+	}
+
+	@Test
+	public void regionNamesMayContainCommas() throws IOException {
+		File file = File.createTempFile("mlog-regions", ".txt");
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+			try {
+				writer.write("# name,x,y,width,height\n\nSave, as\u2026,10,20,30,40\n  toolbar , -5, 0 ,1920, 32  \n,,1,2,3,4\n");
+			} finally {
+				writer.close();
+			}
+			RegionTracker tracker = RegionTracker.read(file);
+			assertEquals(3, tracker.getRegionCount());
+			assertEquals("Save, as\u2026", tracker.getName(0));
+			assertEquals(new Rectangle(10, 20, 30, 40), tracker.getBounds(0));
+			assertEquals("toolbar", tracker.getName(1));
+			assertEquals(new Rectangle(-5, 0, 1920, 32), tracker.getBounds(1));
+			assertEquals(",", tracker.getName(2));
+			assertEquals(new Rectangle(1, 2, 3, 4), tracker.getBounds(2));
+
+			for (String line : new String[] { "button,1,2,3", "button,1,2,3,x", "button,1,2,0,4" }) {
+				writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+				try {
+					writer.write(line + "\n");
+				} finally {
+					writer.close();
+				}
+				try {
+					RegionTracker.read(file);
+					fail("Read a region from " + line);
+				} catch (IOException expected) {
+					// A line that is not a region is an error
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Regions of all sizes over a 2000x1200 desktop, many of them overlapping.
+	 */
+	private static Rectangle[] randomRegions(Random random) {
+		Rectangle[] bounds = new Rectangle[60];
+		for (int region = 0; region < bounds.length; region++) {
+			int width = 5 + random.nextInt(region % 3 == 0 ? 600 : 80);
+			int height = 5 + random.nextInt(region % 3 == 0 ? 400 : 60);
+			bounds[region] = new Rectangle(random.nextInt(2000 - width), random.nextInt(1200 - height), width, height);
+		}
+		return bounds;
+	}
+
+	/**
+	 * A pointer that stays put, wanders, and jumps into regions, onto their edges and out of the desktop, with
+	 * samples of several periods.
+	 */
+	private static int[][] randomTrace(Random random, Rectangle[] bounds, int samples) {
+		int[][] trace = new int[samples][];
+		int x = 1000;
+		int y = 600;
+		for (int i = 0; i < samples; i++) {
+			int move = random.nextInt(10);
+			if (move < 4) {
+				x += random.nextInt(41) - 20;
+				y += random.nextInt(41) - 20;
+			} else if (move < 7) {
+				Rectangle r = bounds[random.nextInt(bounds.length)];
+				// Just inside or just outside an edge now and then
+				x = r.x - 1 + random.nextInt(r.width + 2);
+				y = r.y - 1 + random.nextInt(r.height + 2);
+			} else if (move == 7) {
+				x = -300 + random.nextInt(2600);
+				y = -300 + random.nextInt(1800);
+			}
+			trace[i] = new int[] { x, y, 1 + random.nextInt(4) };
+		}
+		return trace;
+	}
+
+	private static String[] names(int regions) {
+		String[] names = new String[regions];
+		for (int region = 0; region < regions; region++) {
+			names[region] = "region " + region;
+		}
+		return names;
+	}
+
+	private static void assertCounts(Expected expected, RegionStats stats) {
+		assertEquals(expected.total, stats.getTotalPeriods());
+		assertEquals(expected.outside, stats.getOutsidePeriods());
+		for (int region = 0; region < expected.dwell.length; region++) {
+			assertEquals("The dwell in region " + region, expected.dwell[region], stats.getDwell(region));
+			assertEquals("The entries of region " + region, expected.entries[region], stats.getEntries(region));
+		}
+		assertEquals(expected.transitions.size(), stats.getTransitionCount());
+		for (int transition = 0; transition < stats.getTransitionCount(); transition++) {
+			int from = stats.getTransitionFrom(transition);
+			int to = stats.getTransitionTo(transition);
+			Long count = expected.transitions.get(LongIntTable.pack(from, to));
+			assertEquals("The transitions from " + from + " to " + to, count == null ? 0 : count.longValue(),
+					stats.getTransitions(transition));
+		}
+	}
+
+	/**
+	 * The counts of a trace from a sample on, found by testing every region at every sample.
+	 */
+	private static class Expected {
+
+		private final long[] dwell;
+		private final long[] entries;
+		private final Map<Long, Long> transitions = new HashMap<Long, Long>();
+		private long total;
+		private long outside;
+
+		Expected(Rectangle[] bounds, int[][] trace, int start) {
+			this.dwell = new long[bounds.length];
+			this.entries = new long[bounds.length];
+			boolean[] inside = new boolean[bounds.length];
+			int previousTop = -1;
+			for (int i = start; i < trace.length; i++) {
+				int x = trace[i][0];
+				int y = trace[i][1];
+				int periods = trace[i][2];
+				this.total += periods;
+				int top = -1;
+				for (int region = 0; region < bounds.length; region++) {
+					boolean hit = bounds[region].contains(x, y);
+					if (hit) {
+						this.dwell[region] += periods;
+						if (!inside[region]) {
+							this.entries[region]++;
+						}
+						top = region;
+					}
+					inside[region] = hit;
+				}
+				if (top < 0) {
+					this.outside += periods;
+					continue;
+				}
+				if (previousTop >= 0 && top != previousTop) {
+					Long key = LongIntTable.pack(previousTop, top);
+					Long count = this.transitions.get(key);
+					this.transitions.put(key, count == null ? 1 : count + 1);
+				}
+				previousTop = top;
+			}
+		}
+	}
+}
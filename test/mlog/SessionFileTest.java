@@ -0,0 +1,297 @@
+package mlog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that session files give back what was checkpointed to them, also after a checkpoint was torn, and that
+ * SessionMerger adds up sessions of different rates and screens.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class SessionFileTest {
+
+	private static final Rectangle BOUNDS = new Rectangle(-100, 0, 700, 500);
+	private static final long SAMPLE_PERIOD_NANOS = 10000000L;
+
+	private File file;
+	private final List<File> mergedFiles = new ArrayList<File>();
+
+	@Before
+	public void createFile() throws IOException {
+		this.file = File.createTempFile("mlog-test", SessionFile.FILE_EXTENSION);
+	}
+
+	@After
+	public void deleteFile() {
+		this.file.delete();
+		for (File merged : this.mergedFiles) {
+			merged.delete();
+		}
+	}
+
+	@Test
+	public void reopenedSessionHasTheCheckpointedCountsAndTrajectory() throws IOException {
+		PixelCountStore counts = new PixelCountStore(BOUNDS);
+		addRandomCounts(counts, new Random(1), 5000);
+		TrajectoryBuffer trajectory = new TrajectoryBuffer(0, 1000, null);
+		for (int i = 0; i < 300; i++) {
+			trajectory.append(i * SAMPLE_PERIOD_NANOS, i, 2 * i, 1);
+		}
+
+		SessionFile session = SessionFile.create(this.file, BOUNDS, SAMPLE_PERIOD_NANOS);
+		session.checkpoint(counts.snapshot(), trajectory);
+		session.close();
+		trajectory.close();
+
+		SessionFile reopened = SessionFile.openReadOnly(this.file);
+		try {
+			assertEquals(BOUNDS, reopened.getDenseBounds());
+			assertEquals(SAMPLE_PERIOD_NANOS, reopened.getSamplePeriodNanos());
+			assertEquals(counts.getTotalCount(), reopened.getTotalCount());
+			assertSameCounts(counts, reopened.readCounts());
+			final List<long[]> records = new ArrayList<long[]>();
+			reopened.readTrajectory(new TrajectoryVisitor() {
+				@Override
+				public void visit(long timeNanos, int x, int y, int periods) {
+					records.add(new long[] { timeNanos, x, y, periods });
+				}
+			});
+			assertEquals(300, records.size());
+			for (int i = 0; i < records.size(); i++) {
+				assertEquals(i, records.get(i)[1]);
+				assertEquals(2 * i, records.get(i)[2]);
+				assertEquals(1, records.get(i)[3]);
+				if (i > 0) {
+					assertEquals(SAMPLE_PERIOD_NANOS, records.get(i)[0] - records.get(i - 1)[0]);
+				}
+			}
+		} finally {
+			reopened.close();
+		}
+	}
+
+	@Test
+	public void sessionContinuesFromItsLatestCheckpoint() throws IOException {
+		Random random = new Random(2);
+		PixelCountStore counts = new PixelCountStore(BOUNDS);
+		SessionFile session = SessionFile.create(this.file, BOUNDS, SAMPLE_PERIOD_NANOS);
+		for (int checkpoint = 0; checkpoint < 5; checkpoint++) {
+			addRandomCounts(counts, random, 500);
+			session.checkpoint(counts.snapshot(), null);
+		}
+		session.close();
+
+		session = SessionFile.open(this.file);
+		PixelCountStore resumed = session.readCounts();
+		assertSameCounts(counts, resumed);
+		addRandomCounts(resumed, random, 500);
+		session.checkpoint(resumed.snapshot(), null);
+		session.close();
+
+		SessionFile reopened = SessionFile.openReadOnly(this.file);
+		try {
+			assertSameCounts(resumed, reopened.readCounts());
+		} finally {
+			reopened.close();
+		}
+	}
+
+	@Test
+	public void runsOnAFastClockFollowEachOther() throws IOException {
+		PixelCountStore counts = new PixelCountStore(BOUNDS);
+		// The first run covers 10 s of its clock in a moment, like a replay; its clock starts at 0
+		TrajectoryBuffer first = new TrajectoryBuffer(0, 4096, null);
+		for (int i = 0; i < 1000; i++) {
+			first.append(i * SAMPLE_PERIOD_NANOS, i, 0, 1);
+		}
+		SessionFile session = SessionFile.create(this.file, BOUNDS, SAMPLE_PERIOD_NANOS);
+		session.checkpoint(counts.snapshot(), first, 1000 * SAMPLE_PERIOD_NANOS);
+		session.close();
+		first.close();
+
+		// The second run, after a restart, on a clock with another origin that is only 1 s into the run
+		long origin = 123456789000L;
+		TrajectoryBuffer second = new TrajectoryBuffer(origin, 4096, null);
+		for (int i = 0; i < 300; i++) {
+			second.append(origin + i * SAMPLE_PERIOD_NANOS, 1000 + i, 0, 1);
+		}
+		session = SessionFile.open(this.file);
+		session.checkpoint(counts.snapshot(), second, origin + 100 * SAMPLE_PERIOD_NANOS);
+		session.close();
+		second.close();
+
+		SessionFile reopened = SessionFile.openReadOnly(this.file);
+		try {
+			final List<long[]> records = new ArrayList<long[]>();
+			reopened.readTrajectory(new TrajectoryVisitor() {
+				@Override
+				public void visit(long timeNanos, int x, int y, int periods) {
+					records.add(new long[] { timeNanos, x });
+				}
+			});
+			assertEquals(1300, records.size());
+			// The latest record of the first run was logged at the time of its checkpoint, right after the session
+			// was created
+			assertTrue(Math.abs(records.get(999)[0]) < 1000000000L);
+			for (int i = 1; i < records.size(); i++) {
+				assertEquals(i, records.get(i)[1]);
+				if (i == 1000) {
+					assertTrue("The second run starts before the first one ends", records.get(i)[0] >= records.get(i - 1)[0]);
+				} else {
+					assertEquals(SAMPLE_PERIOD_NANOS, records.get(i)[0] - records.get(i - 1)[0]);
+				}
+			}
+		} finally {
+			reopened.close();
+		}
+	}
+
+	@Test
+	public void tornHeaderFallsBackToThePreviousCheckpoint() throws IOException {
+		Random random = new Random(3);
+		PixelCountStore counts = new PixelCountStore(BOUNDS);
+		addRandomCounts(counts, random, 2000);
+		SessionFile session = SessionFile.create(this.file, BOUNDS, SAMPLE_PERIOD_NANOS);
+		session.checkpoint(counts.snapshot(), null);
+		PixelCountStore previous = counts.copy();
+		// Changes all over the dense area and outside it, so the torn checkpoint wrote tiles and sparse pixels
+		addRandomCounts(counts, random, 2000);
+		session.checkpoint(counts.snapshot(), null);
+		long tornSequence = session.getCheckpointSequence();
+		session.close();
+
+		// The header of a checkpoint is in the slot of its sequence number; break its checksum
+		RandomAccessFile raw = new RandomAccessFile(this.file, "rw");
+		try {
+			long position = (tornSequence & 1) * SessionFile.HEADER_SLOT_BYTES + 20;
+			raw.seek(position);
+			int value = raw.read();
+			raw.seek(position);
+			raw.write(value ^ 0xFF);
+		} finally {
+			raw.close();
+		}
+
+		SessionFile recovered = SessionFile.open(this.file);
+		try {
+			assertEquals(tornSequence - 1, recovered.getCheckpointSequence());
+			assertSameCounts(previous, recovered.readCounts());
+			// Checkpoints go on from the recovered one
+			recovered.checkpoint(counts.snapshot(), null);
+		} finally {
+			recovered.close();
+		}
+		SessionFile reopened = SessionFile.openReadOnly(this.file);
+		try {
+			assertSameCounts(counts, reopened.readCounts());
+		} finally {
+			reopened.close();
+		}
+	}
+
+	@Test
+	public void resetSessionIsEmpty() throws IOException {
+		PixelCountStore counts = new PixelCountStore(BOUNDS);
+		addRandomCounts(counts, new Random(4), 1000);
+		SessionFile session = SessionFile.create(this.file, BOUNDS, SAMPLE_PERIOD_NANOS);
+		session.checkpoint(counts.snapshot(), null);
+		session.reset();
+		session.close();
+
+		SessionFile reopened = SessionFile.openReadOnly(this.file);
+		try {
+			assertEquals(0, reopened.readCounts().getTotalCount());
+			assertFalse(reopened.hasTrajectory());
+		} finally {
+			reopened.close();
+		}
+	}
+
+	@Test
+	public void mergedSessionsAddUpInTheShortestSamplePeriod() throws IOException {
+		Random random = new Random(5);
+		// Sessions of two rates on two sets of screens; a 25 ms count is 2.5 counts of 10 ms, rounded
+		Rectangle[] screens = { BOUNDS, new Rectangle(400, -300, 900, 400) };
+		long[] periods = { SAMPLE_PERIOD_NANOS, 25000000L };
+		Rectangle union = screens[0].union(screens[1]);
+		final PixelCountStore expected = new PixelCountStore(union);
+		for (int i = 0; i < 7; i++) {
+			Rectangle screen = screens[i % 2];
+			final double scale = (double) periods[i / 2 % 2] / SAMPLE_PERIOD_NANOS;
+			PixelCountStore counts = new PixelCountStore(screen);
+			for (int sample = 0; sample < 3000; sample++) {
+				// Some pixels lie outside the screens of the session, and some outside both
+				counts.add(screen.x - 50 + random.nextInt(screen.width + 100), screen.y - 50 + random.nextInt(screen.height + 100),
+						1 + random.nextInt(5));
+			}
+			File session = File.createTempFile("mlog-test", SessionFile.FILE_EXTENSION);
+			this.mergedFiles.add(session);
+			SessionFile sessionFile = SessionFile.create(session, screen, periods[i / 2 % 2]);
+			sessionFile.checkpoint(counts.snapshot(), null);
+			sessionFile.close();
+			counts.forEach(new PixelVisitor() {
+				@Override
+				public void visit(int x, int y, int count) {
+					expected.add(x, y, (int) Math.max(1, Math.round(count * scale)));
+				}
+			});
+		}
+		File missing = new File(this.file.getPath() + ".missing");
+		List<File> sessions = new ArrayList<File>(this.mergedFiles);
+		sessions.add(3, missing);
+
+		SessionMerger merger = new SessionMerger(3);
+		try {
+			PixelCountStore merged = merger.merge(sessions);
+			assertEquals(union, merged.getDenseBounds());
+			assertEquals(SAMPLE_PERIOD_NANOS, merger.getSamplePeriodNanos());
+			assertSameCounts(expected, merged);
+			assertEquals(Arrays.asList(missing), merger.getFailedSessions());
+		} finally {
+			merger.shutdown();
+		}
+	}
+
+	/**
+	 * Adds counts to random pixels, a few of them outside the dense area.
+	 */
+	private static void addRandomCounts(PixelCountStore counts, Random random, int samples) {
+		for (int i = 0; i < samples; i++) {
+			if (random.nextInt(10) == 0) {
+				counts.add(BOUNDS.x + BOUNDS.width + random.nextInt(50), -1 - random.nextInt(50), 1 + random.nextInt(5));
+			} else {
+				counts.add(BOUNDS.x + random.nextInt(BOUNDS.width), BOUNDS.y + random.nextInt(BOUNDS.height),
+						1 + random.nextInt(5));
+			}
+		}
+	}
+
+	private static void assertSameCounts(PixelCountStore expected, final PixelCountStore actual) {
+		assertEquals(expected.getTotalCount(), actual.getTotalCount());
+		assertEquals(expected.size(), actual.size());
+		final boolean[] same = { true };
+		expected.forEach(new PixelVisitor() {
+			@Override
+			public void visit(int x, int y, int count) {
+				same[0] &= actual.get(x, y) == count;
+			}
+		});
+		assertTrue("The counts differ", same[0]);
+	}
+}
@@ -0,0 +1,131 @@
+package mlog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that every tile of a pyramid is colored by the sums of the counts under its cells, as found by summing
+ * every level from the pixels.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class TilePyramidExporterTest {
+
+	private static final Dimension RESOLUTION = new Dimension(700, 300);
+
+	private final TilePyramidExporter exporter = new TilePyramidExporter(3);
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		this.directory = File.createTempFile("mlog-pyramid", "");
+		this.directory.delete();
+		this.directory.mkdir();
+	}
+
+	@After
+	public void deleteDirectory() {
+		this.exporter.shutdown();
+		delete(this.directory);
+	}
+
+	@Test
+	public void tilesAreColoredByTheSumsOfTheirCells() throws IOException {
+		// Clusters of counts, a few pixels outside the map and one pixel with a high count
+		Random random = new Random(1);
+		PixelCountStore counts = new PixelCountStore(new Rectangle(RESOLUTION));
+		int x = 0;
+		int y = 0;
+		for (int i = 0; i < 20000; i++) {
+			if (random.nextInt(100) == 0) {
+				x = -10 + random.nextInt(RESOLUTION.width + 20);
+				y = -10 + random.nextInt(RESOLUTION.height + 20);
+			}
+			x += random.nextInt(3) - 1;
+			y += random.nextInt(3) - 1;
+			counts.add(x, y, 1 + random.nextInt(5));
+		}
+		counts.add(511, 256, 100000);
+		ColorRamp colorRamp = ColorRamp.create(ColorRamp.RAMP_SINGLE_HUE, Color.GREEN);
+
+		File descriptor = this.exporter.export(counts, RESOLUTION, colorRamp, this.directory, "map");
+		assertEquals(new File(this.directory, "map" + TilePyramidExporter.FILE_EXTENSION), descriptor);
+		String xml = new String(Files.readAllBytes(descriptor.toPath()), StandardCharsets.UTF_8);
+		assertTrue(xml, xml.contains("TileSize=\"" + TilePyramidExporter.TILE_SIZE + "\""));
+		assertTrue(xml, xml.contains("<Size Width=\"700\" Height=\"300\"/>"));
+
+		// The full-size level is the tenth, since 2^10 is the first power of two not smaller than the map
+		int maxLevel = 10;
+		long[] pixels = new long[RESOLUTION.width * RESOLUTION.height];
+		long maxCount = 0;
+		for (y = 0; y < RESOLUTION.height; y++) {
+			for (x = 0; x < RESOLUTION.width; x++) {
+				pixels[y * RESOLUTION.width + x] = counts.get(x, y);
+				maxCount = Math.max(maxCount, counts.get(x, y));
+			}
+		}
+		File tiles = new File(this.directory, "map_files");
+		assertEquals(maxLevel + 1, tiles.list().length);
+		for (int level = 0; level <= maxLevel; level++) {
+			int shift = maxLevel - level;
+			int width = (RESOLUTION.width + (1 << shift) - 1) >> shift;
+			int height = (RESOLUTION.height + (1 << shift) - 1) >> shift;
+			long[] cells = new long[width * height];
+			for (y = 0; y < RESOLUTION.height; y++) {
+				for (x = 0; x < RESOLUTION.width; x++) {
+					cells[(y >> shift) * width + (x >> shift)] += pixels[y * RESOLUTION.width + x];
+				}
+			}
+			CountScale scale = new CountScale(CountScale.NORMALISATION_LOG, maxCount << 2 * shift, colorRamp.getColors());
+
+			int size = TilePyramidExporter.TILE_SIZE;
+			int columns = (width + size - 1) / size;
+			int rows = (height + size - 1) / size;
+			File levelDirectory = new File(tiles, Integer.toString(level));
+			assertEquals("The tiles of level " + level, columns * rows, levelDirectory.list().length);
+			for (int row = 0; row < rows; row++) {
+				for (int column = 0; column < columns; column++) {
+					BufferedImage tile = ImageIO.read(new File(levelDirectory, column + "_" + row + ".png"));
+					assertEquals(Math.min(size, width - column * size), tile.getWidth());
+					assertEquals(Math.min(size, height - row * size), tile.getHeight());
+					for (int tileY = 0; tileY < tile.getHeight(); tileY++) {
+						for (int tileX = 0; tileX < tile.getWidth(); tileX++) {
+							int cellX = column * size + tileX;
+							int cellY = row * size + tileY;
+							long sum = cells[cellY * width + cellX];
+							assertEquals("The cell at " + cellX + "," + cellY + " of level " + level + " with " + sum,
+									scale.get(sum) & 0xFFFFFF, tile.getRGB(tileX, tileY) & 0xFFFFFF);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,169 @@
+package mlog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a time-lapse ends on the dot map of its session, and that an animated PNG holds every frame.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class TimeLapseExporterTest {
+
+	private static final Dimension RESOLUTION = new Dimension(300, 200);
+	private static final long SAMPLE_PERIOD_NANOS = 10000000L;
+	private static final int FRAMES = 12;
+
+	private final TimeLapseExporter exporter = new TimeLapseExporter(2);
+	private final TiledMapRenderer renderer = new TiledMapRenderer(2, 64);
+	private final MapGenerator mapGenerator = new MapGenerator(this.renderer, new PngEncoder(1, 1));
+	private final PixelCountStore counts = new PixelCountStore(new Rectangle(RESOLUTION));
+	private File directory;
+	private SessionFile session;
+
+	@Before
+	public void createSession() throws IOException {
+		this.directory = File.createTempFile("mlog-timelapse", "");
+		this.directory.delete();
+		this.directory.mkdir();
+
+		// Clusters of records, some of them around and past the edges of the map
+		Random random = new Random(1);
+		TrajectoryBuffer trajectory = new TrajectoryBuffer(0, 1 << 14, null);
+		int x = 150;
+		int y = 100;
+		for (int i = 0; i < 6000; i++) {
+			if (random.nextInt(50) == 0) {
+				x = -20 + random.nextInt(RESOLUTION.width + 40);
+				y = -20 + random.nextInt(RESOLUTION.height + 40);
+			}
+			x += random.nextInt(5) - 2;
+			y += random.nextInt(5) - 2;
+			int periods = 1 + random.nextInt(3);
+			trajectory.append(i * SAMPLE_PERIOD_NANOS, x, y, periods);
+			this.counts.add(x, y, periods);
+		}
+		this.session = SessionFile.create(new File(this.directory, "session" + SessionFile.FILE_EXTENSION),
+				new Rectangle(RESOLUTION), SAMPLE_PERIOD_NANOS);
+		this.session.checkpoint(this.counts.snapshot(), trajectory);
+		trajectory.close();
+	}
+
+	@After
+	public void deleteSession() {
+		this.session.close();
+		this.exporter.shutdown();
+		this.renderer.shutdown();
+		delete(this.directory);
+	}
+
+	@Test
+	public void lastFrameIsTheDotMapOfTheSession() throws IOException {
+		for (String normalisation : new String[] { CountScale.NORMALISATION_NONE, CountScale.NORMALISATION_LOG }) {
+			this.mapGenerator.setNormalisation(normalisation);
+			BufferedImage map = this.mapGenerator.renderMap(RESOLUTION, this.counts, Color.ORANGE,
+					MapGenerator.MAP_TYPE_DOTMAP);
+			File frames = this.exporter.export(this.session, RESOLUTION, ColorRamp.create(ColorRamp.RAMP_SINGLE_HUE,
+					Color.ORANGE), normalisation, FRAMES, TimeLapseExporter.FORMAT_PNG_SEQUENCE, this.directory,
+					normalisation);
+			assertEquals(FRAMES, frames.list().length);
+			BufferedImage last = ImageIO.read(new File(frames, String.format(Locale.ROOT, "frame_%05d.png", FRAMES - 1)));
+			assertEquals(RESOLUTION.width, last.getWidth());
+			assertEquals(RESOLUTION.height, last.getHeight());
+			assertSameUpToRounding(map, last);
+			this.mapGenerator.releaseMap(map);
+		}
+	}
+
+	@Test
+	public void animationHasEveryFrame() throws IOException {
+		for (int frames : new int[] { 1, FRAMES, 500 }) {
+			File animation = this.exporter.export(this.session, RESOLUTION, ColorRamp.create(ColorRamp.RAMP_HEAT, null),
+					CountScale.NORMALISATION_LOG, frames, TimeLapseExporter.FORMAT_APNG, this.directory, "frames" + frames);
+			int declared = -1;
+			int controls = 0;
+			DataInputStream in = new DataInputStream(new FileInputStream(animation));
+			try {
+				in.skipBytes(8);
+				while (true) {
+					int length = in.readInt();
+					byte[] type = new byte[4];
+					in.readFully(type);
+					String chunk = new String(type, "US-ASCII");
+					if ("acTL".equals(chunk)) {
+						declared = in.readInt();
+						in.skipBytes(length - 4);
+					} else {
+						if ("fcTL".equals(chunk)) {
+							controls++;
+						}
+						in.skipBytes(length);
+					}
+					in.skipBytes(4);
+					if ("IEND".equals(chunk)) {
+						break;
+					}
+				}
+			} finally {
+				in.close();
+			}
+			assertEquals(frames, declared);
+			assertEquals(frames, controls);
+			// Viewers without APNG support show the first frame
+			BufferedImage first = ImageIO.read(animation);
+			assertEquals(RESOLUTION.width, first.getWidth());
+			assertEquals(RESOLUTION.height, first.getHeight());
+		}
+	}
+
+	/**
+	 * Asserts that two maps of a single hue ramp differ by at most a level of the ramp in any pixel, as far as the
+	 * density buffers of the frames and of DotMapRenderer may round differently.
+	 */
+	private static void assertSameUpToRounding(BufferedImage expected, BufferedImage actual) {
+		int lit = 0;
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				int a = expected.getRGB(x, y);
+				int b = actual.getRGB(x, y);
+				for (int shift = 0; shift < 24; shift += 8) {
+					int difference = Math.abs((a >> shift & 0xFF) - (b >> shift & 0xFF));
+					assertTrue("The pixel at " + x + "," + y + " is " + Integer.toHexString(b) + " instead of "
+							+ Integer.toHexString(a), difference <= 1);
+				}
+				if ((a & 0xFFFFFF) != 0) {
+					lit++;
+				}
+			}
+		}
+		assertTrue(lit > 1000);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
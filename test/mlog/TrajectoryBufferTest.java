@@ -0,0 +1,130 @@
+package mlog;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests that a TrajectoryBuffer gives back the records appended to it, from memory and from its spill file, and
+ * keeps the most recent ones when it has no spill file.
+ *
+ * @author Filip stermark
+ * @version 2026-10-18
+ */
+public class TrajectoryBufferTest {
+
+	private static final long START_NANOS = 123456789L;
+	private static final long SPACING_NANOS = 1000;
+	private static final int CAPACITY = 1024;
+
+	@Test
+	public void spilledRecordsAreReadBackInOrder() throws IOException, InterruptedException {
+		File spillFile = File.createTempFile("mlog-trajectory", ".tmp");
+		TrajectoryBuffer trajectory = new TrajectoryBuffer(START_NANOS, CAPACITY, spillFile);
+		try {
+			int records = 20 * CAPACITY + 300;
+			for (int i = 0; i < records; i++) {
+				long dropped = trajectory.getDroppedCount();
+				appendRecord(trajectory, i);
+				while (trajectory.getDroppedCount() > dropped) {
+					// The spill thread has fallen behind; give it time and append the record again
+					Thread.sleep(1);
+					dropped = trajectory.getDroppedCount();
+					appendRecord(trajectory, i);
+				}
+			}
+			assertEquals(records, trajectory.size());
+
+			assertRecords(0, records, query(trajectory, 0, Long.MAX_VALUE));
+			// Windows within the file, from the file into the ring, within the ring and past the end
+			long[][] windows = { { 0, 10 }, { 100, 3000 }, { records - CAPACITY - 50, records - 10 },
+					{ records - 20, records }, { records - 5, records + 100 }, { records + 1, records + 2 }, { 7, 7 } };
+			for (long[] window : windows) {
+				long from = Math.min(records, Math.max(0, window[0]));
+				long to = Math.min(records, Math.max(from, window[1]));
+				assertRecords(from, to, query(trajectory, window[0] * SPACING_NANOS, window[1] * SPACING_NANOS));
+				// A window starting between two records starts at the next one
+				assertRecords(Math.min(from + 1, to), to,
+						query(trajectory, window[0] * SPACING_NANOS + 1, window[1] * SPACING_NANOS));
+			}
+			assertRecords(500, 2500, read(trajectory, 500, 2500));
+			assertRecords(records - 10, records, read(trajectory, records - 10, records + 10));
+		} finally {
+			trajectory.close();
+		}
+		assertFalse(spillFile.exists());
+	}
+
+	@Test
+	public void withoutSpillFileOnlyRecentRecordsAreKept() throws IOException {
+		TrajectoryBuffer trajectory = new TrajectoryBuffer(START_NANOS, CAPACITY, null);
+		try {
+			int records = 5 * CAPACITY + 100;
+			for (int i = 0; i < records; i++) {
+				appendRecord(trajectory, i);
+			}
+			assertEquals(records, trajectory.size());
+			assertEquals(0, trajectory.getDroppedCount());
+
+			// The oldest half of the ring is dropped at a time, so at least half of it is still there
+			List<long[]> kept = query(trajectory, 0, Long.MAX_VALUE);
+			assertTrue(kept.size() >= trajectory.getCapacity() / 2);
+			assertTrue(kept.size() <= trajectory.getCapacity());
+			long first = records - kept.size();
+			assertRecords(first, records, kept);
+			assertRecords(first, first + 10, query(trajectory, 0, (first + 10) * SPACING_NANOS));
+			assertRecords(first + 5, records - 5,
+					query(trajectory, (first + 5) * SPACING_NANOS, (records - 5) * SPACING_NANOS));
+			assertTrue(query(trajectory, 0, first * SPACING_NANOS).isEmpty());
+			assertRecords(first, first + 3, read(trajectory, 0, first + 3));
+		} finally {
+			trajectory.close();
+		}
+	}
+
+	private static void appendRecord(TrajectoryBuffer trajectory, int i) {
+		trajectory.append(START_NANOS + i * SPACING_NANOS, i % 1920, -(i % 37), 1 + i % 3);
+	}
+
+	private static List<long[]> query(TrajectoryBuffer trajectory, long fromNanos, long toNanos) throws IOException {
+		Collector records = new Collector();
+		trajectory.query(fromNanos, toNanos, records);
+		return records.records;
+	}
+
+	private static List<long[]> read(TrajectoryBuffer trajectory, long fromIndex, long toIndex) throws IOException {
+		Collector records = new Collector();
+		trajectory.read(fromIndex, toIndex, records);
+		return records.records;
+	}
+
+	/**
+	 * Asserts that the records are exactly the ones appended with the indices in a range, in order.
+	 */
+	private static void assertRecords(long from, long to, List<long[]> records) {
+		assertEquals(to - from, records.size());
+		for (int i = 0; i < records.size(); i++) {
+			int index = (int) (from + i);
+			long[] expected = { index * SPACING_NANOS, index % 1920, -(index % 37), 1 + index % 3 };
+			assertArrayEquals("Record " + index, expected, records.get(i));
+		}
+	}
+
+	private static class Collector implements TrajectoryVisitor {
+
+		private final List<long[]> records = new ArrayList<long[]>();
+
+		@Override
+		public void visit(long timeNanos, int x, int y, int periods) {
+			this.records.add(new long[] { timeNanos, x, y, periods });
+		}
+	}
+}